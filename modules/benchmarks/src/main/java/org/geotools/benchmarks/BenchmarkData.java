@@ -0,0 +1,74 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.benchmarks;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.geotools.TestData;
+
+/**
+ * Access to the benchmark fixtures, which are the shapefiles shipped with the sample-data module.
+ * <p>
+ * The fixtures are copied out of the classpath into a temporary directory, so that they can be
+ * accessed as plain files (and memory mapped) even when running off the shaded benchmarks jar.
+ */
+public class BenchmarkData {
+
+    static final String[] SHAPEFILE_EXTENSIONS = { "shp", "shx", "dbf", "prj" };
+
+    private BenchmarkData() {
+        // utility class
+    }
+
+    /**
+     * Copies the specified shapefile from the sample data "shapes" folder into a new temporary
+     * directory
+     *
+     * @param name The shapefile name, without extension (e.g., "statepop")
+     * @return The copied .shp file
+     * @throws IOException
+     */
+    public static File copyShapefile(String name) throws IOException {
+        File directory = Files.createTempDirectory("gt-benchmark").toFile();
+        directory.deleteOnExit();
+        File shp = null;
+        for (String extension : SHAPEFILE_EXTENSIONS) {
+            String fileName = name + "." + extension;
+            File target = new File(directory, fileName);
+            try (InputStream is = TestData.openStream("shapes/" + fileName)) {
+                Files.copy(is, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (FileNotFoundException e) {
+                // the .prj is optional
+                if (!"prj".equals(extension)) {
+                    throw e;
+                }
+            }
+            target.deleteOnExit();
+            if ("shp".equals(extension)) {
+                shp = target;
+            }
+        }
+
+        return shp;
+    }
+
+}
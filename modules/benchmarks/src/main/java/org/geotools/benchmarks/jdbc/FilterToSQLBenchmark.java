@@ -0,0 +1,99 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.benchmarks.jdbc;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.benchmarks.BenchmarkData;
+import org.geotools.data.jdbc.FilterToSQL;
+import org.geotools.data.jdbc.FilterToSQLException;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.filter.text.ecql.ECQL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+/**
+ * Measures the encoding of filters into SQL with the base {@link FilterToSQL} encoder, using the
+ * statepop shapefile schema to drive the literal type conversions.
+ * <p>
+ * The base encoder does not support spatial filters (each SQL dialect provides its own), so the
+ * filters used here are attribute only, with increasing complexity.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FilterToSQLBenchmark {
+
+    @Param({ "comparison", "logic", "like", "in" })
+    public String filterType;
+
+    SimpleFeatureType schema;
+
+    Filter filter;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        File shp = BenchmarkData.copyShapefile("statepop");
+        ShapefileDataStore store = new ShapefileDataStore(shp.toURI().toURL());
+        try {
+            schema = store.getSchema();
+        } finally {
+            store.dispose();
+        }
+
+        filter = ECQL.toFilter(getFilterSpecification(filterType));
+    }
+
+    static String getFilterSpecification(String filterType) {
+        if ("comparison".equals(filterType)) {
+            return "PERSONS > 2000000";
+        } else if ("logic".equals(filterType)) {
+            return "(PERSONS > 2000000 AND PERSONS < 4000000) OR (LAND_KM BETWEEN 1000 AND 5000 "
+                    + "AND NOT (SUB_REGION = 'Mtn')) OR STATE_ABBR IS NULL";
+        } else if ("like".equals(filterType)) {
+            return "STATE_NAME LIKE 'New%' OR STATE_NAME ILIKE '%ia'";
+        } else if ("in".equals(filterType)) {
+            return "STATE_ABBR IN ('NY', 'NJ', 'CT', 'MA', 'VT', 'NH', 'ME', 'RI', 'PA', 'DE')";
+        } else {
+            throw new IllegalArgumentException("Unknown filter type " + filterType);
+        }
+    }
+
+    @Benchmark
+    public String encode() throws FilterToSQLException {
+        FilterToSQL encoder = new FilterToSQL();
+        encoder.setFeatureType(schema);
+        encoder.setInline(true);
+        return encoder.encodeToString(filter);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.benchmarks.referencing;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.referencing.operation.projection.MapProjection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+/**
+ * Measures the forward and inverse transformation of packed coordinate arrays through the
+ * {@link MapProjection} implementations most commonly hit while rendering. The projections are
+ * set up from WKT so that the measurement does not depend on the EPSG database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MapProjectionBenchmark {
+
+    static final String MERCATOR = "PROJCS[\"WGS 84 / Pseudo-Mercator\",GEOGCS[\"WGS 84\","
+            + "DATUM[\"WGS_1984\",SPHEROID[\"WGS 84\",6378137,298.257223563]],"
+            + "PRIMEM[\"Greenwich\",0],UNIT[\"degree\",0.0174532925199433]],"
+            + "PROJECTION[\"Mercator_1SP\"],PARAMETER[\"central_meridian\",0],"
+            + "PARAMETER[\"scale_factor\",1],PARAMETER[\"false_easting\",0],"
+            + "PARAMETER[\"false_northing\",0],UNIT[\"metre\",1]]";
+
+    static final String TRANSVERSE_MERCATOR = "PROJCS[\"WGS 84 / UTM zone 32N\",GEOGCS[\"WGS 84\","
+            + "DATUM[\"WGS_1984\",SPHEROID[\"WGS 84\",6378137,298.257223563]],"
+            + "PRIMEM[\"Greenwich\",0],UNIT[\"degree\",0.0174532925199433]],"
+            + "PROJECTION[\"Transverse_Mercator\"],PARAMETER[\"latitude_of_origin\",0],"
+            + "PARAMETER[\"central_meridian\",9],PARAMETER[\"scale_factor\",0.9996],"
+            + "PARAMETER[\"false_easting\",500000],PARAMETER[\"false_northing\",0],"
+            + "UNIT[\"metre\",1]]";
+
+    static final String LAMBERT = "PROJCS[\"RGF93 / Lambert-93\",GEOGCS[\"WGS 84\","
+            + "DATUM[\"WGS_1984\",SPHEROID[\"WGS 84\",6378137,298.257223563]],"
+            + "PRIMEM[\"Greenwich\",0],UNIT[\"degree\",0.0174532925199433]],"
+            + "PROJECTION[\"Lambert_Conformal_Conic_2SP\"],"
+            + "PARAMETER[\"standard_parallel_1\",49],PARAMETER[\"standard_parallel_2\",44],"
+            + "PARAMETER[\"latitude_of_origin\",46.5],PARAMETER[\"central_meridian\",3],"
+            + "PARAMETER[\"false_easting\",700000],PARAMETER[\"false_northing\",6600000],"
+            + "UNIT[\"metre\",1]]";
+
+    @Param({ "Mercator", "TransverseMercator", "LambertConformal" })
+    public String projection;
+
+    @Param({ "1000" })
+    public int points;
+
+    MathTransform forward;
+
+    MathTransform inverse;
+
+    double[] geographic;
+
+    double[] projected;
+
+    double[] target;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        CoordinateReferenceSystem crs = CRS.parseWKT(getWKT(projection));
+        forward = CRS.findMathTransform(DefaultGeographicCRS.WGS84, crs, true);
+        inverse = forward.inverse();
+
+        // random points in a 6 by 6 degrees area around the projection center,
+        // using a fixed seed to make runs comparable
+        Random random = new Random(0);
+        double[] center = getCenter(projection);
+        geographic = new double[points * 2];
+        for (int i = 0; i < geographic.length; i += 2) {
+            geographic[i] = center[0] + (random.nextDouble() - 0.5) * 6;
+            geographic[i + 1] = center[1] + (random.nextDouble() - 0.5) * 6;
+        }
+        projected = new double[points * 2];
+        forward.transform(geographic, 0, projected, 0, points);
+        target = new double[points * 2];
+    }
+
+    static String getWKT(String projection) {
+        if ("Mercator".equals(projection)) {
+            return MERCATOR;
+        } else if ("TransverseMercator".equals(projection)) {
+            return TRANSVERSE_MERCATOR;
+        } else if ("LambertConformal".equals(projection)) {
+            return LAMBERT;
+        } else {
+            throw new IllegalArgumentException("Unknown projection " + projection);
+        }
+    }
+
+    static double[] getCenter(String projection) {
+        if ("TransverseMercator".equals(projection)) {
+            return new double[] { 9, 45 };
+        } else if ("LambertConformal".equals(projection)) {
+            return new double[] { 3, 46.5 };
+        } else {
+            return new double[] { 0, 0 };
+        }
+    }
+
+    @Benchmark
+    public double[] forward() throws TransformException {
+        forward.transform(geographic, 0, target, 0, points);
+        return target;
+    }
+
+    @Benchmark
+    public double[] inverse() throws TransformException {
+        inverse.transform(projected, 0, target, 0, points);
+        return target;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.benchmarks.render;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.benchmarks.BenchmarkData;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.CRS;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.geotools.styling.Symbolizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Measures a full {@link StreamingRenderer} paint of a sample-data shapefile into a
+ * {@link BufferedImage}, both in the native CRS and reprojected to web mercator
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StreamingRendererBenchmark {
+
+    @Param({ "statepop", "roads" })
+    public String layer;
+
+    @Param({ "native", "EPSG:3857" })
+    public String crs;
+
+    @Param({ "false", "true" })
+    public boolean antialiasing;
+
+    @Param({ "768" })
+    public int width;
+
+    ShapefileDataStore store;
+
+    MapContent content;
+
+    Rectangle paintArea;
+
+    ReferencedEnvelope mapArea;
+
+    BufferedImage image;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        File shp = BenchmarkData.copyShapefile(layer);
+        store = new ShapefileDataStore(shp.toURI().toURL());
+        SimpleFeatureSource fs = store.getFeatureSource();
+
+        content = new MapContent();
+        content.addLayer(new FeatureLayer(fs, buildStyle(fs)));
+
+        // compute the map area, eventually reprojecting it
+        ReferencedEnvelope bounds = fs.getBounds();
+        if ("native".equals(crs)) {
+            mapArea = bounds;
+        } else {
+            CoordinateReferenceSystem target = CRS.decode(crs, true);
+            mapArea = bounds.transform(target, true);
+        }
+        content.getViewport().setCoordinateReferenceSystem(
+                mapArea.getCoordinateReferenceSystem());
+
+        // keep the aspect ratio of the data
+        int height = (int) Math.round(width * mapArea.getHeight() / mapArea.getWidth());
+        paintArea = new Rectangle(0, 0, width, Math.max(height, 1));
+        image = new BufferedImage(paintArea.width, paintArea.height,
+                BufferedImage.TYPE_4BYTE_ABGR);
+    }
+
+    Style buildStyle(SimpleFeatureSource fs) {
+        StyleBuilder sb = new StyleBuilder();
+        Class<?> binding = fs.getSchema().getGeometryDescriptor().getType().getBinding();
+        Symbolizer symbolizer;
+        if (Polygon.class.isAssignableFrom(binding)
+                || MultiPolygon.class.isAssignableFrom(binding)) {
+            symbolizer = sb.createPolygonSymbolizer(Color.LIGHT_GRAY, Color.BLACK, 1);
+        } else {
+            symbolizer = sb.createLineSymbolizer(Color.BLUE, 1);
+        }
+        return sb.createStyle(symbolizer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        content.dispose();
+        store.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fill(paintArea);
+
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(content);
+            if (antialiasing) {
+                renderer.setJava2DHints(new RenderingHints(RenderingHints.KEY_ANTIALIASING,
+                        RenderingHints.VALUE_ANTIALIAS_ON));
+            }
+            Map<Object, Object> hints = new HashMap<Object, Object>();
+            hints.put(StreamingRenderer.ADVANCED_PROJECTION_HANDLING_KEY, true);
+            renderer.setRendererHints(hints);
+            renderer.paint(graphics, paintArea, mapArea);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+}
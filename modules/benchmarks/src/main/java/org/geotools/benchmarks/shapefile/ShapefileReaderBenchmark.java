@@ -0,0 +1,113 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.benchmarks.shapefile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.benchmarks.BenchmarkData;
+import org.geotools.data.shapefile.files.ShpFiles;
+import org.geotools.data.shapefile.shp.ShapefileReader;
+import org.geotools.data.shapefile.shp.ShapefileReader.Record;
+import org.geotools.geometry.jts.LiteCoordinateSequenceFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Measures a full scan of a sample-data shapefile with the low level {@link ShapefileReader},
+ * parsing every geometry, with and without memory mapping
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ShapefileReaderBenchmark {
+
+    @Param({ "statepop", "roads", "streams" })
+    public String shapefile;
+
+    @Param({ "false", "true" })
+    public boolean memoryMapped;
+
+    @Param({ "jts", "lite" })
+    public String coordinates;
+
+    ShpFiles files;
+
+    GeometryFactory geometryFactory;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        File shp = BenchmarkData.copyShapefile(shapefile);
+        files = new ShpFiles(shp);
+        if ("lite".equals(coordinates)) {
+            geometryFactory = new GeometryFactory(new LiteCoordinateSequenceFactory());
+        } else {
+            geometryFactory = new GeometryFactory();
+        }
+    }
+
+    @Benchmark
+    public int readGeometries(Blackhole blackhole) throws IOException {
+        ShapefileReader reader = new ShapefileReader(files, false, memoryMapped,
+                geometryFactory);
+        int count = 0;
+        try {
+            while (reader.hasNext()) {
+                Record record = reader.nextRecord();
+                blackhole.consume(record.shape());
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int readEnvelopes(Blackhole blackhole) throws IOException {
+        ShapefileReader reader = new ShapefileReader(files, false, memoryMapped,
+                geometryFactory);
+        int count = 0;
+        try {
+            while (reader.hasNext()) {
+                Record record = reader.nextRecord();
+                blackhole.consume(record.minX + record.maxX + record.minY + record.maxY);
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+}
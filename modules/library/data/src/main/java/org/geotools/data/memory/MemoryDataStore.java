@@ -264,6 +264,11 @@ public class MemoryDataStore extends ContentDataStore {
 
         featuresMap = memory.get(typeName);
         featuresMap.put(feature.getID(), feature);
+
+        // bypasses the feature writers, no events are issued
+        if (queryCache != null) {
+            queryCache.invalidate(name(typeName));
+        }
     }
 
     /**
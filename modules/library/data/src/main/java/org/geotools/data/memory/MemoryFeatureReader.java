@@ -17,19 +17,23 @@
 package org.geotools.data.memory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import org.geotools.data.DataSourceException;
-import org.geotools.data.FeatureReader;
 import org.geotools.data.Query;
+import org.geotools.data.batch.FeatureBatch;
+import org.geotools.data.batch.FeatureBatchReader;
+import org.geotools.data.simple.SimpleFeatureReader;
 import org.geotools.data.store.ContentState;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.opengis.feature.IllegalAttributeException;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
-public class MemoryFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature>{
+public class MemoryFeatureReader implements SimpleFeatureReader, FeatureBatchReader {
     ContentState state;
     SimpleFeatureType featureType;
     Iterator<SimpleFeature> iterator;
@@ -59,6 +63,20 @@ public class MemoryFeatureReader implements FeatureReader<SimpleFeatureType, Sim
         }
     }
 
+    public FeatureBatch nextBatch(int maxSize) throws IOException {
+        if (iterator == null) {
+            throw new IOException("Feature Reader has been closed");
+        }
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>(maxSize);
+        while (features.size() < maxSize && iterator.hasNext()) {
+            features.add(SimpleFeatureBuilder.copy(iterator.next()));
+        }
+        return new FeatureBatch(getFeatureType(), features);
+    }
+
     public boolean hasNext(){
         return (iterator != null) && iterator.hasNext();
     }
@@ -159,6 +159,11 @@ public abstract class ContentDataStore implements DataStore {
      * factory used to create the datastore
      */
     protected DataStoreFactorySpi dataStoreFactory;
+
+    /**
+     * query result cache, disabled by default
+     */
+    protected volatile QueryResultCache queryCache;
     
     public ContentDataStore() {
         // get a concurrent map so that we can do reads in parallel with writes (writes vs writes
@@ -236,6 +241,22 @@ public abstract class ContentDataStore implements DataStore {
         this.geometryFactory = geometryFactory;
     }
 
+    /**
+     * The cache of query results used by the feature sources, or <code>null</code> if
+     * query results are not cached.
+     */
+    public QueryResultCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Sets the cache of query results used by the feature sources. Caching is disabled by
+     * default, pass <code>null</code> to disable it again.
+     */
+    public void setQueryCache(QueryResultCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
     /**
      * Returns the factory used to create the data store.
      * 
@@ -510,6 +531,9 @@ public abstract class ContentDataStore implements DataStore {
             entry.dispose();
         }
         entries.clear();
+        if (queryCache != null) {
+            queryCache.clear();
+        }
     }
     
     /**
@@ -47,6 +47,7 @@ import org.geotools.data.QueryCapabilities;
 import org.geotools.data.ReTypeFeatureReader;
 import org.geotools.data.ResourceInfo;
 import org.geotools.data.Transaction;
+import org.geotools.data.batch.BatchFilteringFeatureReader;
 import org.geotools.data.crs.ForceCoordinateSystemFeatureReader;
 import org.geotools.data.crs.ReprojectFeatureReader;
 import org.geotools.data.simple.SimpleFeatureSource;
@@ -480,6 +481,16 @@ public abstract class ContentFeatureSource implements SimpleFeatureSource {
     public final int getCount(Query query) throws IOException {
         query = joinQuery( query );
         query = resolvePropertyNames( query );
+
+        // results already cached?
+        QueryResultCache cache = getDataStore().getQueryCache();
+        Object cacheKey = getQueryCacheKey(cache, query);
+        if (cacheKey != null) {
+            int cached = cache.getCount(cacheKey);
+            if (cached >= 0) {
+                return cached;
+            }
+        }
         
         // calculate the count
         int count = getCountInternal( query );
@@ -598,7 +609,39 @@ public abstract class ContentFeatureSource implements SimpleFeatureSource {
     public final  FeatureReader<SimpleFeatureType, SimpleFeature> getReader(Query query) throws IOException {
         query = joinQuery( query );
         query = resolvePropertyNames(query);
-        
+
+        // check the query result cache
+        QueryResultCache cache = getDataStore().getQueryCache();
+        Object cacheKey = getQueryCacheKey(cache, query);
+        if (cacheKey != null) {
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader = cache.getReader(cacheKey);
+            if (reader == null) {
+                // read the generation before opening the reader, an invalidation happening
+                // while the reader is open has to prevent caching its results
+                Name typeName = getEntry().getName();
+                long generation = cache.getGeneration(typeName);
+                reader = cache.cache(cacheKey, typeName, generation, getUncachedReader(query));
+            }
+            return reader;
+        }
+
+        return getUncachedReader(query);
+    }
+
+    /**
+     * Returns the key of the query in the query result cache, or null if the query results
+     * cannot be cached
+     */
+    private Object getQueryCacheKey(QueryResultCache cache, Query query) {
+        // only auto commit results are cached, transactions see their own changes
+        if (cache == null || (transaction != null && transaction != Transaction.AUTO_COMMIT)) {
+            return null;
+        }
+        return cache.getKey(getEntry().getName(), DataUtilities.simplifyFilter(query));
+    }
+
+    private FeatureReader<SimpleFeatureType, SimpleFeature> getUncachedReader(Query query)
+            throws IOException {
         // see if we need to enable native sorting in order to support stable paging
         if (query.getStartIndex() != null
                 && (query.getSortBy() == null || query.getSortBy().length == 0)) {
@@ -646,7 +689,14 @@ public abstract class ContentFeatureSource implements SimpleFeatureSource {
         //filtering
         if ( !canFilter() ) {
             if (query.getFilter() != null && query.getFilter() != Filter.INCLUDE ) {
-                reader = new FilteringFeatureReader<SimpleFeatureType, SimpleFeature>( reader, query.getFilter() );
+                if (BatchFilteringFeatureReader.BATCH_FILTERING
+                        && BatchFilteringFeatureReader.canVectorize(query.getFilter(),
+                                reader.getFeatureType())) {
+                    reader = new BatchFilteringFeatureReader(DataUtilities.simple(reader),
+                            query.getFilter());
+                } else {
+                    reader = new FilteringFeatureReader<SimpleFeatureType, SimpleFeature>( reader, query.getFilter() );
+                }
             }    
         }
         
@@ -50,6 +50,9 @@ import org.opengis.filter.identity.FeatureId;
  *   <li>number of features ({@link #getCount()}
  *   <li>spatial extent ({@link #getBounds()}
  * </ul>
+ * The results of the queries, if the datastore is configured with a {@link QueryResultCache},
+ * are instead shared among all the states of the entry, they are invalidated whenever a feature
+ * event is fired, a transaction is committed, or the state is flushed.
  * Other types of state depend on the data format and must be handled by a subclass.
  * <p>
  * This class is a "data object" used to store values and is not thread safe. It is up to
@@ -370,6 +373,7 @@ public class ContentState {
      * @param event
      */
     public final void fireFeatureEvent(FeatureEvent event) {
+        invalidateQueryCache();
         if (this.tx == Transaction.AUTO_COMMIT) {
             this.entry.notifiyFeatureEvent(this, event);
         } else {
@@ -398,6 +402,9 @@ public class ContentState {
      * to our
      */
     public final void fireBatchFeatureEvent(boolean isCommit) {
+        if (isCommit) {
+            invalidateQueryCache();
+        }
         if (batchFeatureEvent == null) {
             return;
         }
@@ -434,6 +441,18 @@ public class ContentState {
         featureType = null;
         count = -1;
         bounds = null;
+        invalidateQueryCache();
+    }
+
+    /**
+     * Removes the cached query results of the entry, if the datastore has a
+     * {@link QueryResultCache}.
+     */
+    protected void invalidateQueryCache() {
+        QueryResultCache cache = entry.getDataStore().getQueryCache();
+        if (cache != null) {
+            cache.invalidate(entry.getName());
+        }
     }
 
     /**
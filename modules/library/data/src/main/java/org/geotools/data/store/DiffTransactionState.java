@@ -124,6 +124,8 @@ public class DiffTransactionState implements Transaction.State {
      * @see org.geotools.data.Transaction.State#commit()
      */
     public synchronized void commit() throws IOException {
+        // stores handling transactions natively do not use the diff, and might not issue events
+        state.invalidateQueryCache();
         if (diff.isEmpty()) {
             return; // nothing to do
         }
@@ -0,0 +1,313 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geotools.data.CollectionFeatureReader;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.factory.Hints;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.Name;
+
+/**
+ * A memory bounded cache of query results, used by {@link ContentFeatureSource} to avoid hitting
+ * slow backends with the same query over and over.
+ * <p>
+ * The cache is opt-in, see {@link ContentDataStore#setQueryCache(QueryResultCache)}. Only reads
+ * in {@link org.geotools.data.Transaction#AUTO_COMMIT} are cached, the results are keyed by the
+ * normalized query, and are invalidated by the {@link ContentState} whenever a feature event is
+ * issued or a transaction is committed for the type. Modifications made to the backend without
+ * going through the data store cannot be detected, {@link #invalidate(Name)} should be called in
+ * that case.
+ * <p>
+ * The memory used is bounded by the total number of cached features, least recently used results
+ * are evicted first. Results larger than the cache are never cached. Cached features are copied
+ * both when stored and when returned, callers are free to modify them.
+ */
+public class QueryResultCache {
+
+    private final int maxFeatures;
+
+    private final Map<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+
+    /**
+     * Incremented every time a type is invalidated, allows to spot results computed while the
+     * type was being modified
+     */
+    private final Map<Name, Long> generations = new HashMap<Name, Long>();
+
+    private int features;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a new cache holding at most the specified number of features
+     */
+    public QueryResultCache(int maxFeatures) {
+        if (maxFeatures <= 0) {
+            throw new IllegalArgumentException("The max number of features must be positive");
+        }
+        this.maxFeatures = maxFeatures;
+    }
+
+    /**
+     * Returns the key for the specified query, or null if the results of the query should not be
+     * cached. The query is expected to be already normalized by the caller.
+     */
+    Object getKey(Name typeName, Query query) {
+        Hints hints = query.getHints();
+        if (hints != null && hints.containsKey(Hints.SCREENMAP)) {
+            // the results depend on the screenmap state
+            return null;
+        }
+        return Arrays.asList(typeName, query.getFilter(),
+                query.getPropertyNames() != null ? Arrays.asList(query.getPropertyNames()) : null,
+                query.getMaxFeatures(), query.getStartIndex(),
+                query.getSortBy() != null ? Arrays.asList(query.getSortBy()) : null,
+                query.getCoordinateSystem(), query.getCoordinateSystemReproject(),
+                query.getVersion(), hints);
+    }
+
+    /**
+     * Returns a reader over the cached results, or null if the results are not in the cache
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> getReader(Object key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        List<SimpleFeature> copies = new ArrayList<SimpleFeature>(entry.features.size());
+        for (SimpleFeature feature : entry.features) {
+            copies.add(SimpleFeatureBuilder.deep(feature));
+        }
+        return new CollectionFeatureReader(copies, entry.featureType);
+    }
+
+    /**
+     * Returns the number of features matched by the query, or -1 if the results are not in the
+     * cache
+     */
+    int getCount(Object key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            return entry != null ? entry.features.size() : -1;
+        }
+    }
+
+    /**
+     * Wraps the reader so that the results are cached once it has been fully read and closed,
+     * unless the type has been invalidated in the meantime
+     * 
+     * @param generation The generation of the type, as returned by {@link #getGeneration(Name)}
+     *        before the reader was opened
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> cache(Object key, Name typeName,
+            long generation, FeatureReader<SimpleFeatureType, SimpleFeature> reader) {
+        return new CachingFeatureReader(key, typeName, generation, reader);
+    }
+
+    synchronized long getGeneration(Name typeName) {
+        Long generation = generations.get(typeName);
+        return generation != null ? generation : 0;
+    }
+
+    synchronized boolean put(Object key, Name typeName, long generation,
+            SimpleFeatureType featureType, List<SimpleFeature> results) {
+        if (results.size() > maxFeatures || generation != getGeneration(typeName)) {
+            return false;
+        }
+        Entry previous = entries.put(key, new Entry(typeName, featureType, results));
+        if (previous != null) {
+            features -= previous.features.size();
+        }
+        features += results.size();
+        Iterator<Entry> it = entries.values().iterator();
+        while (features > maxFeatures && it.hasNext()) {
+            features -= it.next().features.size();
+            it.remove();
+        }
+        return true;
+    }
+
+    /**
+     * Removes all the cached results of the specified type
+     */
+    public synchronized void invalidate(Name typeName) {
+        generations.put(typeName, getGeneration(typeName) + 1);
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.typeName.equals(typeName)) {
+                features -= entry.features.size();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached results
+     */
+    public synchronized void clear() {
+        Set<Name> typeNames = new HashSet<Name>(generations.keySet());
+        for (Entry entry : entries.values()) {
+            typeNames.add(entry.typeName);
+        }
+        for (Name typeName : typeNames) {
+            generations.put(typeName, getGeneration(typeName) + 1);
+        }
+        entries.clear();
+        features = 0;
+    }
+
+    /**
+     * The max number of features held by the cache
+     */
+    public int getMaxFeatures() {
+        return maxFeatures;
+    }
+
+    /**
+     * The number of cached query results
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * The number of features currently held by the cache
+     */
+    public synchronized int getFeatureCount() {
+        return features;
+    }
+
+    /**
+     * Number of queries answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of cacheable queries that had to be run against the store
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    static final class Entry {
+        final Name typeName;
+
+        final SimpleFeatureType featureType;
+
+        final List<SimpleFeature> features;
+
+        Entry(Name typeName, SimpleFeatureType featureType, List<SimpleFeature> features) {
+            this.typeName = typeName;
+            this.featureType = featureType;
+            this.features = features;
+        }
+    }
+
+    /**
+     * Collects copies of the features as they are read, and caches them on close if the reader
+     * was exhausted
+     */
+    class CachingFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+        final Object key;
+
+        final Name typeName;
+
+        final long generation;
+
+        final FeatureReader<SimpleFeatureType, SimpleFeature> delegate;
+
+        List<SimpleFeature> results = new ArrayList<SimpleFeature>();
+
+        boolean exhausted;
+
+        CachingFeatureReader(Object key, Name typeName, long generation,
+                FeatureReader<SimpleFeatureType, SimpleFeature> delegate) {
+            this.key = key;
+            this.typeName = typeName;
+            this.generation = generation;
+            this.delegate = delegate;
+        }
+
+        public SimpleFeatureType getFeatureType() {
+            return delegate.getFeatureType();
+        }
+
+        public SimpleFeature next() throws IOException, IllegalArgumentException,
+                NoSuchElementException {
+            SimpleFeature feature;
+            try {
+                feature = delegate.next();
+            } catch (IOException | RuntimeException e) {
+                results = null;
+                throw e;
+            }
+            if (results != null) {
+                if (results.size() < maxFeatures) {
+                    results.add(SimpleFeatureBuilder.deep(feature));
+                } else {
+                    // too large to be cached, stop collecting
+                    results = null;
+                }
+            }
+            return feature;
+        }
+
+        public boolean hasNext() throws IOException {
+            boolean hasNext = delegate.hasNext();
+            if (!hasNext) {
+                exhausted = true;
+            }
+            return hasNext;
+        }
+
+        public void close() throws IOException {
+            delegate.close();
+            if (exhausted && results != null) {
+                put(key, typeName, generation, delegate.getFeatureType(), results);
+            }
+            results = null;
+        }
+    }
+}
@@ -40,6 +40,8 @@ import org.geotools.data.FilteringFeatureReader;
 import org.geotools.data.InProcessLockingManager;
 import org.geotools.data.Query;
 import org.geotools.data.Transaction;
+import org.geotools.data.batch.FeatureBatch;
+import org.geotools.data.batch.FeatureBatchReader;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureLocking;
@@ -287,6 +289,24 @@ public class MemoryDataStoreTest extends DataTestCase {
         assertEquals(false, reader.hasNext());
     }
 
+    public void testGetFeatureReaderBatches() throws IOException {
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = data.getFeatureSource("road")
+                .getReader();
+        assertTrue(reader instanceof FeatureBatchReader);
+        int count = 0;
+        FeatureBatch batch;
+        while ((batch = ((FeatureBatchReader) reader).nextBatch(2)) != null) {
+            assertTrue(batch.size() <= 2);
+            for (int i = 0; i < batch.size(); i++) {
+                assertTrue(contains(roadFeatures, batch.getFeature(i)));
+                count++;
+            }
+        }
+        assertEquals(roadFeatures.length, count);
+        assertFalse(reader.hasNext());
+        reader.close();
+    }
+
     public void testGetFeatureReaderMutability() throws IOException {
          FeatureReader<SimpleFeatureType, SimpleFeature> reader = data.getFeatureSource("road").getReader();
         SimpleFeature feature;
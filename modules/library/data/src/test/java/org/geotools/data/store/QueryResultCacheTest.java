@@ -0,0 +1,192 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.DefaultTransaction;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class QueryResultCacheTest {
+
+    static final FilterFactory FF = CommonFactoryFinder.getFilterFactory(null);
+
+    SimpleFeatureType type;
+
+    MemoryDataStore store;
+
+    QueryResultCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        type = DataUtilities.createType("points", "geom:Point,value:Integer");
+        store = new MemoryDataStore();
+        for (int i = 0; i < 3; i++) {
+            store.addFeature(buildFeature(i));
+        }
+        cache = new QueryResultCache(10);
+        store.setQueryCache(cache);
+    }
+
+    SimpleFeature buildFeature(int value) {
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        fb.add(new GeometryFactory().createPoint(new Coordinate(value, value)));
+        fb.add(value);
+        return fb.buildFeature("points." + value);
+    }
+
+    SimpleFeatureStore getStore(Transaction transaction) throws Exception {
+        SimpleFeatureStore fs = (SimpleFeatureStore) store.getFeatureSource("points");
+        fs.setTransaction(transaction);
+        return fs;
+    }
+
+    List<SimpleFeature> read(Filter filter) throws Exception {
+        return DataUtilities.list(getStore(Transaction.AUTO_COMMIT).getFeatures(filter));
+    }
+
+    @Test
+    public void testCacheHit() throws Exception {
+        Filter filter = FF.greater(FF.property("value"), FF.literal(0));
+        List<SimpleFeature> first = read(filter);
+        assertEquals(2, first.size());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getSize());
+        assertEquals(2, cache.getFeatureCount());
+
+        // changes to the returned features do not affect the cache
+        first.get(0).setAttribute("value", 100);
+        List<SimpleFeature> second = read(filter);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, second.size());
+        assertFalse(Integer.valueOf(100).equals(second.get(0).getAttribute("value")));
+
+        // the count is answered from the cache too
+        assertEquals(2, getStore(Transaction.AUTO_COMMIT).getCount(new Query("points", filter)));
+
+        // an equivalent filter is normalized to the same key
+        read(FF.and(filter, Filter.INCLUDE));
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testInvalidateOnChange() throws Exception {
+        assertEquals(3, read(Filter.INCLUDE).size());
+        assertEquals(1, cache.getSize());
+
+        getStore(Transaction.AUTO_COMMIT).addFeatures(
+                DataUtilities.collection(buildFeature(10)));
+        assertEquals(0, cache.getSize());
+        assertEquals(4, read(Filter.INCLUDE).size());
+
+        // direct modifications of the memory store are accounted for too
+        store.addFeature(buildFeature(11));
+        assertEquals(5, read(Filter.INCLUDE).size());
+    }
+
+    @Test
+    public void testInvalidateWhileReading() throws Exception {
+        SimpleFeatureStore fs = getStore(Transaction.AUTO_COMMIT);
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = ((ContentFeatureSource) fs)
+                .getReader(Query.ALL);
+        // the type is invalidated after the reader got opened, but before it's drained
+        cache.invalidate(fs.getName());
+        try {
+            int count = 0;
+            while (reader.hasNext()) {
+                reader.next();
+                count++;
+            }
+            assertEquals(3, count);
+        } finally {
+            reader.close();
+        }
+        // the results read might be stale, they must not be cached
+        assertEquals(0, cache.getSize());
+        read(Filter.INCLUDE);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testTransaction() throws Exception {
+        assertEquals(3, read(Filter.INCLUDE).size());
+
+        DefaultTransaction tx = new DefaultTransaction();
+        try {
+            SimpleFeatureStore fs = getStore(tx);
+            fs.addFeatures(DataUtilities.collection(buildFeature(10)));
+            // the transaction sees its changes, and does not use the cache
+            assertEquals(4, DataUtilities.list(fs.getFeatures()).size());
+            assertEquals(0, cache.getHits());
+
+            // auto commit does not see them until commit
+            assertEquals(3, read(Filter.INCLUDE).size());
+            assertEquals(1, cache.getHits());
+
+            tx.commit();
+            assertEquals(0, cache.getSize());
+            assertEquals(4, read(Filter.INCLUDE).size());
+        } finally {
+            tx.close();
+        }
+    }
+
+    @Test
+    public void testMemoryBound() throws Exception {
+        cache = new QueryResultCache(2);
+        store.setQueryCache(cache);
+
+        // too large to be cached
+        read(Filter.INCLUDE);
+        assertEquals(0, cache.getSize());
+
+        Filter greater = FF.greater(FF.property("value"), FF.literal(0));
+        Filter less = FF.less(FF.property("value"), FF.literal(2));
+        read(greater);
+        assertEquals(1, cache.getSize());
+        read(less);
+        assertEquals(1, cache.getSize());
+        assertEquals(2, cache.getFeatureCount());
+
+        // the least recently used got evicted
+        read(less);
+        assertEquals(1, cache.getHits());
+        read(greater);
+        assertEquals(1, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+}
@@ -20,8 +20,10 @@ import java.io.IOException;
 import java.util.NoSuchElementException;
 
 import org.geotools.feature.IllegalAttributeException;
+import org.geotools.filter.compiler.FilterCompiler;
 import org.geotools.filter.visitor.BindingFilterVisitor;
 import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.FeatureType;
 import org.opengis.filter.Filter;
 
@@ -64,9 +66,13 @@ public class FilteringFeatureReader<T extends FeatureType, F extends Feature> im
      */
     public FilteringFeatureReader(FeatureReader<T, F> featureReader, Filter filter) {
         this.featureReader = featureReader;
-        this.filter = (Filter) filter
-                .accept(new BindingFilterVisitor(featureReader.getFeatureType()),
-                null);
+        T schema = featureReader.getFeatureType();
+        Filter bound = (Filter) filter.accept(new BindingFilterVisitor(schema), null);
+        if (schema instanceof SimpleFeatureType) {
+            // all features share the same type, evaluate them with a specialized filter
+            bound = FilterCompiler.compile(bound, (SimpleFeatureType) schema);
+        }
+        this.filter = bound;
         next = null;
     }
 
@@ -0,0 +1,373 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.batch;
+
+import java.util.BitSet;
+import java.util.List;
+
+import org.geotools.data.batch.FeatureBatch.Column;
+import org.geotools.data.batch.FeatureBatch.DoubleColumn;
+import org.geotools.data.batch.FeatureBatch.GeometryColumn;
+import org.geotools.data.batch.FeatureBatch.LongColumn;
+import org.geotools.filter.compiler.BBOXPredicate;
+import org.geotools.filter.compiler.FilterCompiler;
+import org.geotools.filter.compiler.NumericPredicate;
+import org.geotools.filter.spatial.BBOXImpl;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.And;
+import org.opengis.filter.ExcludeFilter;
+import org.opengis.filter.Filter;
+import org.opengis.filter.IncludeFilter;
+import org.opengis.filter.Not;
+import org.opengis.filter.Or;
+
+/**
+ * Evaluates a filter against a whole {@link FeatureBatch} at once.
+ * <p>
+ * The filter is analyzed once against the schema. Logic filters combine the rows selected by
+ * their children, and comparisons between a numeric attribute and a literal, between filters
+ * on numeric attributes and BBOX filters on geometries are evaluated with loops over the
+ * primitive arrays of the batch columns. Everything else, or any case in which the outcome might
+ * differ from the one of {@link Filter#evaluate(Object)}, falls back on evaluating the filter
+ * feature by feature, so the results are always the same as the non batched evaluation.
+ * <p>
+ * Instances are thread safe and can be reused across batches.
+ */
+public class BatchFilter {
+
+    Filter filter;
+
+    SimpleFeatureType schema;
+
+    Node root;
+
+    public BatchFilter(Filter filter, SimpleFeatureType schema) {
+        this.filter = filter;
+        this.schema = schema;
+        this.root = compile(filter);
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Returns true if at least part of the filter is evaluated on the batch columns, false if it
+     * is going to be evaluated one feature at a time
+     */
+    public boolean isVectorized() {
+        return root.isVectorized();
+    }
+
+    /**
+     * Returns the rows of the batch matching the filter
+     */
+    public BitSet evaluate(FeatureBatch batch) {
+        BitSet rows = new BitSet(batch.size());
+        rows.set(0, batch.size());
+        return root.evaluate(batch, rows);
+    }
+
+    Node compile(Filter filter) {
+        if (filter instanceof IncludeFilter) {
+            return new IncludeNode();
+        } else if (filter instanceof ExcludeFilter) {
+            return new ExcludeNode();
+        } else if (filter instanceof And) {
+            return new AndNode(compile(((And) filter).getChildren()));
+        } else if (filter instanceof Or) {
+            return new OrNode(compile(((Or) filter).getChildren()));
+        } else if (filter instanceof Not) {
+            return new NotNode(compile(((Not) filter).getFilter()));
+        }
+
+        Node node = null;
+        if (filter.getClass() == BBOXImpl.class) {
+            BBOXPredicate predicate = BBOXPredicate.create((BBOXImpl) filter, schema);
+            if (predicate != null) {
+                node = new BBOXNode(filter, predicate);
+            }
+        } else {
+            NumericPredicate predicate = NumericPredicate.create(filter, schema);
+            if (predicate != null) {
+                node = new NumericNode(filter, predicate);
+            }
+        }
+        if (node == null) {
+            // the features are still evaluated one by one, but without the interpreter overhead
+            node = new FallbackNode(FilterCompiler.compile(filter, schema));
+        }
+        return node;
+    }
+
+    Node[] compile(List<Filter> filters) {
+        Node[] nodes = new Node[filters.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = compile(filters.get(i));
+        }
+        return nodes;
+    }
+
+    static abstract class Node {
+
+        /**
+         * Returns the subset of the given rows matching the filter. The rows set can be modified
+         */
+        abstract BitSet evaluate(FeatureBatch batch, BitSet rows);
+
+        boolean isVectorized() {
+            return true;
+        }
+    }
+
+    static class IncludeNode extends Node {
+
+        @Override
+        BitSet evaluate(FeatureBatch batch, BitSet rows) {
+            return rows;
+        }
+    }
+
+    static class ExcludeNode extends Node {
+
+        @Override
+        BitSet evaluate(FeatureBatch batch, BitSet rows) {
+            return new BitSet();
+        }
+    }
+
+    static class AndNode extends Node {
+
+        Node[] children;
+
+        AndNode(Node[] children) {
+            this.children = children;
+        }
+
+        @Override
+        BitSet evaluate(FeatureBatch batch, BitSet rows) {
+            // each child only looks at the rows matched so far
+            for (int i = 0; i < children.length && !rows.isEmpty(); i++) {
+                rows = children[i].evaluate(batch, rows);
+            }
+            return rows;
+        }
+
+        @Override
+        boolean isVectorized() {
+            for (Node child : children) {
+                if (child.isVectorized()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static class OrNode extends AndNode {
+
+        OrNode(Node[] children) {
+            super(children);
+        }
+
+        @Override
+        BitSet evaluate(FeatureBatch batch, BitSet rows) {
+            // each child only looks at the rows not matched so far
+            BitSet result = new BitSet();
+            for (int i = 0; i < children.length && !rows.isEmpty(); i++) {
+                BitSet matched = children[i].evaluate(batch, (BitSet) rows.clone());
+                result.or(matched);
+                rows.andNot(matched);
+            }
+            return result;
+        }
+    }
+
+    static class NotNode extends Node {
+
+        Node child;
+
+        NotNode(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        BitSet evaluate(FeatureBatch batch, BitSet rows) {
+            BitSet matched = child.evaluate(batch, (BitSet) rows.clone());
+            rows.andNot(matched);
+            return rows;
+        }
+
+        @Override
+        boolean isVectorized() {
+            return child.isVectorized();
+        }
+    }
+
+    /**
+     * Evaluates the filter one feature at a time
+     */
+    static class FallbackNode extends Node {
+
+        Filter filter;
+
+        FallbackNode(Filter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        BitSet evaluate(FeatureBatch batch, BitSet rows) {
+            for (int i = rows.nextSetBit(0); i >= 0; i = rows.nextSetBit(i + 1)) {
+                if (!filter.evaluate(batch.features[i])) {
+                    rows.clear(i);
+                }
+            }
+            return rows;
+        }
+
+        @Override
+        boolean isVectorized() {
+            return false;
+        }
+    }
+
+    /**
+     * Base class for the nodes working on a single column, falls back on the feature by feature
+     * evaluation if the batch could not build a column of the expected type
+     */
+    static abstract class ColumnNode extends FallbackNode {
+
+        int index;
+
+        ColumnNode(Filter filter, int index) {
+            super(filter);
+            this.index = index;
+        }
+
+        @Override
+        BitSet evaluate(FeatureBatch batch, BitSet rows) {
+            Column column = batch.getColumn(index);
+            BitSet result = null;
+            if (column instanceof LongColumn) {
+                result = evaluate((LongColumn) column, rows);
+            } else if (column instanceof DoubleColumn) {
+                result = evaluate((DoubleColumn) column, rows);
+            } else if (column instanceof GeometryColumn) {
+                result = evaluate(batch, (GeometryColumn) column, rows);
+            }
+            if (result == null) {
+                result = super.evaluate(batch, rows);
+            }
+            return result;
+        }
+
+        /**
+         * Evaluates the filter on a column of integral values, returns null if not supported
+         */
+        BitSet evaluate(LongColumn column, BitSet rows) {
+            return null;
+        }
+
+        /**
+         * Evaluates the filter on a column of floating point values, returns null if not
+         * supported
+         */
+        BitSet evaluate(DoubleColumn column, BitSet rows) {
+            return null;
+        }
+
+        /**
+         * Evaluates the filter on a column of geometries, returns null if not supported
+         */
+        BitSet evaluate(FeatureBatch batch, GeometryColumn column, BitSet rows) {
+            return null;
+        }
+
+        @Override
+        boolean isVectorized() {
+            return true;
+        }
+    }
+
+    /**
+     * Runs a {@link NumericPredicate} over the primitive values of the column
+     */
+    static class NumericNode extends ColumnNode {
+
+        NumericPredicate predicate;
+
+        NumericNode(Filter filter, NumericPredicate predicate) {
+            super(filter, predicate.getAttributeIndex());
+            this.predicate = predicate;
+        }
+
+        @Override
+        BitSet evaluate(LongColumn column, BitSet rows) {
+            long[] values = column.values;
+            BitSet nulls = column.nulls;
+            boolean matchesNull = predicate.matchesNull();
+            for (int i = rows.nextSetBit(0); i >= 0; i = rows.nextSetBit(i + 1)) {
+                if (nulls.get(i) ? !matchesNull : !predicate.matches(values[i])) {
+                    rows.clear(i);
+                }
+            }
+            return rows;
+        }
+
+        @Override
+        BitSet evaluate(DoubleColumn column, BitSet rows) {
+            double[] values = column.values;
+            BitSet nulls = column.nulls;
+            boolean matchesNull = predicate.matchesNull();
+            for (int i = rows.nextSetBit(0); i >= 0; i = rows.nextSetBit(i + 1)) {
+                if (nulls.get(i) ? !matchesNull : !predicate.matches(values[i])) {
+                    rows.clear(i);
+                }
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Uses the packed envelopes to decide the features that are fully inside the box, or outside
+     * of it, the others are checked against the filter
+     */
+    static class BBOXNode extends ColumnNode {
+
+        BBOXPredicate predicate;
+
+        BBOXNode(Filter filter, BBOXPredicate predicate) {
+            super(filter, predicate.getAttributeIndex());
+            this.predicate = predicate;
+        }
+
+        @Override
+        BitSet evaluate(FeatureBatch batch, GeometryColumn column, BitSet rows) {
+            double[] envelopes = column.envelopes;
+            for (int i = rows.nextSetBit(0); i >= 0; i = rows.nextSetBit(i + 1)) {
+                int j = i * 4;
+                int position = predicate.classify(envelopes[j], envelopes[j + 1],
+                        envelopes[j + 2], envelopes[j + 3]);
+                if (position == BBOXPredicate.OUTSIDE || (position == BBOXPredicate.UNDECIDED
+                        && !filter.evaluate(batch.features[i]))) {
+                    rows.clear(i);
+                }
+            }
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.batch;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.simple.SimpleFeatureReader;
+import org.geotools.filter.visitor.BindingFilterVisitor;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+/**
+ * Filters the contents of a reader a {@link FeatureBatch} at a time using a {@link BatchFilter},
+ * as an alternative to {@link org.geotools.data.FilteringFeatureReader}.
+ * <p>
+ * The delegate features are read ahead, one batch at a time, so the delegate must not reuse the
+ * feature objects it returns.
+ */
+public class BatchFilteringFeatureReader implements SimpleFeatureReader, FeatureBatchReader {
+
+    /**
+     * When true, data stores not filtering natively use this reader instead of a
+     * {@link org.geotools.data.FilteringFeatureReader}, for the filters that can be at least
+     * partially evaluated on the batch columns. Off by default, enable it with the
+     * "org.geotools.data.batchFiltering" system property, which is read once at class load time.
+     */
+    public static final boolean BATCH_FILTERING = Boolean
+            .getBoolean("org.geotools.data.batchFiltering");
+
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    SimpleFeatureReader delegate;
+
+    BatchFilter filter;
+
+    int batchSize;
+
+    FeatureBatch batch;
+
+    BitSet matches;
+
+    int next = -1;
+
+    public BatchFilteringFeatureReader(SimpleFeatureReader delegate, Filter filter) {
+        this(delegate, filter, DEFAULT_BATCH_SIZE);
+    }
+
+    public BatchFilteringFeatureReader(SimpleFeatureReader delegate, Filter filter, int batchSize) {
+        this.delegate = delegate;
+        SimpleFeatureType schema = delegate.getFeatureType();
+        Filter bound = (Filter) filter.accept(new BindingFilterVisitor(schema), null);
+        this.filter = new BatchFilter(bound, schema);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns true if using this reader is worthwhile for the given filter, that is, if at least
+     * part of the filter can be evaluated on the batch columns
+     */
+    public static boolean canVectorize(Filter filter, SimpleFeatureType schema) {
+        Filter bound = (Filter) filter.accept(new BindingFilterVisitor(schema), null);
+        return new BatchFilter(bound, schema).isVectorized();
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return delegate.getFeatureType();
+    }
+
+    public boolean hasNext() throws IOException {
+        while (next < 0) {
+            if (!readBatch(batchSize)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features");
+        }
+        SimpleFeature feature = batch.getFeature(next);
+        next = matches.nextSetBit(next + 1);
+        return feature;
+    }
+
+    public FeatureBatch nextBatch(int maxSize) throws IOException {
+        while (next < 0) {
+            if (!readBatch(maxSize)) {
+                return null;
+            }
+        }
+        // return the matches not consumed yet, up to the max size
+        BitSet selected = new BitSet();
+        for (int count = 0; next >= 0 && count < maxSize; count++) {
+            selected.set(next);
+            next = matches.nextSetBit(next + 1);
+        }
+        return batch.select(selected);
+    }
+
+    boolean readBatch(int maxSize) throws IOException {
+        batch = FeatureBatch.read(delegate, maxSize);
+        if (batch == null) {
+            matches = null;
+            return false;
+        }
+        matches = filter.evaluate(batch);
+        next = matches.nextSetBit(0);
+        return true;
+    }
+
+    public void close() throws IOException {
+        batch = null;
+        matches = null;
+        delegate.close();
+    }
+}
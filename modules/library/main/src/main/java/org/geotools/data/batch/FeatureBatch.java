@@ -0,0 +1,307 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.batch;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
+import org.geotools.data.simple.SimpleFeatureReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A block of features sharing the same schema, exposing each attribute as a column backed by a
+ * primitive array, so that filters can be evaluated with tight loops over a whole batch (see
+ * {@link BatchFilter}) instead of one feature at a time.
+ * <p>
+ * Columns are built lazily, only the attributes actually used get packed. Integral attributes
+ * become {@link LongColumn}, floating point ones {@link DoubleColumn}, geometries a
+ * {@link GeometryColumn} with the envelopes packed in a single array, everything else an
+ * {@link ObjectColumn}. A numeric column is built only if all the values are exactly of the type
+ * declared in the schema.
+ */
+public class FeatureBatch {
+
+    /**
+     * Base class for the columns, tracks the null values
+     */
+    public static abstract class Column {
+
+        BitSet nulls = new BitSet();
+
+        public boolean isNull(int row) {
+            return nulls.get(row);
+        }
+    }
+
+    /**
+     * Column of {@link Byte}, {@link Short}, {@link Integer} or {@link Long} values
+     */
+    public static final class LongColumn extends Column {
+
+        final long[] values;
+
+        LongColumn(int size) {
+            values = new long[size];
+        }
+
+        public long[] getValues() {
+            return values;
+        }
+    }
+
+    /**
+     * Column of {@link Float} or {@link Double} values
+     */
+    public static final class DoubleColumn extends Column {
+
+        final double[] values;
+
+        DoubleColumn(int size) {
+            values = new double[size];
+        }
+
+        public double[] getValues() {
+            return values;
+        }
+    }
+
+    /**
+     * Column of geometries, along with their envelopes packed as minx, miny, maxx, maxy. The
+     * envelope of null or empty geometries is made of NaNs
+     */
+    public static final class GeometryColumn extends Column {
+
+        final Geometry[] geometries;
+
+        final double[] envelopes;
+
+        GeometryColumn(int size) {
+            geometries = new Geometry[size];
+            envelopes = new double[size * 4];
+        }
+
+        public Geometry[] getGeometries() {
+            return geometries;
+        }
+
+        public double[] getEnvelopes() {
+            return envelopes;
+        }
+    }
+
+    /**
+     * Column of generic values
+     */
+    public static final class ObjectColumn extends Column {
+
+        final Object[] values;
+
+        ObjectColumn(int size) {
+            values = new Object[size];
+        }
+
+        public Object[] getValues() {
+            return values;
+        }
+    }
+
+    SimpleFeatureType schema;
+
+    SimpleFeature[] features;
+
+    int size;
+
+    Column[] columns;
+
+    /**
+     * Builds a batch out of the specified features, which are expected to share the same schema
+     */
+    public FeatureBatch(SimpleFeatureType schema, List<SimpleFeature> features) {
+        this(schema, features.toArray(new SimpleFeature[features.size()]), features.size());
+    }
+
+    FeatureBatch(SimpleFeatureType schema, SimpleFeature[] features, int size) {
+        this.schema = schema;
+        this.features = features;
+        this.size = size;
+        this.columns = new Column[schema.getAttributeCount()];
+    }
+
+    /**
+     * Reads the next batch of at most <code>maxSize</code> features from the reader, delegating
+     * to it if it's a {@link FeatureBatchReader}. Returns null if the reader has no more features
+     */
+    public static FeatureBatch read(SimpleFeatureReader reader, int maxSize) throws IOException {
+        if (reader instanceof FeatureBatchReader) {
+            return ((FeatureBatchReader) reader).nextBatch(maxSize);
+        }
+        if (!reader.hasNext()) {
+            return null;
+        }
+        SimpleFeature[] features = new SimpleFeature[maxSize];
+        int size = 0;
+        while (size < maxSize && reader.hasNext()) {
+            features[size++] = reader.next();
+        }
+        return new FeatureBatch(reader.getFeatureType(), features, size);
+    }
+
+    public SimpleFeatureType getSchema() {
+        return schema;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public SimpleFeature getFeature(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + size);
+        }
+        return features[row];
+    }
+
+    /**
+     * Returns a batch made of the selected rows only
+     */
+    public FeatureBatch select(BitSet rows) {
+        SimpleFeature[] selected = new SimpleFeature[rows.cardinality()];
+        int count = 0;
+        for (int i = rows.nextSetBit(0); i >= 0 && i < size; i = rows.nextSetBit(i + 1)) {
+            selected[count++] = features[i];
+        }
+        return new FeatureBatch(schema, selected, count);
+    }
+
+    /**
+     * Returns the column of the specified attribute, or null if the schema does not have it
+     */
+    public Column getColumn(String name) {
+        int index = schema.indexOf(name);
+        if (index < 0) {
+            return null;
+        }
+        return getColumn(index);
+    }
+
+    /**
+     * Returns the column of the specified attribute, building it on the first call
+     */
+    public Column getColumn(int index) {
+        Column column = columns[index];
+        if (column == null) {
+            column = buildColumn(index);
+            columns[index] = column;
+        }
+        return column;
+    }
+
+    Column buildColumn(int index) {
+        AttributeDescriptor descriptor = schema.getDescriptor(index);
+        Class<?> binding = descriptor.getType().getBinding();
+        Column column = null;
+        if (binding == Byte.class || binding == Short.class || binding == Integer.class
+                || binding == Long.class) {
+            column = buildLongColumn(index, binding);
+        } else if (binding == Float.class || binding == Double.class) {
+            column = buildDoubleColumn(index, binding);
+        } else if (descriptor instanceof GeometryDescriptor) {
+            column = buildGeometryColumn(index);
+        }
+        if (column == null) {
+            column = buildObjectColumn(index);
+        }
+        return column;
+    }
+
+    LongColumn buildLongColumn(int index, Class<?> binding) {
+        LongColumn column = new LongColumn(size);
+        long[] values = column.values;
+        for (int i = 0; i < size; i++) {
+            Object value = features[i].getAttribute(index);
+            if (value == null) {
+                column.nulls.set(i);
+            } else if (value.getClass() == binding) {
+                values[i] = ((Number) value).longValue();
+            } else {
+                return null;
+            }
+        }
+        return column;
+    }
+
+    DoubleColumn buildDoubleColumn(int index, Class<?> binding) {
+        DoubleColumn column = new DoubleColumn(size);
+        double[] values = column.values;
+        for (int i = 0; i < size; i++) {
+            Object value = features[i].getAttribute(index);
+            if (value == null) {
+                column.nulls.set(i);
+            } else if (value.getClass() == binding) {
+                values[i] = ((Number) value).doubleValue();
+            } else {
+                return null;
+            }
+        }
+        return column;
+    }
+
+    GeometryColumn buildGeometryColumn(int index) {
+        GeometryColumn column = new GeometryColumn(size);
+        double[] envelopes = column.envelopes;
+        for (int i = 0, j = 0; i < size; i++, j += 4) {
+            Object value = features[i].getAttribute(index);
+            if (value != null && !(value instanceof Geometry)) {
+                return null;
+            }
+            Geometry geometry = (Geometry) value;
+            column.geometries[i] = geometry;
+            if (geometry == null) {
+                column.nulls.set(i);
+            }
+            if (geometry == null || geometry.isEmpty()) {
+                envelopes[j] = envelopes[j + 1] = envelopes[j + 2] = envelopes[j + 3] = Double.NaN;
+            } else {
+                Envelope envelope = geometry.getEnvelopeInternal();
+                envelopes[j] = envelope.getMinX();
+                envelopes[j + 1] = envelope.getMinY();
+                envelopes[j + 2] = envelope.getMaxX();
+                envelopes[j + 3] = envelope.getMaxY();
+            }
+        }
+        return column;
+    }
+
+    ObjectColumn buildObjectColumn(int index) {
+        ObjectColumn column = new ObjectColumn(size);
+        for (int i = 0; i < size; i++) {
+            Object value = features[i].getAttribute(index);
+            column.values[i] = value;
+            if (value == null) {
+                column.nulls.set(i);
+            }
+        }
+        return column;
+    }
+}
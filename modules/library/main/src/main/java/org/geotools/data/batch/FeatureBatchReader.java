@@ -0,0 +1,31 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.batch;
+
+import java.io.IOException;
+
+/**
+ * Implemented by readers that can return their features a {@link FeatureBatch} at a time
+ */
+public interface FeatureBatchReader {
+
+    /**
+     * Returns the next batch, holding at most <code>maxSize</code> features, or null if there are
+     * no more features to read
+     */
+    FeatureBatch nextBatch(int maxSize) throws IOException;
+}
@@ -0,0 +1,145 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.sort;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.simple.SimpleFeatureReader;
+import org.geotools.resources.NIOUtilities;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Reads features encoded with a {@link SimpleFeatureCodec} from a region of a file, decoding them
+ * straight from memory mapped buffers. Each record is expected to be preceded by its length, as
+ * an unsigned varint.
+ * <p>
+ * The region is mapped in chunks of (at least) the specified size, so that large files can be
+ * read without mapping them as a whole. Closing the reader releases the mapping, but leaves the
+ * channel open.
+ */
+public class MappedFeatureReader implements SimpleFeatureReader {
+
+    /**
+     * Room for the longest varint length header
+     */
+    static final int MAX_HEADER = 5;
+
+    SimpleFeatureCodec codec;
+
+    FileChannel channel;
+
+    long position;
+
+    long end;
+
+    int mappingSize;
+
+    ByteBuffer mapped;
+
+    long mappedStart;
+
+    /**
+     * The last record returned by {@link #next()}, still in its encoded form
+     */
+    ByteBuffer record;
+
+    /**
+     * @param codec The codec used to decode the features
+     * @param channel The channel to read from
+     * @param start The position of the first record in the file
+     * @param length The length of the region holding the records
+     * @param mappingSize The size of the chunks mapped in memory
+     */
+    public MappedFeatureReader(SimpleFeatureCodec codec, FileChannel channel, long start,
+            long length, int mappingSize) {
+        this.codec = codec;
+        this.channel = channel;
+        this.position = start;
+        this.end = start + length;
+        this.mappingSize = mappingSize;
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return codec.getSchema();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        return position < end;
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (position >= end) {
+            throw new NoSuchElementException();
+        }
+
+        // read the record length
+        ByteBuffer buffer = map(position, (int) Math.min(MAX_HEADER, end - position));
+        int headerStart = buffer.position();
+        int length = (int) SimpleFeatureCodec.getVarLong(buffer);
+        long recordStart = position + buffer.position() - headerStart;
+        if (recordStart + length > end) {
+            throw new IOException("Truncated feature record at " + position);
+        }
+
+        // decode straight from the mapped memory
+        buffer = map(recordStart, length);
+        buffer.limit(buffer.position() + length);
+        record = buffer.slice();
+        SimpleFeature feature = codec.decode(buffer);
+        position = recordStart + length;
+        return feature;
+    }
+
+    /**
+     * Returns a buffer positioned at the specified file position, with at least the specified
+     * amount of bytes remaining, mapping a new chunk of the file if needed
+     */
+    ByteBuffer map(long start, int length) throws IOException {
+        if (mapped == null || start < mappedStart
+                || start + length > mappedStart + mapped.capacity()) {
+            release();
+            long size = Math.min(Math.max(mappingSize, length), end - start);
+            mapped = channel.map(MapMode.READ_ONLY, start, size);
+            mappedStart = start;
+        }
+        mapped.clear();
+        mapped.position((int) (start - mappedStart));
+        return mapped;
+    }
+
+    void release() {
+        if (mapped != null) {
+            NIOUtilities.clean(mapped, true);
+            mapped = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        record = null;
+        release();
+    }
+}
@@ -119,6 +119,11 @@ class MergeSortDumper {
                             + "sorting properties are not comparable or the attributes are not serializable");
         }
 
+        if (ParallelMergeSorter.THREADS > 1) {
+            return new ParallelMergeSorter(schema, comparator, maxFeatures,
+                    ParallelMergeSorter.THREADS, ParallelMergeSorter.MERGE_MEMORY).sort(reader);
+        }
+
         int count = 0;
         File file = null;
         SimpleFeatureIO io = null;
@@ -0,0 +1,751 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.sort;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.DelegateSimpleFeatureReader;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * External merge sort building the sorted runs in parallel.
+ * <p>
+ * The input is read on the calling thread and split in blocks, each block is sorted and encoded
+ * by a pool of worker threads, shared by all sorts, with a {@link SimpleFeatureCodec} into direct
+ * buffers, and appended to a temporary file as a sorted run. The runs are then merged with a
+ * k-way heap, decoding them straight from memory mapped chunks of the file with a
+ * {@link MappedFeatureReader}.
+ * <p>
+ * Memory usage is capped explicitly: at most <code>maxFeatures</code> features are held in the
+ * heap at any time, split among the blocks being sorted, and the mapped chunks and direct buffers
+ * used while merging never exceed <code>mergeMemory</code> bytes. When there are too many runs to
+ * merge them all at once within that budget, groups of runs are merged, in parallel, into larger
+ * runs first. The blocks being encoded hold their contents in direct buffers taken from a pool
+ * of at most <code>mergeMemory</code> bytes (but at least one buffer per thread), shared evenly
+ * among the threads: a block whose encoding outgrows its share is written out as several
+ * consecutive runs.
+ * <p>
+ * The merge is stable, features comparing as equal are returned in the same order as the input.
+ */
+class ParallelMergeSorter {
+
+    /**
+     * Number of threads used to build the sorted runs, defaults to the number of available
+     * processors. A value of 1 disables the parallel sorter in favour of {@link MergeSortDumper}
+     * single threaded one.
+     */
+    static final int THREADS = Integer.getInteger("org.geotools.data.sort.threads", Runtime
+            .getRuntime().availableProcessors());
+
+    /**
+     * Amount of off-heap memory, in bytes, used by the buffers building the runs, and by the
+     * mapped chunks and buffers reading and writing runs during merges. Defaults to 16MB
+     */
+    static final long MERGE_MEMORY = Long.getLong("org.geotools.data.sort.mergeMemory",
+            16 * 1024 * 1024);
+
+    /**
+     * Size of the chunks mapped to read a run, and of the direct buffers writing a merged one
+     */
+    static final int WINDOW_SIZE = 64 * 1024;
+
+    /**
+     * The pool shared by all sorts, its threads go away when idle. Each sort limits the number of
+     * blocks it has in flight to its own thread count
+     */
+    static final ExecutorService EXECUTOR;
+    static {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(1, THREADS), Math.max(1,
+                THREADS), 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new SortThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        EXECUTOR = executor;
+    }
+
+    SimpleFeatureType schema;
+
+    Comparator<SimpleFeature> comparator;
+
+    int maxFeatures;
+
+    int threads;
+
+    long mergeMemory;
+
+    File file;
+
+    FileChannel channel;
+
+    /**
+     * The current size of the temporary file, new runs get appended at the end
+     */
+    AtomicLong size = new AtomicLong();
+
+    /**
+     * The direct buffers allocated so far and not currently in use
+     */
+    ConcurrentLinkedQueue<ByteBuffer> windows = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /**
+     * One permit for each direct buffer that can be in use at any given time
+     */
+    Semaphore windowPermits;
+
+    /**
+     * The number of direct buffers each run builder can hold
+     */
+    int builderWindows;
+
+    public ParallelMergeSorter(SimpleFeatureType schema, Comparator<SimpleFeature> comparator,
+            int maxFeatures, int threads, long mergeMemory) {
+        this.schema = schema;
+        this.comparator = comparator;
+        this.maxFeatures = Math.max(1, maxFeatures);
+        this.threads = Math.max(1, threads);
+        this.mergeMemory = mergeMemory;
+        int windowCount = (int) Math.max(this.threads,
+                Math.min(Integer.MAX_VALUE, mergeMemory / WINDOW_SIZE));
+        this.windowPermits = new Semaphore(windowCount);
+        this.builderWindows = windowCount / this.threads;
+    }
+
+    /**
+     * Sorts the contents of the reader, which gets closed before returning
+     */
+    public SimpleFeatureReader sort(SimpleFeatureReader reader) throws IOException {
+        ExecutorService executor = EXECUTOR;
+        List<Future<List<Run>>> builders = new ArrayList<Future<List<Run>>>();
+        List<Future<Run>> futures = new ArrayList<Future<Run>>();
+        boolean cleanFile = true;
+        try {
+            List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+            while (reader.hasNext() && features.size() <= maxFeatures) {
+                features.add(reader.next());
+            }
+
+            if (features.size() <= maxFeatures) {
+                // simple case, we managed to keep everything in memory
+                Collections.sort(features, comparator);
+                SimpleFeatureIterator fi = new ListFeatureCollection(schema, features).features();
+                return new DelegateSimpleFeatureReader(schema, fi);
+            }
+
+            file = File.createTempFile("sorted", ".features");
+            channel = new RandomAccessFile(file, "rw").getChannel();
+
+            // each block being sorted holds a permit, so that the blocks in memory
+            // never hold more than maxFeatures features overall
+            Semaphore permits = new Semaphore(threads);
+            int blockSize = Math.max(1, (maxFeatures + threads) / threads);
+            // split what we already read among all threads
+            for (int i = 0; i < features.size(); i += blockSize) {
+                int end = Math.min(features.size(), i + blockSize);
+                List<SimpleFeature> block = new ArrayList<SimpleFeature>(features.subList(i, end));
+                acquire(permits);
+                builders.add(executor.submit(new RunBuilder(block, permits)));
+            }
+            features = null;
+            while (reader.hasNext()) {
+                acquire(permits);
+                List<SimpleFeature> block = new ArrayList<SimpleFeature>(blockSize);
+                while (reader.hasNext() && block.size() < blockSize) {
+                    block.add(reader.next());
+                }
+                builders.add(executor.submit(new RunBuilder(block, permits)));
+            }
+            List<Run> runs = new ArrayList<Run>();
+            for (List<Run> built : collect(builders)) {
+                runs.addAll(built);
+            }
+
+            // reduce the number of runs until they can be all merged at once within the budget
+            int finalFanIn = getFanIn(mergeMemory);
+            int fanIn = getFanIn(mergeMemory / threads);
+            while (runs.size() > finalFanIn) {
+                futures.clear();
+                for (int i = 0; i < runs.size(); i += fanIn) {
+                    List<Run> group = runs.subList(i, Math.min(runs.size(), i + fanIn));
+                    futures.add(executor.submit(new RunMerger(new ArrayList<Run>(group))));
+                }
+                runs = collect(futures);
+            }
+
+            SimpleFeatureReader result = new RunsReader(runs);
+            cleanFile = false;
+            return result;
+        } finally {
+            if (cleanFile) {
+                // stop the work still pending in the shared pool
+                for (Future<List<Run>> future : builders) {
+                    future.cancel(true);
+                }
+                for (Future<Run> future : futures) {
+                    future.cancel(true);
+                }
+                dispose();
+            }
+            reader.close();
+        }
+    }
+
+    /**
+     * The number of runs that can be merged at once within the given memory budget, accounting
+     * for the reading buffers, and the one writing the output
+     */
+    static int getFanIn(long memory) {
+        return (int) Math.max(2, Math.min(Integer.MAX_VALUE, memory / WINDOW_SIZE - 1));
+    }
+
+    void acquire(Semaphore permits) throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for a block to be sorted");
+        }
+    }
+
+    <T> List<T> collect(List<Future<T>> futures) throws IOException {
+        List<T> results = new ArrayList<T>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for a block to be sorted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to sort features", cause);
+        }
+        return results;
+    }
+
+    /**
+     * Returns a direct buffer, waiting for one to be released if the memory budget is all in use
+     */
+    ByteBuffer getWindow() throws IOException {
+        try {
+            windowPermits.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for a buffer");
+        }
+        ByteBuffer window = windows.poll();
+        if (window == null) {
+            window = ByteBuffer.allocateDirect(WINDOW_SIZE);
+        }
+        window.clear();
+        return window;
+    }
+
+    void releaseWindow(ByteBuffer window) {
+        // the permits cap the buffers ever allocated, all of them can be pooled
+        windows.add(window);
+        windowPermits.release();
+    }
+
+    /**
+     * Reserves space at the end of the temporary file for a run of the given length
+     */
+    long reserve(long length) {
+        return size.getAndAdd(length);
+    }
+
+    void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    void dispose() throws IOException {
+        windows.clear();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * A sorted run in the temporary file. Each feature is stored as its length followed by the
+     * {@link SimpleFeatureCodec} encoding, so that merges can copy features without re-encoding
+     * them
+     */
+    static class Run {
+        long start;
+
+        long length;
+
+        int count;
+
+        Run(long start, long length, int count) {
+            this.start = start;
+            this.length = length;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Sorts a block of features and appends it to the temporary file, as a single run, or as
+     * consecutive runs if its encoding does not fit in the builder share of direct buffers
+     */
+    class RunBuilder implements Callable<List<Run>> {
+
+        List<SimpleFeature> block;
+
+        Semaphore permits;
+
+        RunBuilder(List<SimpleFeature> block, Semaphore permits) {
+            this.block = block;
+            this.permits = permits;
+        }
+
+        @Override
+        public List<Run> call() throws Exception {
+            try {
+                Collections.sort(block, comparator);
+
+                // the length of the run is known only once encoded, so the records are
+                // accumulated in direct buffers, and written once space has been reserved
+                List<Run> runs = new ArrayList<Run>();
+                long capacity = (long) builderWindows * WINDOW_SIZE;
+                DirectBuffersOutputStream dos = new DirectBuffersOutputStream();
+                try {
+                    SimpleFeatureCodec codec = new SimpleFeatureCodec(schema);
+                    for (SimpleFeature feature : block) {
+                        ByteBuffer record = codec.encode(feature);
+                        // the record, preceded by its length as a var int of up to 5 bytes
+                        long recordLength = record.remaining() + 5;
+                        if (dos.getCount() > 0 && dos.getLength() + recordLength > capacity) {
+                            runs.add(dos.writeRun());
+                        }
+                        if (recordLength > capacity) {
+                            runs.add(writeRecord(record));
+                        } else {
+                            SimpleFeatureCodec.writeVarInt(dos, record.remaining());
+                            dos.write(record);
+                            dos.count++;
+                        }
+                    }
+                    // let the features be collected before the permit is released
+                    block = null;
+
+                    if (dos.getCount() > 0) {
+                        runs.add(dos.writeRun());
+                    }
+                    return runs;
+                } finally {
+                    dos.close();
+                }
+            } finally {
+                permits.release();
+            }
+        }
+
+        /**
+         * Writes a record too large to be buffered as a run of its own
+         */
+        Run writeRecord(ByteBuffer record) throws IOException {
+            ByteArrayOutputStream header = new ByteArrayOutputStream(5);
+            SimpleFeatureCodec.writeVarInt(header, record.remaining());
+            long length = header.size() + record.remaining();
+            long start = reserve(length);
+            write(ByteBuffer.wrap(header.toByteArray()), start);
+            write(record, start + header.size());
+            return new Run(start, length, 1);
+        }
+    }
+
+    /**
+     * Merges a group of runs into a single one, copying the encoded features as they are
+     */
+    class RunMerger implements Callable<Run> {
+
+        List<Run> runs;
+
+        RunMerger(List<Run> runs) {
+            this.runs = runs;
+        }
+
+        @Override
+        public Run call() throws Exception {
+            if (runs.size() == 1) {
+                return runs.get(0);
+            }
+
+            long length = 0;
+            int count = 0;
+            for (Run run : runs) {
+                length += run.length;
+                count += run.count;
+            }
+            long start = reserve(length);
+
+            RunsMerge merge = new RunsMerge(runs);
+            ChannelOutputStream cos = new ChannelOutputStream(start);
+            try {
+                while (merge.hasNext()) {
+                    RunCursor cursor = merge.poll();
+                    // copy the record as is, before the cursor moves on
+                    ByteBuffer record = cursor.reader.record;
+                    SimpleFeatureCodec.writeVarInt(cos, record.remaining());
+                    cos.write(record);
+                    merge.advance(cursor);
+                }
+                cos.flush();
+            } finally {
+                cos.close();
+                merge.close();
+            }
+            return new Run(start, length, count);
+        }
+    }
+
+    /**
+     * k-way merge of a list of runs, using a heap to locate the smallest feature
+     */
+    class RunsMerge {
+
+        PriorityQueue<RunCursor> queue;
+
+        RunsMerge(List<Run> runs) throws IOException {
+            queue = new PriorityQueue<RunCursor>(runs.size(), new Comparator<RunCursor>() {
+
+                @Override
+                public int compare(RunCursor c1, RunCursor c2) {
+                    int result = comparator.compare(c1.feature, c2.feature);
+                    if (result == 0) {
+                        // keep the merge stable
+                        result = c1.index < c2.index ? -1 : (c1.index == c2.index ? 0 : 1);
+                    }
+                    return result;
+                }
+            });
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    RunCursor cursor = new RunCursor(runs.get(i), i);
+                    if (cursor.next()) {
+                        queue.add(cursor);
+                    } else {
+                        cursor.close();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        /**
+         * Removes the cursor positioned on the smallest feature from the heap
+         */
+        RunCursor poll() {
+            RunCursor cursor = queue.poll();
+            if (cursor == null) {
+                throw new NoSuchElementException();
+            }
+            return cursor;
+        }
+
+        /**
+         * Moves the cursor to the next feature and puts it back in the heap, or closes it if
+         * the run is exhausted
+         */
+        void advance(RunCursor cursor) throws IOException {
+            if (cursor.next()) {
+                queue.add(cursor);
+            } else {
+                cursor.close();
+            }
+        }
+
+        void close() {
+            for (RunCursor cursor : queue) {
+                cursor.close();
+            }
+            queue.clear();
+        }
+    }
+
+    /**
+     * Reads the features of a run one by one
+     */
+    class RunCursor {
+
+        int index;
+
+        MappedFeatureReader reader;
+
+        SimpleFeature feature;
+
+        RunCursor(Run run, int index) {
+            this.index = index;
+            this.reader = new MappedFeatureReader(new SimpleFeatureCodec(schema), channel,
+                    run.start, run.length, WINDOW_SIZE);
+        }
+
+        boolean next() throws IOException {
+            if (!reader.hasNext()) {
+                feature = null;
+                return false;
+            }
+            feature = reader.next();
+            return true;
+        }
+
+        void close() {
+            reader.release();
+        }
+    }
+
+    /**
+     * Writes a merged run in the temporary file through a direct buffer
+     */
+    class ChannelOutputStream extends OutputStream {
+
+        long position;
+
+        ByteBuffer window;
+
+        ChannelOutputStream(long position) throws IOException {
+            this.position = position;
+            this.window = getWindow();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!window.hasRemaining()) {
+                flush();
+            }
+            window.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!window.hasRemaining()) {
+                    flush();
+                }
+                int written = Math.min(len, window.remaining());
+                window.put(b, off, written);
+                off += written;
+                len -= written;
+            }
+        }
+
+        public void write(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) {
+                if (!window.hasRemaining()) {
+                    flush();
+                }
+                int written = Math.min(b.remaining(), window.remaining());
+                ByteBuffer chunk = b.duplicate();
+                chunk.limit(chunk.position() + written);
+                window.put(chunk);
+                b.position(b.position() + written);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            window.flip();
+            long length = window.remaining();
+            ParallelMergeSorter.this.write(window, position);
+            position += length;
+            window.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (window != null) {
+                releaseWindow(window);
+                window = null;
+            }
+        }
+    }
+
+    /**
+     * Accumulates a run being built in a list of direct buffers, taken from the shared ones
+     */
+    class DirectBuffersOutputStream extends OutputStream {
+
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+
+        ByteBuffer window;
+
+        long length;
+
+        /**
+         * The number of records accumulated
+         */
+        int count;
+
+        void nextWindow() throws IOException {
+            window = getWindow();
+            buffers.add(window);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (window == null || !window.hasRemaining()) {
+                nextWindow();
+            }
+            window.put((byte) b);
+            length++;
+        }
+
+        public void write(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) {
+                if (window == null || !window.hasRemaining()) {
+                    nextWindow();
+                }
+                int written = Math.min(b.remaining(), window.remaining());
+                ByteBuffer chunk = b.duplicate();
+                chunk.limit(chunk.position() + written);
+                window.put(chunk);
+                b.position(b.position() + written);
+                length += written;
+            }
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        /**
+         * Appends the accumulated records to the temporary file as a run, and releases the
+         * buffers holding them
+         */
+        Run writeRun() throws IOException {
+            long start = reserve(length);
+            long position = start;
+            for (ByteBuffer buffer : buffers) {
+                buffer.flip();
+                long written = buffer.remaining();
+                ParallelMergeSorter.this.write(buffer, position);
+                position += written;
+            }
+            Run run = new Run(start, length, count);
+            close();
+            return run;
+        }
+
+        @Override
+        public void close() {
+            for (ByteBuffer buffer : buffers) {
+                releaseWindow(buffer);
+            }
+            buffers.clear();
+            window = null;
+            length = 0;
+            count = 0;
+        }
+    }
+
+    /**
+     * Returns the merged contents of the final runs, and removes the temporary file on close
+     */
+    class RunsReader implements SimpleFeatureReader {
+
+        RunsMerge merge;
+
+        RunsReader(List<Run> runs) throws IOException {
+            this.merge = new RunsMerge(runs);
+        }
+
+        @Override
+        public SimpleFeatureType getFeatureType() {
+            return schema;
+        }
+
+        @Override
+        public SimpleFeature next() throws IOException, IllegalArgumentException,
+                NoSuchElementException {
+            RunCursor cursor = merge.poll();
+            SimpleFeature feature = cursor.feature;
+            merge.advance(cursor);
+            return feature;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return merge.hasNext();
+        }
+
+        @Override
+        public void close() throws IOException {
+            merge.close();
+            dispose();
+        }
+    }
+
+    static class SortThreadFactory implements ThreadFactory {
+
+        AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "gt-sort-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,663 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.sort;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.List;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Binary encoding of simple features driven by their schema, meant for temporary files such as
+ * the merge-sort ones. Compared to {@link SimpleFeatureIO}:
+ * <ul>
+ * <li>the attribute types are resolved once from the schema, records carry no type information,
+ * and the null values are tracked in a bitmap in front of each record. Values whose class is not
+ * the exact one of the binding (e.g., a {@link java.sql.Timestamp} in a {@link java.util.Date}
+ * attribute) are flagged in the same bitmap and written with Java serialization, so that they are
+ * read back unchanged</li>
+ * <li>primitives are written with a fixed layout, strings as varint length plus UTF-8 bytes</li>
+ * <li>geometries are written with their own compact layout, coordinates that can be represented
+ * exactly as decimals with up to 7 fractional digits are quantized and written as varint deltas,
+ * others are written as raw doubles. The encoding is lossless in both cases</li>
+ * </ul>
+ * Attributes not handled natively are written with Java serialization, so the same
+ * {@link MergeSortDumper#canSort(SimpleFeatureType, org.opengis.filter.sort.SortBy[])}
+ * restrictions apply.
+ * <p>
+ * Instances are not thread safe, the buffer returned by {@link #encode(SimpleFeature)} is reused
+ * by the next call.
+ */
+public class SimpleFeatureCodec {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final int BOOLEAN = 0;
+
+    static final int BYTE = 1;
+
+    static final int SHORT = 2;
+
+    static final int INTEGER = 3;
+
+    static final int LONG = 4;
+
+    static final int FLOAT = 5;
+
+    static final int DOUBLE = 6;
+
+    static final int STRING = 7;
+
+    static final int DATE = 8;
+
+    static final int SQL_DATE = 9;
+
+    static final int SQL_TIME = 10;
+
+    static final int SQL_TIMESTAMP = 11;
+
+    static final int GEOMETRY = 12;
+
+    static final int OBJECT = 13;
+
+    /**
+     * The classes written natively for each of the above types, null if any class can be
+     */
+    static final Class<?>[] NATIVE_CLASSES = { Boolean.class, Byte.class, Short.class,
+            Integer.class, Long.class, Float.class, Double.class, String.class,
+            java.util.Date.class, java.sql.Date.class, java.sql.Time.class,
+            java.sql.Timestamp.class, null, null };
+
+    /**
+     * Flags, in the record bitmap, a null value
+     */
+    static final int NULL_VALUE = 1;
+
+    /**
+     * Flags, in the record bitmap, a value written with the {@link #OBJECT} encoding because its
+     * class does not match the binding
+     */
+    static final int OBJECT_VALUE = 2;
+
+    static final byte POINT = 1;
+
+    static final byte LINESTRING = 2;
+
+    static final byte POLYGON = 3;
+
+    static final byte MULTIPOINT = 4;
+
+    static final byte MULTILINESTRING = 5;
+
+    static final byte MULTIPOLYGON = 6;
+
+    static final byte GEOMETRYCOLLECTION = 7;
+
+    static final byte LINEARRING = 8;
+
+    /**
+     * Marks a coordinate sequence written as raw doubles, instead of quantized deltas
+     */
+    static final int RAW_COORDINATES = 0x0F;
+
+    static final int MAX_DECIMALS = 7;
+
+    static final double[] POWERS_OF_TEN = { 1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7 };
+
+    /**
+     * Larger values cannot be represented exactly as longs once quantized
+     */
+    static final double MAX_QUANTIZED = 1L << 53;
+
+    SimpleFeatureType schema;
+
+    int[] types;
+
+    SimpleFeatureBuilder builder;
+
+    GeometryFactory geometryFactory = new GeometryFactory();
+
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+    public SimpleFeatureCodec(SimpleFeatureType schema) {
+        this.schema = schema;
+        this.builder = new SimpleFeatureBuilder(schema);
+        List<AttributeDescriptor> descriptors = schema.getAttributeDescriptors();
+        this.types = new int[descriptors.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = getType(descriptors.get(i).getType().getBinding());
+        }
+    }
+
+    static int getType(Class<?> binding) {
+        if (binding == Boolean.class || binding == boolean.class) {
+            return BOOLEAN;
+        } else if (binding == Byte.class || binding == byte.class) {
+            return BYTE;
+        } else if (binding == Short.class || binding == short.class) {
+            return SHORT;
+        } else if (binding == Integer.class || binding == int.class) {
+            return INTEGER;
+        } else if (binding == Long.class || binding == long.class) {
+            return LONG;
+        } else if (binding == Float.class || binding == float.class) {
+            return FLOAT;
+        } else if (binding == Double.class || binding == double.class) {
+            return DOUBLE;
+        } else if (binding == String.class) {
+            return STRING;
+        } else if (binding == java.util.Date.class) {
+            return DATE;
+        } else if (binding == java.sql.Date.class) {
+            return SQL_DATE;
+        } else if (binding == java.sql.Time.class) {
+            return SQL_TIME;
+        } else if (binding == java.sql.Timestamp.class) {
+            return SQL_TIMESTAMP;
+        } else if (Geometry.class.isAssignableFrom(binding)) {
+            return GEOMETRY;
+        } else {
+            return OBJECT;
+        }
+    }
+
+    public SimpleFeatureType getSchema() {
+        return schema;
+    }
+
+    /**
+     * Encodes the feature. The returned buffer is positioned at the start of the record and
+     * limited at its end, it's valid until the next call to this method.
+     */
+    public ByteBuffer encode(SimpleFeature feature) throws IOException {
+        buffer.clear();
+        putString(feature.getID());
+
+        // reserve the bitmap, two bits per attribute, fill it while writing the values
+        int bitmapPosition = buffer.position();
+        int bitmapLength = (types.length * 2 + 7) / 8;
+        ensure(bitmapLength);
+        for (int i = 0; i < bitmapLength; i++) {
+            buffer.put((byte) 0);
+        }
+        for (int i = 0; i < types.length; i++) {
+            Object value = feature.getAttribute(i);
+            int type = types[i];
+            int flags = 0;
+            if (value == null) {
+                flags = NULL_VALUE;
+            } else {
+                if (!isNative(type, value)) {
+                    flags = OBJECT_VALUE;
+                    type = OBJECT;
+                }
+                putValue(type, value);
+            }
+            if (flags != 0) {
+                int idx = bitmapPosition + i / 4;
+                buffer.put(idx, (byte) (buffer.get(idx) | (flags << ((i % 4) * 2))));
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Returns true if the value can be written with the native encoding of the type, and read
+     * back as an object of the same class
+     */
+    static boolean isNative(int type, Object value) {
+        if (type == GEOMETRY) {
+            return value instanceof Geometry;
+        }
+        Class<?> nativeClass = NATIVE_CLASSES[type];
+        return nativeClass == null || value.getClass() == nativeClass;
+    }
+
+    /**
+     * Decodes a feature starting from the current buffer position, and moves the position to the
+     * end of the record
+     */
+    public SimpleFeature decode(ByteBuffer in) throws IOException {
+        try {
+            String fid = getString(in);
+            int bitmapPosition = in.position();
+            in.position(bitmapPosition + (types.length * 2 + 7) / 8);
+            for (int i = 0; i < types.length; i++) {
+                int flags = (in.get(bitmapPosition + i / 4) >> ((i % 4) * 2)) & 0x3;
+                if (flags == NULL_VALUE) {
+                    builder.add(null);
+                } else {
+                    builder.add(getValue(flags == OBJECT_VALUE ? OBJECT : types[i], in));
+                }
+            }
+            return builder.buildFeature(fid);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated feature record", e);
+        }
+    }
+
+    void putValue(int type, Object value) throws IOException {
+        switch (type) {
+        case BOOLEAN:
+            ensure(1);
+            buffer.put((byte) (((Boolean) value) ? 1 : 0));
+            break;
+        case BYTE:
+            ensure(1);
+            buffer.put((Byte) value);
+            break;
+        case SHORT:
+            ensure(2);
+            buffer.putShort((Short) value);
+            break;
+        case INTEGER:
+            ensure(4);
+            buffer.putInt((Integer) value);
+            break;
+        case LONG:
+            ensure(8);
+            buffer.putLong((Long) value);
+            break;
+        case FLOAT:
+            ensure(4);
+            buffer.putFloat((Float) value);
+            break;
+        case DOUBLE:
+            ensure(8);
+            buffer.putDouble((Double) value);
+            break;
+        case STRING:
+            putString((String) value);
+            break;
+        case DATE:
+        case SQL_DATE:
+        case SQL_TIME:
+            ensure(8);
+            buffer.putLong(((Date) value).getTime());
+            break;
+        case SQL_TIMESTAMP:
+            // keep the nanoseconds too
+            ensure(12);
+            java.sql.Timestamp ts = (java.sql.Timestamp) value;
+            buffer.putLong(ts.getTime());
+            buffer.putInt(ts.getNanos());
+            break;
+        case GEOMETRY:
+            Geometry geometry = (Geometry) value;
+            putVarLong(zigZag(geometry.getSRID()));
+            putGeometry(geometry);
+            break;
+        default:
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(value);
+            oos.flush();
+            byte[] bytes = bos.toByteArray();
+            putVarLong(bytes.length);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    Object getValue(int type, ByteBuffer in) throws IOException {
+        switch (type) {
+        case BOOLEAN:
+            return in.get() != 0;
+        case BYTE:
+            return in.get();
+        case SHORT:
+            return in.getShort();
+        case INTEGER:
+            return in.getInt();
+        case LONG:
+            return in.getLong();
+        case FLOAT:
+            return in.getFloat();
+        case DOUBLE:
+            return in.getDouble();
+        case STRING:
+            return getString(in);
+        case DATE:
+            return new java.util.Date(in.getLong());
+        case SQL_DATE:
+            return new java.sql.Date(in.getLong());
+        case SQL_TIME:
+            return new java.sql.Time(in.getLong());
+        case SQL_TIMESTAMP:
+            java.sql.Timestamp ts = new java.sql.Timestamp(in.getLong());
+            ts.setNanos(in.getInt());
+            return ts;
+        case GEOMETRY:
+            int srid = (int) unZigZag(getVarLong(in));
+            Geometry geometry = getGeometry(in);
+            geometry.setSRID(srid);
+            return geometry;
+        default:
+            byte[] bytes = new byte[(int) getVarLong(in)];
+            in.get(bytes);
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Could not read back object", e);
+            }
+        }
+    }
+
+    void putString(String value) {
+        if (value == null) {
+            putVarLong(0);
+        } else {
+            byte[] bytes = value.getBytes(UTF8);
+            putVarLong(bytes.length + 1);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    static String getString(ByteBuffer in) {
+        int length = (int) getVarLong(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        String result;
+        if (in.hasArray()) {
+            result = new String(in.array(), in.arrayOffset() + in.position(), length, UTF8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            result = new String(bytes, UTF8);
+        }
+        return result;
+    }
+
+    void putGeometry(Geometry geometry) {
+        ensure(1);
+        if (geometry instanceof Point) {
+            buffer.put(POINT);
+            putCoordinates(((Point) geometry).getCoordinateSequence());
+        } else if (geometry instanceof LinearRing) {
+            buffer.put(LINEARRING);
+            putCoordinates(((LinearRing) geometry).getCoordinateSequence());
+        } else if (geometry instanceof LineString) {
+            buffer.put(LINESTRING);
+            putCoordinates(((LineString) geometry).getCoordinateSequence());
+        } else if (geometry instanceof Polygon) {
+            buffer.put(POLYGON);
+            Polygon polygon = (Polygon) geometry;
+            if (polygon.isEmpty()) {
+                putVarLong(0);
+            } else {
+                putVarLong(polygon.getNumInteriorRing() + 1);
+                putCoordinates(polygon.getExteriorRing().getCoordinateSequence());
+                for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                    putCoordinates(polygon.getInteriorRingN(i).getCoordinateSequence());
+                }
+            }
+        } else {
+            if (geometry instanceof MultiPoint) {
+                buffer.put(MULTIPOINT);
+            } else if (geometry instanceof MultiLineString) {
+                buffer.put(MULTILINESTRING);
+            } else if (geometry instanceof MultiPolygon) {
+                buffer.put(MULTIPOLYGON);
+            } else if (geometry instanceof GeometryCollection) {
+                buffer.put(GEOMETRYCOLLECTION);
+            } else {
+                throw new IllegalArgumentException("Unsupported geometry type "
+                        + geometry.getGeometryType());
+            }
+            putVarLong(geometry.getNumGeometries());
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                putGeometry(geometry.getGeometryN(i));
+            }
+        }
+    }
+
+    Geometry getGeometry(ByteBuffer in) throws IOException {
+        byte type = in.get();
+        switch (type) {
+        case POINT:
+            return geometryFactory.createPoint(getCoordinates(in));
+        case LINEARRING:
+            return geometryFactory.createLinearRing(getCoordinates(in));
+        case LINESTRING:
+            return geometryFactory.createLineString(getCoordinates(in));
+        case POLYGON:
+            int rings = (int) getVarLong(in);
+            if (rings == 0) {
+                return geometryFactory.createPolygon((LinearRing) null, null);
+            }
+            LinearRing shell = geometryFactory.createLinearRing(getCoordinates(in));
+            LinearRing[] holes = new LinearRing[rings - 1];
+            for (int i = 0; i < holes.length; i++) {
+                holes[i] = geometryFactory.createLinearRing(getCoordinates(in));
+            }
+            return geometryFactory.createPolygon(shell, holes);
+        case MULTIPOINT:
+            Point[] points = new Point[(int) getVarLong(in)];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = (Point) getGeometry(in);
+            }
+            return geometryFactory.createMultiPoint(points);
+        case MULTILINESTRING:
+            LineString[] lines = new LineString[(int) getVarLong(in)];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = (LineString) getGeometry(in);
+            }
+            return geometryFactory.createMultiLineString(lines);
+        case MULTIPOLYGON:
+            Polygon[] polygons = new Polygon[(int) getVarLong(in)];
+            for (int i = 0; i < polygons.length; i++) {
+                polygons[i] = (Polygon) getGeometry(in);
+            }
+            return geometryFactory.createMultiPolygon(polygons);
+        case GEOMETRYCOLLECTION:
+            Geometry[] geometries = new Geometry[(int) getVarLong(in)];
+            for (int i = 0; i < geometries.length; i++) {
+                geometries[i] = getGeometry(in);
+            }
+            return geometryFactory.createGeometryCollection(geometries);
+        default:
+            throw new IOException("Unknown geometry type " + type);
+        }
+    }
+
+    /**
+     * Writes a coordinate sequence, as the number of coordinates, a header byte holding the
+     * dimension and the number of decimals used to quantize the ordinates, followed by the
+     * ordinates as zig-zag varint deltas, or as raw doubles if they could not be quantized
+     */
+    void putCoordinates(CoordinateSequence cs) {
+        int size = cs.size();
+        putVarLong(size);
+        if (size == 0) {
+            return;
+        }
+
+        int dimension = 2;
+        if (cs.getDimension() > 2) {
+            for (int i = 0; i < size; i++) {
+                if (!Double.isNaN(cs.getOrdinate(i, CoordinateSequence.Z))) {
+                    dimension = 3;
+                    break;
+                }
+            }
+        }
+        int decimals = getDecimals(cs, dimension);
+        ensure(1);
+        buffer.put((byte) ((dimension << 4) | decimals));
+
+        if (decimals == RAW_COORDINATES) {
+            ensure(size * dimension * 8);
+            for (int i = 0; i < size; i++) {
+                for (int d = 0; d < dimension; d++) {
+                    buffer.putDouble(cs.getOrdinate(i, d));
+                }
+            }
+        } else {
+            double scale = POWERS_OF_TEN[decimals];
+            long[] previous = new long[dimension];
+            for (int i = 0; i < size; i++) {
+                for (int d = 0; d < dimension; d++) {
+                    long value = Math.round(cs.getOrdinate(i, d) * scale);
+                    putVarLong(zigZag(value - previous[d]));
+                    previous[d] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest number of decimals allowing to represent exactly all ordinates, or
+     * {@link #RAW_COORDINATES} if there is none
+     */
+    static int getDecimals(CoordinateSequence cs, int dimension) {
+        int size = cs.size();
+        DECIMALS: for (int decimals = 0; decimals <= MAX_DECIMALS; decimals++) {
+            double scale = POWERS_OF_TEN[decimals];
+            for (int i = 0; i < size; i++) {
+                for (int d = 0; d < dimension; d++) {
+                    double ordinate = cs.getOrdinate(i, d);
+                    double scaled = ordinate * scale;
+                    // the decoding must give back exactly the same double
+                    if (!(Math.abs(scaled) < MAX_QUANTIZED)
+                            || Double.compare(Math.round(scaled) / scale, ordinate) != 0) {
+                        continue DECIMALS;
+                    }
+                }
+            }
+            return decimals;
+        }
+        return RAW_COORDINATES;
+    }
+
+    CoordinateSequence getCoordinates(ByteBuffer in) {
+        int size = (int) getVarLong(in);
+        Coordinate[] coordinates = new Coordinate[size];
+        if (size == 0) {
+            return geometryFactory.getCoordinateSequenceFactory().create(coordinates);
+        }
+
+        int header = in.get();
+        int dimension = (header >> 4) & 0x0F;
+        int decimals = header & 0x0F;
+        if (decimals == RAW_COORDINATES) {
+            for (int i = 0; i < size; i++) {
+                double x = in.getDouble();
+                double y = in.getDouble();
+                coordinates[i] = dimension > 2 ? new Coordinate(x, y, in.getDouble())
+                        : new Coordinate(x, y);
+            }
+        } else {
+            double scale = POWERS_OF_TEN[decimals];
+            long x = 0, y = 0, z = 0;
+            for (int i = 0; i < size; i++) {
+                x += unZigZag(getVarLong(in));
+                y += unZigZag(getVarLong(in));
+                if (dimension > 2) {
+                    z += unZigZag(getVarLong(in));
+                    coordinates[i] = new Coordinate(x / scale, y / scale, z / scale);
+                } else {
+                    coordinates[i] = new Coordinate(x / scale, y / scale);
+                }
+            }
+        }
+        return geometryFactory.getCoordinateSequenceFactory().create(coordinates);
+    }
+
+    void putVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    /**
+     * Writes an unsigned varint to the stream, used to frame the records in files
+     */
+    static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Makes sure the buffer can receive the specified amount of bytes, growing it as needed
+     */
+    void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+            ByteBuffer grown = ByteBuffer.allocate(capacity);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
@@ -192,7 +192,7 @@ public class SimpleFeatureIO {
                 WKBReader reader = new WKBReader();
                 int length = raf.readInt();
                 byte[] buffer = new byte[length];
-                raf.read(buffer);
+                raf.readFully(buffer);
                 try {
                     return reader.read(buffer);
                 } catch (ParseException e) {
@@ -201,7 +201,7 @@ public class SimpleFeatureIO {
             } else {
                 int length = raf.readInt();
                 byte[] buffer = new byte[length];
-                raf.read(buffer);
+                raf.readFully(buffer);
                 ByteArrayInputStream bis = new ByteArrayInputStream(buffer);
                 ObjectInputStream ois = new ObjectInputStream(bis);
                 try {
@@ -20,9 +20,25 @@ public class SortedSimpleFeatureCollection extends DecoratingSimpleFeatureCollec
 
     private SortBy[] sort;
 
+    private int maxFeatures;
+
     public SortedSimpleFeatureCollection(SimpleFeatureCollection delegate, SortBy[] sort) {
+        this(delegate, sort, -1);
+    }
+
+    /**
+     * Builds a sorted collection keeping at most maxFeatures in memory while sorting
+     * 
+     * @param delegate The collection to be sorted
+     * @param sort The sorting directives
+     * @param maxFeatures The maximum number of features to keep in memory, or a negative number
+     *        to use the {@link Hints#MAX_MEMORY_SORT} default
+     */
+    public SortedSimpleFeatureCollection(SimpleFeatureCollection delegate, SortBy[] sort,
+            int maxFeatures) {
         super(delegate);
         this.sort = sort;
+        this.maxFeatures = maxFeatures;
     }
 
     @Override
@@ -31,7 +47,7 @@ public class SortedSimpleFeatureCollection extends DecoratingSimpleFeatureCollec
             SimpleFeatureIterator features = delegate.features();
             // sort if necessary
             if (sort != null) {
-                features = new SortedFeatureIterator(features, getSchema(), sort, -1);
+                features = new SortedFeatureIterator(features, getSchema(), sort, maxFeatures);
             }
             return features;
         } catch (IOException e) {
@@ -0,0 +1,122 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.filter.compiler;
+
+import org.geotools.filter.spatial.BBOXImpl;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Decides from the envelope of a geometry whether it is fully inside or outside the box of a
+ * {@link BBOXImpl} filter. Geometries straddling the box border are left undecided, and have to
+ * be checked against the filter.
+ * <p>
+ * Used both by the compiled filters and by the batch filters, working on packed envelopes.
+ */
+public class BBOXPredicate {
+
+    /**
+     * The geometry is null, empty or disjoint from the box, does not match
+     */
+    public static final int OUTSIDE = -1;
+
+    /**
+     * The envelope crosses the box border, the geometry has to be checked against the filter
+     */
+    public static final int UNDECIDED = 0;
+
+    /**
+     * The geometry is fully inside the box, matches
+     */
+    public static final int INSIDE = 1;
+
+    int index;
+
+    double minX;
+
+    double minY;
+
+    double maxX;
+
+    double maxY;
+
+    BBOXPredicate(int index, Envelope envelope) {
+        this.index = index;
+        this.minX = envelope.getMinX();
+        this.minY = envelope.getMinY();
+        this.maxX = envelope.getMaxX();
+        this.maxY = envelope.getMaxY();
+    }
+
+    /**
+     * Builds the predicate for a filter on a geometry attribute of the schema and a literal
+     * rectangle, returns null otherwise
+     */
+    public static BBOXPredicate create(BBOXImpl filter, SimpleFeatureType schema) {
+        int index = FilterCompiler.getAttributeIndex(filter.getExpression1(), schema);
+        Object literal = FilterCompiler.getLiteralValue(filter.getExpression2());
+        if (index < 0 || !(schema.getDescriptor(index) instanceof GeometryDescriptor)
+                || !(literal instanceof Geometry)) {
+            return null;
+        }
+        Geometry box = (Geometry) literal;
+        Envelope envelope = box.getEnvelopeInternal();
+        if (!box.isRectangle() || envelope.getWidth() <= 0 || envelope.getHeight() <= 0) {
+            return null;
+        }
+        return new BBOXPredicate(index, envelope);
+    }
+
+    /**
+     * The index of the geometry attribute tested
+     */
+    public int getAttributeIndex() {
+        return index;
+    }
+
+    /**
+     * Classifies a geometry envelope, a NaN minimum x stands for a null or empty geometry
+     *
+     * @return one of {@link #OUTSIDE}, {@link #UNDECIDED}, {@link #INSIDE}
+     */
+    public int classify(double gMinX, double gMinY, double gMaxX, double gMaxY) {
+        if (Double.isNaN(gMinX)) {
+            return OUTSIDE;
+        } else if (gMinX > maxX || gMaxX < minX || gMinY > maxY || gMaxY < minY) {
+            return OUTSIDE;
+        } else if (gMinX >= minX && gMaxX <= maxX && gMinY >= minY && gMaxY <= maxY) {
+            return INSIDE;
+        }
+        return UNDECIDED;
+    }
+
+    /**
+     * Classifies a geometry
+     *
+     * @return one of {@link #OUTSIDE}, {@link #UNDECIDED}, {@link #INSIDE}
+     */
+    public int classify(Geometry geometry) {
+        if (geometry == null || geometry.isEmpty()) {
+            return OUTSIDE;
+        }
+        Envelope ge = geometry.getEnvelopeInternal();
+        return classify(ge.getMinX(), ge.getMinY(), ge.getMaxX(), ge.getMaxY());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.filter.compiler;
+
+import org.geotools.filter.compiler.FilterCompiler.Evaluator;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterVisitor;
+
+/**
+ * A filter compiled by {@link FilterCompiler} against a specific feature type. Features of other
+ * types, and any other object, are evaluated by the original filter, which is also the one
+ * visitors get to see.
+ */
+public class CompiledFilter implements Filter {
+
+    Filter original;
+
+    SimpleFeatureType schema;
+
+    Evaluator evaluator;
+
+    /**
+     * The last feature type found to be equal, but not identical, to the compiled one
+     */
+    volatile SimpleFeatureType compatible;
+
+    /**
+     * The last feature type found to be different from the compiled one
+     */
+    volatile SimpleFeatureType incompatible;
+
+    CompiledFilter(Filter original, SimpleFeatureType schema, Evaluator evaluator) {
+        this.original = original;
+        this.schema = schema;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * The filter that was compiled
+     */
+    public Filter getOriginal() {
+        return original;
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return schema;
+    }
+
+    @Override
+    public boolean evaluate(Object object) {
+        if (object instanceof SimpleFeature) {
+            SimpleFeature feature = (SimpleFeature) object;
+            SimpleFeatureType type = feature.getFeatureType();
+            if (type == schema || type == compatible) {
+                return evaluator.evaluate(feature);
+            } else if (type != incompatible) {
+                if (schema.equals(type)) {
+                    compatible = type;
+                    return evaluator.evaluate(feature);
+                }
+                incompatible = type;
+            }
+        }
+        return original.evaluate(object);
+    }
+
+    @Override
+    public Object accept(FilterVisitor visitor, Object extraData) {
+        return original.accept(visitor, extraData);
+    }
+
+    @Override
+    public String toString() {
+        return original.toString();
+    }
+}
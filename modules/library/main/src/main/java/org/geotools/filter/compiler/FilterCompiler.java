@@ -0,0 +1,520 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.filter.compiler;
+
+import java.util.List;
+
+import org.geotools.factory.Hints;
+import org.geotools.filter.IsBetweenImpl;
+import org.geotools.filter.IsEqualsToImpl;
+import org.geotools.filter.IsNotEqualToImpl;
+import org.geotools.filter.IsNullImpl;
+import org.geotools.filter.spatial.BBOXImpl;
+import org.geotools.filter.visitor.DuplicatingFilterVisitor;
+import org.geotools.util.ConverterFactory;
+import org.geotools.util.Converters;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.ExcludeFilter;
+import org.opengis.filter.Filter;
+import org.opengis.filter.IncludeFilter;
+import org.opengis.filter.Not;
+import org.opengis.filter.Or;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Compiles a filter bound to a known {@link SimpleFeatureType} into a {@link CompiledFilter},
+ * which evaluates features without going through the generic machinery of the interpreted
+ * filter: attributes are accessed by index, literals are converted once, logic operators
+ * short-circuit on evaluators of their children.
+ * <p>
+ * Only the default filter implementations are compiled, replicating their semantics, and only
+ * when the outcome is known to be the same. Everything else is evaluated by a copy of the original
+ * filter whose property names are resolved to attribute indexes. The original filter is used
+ * instead for features of a different type, and the interpreted one for values that are not of
+ * the type declared in the schema.
+ * <p>
+ * Example usage:
+ * 
+ * <pre>
+ * Filter compiled = FilterCompiler.compile(filter, featureType);
+ * for (SimpleFeature feature : features) {
+ *     if (compiled.evaluate(feature)) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class FilterCompiler {
+
+    SimpleFeatureType schema;
+
+    FilterCompiler(SimpleFeatureType schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Compiles the filter against the given feature type. Returns the original filter if there is
+     * nothing to gain compiling it
+     */
+    public static Filter compile(Filter filter, SimpleFeatureType schema) {
+        if (filter == null || schema == null || filter instanceof CompiledFilter
+                || filter instanceof IncludeFilter || filter instanceof ExcludeFilter) {
+            return filter;
+        }
+        FilterCompiler compiler = new FilterCompiler(schema);
+        Evaluator evaluator = compiler.compile(filter);
+        if (evaluator.getClass() == FallbackEvaluator.class
+                && ((FallbackEvaluator) evaluator).filter == filter) {
+            return filter;
+        }
+        return new CompiledFilter(filter, schema, evaluator);
+    }
+
+    /**
+     * Compiles the expression against the given feature type, property names referring to one of
+     * its attributes are resolved to an index up front. Returns the original expression if there
+     * is nothing to gain compiling it
+     */
+    public static Expression compile(Expression expression, SimpleFeatureType schema) {
+        if (expression == null || schema == null) {
+            return expression;
+        }
+        PropertyIndexingVisitor visitor = new PropertyIndexingVisitor(schema);
+        Expression indexed = (Expression) expression.accept(visitor, null);
+        return visitor.indexed > 0 ? indexed : expression;
+    }
+
+    /**
+     * Returns the index of the attribute referenced by the expression, or -1 if the expression is
+     * not a plain reference to an attribute of the schema. An empty property name refers to the
+     * default geometry
+     */
+    public static int getAttributeIndex(Expression expression, SimpleFeatureType schema) {
+        if (!(expression instanceof PropertyName)) {
+            return -1;
+        }
+        String name = ((PropertyName) expression).getPropertyName();
+        if (name == null || "".equals(name)) {
+            GeometryDescriptor gd = schema.getGeometryDescriptor();
+            return gd == null ? -1 : schema.indexOf(gd.getLocalName());
+        }
+        if (name.indexOf('/') >= 0 || name.indexOf('@') >= 0 || name.indexOf('[') >= 0) {
+            return -1;
+        }
+        return schema.indexOf(name);
+    }
+
+    /**
+     * Returns the binding of the attribute if it's one of the primitive wrappers, null otherwise
+     */
+    public static Class<?> getNumericBinding(SimpleFeatureType schema, int index) {
+        if (index < 0) {
+            return null;
+        }
+        AttributeDescriptor descriptor = schema.getDescriptor(index);
+        Class<?> binding = descriptor.getType().getBinding();
+        if (binding == Byte.class || binding == Short.class || binding == Integer.class
+                || binding == Long.class || binding == Float.class || binding == Double.class) {
+            return binding;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number an attribute of the given numeric binding has to be equal to in order to
+     * satisfy {@link IsEqualsToImpl} against the literal, or null if the equality cannot be reduced
+     * to a numeric one. This happens when the literal is not numeric, or does not convert to the
+     * binding without losing information
+     */
+    public static Number getEqualityValue(Object literal, Class<?> binding) {
+        Number number;
+        if (literal instanceof Number) {
+            number = (Number) literal;
+        } else if (literal instanceof CharSequence) {
+            try {
+                number = Long.valueOf(literal.toString());
+            } catch (NumberFormatException e) {
+                try {
+                    number = Double.valueOf(literal.toString());
+                } catch (NumberFormatException e2) {
+                    return null;
+                }
+            }
+        } else {
+            return null;
+        }
+        Number converted = (Number) Converters.convert(literal, binding);
+        if (converted == null || !sameValue(converted, number)) {
+            return null;
+        }
+        return number;
+    }
+
+    static boolean sameValue(Number n1, Number n2) {
+        double d1 = n1.doubleValue();
+        double d2 = n2.doubleValue();
+        if (Double.isNaN(d1) || Double.isNaN(d2)) {
+            return Double.isNaN(d1) && Double.isNaN(d2);
+        }
+        if (d1 == n1.longValue() && d2 == n2.longValue()) {
+            return n1.longValue() == n2.longValue();
+        }
+        return d1 == d2;
+    }
+
+    /**
+     * Returns the literal as aligned by the ordering comparisons to an attribute of the given
+     * numeric binding, placed on their left side, or null if they would not compare as numbers
+     */
+    public static Number getComparisonValue(Object literal, Class<?> binding) {
+        if (literal == null) {
+            return null;
+        }
+        Object aligned = literal;
+        if (literal.getClass() != binding) {
+            Hints hints = new Hints(ConverterFactory.SAFE_CONVERSION, Boolean.TRUE);
+            aligned = Converters.convert(literal, binding, hints);
+        }
+        return aligned instanceof Number ? (Number) aligned : null;
+    }
+
+    /**
+     * Returns the boundary as converted by {@link IsBetweenImpl} for an attribute of the given
+     * numeric binding, or null if the conversion fails
+     */
+    public static Number getBetweenValue(Object boundary, Class<?> binding) {
+        if (boundary == null) {
+            return null;
+        }
+        return (Number) Converters.convert(boundary, binding);
+    }
+
+    static Object getLiteralValue(Expression expression) {
+        if (expression instanceof Literal) {
+            return ((Literal) expression).getValue();
+        }
+        return null;
+    }
+
+    Evaluator compile(Filter filter) {
+        if (filter instanceof IncludeFilter) {
+            return new ConstantEvaluator(true);
+        } else if (filter instanceof ExcludeFilter) {
+            return new ConstantEvaluator(false);
+        } else if (filter instanceof And) {
+            return new AndEvaluator(compile(((And) filter).getChildren()));
+        } else if (filter instanceof Or) {
+            return new OrEvaluator(compile(((Or) filter).getChildren()));
+        } else if (filter instanceof Not) {
+            return new NotEvaluator(compile(((Not) filter).getFilter()));
+        }
+
+        // only the default implementations, whose semantics is replicated here
+        Class<?> type = filter.getClass();
+        Evaluator evaluator = null;
+        if (type == IsEqualsToImpl.class || type == IsNotEqualToImpl.class) {
+            evaluator = compileStringEquals((BinaryComparisonOperator) filter,
+                    type == IsNotEqualToImpl.class);
+        } else if (type == IsNullImpl.class) {
+            int index = getAttributeIndex(((IsNullImpl) filter).getExpression(), schema);
+            if (index >= 0) {
+                evaluator = new IsNullEvaluator(filter, index);
+            }
+        } else if (type == BBOXImpl.class) {
+            BBOXPredicate predicate = BBOXPredicate.create((BBOXImpl) filter, schema);
+            if (predicate != null) {
+                evaluator = new BBOXEvaluator(filter, predicate);
+            }
+        }
+        if (evaluator == null) {
+            NumericPredicate predicate = NumericPredicate.create(filter, schema);
+            if (predicate != null) {
+                evaluator = new NumericEvaluator(filter, predicate);
+            }
+        }
+        if (evaluator == null) {
+            evaluator = new FallbackEvaluator(index(filter));
+        }
+        return evaluator;
+    }
+
+    /**
+     * Returns a copy of the filter whose property names are resolved to attribute indexes, or the
+     * filter itself if there are none to resolve
+     */
+    Filter index(Filter filter) {
+        PropertyIndexingVisitor visitor = new PropertyIndexingVisitor(schema);
+        Filter indexed = (Filter) filter.accept(visitor, null);
+        return visitor.indexed > 0 ? indexed : filter;
+    }
+
+    Evaluator[] compile(List<Filter> filters) {
+        Evaluator[] evaluators = new Evaluator[filters.size()];
+        for (int i = 0; i < evaluators.length; i++) {
+            evaluators[i] = compile(filters.get(i));
+        }
+        return evaluators;
+    }
+
+    Evaluator compileStringEquals(BinaryComparisonOperator filter, boolean negate) {
+        int index = getAttributeIndex(filter.getExpression1(), schema);
+        Object literal = getLiteralValue(filter.getExpression2());
+        if (index < 0) {
+            index = getAttributeIndex(filter.getExpression2(), schema);
+            literal = getLiteralValue(filter.getExpression1());
+        }
+        if (index < 0 || !(literal instanceof String)
+                || schema.getDescriptor(index).getType().getBinding() != String.class) {
+            return null;
+        }
+        return new StringEqualsEvaluator(filter, index, (String) literal,
+                filter.isMatchingCase(), negate);
+    }
+
+    /**
+     * Replaces the property names referring to attributes of the schema with
+     * {@link IndexedPropertyName}
+     */
+    static class PropertyIndexingVisitor extends DuplicatingFilterVisitor {
+
+        SimpleFeatureType schema;
+
+        int indexed;
+
+        PropertyIndexingVisitor(SimpleFeatureType schema) {
+            this.schema = schema;
+        }
+
+        @Override
+        public Object visit(PropertyName expression, Object extraData) {
+            if (expression instanceof IndexedPropertyName) {
+                return expression;
+            }
+            int index = getAttributeIndex(expression, schema);
+            if (index < 0) {
+                return super.visit(expression, extraData);
+            }
+            indexed++;
+            return new IndexedPropertyName(expression, schema, index);
+        }
+    }
+
+    /**
+     * Evaluates a compiled filter, or part of it, against a feature of the compiled type
+     */
+    static abstract class Evaluator {
+
+        abstract boolean evaluate(SimpleFeature feature);
+    }
+
+    static class ConstantEvaluator extends Evaluator {
+
+        boolean value;
+
+        ConstantEvaluator(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean evaluate(SimpleFeature feature) {
+            return value;
+        }
+    }
+
+    static class AndEvaluator extends Evaluator {
+
+        Evaluator[] children;
+
+        AndEvaluator(Evaluator[] children) {
+            this.children = children;
+        }
+
+        @Override
+        boolean evaluate(SimpleFeature feature) {
+            for (Evaluator child : children) {
+                if (!child.evaluate(feature)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static class OrEvaluator extends AndEvaluator {
+
+        OrEvaluator(Evaluator[] children) {
+            super(children);
+        }
+
+        @Override
+        boolean evaluate(SimpleFeature feature) {
+            for (Evaluator child : children) {
+                if (child.evaluate(feature)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static class NotEvaluator extends Evaluator {
+
+        Evaluator child;
+
+        NotEvaluator(Evaluator child) {
+            this.child = child;
+        }
+
+        @Override
+        boolean evaluate(SimpleFeature feature) {
+            return !child.evaluate(feature);
+        }
+    }
+
+    /**
+     * Delegates to the interpreted filter
+     */
+    static class FallbackEvaluator extends Evaluator {
+
+        Filter filter;
+
+        FallbackEvaluator(Filter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        boolean evaluate(SimpleFeature feature) {
+            return filter.evaluate(feature);
+        }
+    }
+
+    static class IsNullEvaluator extends FallbackEvaluator {
+
+        int index;
+
+        IsNullEvaluator(Filter filter, int index) {
+            super(filter);
+            this.index = index;
+        }
+
+        @Override
+        boolean evaluate(SimpleFeature feature) {
+            return feature.getAttribute(index) == null;
+        }
+    }
+
+    /**
+     * Mirrors {@link IsEqualsToImpl} for strings: equal, or equal ignoring case if the filter
+     * does not match case
+     */
+    static class StringEqualsEvaluator extends FallbackEvaluator {
+
+        int index;
+
+        String value;
+
+        boolean matchCase;
+
+        boolean negate;
+
+        StringEqualsEvaluator(Filter filter, int index, String value, boolean matchCase,
+                boolean negate) {
+            super(filter);
+            this.index = index;
+            this.value = value;
+            this.matchCase = matchCase;
+            this.negate = negate;
+        }
+
+        @Override
+        boolean evaluate(SimpleFeature feature) {
+            Object v = feature.getAttribute(index);
+            if (v == null) {
+                return negate;
+            } else if (!(v instanceof String)) {
+                return super.evaluate(feature);
+            }
+            String s = (String) v;
+            boolean equal = s.equals(value) || (!matchCase && s.equalsIgnoreCase(value));
+            return equal != negate;
+        }
+    }
+
+    /**
+     * Evaluates a {@link NumericPredicate}, falls back on the interpreted filter if the value is
+     * not of the declared type
+     */
+    static class NumericEvaluator extends FallbackEvaluator {
+
+        NumericPredicate predicate;
+
+        NumericEvaluator(Filter filter, NumericPredicate predicate) {
+            super(filter);
+            this.predicate = predicate;
+        }
+
+        @Override
+        boolean evaluate(SimpleFeature feature) {
+            Object v = feature.getAttribute(predicate.index);
+            if (v == null) {
+                return predicate.matchesNull();
+            } else if (v.getClass() != predicate.binding) {
+                return super.evaluate(feature);
+            }
+            return predicate.matches((Number) v);
+        }
+    }
+
+    /**
+     * Decides from the envelope the geometries fully inside or outside the box, uses the
+     * interpreted filter for the others
+     */
+    static class BBOXEvaluator extends FallbackEvaluator {
+
+        BBOXPredicate predicate;
+
+        BBOXEvaluator(Filter filter, BBOXPredicate predicate) {
+            super(filter);
+            this.predicate = predicate;
+        }
+
+        @Override
+        boolean evaluate(SimpleFeature feature) {
+            Object v = feature.getAttribute(predicate.index);
+            if (v != null && !(v instanceof Geometry)) {
+                return super.evaluate(feature);
+            }
+            switch (predicate.classify((Geometry) v)) {
+            case BBOXPredicate.INSIDE:
+                return true;
+            case BBOXPredicate.OUTSIDE:
+                return false;
+            default:
+                return super.evaluate(feature);
+            }
+        }
+    }
+}
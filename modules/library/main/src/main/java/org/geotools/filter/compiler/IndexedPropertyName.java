@@ -0,0 +1,99 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.filter.compiler;
+
+import org.geotools.util.Converters;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.expression.ExpressionVisitor;
+import org.opengis.filter.expression.PropertyName;
+import org.xml.sax.helpers.NamespaceSupport;
+
+/**
+ * A property name resolved to an attribute index of a known feature type. Reads the attribute
+ * by index from features of that type, delegates to the original property name for anything else.
+ */
+class IndexedPropertyName implements PropertyName {
+
+    PropertyName original;
+
+    SimpleFeatureType schema;
+
+    int index;
+
+    IndexedPropertyName(PropertyName original, SimpleFeatureType schema, int index) {
+        this.original = original;
+        this.schema = schema;
+        this.index = index;
+    }
+
+    @Override
+    public String getPropertyName() {
+        return original.getPropertyName();
+    }
+
+    @Override
+    public NamespaceSupport getNamespaceContext() {
+        return original.getNamespaceContext();
+    }
+
+    @Override
+    public Object evaluate(Object object) {
+        if (object instanceof SimpleFeature
+                && ((SimpleFeature) object).getFeatureType() == schema) {
+            return ((SimpleFeature) object).getAttribute(index);
+        }
+        return original.evaluate(object);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T evaluate(Object object, Class<T> context) {
+        if (object instanceof SimpleFeature
+                && ((SimpleFeature) object).getFeatureType() == schema) {
+            Object value = ((SimpleFeature) object).getAttribute(index);
+            if (context == null) {
+                return (T) value;
+            }
+            return Converters.convert(value, context);
+        }
+        return original.evaluate(object, context);
+    }
+
+    @Override
+    public Object accept(ExpressionVisitor visitor, Object extraData) {
+        return visitor.visit(this, extraData);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof IndexedPropertyName) {
+            return original.equals(((IndexedPropertyName) obj).original);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return original.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return original.toString();
+    }
+}
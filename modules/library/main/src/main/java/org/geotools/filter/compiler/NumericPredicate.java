@@ -0,0 +1,301 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.filter.compiler;
+
+import org.geotools.filter.IsBetweenImpl;
+import org.geotools.filter.IsEqualsToImpl;
+import org.geotools.filter.IsGreaterThanImpl;
+import org.geotools.filter.IsGreaterThanOrEqualToImpl;
+import org.geotools.filter.IsLessThenImpl;
+import org.geotools.filter.IsLessThenOrEqualToImpl;
+import org.geotools.filter.IsNotEqualToImpl;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.Filter;
+
+/**
+ * A comparison between a numeric attribute and literals, reduced to a test on the primitive
+ * value of the attribute. The outcome is the same as the one of the default filter
+ * implementation, as long as the attribute value is of the class declared in the schema.
+ * <p>
+ * Used both by the compiled filters, one feature at a time, and by the batch filters, looping
+ * over columns of primitive values.
+ */
+public abstract class NumericPredicate {
+
+    int index;
+
+    Class<?> binding;
+
+    boolean floating;
+
+    NumericPredicate(int index, Class<?> binding) {
+        this.index = index;
+        this.binding = binding;
+        this.floating = binding == Double.class || binding == Float.class;
+    }
+
+    /**
+     * Builds the predicate equivalent to the filter, or returns null if the filter cannot be
+     * reduced to a numeric test against the given feature type
+     */
+    public static NumericPredicate create(Filter filter, SimpleFeatureType schema) {
+        Class<?> type = filter.getClass();
+        if (type == IsEqualsToImpl.class || type == IsNotEqualToImpl.class) {
+            return createEquals((BinaryComparisonOperator) filter, schema,
+                    type == IsNotEqualToImpl.class);
+        } else if (type == IsLessThenImpl.class || type == IsLessThenOrEqualToImpl.class
+                || type == IsGreaterThanImpl.class || type == IsGreaterThanOrEqualToImpl.class) {
+            return createComparison((BinaryComparisonOperator) filter, schema);
+        } else if (type == IsBetweenImpl.class) {
+            return createBetween((IsBetweenImpl) filter, schema);
+        }
+        return null;
+    }
+
+    /**
+     * Mirrors {@link IsEqualsToImpl}: with a literal that converts to the attribute type without
+     * losing information, equality boils down to a numeric one
+     */
+    static NumericPredicate createEquals(BinaryComparisonOperator filter,
+            SimpleFeatureType schema, boolean negate) {
+        int index = FilterCompiler.getAttributeIndex(filter.getExpression1(), schema);
+        Object literal = FilterCompiler.getLiteralValue(filter.getExpression2());
+        if (index < 0) {
+            index = FilterCompiler.getAttributeIndex(filter.getExpression2(), schema);
+            literal = FilterCompiler.getLiteralValue(filter.getExpression1());
+        }
+        Class<?> binding = FilterCompiler.getNumericBinding(schema, index);
+        if (binding == null || literal == null) {
+            return null;
+        }
+        Number value = FilterCompiler.getEqualityValue(literal, binding);
+        if (value == null) {
+            return null;
+        }
+        return new Equals(index, binding, value, negate);
+    }
+
+    /**
+     * Mirrors the ordering comparisons: when the attribute value and the literal are aligned to
+     * the same numeric type they get compared as doubles. Only handles the attribute on the left
+     * side, the alignment is not symmetric
+     */
+    static NumericPredicate createComparison(BinaryComparisonOperator filter,
+            SimpleFeatureType schema) {
+        int index = FilterCompiler.getAttributeIndex(filter.getExpression1(), schema);
+        Class<?> binding = FilterCompiler.getNumericBinding(schema, index);
+        if (binding == null) {
+            return null;
+        }
+        Number value = FilterCompiler.getComparisonValue(
+                FilterCompiler.getLiteralValue(filter.getExpression2()), binding);
+        if (value == null) {
+            return null;
+        }
+
+        Class<?> type = filter.getClass();
+        int operator;
+        if (type == IsLessThenImpl.class) {
+            operator = Comparison.LESS;
+        } else if (type == IsLessThenOrEqualToImpl.class) {
+            operator = Comparison.LESS_EQUAL;
+        } else if (type == IsGreaterThanImpl.class) {
+            operator = Comparison.GREATER;
+        } else {
+            operator = Comparison.GREATER_EQUAL;
+        }
+        return new Comparison(index, binding, value.doubleValue(), operator);
+    }
+
+    /**
+     * Mirrors {@link IsBetweenImpl} when both boundaries can be converted to the attribute type,
+     * in that case the comparison follows the natural ordering of the attribute type
+     */
+    static NumericPredicate createBetween(IsBetweenImpl filter, SimpleFeatureType schema) {
+        int index = FilterCompiler.getAttributeIndex(filter.getExpression(), schema);
+        Class<?> binding = FilterCompiler.getNumericBinding(schema, index);
+        if (binding == null) {
+            return null;
+        }
+        Number lower = FilterCompiler.getBetweenValue(
+                FilterCompiler.getLiteralValue(filter.getLowerBoundary()), binding);
+        Number upper = FilterCompiler.getBetweenValue(
+                FilterCompiler.getLiteralValue(filter.getUpperBoundary()), binding);
+        if (lower == null || upper == null) {
+            return null;
+        }
+        return new Between(index, binding, lower, upper);
+    }
+
+    /**
+     * The index of the attribute tested
+     */
+    public int getAttributeIndex() {
+        return index;
+    }
+
+    /**
+     * The binding of the attribute tested, the predicate applies only to values of this exact
+     * class
+     */
+    public Class<?> getBinding() {
+        return binding;
+    }
+
+    /**
+     * Tests an attribute value of the binding class
+     */
+    public boolean matches(Number value) {
+        return floating ? matches(value.doubleValue()) : matches(value.longValue());
+    }
+
+    /**
+     * Tests the value of an integral attribute (byte, short, integer or long)
+     */
+    public abstract boolean matches(long value);
+
+    /**
+     * Tests the value of a floating point attribute (float or double)
+     */
+    public abstract boolean matches(double value);
+
+    /**
+     * The outcome for a null attribute value
+     */
+    public abstract boolean matchesNull();
+
+    static class Equals extends NumericPredicate {
+
+        boolean negate;
+
+        boolean integral;
+
+        long longValue;
+
+        double doubleValue;
+
+        Equals(int index, Class<?> binding, Number value, boolean negate) {
+            super(index, binding);
+            this.negate = negate;
+            this.longValue = value.longValue();
+            this.doubleValue = value.doubleValue();
+            this.integral = doubleValue == longValue;
+        }
+
+        @Override
+        public boolean matches(long value) {
+            boolean equal = integral ? value == longValue : value == doubleValue;
+            return equal != negate;
+        }
+
+        @Override
+        public boolean matches(double value) {
+            boolean equal = value == doubleValue
+                    || (Double.isNaN(value) && Double.isNaN(doubleValue));
+            return equal != negate;
+        }
+
+        @Override
+        public boolean matchesNull() {
+            return negate;
+        }
+    }
+
+    static class Comparison extends NumericPredicate {
+
+        static final int LESS = 0;
+
+        static final int LESS_EQUAL = 1;
+
+        static final int GREATER = 2;
+
+        static final int GREATER_EQUAL = 3;
+
+        double value;
+
+        int operator;
+
+        Comparison(int index, Class<?> binding, double value, int operator) {
+            super(index, binding);
+            this.value = value;
+            this.operator = operator;
+        }
+
+        @Override
+        public boolean matches(long value) {
+            return matches((double) value);
+        }
+
+        @Override
+        public boolean matches(double left) {
+            // same as CompareFilterImpl.compare for numbers, NaN compares as smaller
+            int compare = left > value ? 1 : (left == value ? 0 : -1);
+            switch (operator) {
+            case LESS:
+                return compare < 0;
+            case LESS_EQUAL:
+                return compare <= 0;
+            case GREATER:
+                return compare > 0;
+            default:
+                return compare >= 0;
+            }
+        }
+
+        @Override
+        public boolean matchesNull() {
+            return false;
+        }
+    }
+
+    static class Between extends NumericPredicate {
+
+        long lowerLong;
+
+        long upperLong;
+
+        double lowerDouble;
+
+        double upperDouble;
+
+        Between(int index, Class<?> binding, Number lower, Number upper) {
+            super(index, binding);
+            this.lowerLong = lower.longValue();
+            this.upperLong = upper.longValue();
+            this.lowerDouble = lower.doubleValue();
+            this.upperDouble = upper.doubleValue();
+        }
+
+        @Override
+        public boolean matches(long value) {
+            return lowerLong <= value && value <= upperLong;
+        }
+
+        @Override
+        public boolean matches(double value) {
+            // natural ordering of Double/Float, as used by Comparable.compareTo
+            return Double.compare(lowerDouble, value) <= 0
+                    && Double.compare(upperDouble, value) >= 0;
+        }
+
+        @Override
+        public boolean matchesNull() {
+            return false;
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.geotools.geometry.jts;
 
 
+import java.awt.geom.AffineTransform;
 import java.awt.geom.PathIterator;
 import java.util.logging.Logger;
 
@@ -35,6 +36,9 @@ public abstract class AbstractLiteIterator implements PathIterator {
 	/** The logger for the rendering module. */
 	private static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.rendering");
 
+	/** Shared identity transform, used when no transform is provided (never modified) */
+	protected static final AffineTransform NO_TRANSFORM = new AffineTransform();
+
 	protected double[] dcoords = new double[2];
 
 	/**
@@ -27,6 +27,7 @@ import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.LinearRing;
 import com.vividsolutions.jts.geom.MultiPoint;
@@ -66,6 +67,18 @@ public final class Decimator {
     
     private static final double EPS = 1e-9; 
 
+    /**
+     * Largest buffer kept around by {@link #getScratchBuffer(int)}, 2MB worth of doubles
+     */
+    static final int MAX_SCRATCH_LENGTH = 1 << 18;
+
+    private static final ThreadLocal<double[]> SCRATCH = new ThreadLocal<double[]>();
+
+    private static final double[] EMPTY = new double[0];
+
+    private static final GeometryFactory LITE_FACTORY = new GeometryFactory(
+            new LiteCoordinateSequenceFactory());
+
 	private double spanx = -1;
 
 	private double spany = -1;
@@ -230,6 +243,30 @@ public final class Decimator {
 
     public final Geometry decimateTransformGeneralize(Geometry geometry,
 			MathTransform transform) throws TransformException {
+        return decimateTransformGeneralize(geometry, transform, false);
+    }
+
+    /**
+     * Same as {@link #decimateTransformGeneralize(Geometry, MathTransform)}, but leaves the
+     * source geometry untouched and returns a new one, based on {@link LiteCoordinateSequence}.
+     * <p>
+     * Use this method instead of cloning the geometry and then decimating it in place: the
+     * source coordinates are staged in a per thread buffer, so the only array allocated for each
+     * sequence is the one holding the final, generalized and transformed, coordinates.
+     * </p>
+     * 
+     * @param geometry
+     * @param transform
+     * @return
+     * @throws TransformException
+     */
+    public final Geometry decimateTransformGeneralizeCopy(Geometry geometry,
+            MathTransform transform) throws TransformException {
+        return decimateTransformGeneralize(geometry, transform, true);
+    }
+
+    private Geometry decimateTransformGeneralize(Geometry geometry,
+            MathTransform transform, boolean copy) throws TransformException {
 		if (geometry instanceof GeometryCollection) {
 			GeometryCollection collection = (GeometryCollection) geometry;
 			final int length = collection.getNumGeometries();
@@ -239,7 +276,7 @@ public final class Decimator {
 			for (int i = 0; i < length; i++) {
 				Geometry source = collection.getGeometryN(i);
                 Geometry generalized = decimateTransformGeneralize(source,
-						transform);
+						transform, copy);
                 
                 // lazily handle the case where we need to deep clone
                 if(generalized != source) {
@@ -259,25 +296,34 @@ public final class Decimator {
                 }
 			}
 			if(cloned) {
+			    GeometryFactory factory = copy ? LITE_FACTORY : collection.getFactory();
 			    if(elementType == Point.class) {
 			        Point[] points = new Point[elements.length];
 			        System.arraycopy(elements, 0, points, 0, elements.length);
-                    return collection.getFactory().createMultiPoint(points);
+                    return factory.createMultiPoint(points);
                 } else if (elementType == LineString.class) {
                     LineString[] lines = new LineString[elements.length];
                     System.arraycopy(elements, 0, lines, 0, elements.length);
-                    return collection.getFactory().createMultiLineString(lines);
+                    return factory.createMultiLineString(lines);
                 } else if (elementType == Polygon.class) {
                     Polygon[] polys = new Polygon[elements.length];
                     System.arraycopy(elements, 0, polys, 0, elements.length);
-                    return collection.getFactory().createMultiPolygon(polys);
+                    return factory.createMultiPolygon(polys);
                 } else {
-                    return collection.getFactory().createGeometryCollection(elements);
+                    return factory.createGeometryCollection(elements);
 			    }
 			} else {
 			    return collection;
 			}
 		} else if (geometry instanceof Point) {
+		    if (copy) {
+		        LiteCoordinateSequence seq = new LiteCoordinateSequence(EMPTY);
+		        Point point = LITE_FACTORY.createPoint(seq);
+		        seq.setArray(copyTransformGeneralize(((Point) geometry).getCoordinateSequence(),
+		                transform, false, spanx, spany), 2);
+		        point.geometryChanged();
+		        return point;
+		    }
 			LiteCoordinateSequence seq = (LiteCoordinateSequence) ((Point) geometry)
 					.getCoordinateSequence();
             decimateTransformGeneralize(seq, transform, false, spanx, spany);
@@ -285,14 +331,14 @@ public final class Decimator {
 		} else if (geometry instanceof Polygon) {
 			Polygon polygon = (Polygon) geometry;
             LinearRing shell = (LinearRing) decimateTransformGeneralize(polygon.getExteriorRing(),
-                    transform);
+                    transform, copy);
             boolean cloned = shell != polygon.getExteriorRing();
             final int length = polygon.getNumInteriorRing();
             LinearRing[] holes = cloned ? new LinearRing[length] : null;
 			for (int i = 0; i < length; i++) {
                 LineString hole = polygon.getInteriorRingN(i);
                 LinearRing generalized = (LinearRing) decimateTransformGeneralize(hole,
-						transform);
+						transform, copy);
                 cloned |= generalized != hole;
                 if (cloned) {
                     if (holes == null) {
@@ -306,7 +352,8 @@ public final class Decimator {
             }
 
             if (cloned) {
-                return polygon.getFactory().createPolygon(shell, holes);
+                GeometryFactory factory = copy ? LITE_FACTORY : polygon.getFactory();
+                return factory.createPolygon(shell, holes);
             } else {
                 return polygon;
 			}
@@ -322,23 +369,33 @@ public final class Decimator {
                 spany = -1;
             }
             CoordinateSequence originalSequence = ls.getCoordinateSequence();
-            LiteCoordinateSequence seq = LiteCoordinateSequenceFactory.lite(originalSequence);
             boolean loop = ls instanceof LinearRing;
-            if (!loop && seq.size() > 1) {
-                double x0 = seq.getOrdinate(0, 0);
-                double y0 = seq.getOrdinate(0, 1);
-                double x1 = seq.getOrdinate(seq.size() - 1, 0);
-                double y1 = seq.getOrdinate(seq.size() - 1, 1);
+            if (!loop && originalSequence.size() > 1) {
+                double x0 = originalSequence.getOrdinate(0, 0);
+                double y0 = originalSequence.getOrdinate(0, 1);
+                double x1 = originalSequence.getOrdinate(originalSequence.size() - 1, 0);
+                double y1 = originalSequence.getOrdinate(originalSequence.size() - 1, 1);
                 loop = Math.abs(x0 - x1) < EPS && Math.abs(y0 - y1) < EPS;
             }
-            decimateTransformGeneralize(seq, transform, loop, spanx, spany);
-            if(seq != originalSequence) {
+            if (copy || !(originalSequence instanceof LiteCoordinateSequence)) {
+                // the geometry is built around an empty sequence that gets filled afterwards,
+                // as decimation might turn a ring into an invalid one, same as it happens when
+                // working in place
+                GeometryFactory factory = copy ? LITE_FACTORY : ls.getFactory();
+                LiteCoordinateSequence seq = new LiteCoordinateSequence(EMPTY);
+                LineString result;
                 if(loop) {
-                    ls = ls.getFactory().createLinearRing(seq);
+                    result = factory.createLinearRing(seq);
                 } else {
-                    ls = ls.getFactory().createLineString(seq);
+                    result = factory.createLineString(seq);
                 }
+                seq.setArray(copyTransformGeneralize(originalSequence, transform, loop, spanx,
+                        spany), 2);
+                result.geometryChanged();
+                return result;
             }
+            LiteCoordinateSequence seq = (LiteCoordinateSequence) originalSequence;
+            decimateTransformGeneralize(seq, transform, loop, spanx, spany);
             return ls;
         } else {
             return geometry;
@@ -450,9 +507,9 @@ public final class Decimator {
 	}
 
 	/**
-	 * 1. remove any points that are within the spanx,spany. We ALWAYS keep 1st
-	 * and last point 2. transform to screen coordinates 3. remove any points
-	 * that are close (span <1)
+	 * Decimates, transforms and generalizes the sequence in place, the coordinates are
+	 * staged in the thread local buffer only if the sequence dimension does not match the
+	 * transform one
 	 * 
 	 * @param seq
 	 * @param tranform
@@ -460,48 +517,86 @@ public final class Decimator {
 	private final void decimateTransformGeneralize(LiteCoordinateSequence seq,
             MathTransform transform, boolean ring, double spanx, double spany)
             throws TransformException {
-		// decimates before XFORM
 		int ncoords = seq.size();
-		double coords[] = null;
-		int sourceDimensions = 2;
-        if(transform != null) {
-            sourceDimensions = transform.getSourceDimensions();
-		    coords = seq.getOrdinateArray(sourceDimensions);
+		int dimensions = transform != null ? transform.getSourceDimensions() : 2;
+		boolean owned = seq.getDimension() == dimensions;
+		double[] coords;
+		if (owned) {
+		    coords = seq.getArray();
 		} else {
-		    coords = seq.getXYArray();
+		    coords = stageOrdinates(seq, ncoords, dimensions);
 		}
 
+		double[] result = decimateTransformGeneralize(coords, ncoords, dimensions, owned,
+		        transform, ring, spanx, spany);
+		if (result != null) {
+		    seq.setArray(result, 2);
+		}
+	}
+
+	/**
+	 * Decimates, transforms and generalizes the sequence without modifying it, the source
+	 * coordinates are staged in the thread local buffer
+	 * 
+	 * @return the packed xy coordinates of the result
+	 */
+	private double[] copyTransformGeneralize(CoordinateSequence cs, MathTransform transform,
+	        boolean ring, double spanx, double spany) throws TransformException {
+	    int ncoords = cs.size();
+	    int dimensions = transform != null ? transform.getSourceDimensions() : 2;
+	    double[] coords = stageOrdinates(cs, ncoords, dimensions);
+	    double[] result = decimateTransformGeneralize(coords, ncoords, dimensions, false,
+	            transform, ring, spanx, spany);
+	    if (result == null) {
+	        result = packXY(coords, ncoords, dimensions);
+	    }
+	    return result;
+	}
+
+	/**
+	 * 1. remove any points that are within the spanx,spany. We ALWAYS keep 1st
+	 * and last point 2. transform to screen coordinates 3. remove any points
+	 * that are close (span <1)
+	 * 
+	 * @param coords the packed source coordinates, they will be modified 
+	 * @param ncoords the number of coordinates in the array
+	 * @param dimensions the number of ordinates per coordinate
+	 * @param owned if true the coordinates array can be returned as the result
+	 * @return the packed xy coordinates, or null if the source did not need any change 
+	 */
+	private double[] decimateTransformGeneralize(double[] coords, int ncoords, int dimensions,
+	        boolean owned, MathTransform transform, boolean ring, double spanx, double spany)
+	        throws TransformException {
+	    boolean inPlace = owned && dimensions == 2
+	            && (transform == null || transform.getTargetDimensions() == 2);
+	    
 		if (ncoords < 2) {
-			if (ncoords == 1) // 1 coordinate -- just xform it
+			if (ncoords == 1 && transform != null) // 1 coordinate -- just xform it
 			{
-				// double[] newCoordsXformed2 = new double[2];
-			    if(transform != null) {
+			    if(inPlace) {
 			        transform.transform(coords, 0, coords, 0, 1);
-			        if(sourceDimensions > 2) {
-			            double[] flatCoords = new double[seq.size() * 2];
-			            for (int i = 0; i < seq.size(); i ++) {
-                            flatCoords[i * 2] = coords[i * sourceDimensions];
-                            flatCoords[i * 2 + 1] = coords[i * sourceDimensions + 1];
-                        }
-			            seq.setArray(flatCoords, 2);
-			        } else {
-			            seq.setArray(coords, 2);
-			        }
+			        return coords;
+			    } else {
+			        return transformToXY(transform, coords, 1);
 			    }
-				return;
-			} else
-				return; // ncoords =0
+			}
+			return null;
 		}
 		
 		// if spanx/spany is -1, then no generalization should be done and all
-        // coordinates can just be transformed directly
-        if (spanx == -1 && spany == -1) {
+        // coordinates can just be transformed directly. The generalization code
+        // also works only against 2D coordinates
+        if ((spanx == -1 && spany == -1) || dimensions != 2) {
             // do the xform if needed
             if ((transform != null) && (!transform.isIdentity())) {
-                transform.transform(coords, 0, coords, 0, ncoords);
-                seq.setArray(coords, 2);
+                if (inPlace) {
+                    transform.transform(coords, 0, coords, 0, ncoords);
+                    return coords;
+                } else {
+                    return transformToXY(transform, coords, ncoords);
+                }
             }
-            return;
+            return null;
         }
 
         // generalize, use the heavier algorithm for longer lines
@@ -512,14 +607,14 @@ public final class Decimator {
 		
 		// handle rings
 		if(ring && actualCoords <= 3) {
-		    if(coords.length > 6) {
+		    if(ncoords > 3) {
 		        // normal rings
     			coords[2] = coords[2];
     			coords[3] = coords[3];
     			coords[4] = coords[4];
     			coords[5] = coords[5];
     			actualCoords = 3;
-		    } else if(coords.length > 4){
+		    } else if(ncoords > 2){
 		        // invalid rings, they do A-B-A, that is, two overlapping lines
 		        coords[2] = coords[2];
                 coords[3] = coords[3];
@@ -532,23 +627,102 @@ public final class Decimator {
 		coords[actualCoords * 2 + 1] = coords[(ncoords - 1) * 2 + 1];
 		actualCoords++;
 
-		// DO THE XFORM
-		if ((transform == null) || (transform.isIdentity())) {
-		    // no actual xform
-		} else {
-		    transform.transform(coords, 0, coords, 0, actualCoords);
-		}
-
-		// stick back into the coordinate sequence
-		if(actualCoords * 2 < coords.length) {
-		    double[] seqDouble = new double[2 * actualCoords];
-		    System.arraycopy(coords, 0, seqDouble, 0, actualCoords * 2);
-		    seq.setArray(seqDouble, 2);
+		// DO THE XFORM and stick back into the coordinate sequence, the only allocation
+		// is the array sized after the generalized coordinates
+		boolean transforming = transform != null && !transform.isIdentity();
+		if (inPlace && actualCoords == ncoords) {
+		    if (transforming) {
+		        transform.transform(coords, 0, coords, 0, actualCoords);
+		    }
+		    return coords;
+		} else if (transforming) {
+		    return transformToXY(transform, coords, actualCoords);
 		} else {
-		    seq.setArray(coords, 2);
+		    return packXY(coords, actualCoords, 2);
 		}
 	}
 
+    /**
+     * Returns a buffer of at least the specified length, reused across calls made in the
+     * same thread (the contents are not cleared)
+     */
+    static double[] getScratchBuffer(int length) {
+        double[] buffer = SCRATCH.get();
+        if (buffer == null || buffer.length < length) {
+            if (length > MAX_SCRATCH_LENGTH) {
+                // not worth keeping around
+                return new double[length];
+            }
+            int size = buffer == null ? 1024 : buffer.length * 2;
+            buffer = new double[Math.min(Math.max(size, length), MAX_SCRATCH_LENGTH)];
+            SCRATCH.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Copies the ordinates of the sequence in the thread local buffer, packing them with the
+     * specified number of dimensions. Missing ordinates are set to zero.
+     */
+    private static double[] stageOrdinates(CoordinateSequence cs, int ncoords, int dimensions) {
+        double[] coords = getScratchBuffer(ncoords * dimensions);
+        if (cs instanceof LiteCoordinateSequence
+                && ((LiteCoordinateSequence) cs).getDimension() == dimensions) {
+            System.arraycopy(((LiteCoordinateSequence) cs).getArray(), 0, coords, 0, ncoords
+                    * dimensions);
+        } else if (dimensions == 2) {
+            for (int i = 0, j = 0; i < ncoords; i++, j += 2) {
+                coords[j] = cs.getX(i);
+                coords[j + 1] = cs.getY(i);
+            }
+        } else {
+            int minDimensions = Math.min(dimensions, cs.getDimension());
+            for (int i = 0; i < ncoords; i++) {
+                int base = i * dimensions;
+                for (int d = 0; d < minDimensions; d++) {
+                    coords[base + d] = cs.getOrdinate(i, d);
+                }
+                for (int d = minDimensions; d < dimensions; d++) {
+                    coords[base + d] = 0;
+                }
+            }
+        }
+        return coords;
+    }
+
+    /**
+     * Transforms the packed coordinates into a new array of xy coordinates
+     */
+    private static double[] transformToXY(MathTransform transform, double[] coords, int ncoords)
+            throws TransformException {
+        int targetDimensions = transform.getTargetDimensions();
+        if (targetDimensions == 2) {
+            double[] result = new double[ncoords * 2];
+            transform.transform(coords, 0, result, 0, ncoords);
+            return result;
+        } else {
+            double[] transformed = new double[ncoords * targetDimensions];
+            transform.transform(coords, 0, transformed, 0, ncoords);
+            return packXY(transformed, ncoords, targetDimensions);
+        }
+    }
+
+    /**
+     * Copies the xy ordinates of the packed coordinates in a new array
+     */
+    private static double[] packXY(double[] coords, int ncoords, int dimensions) {
+        double[] result = new double[ncoords * 2];
+        if (dimensions == 2) {
+            System.arraycopy(coords, 0, result, 0, ncoords * 2);
+        } else {
+            for (int i = 0; i < ncoords; i++) {
+                result[i * 2] = coords[i * dimensions];
+                result[i * 2 + 1] = coords[i * dimensions + 1];
+            }
+        }
+        return result;
+    }
+
     private int spanBasedGeneralize(int ncoords, double[] coords, double spanx, double spany) {
         int actualCoords = 1;
 		double lastX = coords[0];
@@ -75,7 +75,7 @@ public final class GeomCollectionIterator extends AbstractLiteIterator {
 	 */
 	public void init(GeometryCollection gc, AffineTransform at, boolean generalize, double maxDistance) {
         this.gc = gc;
-        this.at = at==null?new AffineTransform():at;
+        this.at = at==null?NO_TRANSFORM:at;
         this.generalize = generalize;
         this.maxDistance = maxDistance;
         currentGeom = 0;
@@ -76,8 +76,6 @@ public final class LineIterator extends AbstractLiteIterator {
 
 	private int coordinateCount;
 
-	private static final AffineTransform NO_TRANSFORM = new AffineTransform();
-
 	/**
 	 * 
 	 */
@@ -146,7 +144,7 @@ public final class LineIterator extends AbstractLiteIterator {
 	 */
 	public void init(LineString ls, AffineTransform at, boolean generalize, float maxDistance) {
 		if( at==null )
-			at=new AffineTransform();
+			at=NO_TRANSFORM;
 		_init(ls, at, generalize, maxDistance);
 		
         xScale = (float) Math.sqrt(
@@ -327,7 +327,7 @@ public class LiteCoordinateSequence extends PackedCoordinateSequence {
         int minDimensions = Math.min(dimensions, this.dimension);
         for (int t = 0; t < n; t++) {
             for (int d = 0; d < minDimensions; d++) {
-                result[t * 2 + d] = getOrdinate(t, d);
+                result[t * dimensions + d] = getOrdinate(t, d);
             }
         }
         return result;
@@ -182,9 +182,8 @@ public final class LiteShape2 implements Shape, Cloneable {
 			LiteCoordinateSequence seq = (LiteCoordinateSequence) ((Point) geometry)
 					.getCoordinateSequence();
 			double[] coords = seq.getArray();
-			double[] newCoords = new double[coords.length];
-			mathTransform.transform(coords, 0, newCoords, 0, seq.size());
-			seq.setArray(newCoords);
+			mathTransform.transform(coords, 0, coords, 0, seq.size());
+			seq.setArray(coords);
 		} else if (geometry instanceof Polygon) {
 			Polygon polygon = (Polygon) geometry;
 			transformGeometry(polygon.getExteriorRing());
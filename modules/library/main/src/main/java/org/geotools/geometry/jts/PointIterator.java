@@ -52,7 +52,7 @@ public final class PointIterator extends AbstractLiteIterator {
      */
     public PointIterator(Point point, AffineTransform at) {
         if (at == null) {
-            at = new AffineTransform();
+            at = NO_TRANSFORM;
         }
         
         this.at = at;
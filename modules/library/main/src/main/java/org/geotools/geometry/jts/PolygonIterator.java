@@ -89,7 +89,7 @@ public final  class PolygonIterator extends AbstractLiteIterator {
         }
 
         if (at == null) {
-            at = new AffineTransform();
+            at = NO_TRANSFORM;
         }
 
         this.at = at;
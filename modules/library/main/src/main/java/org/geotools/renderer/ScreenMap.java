@@ -34,7 +34,8 @@ import com.vividsolutions.jts.geom.Polygon;
 
 /**
  * The screenmap is a packed bitmap of the screen, one bit per pixels. It can be used to avoid
- * rendering a lot of very small features in the same pixel.
+ * rendering a lot of very small features in the same pixel. It works with features of any
+ * geometry type, as long as their envelope is smaller than the generalization spans.
  * 
  * <p>
  * The screenmap can be used two ways:
@@ -56,7 +57,10 @@ import com.vividsolutions.jts.geom.Polygon;
 public class ScreenMap {
     double[] point = new double[2];
 
-    int[] pixels;
+    /**
+     * The pixels bitmap, row major, 64 pixels per element
+     */
+    long[] pixels;
 
     int width;
 
@@ -78,8 +82,8 @@ public class ScreenMap {
         this.minx = x;
         this.miny = y;
 
-        int arraySize = ((width * height) / 32) + 1;
-        pixels = new int[arraySize];
+        int arraySize = (int) (((long) width * height + 63) >>> 6);
+        pixels = new long[arraySize];
         this.mt = mt;
     }
     
@@ -125,22 +129,17 @@ public class ScreenMap {
         // if it's outside of the screenmap we cannot say whether it's busy or not, and
         // we cannot skip it because rendering or geometry transformation might put the geometry
         // right in the map
-        if ((x - minx) < 0 || (x - minx) > width - 1 || (y - miny) < 0 || (y - miny) > height - 1)
+        if (!contains(x, y))
             return false;
         int bit = bit(x - minx, y - miny);
-        int index = bit / 32;
-        int offset = bit % 32;
-        int mask = 1 << offset;
+        int index = bit >>> 6;
+        long mask = 1L << bit;
 
-        try {
-            if ((pixels[index] & mask) != 0) {
-                return true;
-            } else {
-                pixels[index] = pixels[index] | mask;
-                return false;
-            }
-        } catch (Exception e) {
+        if ((pixels[index] & mask) != 0) {
             return true;
+        } else {
+            pixels[index] |= mask;
+            return false;
         }
     }
 
@@ -164,19 +163,17 @@ public class ScreenMap {
         // if it's outside of the screenmap we cannot say whether it's busy or not, and
         // we cannot skip it because rendering or geometry transformation might put the geometry
         // right in the map
-        if ((x - minx) < 0 || (x - minx) > width - 1 || (y - miny) < 0 || (y - miny) > height - 1)
+        if (!contains(x, y))
             return false;
         int bit = bit(x - minx, y - miny);
-        int index = bit / 32;
-        int offset = bit % 32;
-        int mask = 1 << offset;
-
-        try {
-            return ((pixels[index] & mask) != 0) ? true : false;
-        } catch (Exception e) {
+        return (pixels[bit >>> 6] & (1L << bit)) != 0;
+    }
 
-            return true;
-        }
+    /**
+     * Returns true if the pixel is inside the area covered by the screenmap
+     */
+    private boolean contains(int x, int y) {
+        return (x - minx) >= 0 && (x - minx) < width && (y - miny) >= 0 && (y - miny) < height;
     }
 
     private int bit(int x, int y) {
@@ -254,22 +251,16 @@ public class ScreenMap {
      * Sets location at position x,y to the value.
      */
     public void set(int x, int y, boolean value) {
-        if ((x - minx) < 0 || (x - minx) > width - 1 || (y - miny) < 0 || (y - miny) > height - 1)
+        if (!contains(x, y))
             return;
         int bit = bit(x - minx, y - miny);
-        int index = bit / 32;
-        int offset = bit % 32;
-        int mask = 1;
-        mask = mask << offset;
+        int index = bit >>> 6;
+        long mask = 1L << bit;
 
         if (value) {
-            pixels[index] = pixels[index] | mask;
+            pixels[index] |= mask;
         } else {
-            int tmp = pixels[index];
-            tmp = ~tmp;
-            tmp = (tmp | mask);
-            tmp = ~tmp;
-            pixels[index] = tmp;
+            pixels[index] &= ~mask;
         }
     }
 
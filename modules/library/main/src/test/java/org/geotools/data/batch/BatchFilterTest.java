@@ -0,0 +1,212 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.geotools.data.batch.FeatureBatch.DoubleColumn;
+import org.geotools.data.batch.FeatureBatch.GeometryColumn;
+import org.geotools.data.batch.FeatureBatch.LongColumn;
+import org.geotools.data.batch.FeatureBatch.ObjectColumn;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.DelegateSimpleFeatureReader;
+import org.geotools.data.simple.SimpleFeatureReader;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.filter.compiler.RandomFeatureFixtures;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.expression.Expression;
+
+public class BatchFilterTest {
+
+    FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    SimpleFeatureType schema;
+
+    List<SimpleFeature> features;
+
+    @Before
+    public void setup() throws Exception {
+        schema = RandomFeatureFixtures.createSchema();
+        features = RandomFeatureFixtures.createFeatures(schema);
+    }
+
+    void assertSameResults(Filter filter, boolean vectorized) {
+        FeatureBatch batch = new FeatureBatch(schema, features);
+        BatchFilter bf = new BatchFilter(filter, schema);
+        assertEquals(filter.toString(), vectorized, bf.isVectorized());
+        BitSet expected = new BitSet();
+        for (int i = 0; i < features.size(); i++) {
+            if (filter.evaluate(features.get(i))) {
+                expected.set(i);
+            }
+        }
+        assertEquals(filter.toString(), expected, bf.evaluate(batch));
+    }
+
+    @Test
+    public void testColumns() {
+        FeatureBatch batch = new FeatureBatch(schema, features);
+        assertEquals(RandomFeatureFixtures.FEATURES, batch.size());
+        assertTrue(batch.getColumn("i") instanceof LongColumn);
+        assertTrue(batch.getColumn("l") instanceof LongColumn);
+        assertTrue(batch.getColumn("f") instanceof DoubleColumn);
+        assertTrue(batch.getColumn("d") instanceof DoubleColumn);
+        assertTrue(batch.getColumn("s") instanceof ObjectColumn);
+        assertTrue(batch.getColumn("geom") instanceof GeometryColumn);
+        assertNull(batch.getColumn("missing"));
+
+        LongColumn column = (LongColumn) batch.getColumn("i");
+        assertTrue(column.isNull(0));
+        assertEquals(((Integer) features.get(1).getAttribute("i")).longValue(),
+                column.getValues()[1]);
+        GeometryColumn geoms = (GeometryColumn) batch.getColumn("geom");
+        assertTrue(Double.isNaN(geoms.getEnvelopes()[0]));
+        assertEquals(features.get(1).getDefaultGeometry(), geoms.getGeometries()[1]);
+    }
+
+    @Test
+    public void testComparisons() throws Exception {
+        String[] attributes = { "i", "l", "f", "d" };
+        Object[] values = { 0, 10L, -3, 2.5, 2.5f, "7", "1.5", "abc" };
+        for (String attribute : attributes) {
+            for (Object value : values) {
+                Expression p = ff.property(attribute);
+                Expression l = ff.literal(value);
+                Filter[] filters = { ff.equals(p, l), ff.notEqual(p, l), ff.less(p, l),
+                        ff.lessOrEqual(p, l), ff.greater(p, l), ff.greaterOrEqual(p, l),
+                        ff.equals(l, p), ff.less(l, p) };
+                for (Filter filter : filters) {
+                    BatchFilter bf = new BatchFilter(filter, schema);
+                    // whether vectorized or not, the results must be the same
+                    assertSameResults(filter, bf.isVectorized());
+                }
+            }
+        }
+        assertSameResults(ff.equals(ff.property("i"), ff.literal(10)), true);
+        assertSameResults(ff.less(ff.property("d"), ff.literal(2.5)), true);
+        assertSameResults(ff.equals(ff.property("d"), ff.literal(0)), true);
+        assertSameResults(ff.notEqual(ff.property("d"), ff.literal(0)), true);
+    }
+
+    @Test
+    public void testNaNComparison() throws Exception {
+        assertSameResults(ff.less(ff.property("d"), ff.literal(Double.NaN)), true);
+        assertSameResults(ff.greater(ff.property("d"), ff.literal(Double.NaN)), true);
+        assertSameResults(ff.equals(ff.property("d"), ff.literal(Double.NaN)), true);
+    }
+
+    @Test
+    public void testBetween() throws Exception {
+        assertSameResults(ff.between(ff.property("i"), ff.literal(-10), ff.literal(10)), true);
+        assertSameResults(ff.between(ff.property("l"), ff.literal(100), ff.literal(500)), true);
+        assertSameResults(ff.between(ff.property("d"), ff.literal(-1), ff.literal(1)), true);
+        assertSameResults(ff.between(ff.property("f"), ff.literal(2.5), ff.literal(7)), true);
+    }
+
+    @Test
+    public void testBBOX() throws Exception {
+        assertSameResults(RandomFeatureFixtures.bbox(10, 10, 50, 60), true);
+        assertSameResults(RandomFeatureFixtures.bbox(-10, -10, 0, 0), true);
+        assertSameResults(RandomFeatureFixtures.bbox(0, 0, 200, 200), true);
+    }
+
+    @Test
+    public void testLogic() throws Exception {
+        Filter iPositive = ff.greater(ff.property("i"), ff.literal(0));
+        Filter s3 = ff.equals(ff.property("s"), ff.literal("s3"));
+        Filter s4 = ff.equals(ff.property("s"), ff.literal("s4"));
+        assertSameResults(ff.and(iPositive, RandomFeatureFixtures.bbox(10, 10, 50, 60)), true);
+        assertSameResults(ff.or(iPositive, ff.less(ff.property("l"), ff.literal(500))), true);
+        assertSameResults(ff.not(ff.or(iPositive, ff.equals(ff.property("d"), ff.literal(1)))),
+                true);
+        assertSameResults(ff.and(iPositive, s3), true);
+        assertSameResults(ff.or(s3, s4), false);
+        assertSameResults(ff.not(ff.like(ff.property("s"), "s%")), false);
+        assertSameResults(Filter.INCLUDE, true);
+        assertSameResults(Filter.EXCLUDE, true);
+    }
+
+    @Test
+    public void testMixedTypes() throws Exception {
+        // a value not matching the declared binding forces the feature by feature evaluation
+        Object[] values = new Object[schema.getAttributeCount()];
+        values[schema.indexOf("i")] = 5L;
+        features.add(new SimpleFeatureImpl(values, schema, new FeatureIdImpl("test.mixed"), false));
+        FeatureBatch batch = new FeatureBatch(schema, features);
+        assertTrue(batch.getColumn("i") instanceof ObjectColumn);
+        assertSameResults(ff.greaterOrEqual(ff.property("i"), ff.literal(5)), true);
+    }
+
+    @Test
+    public void testFilteringReader() throws Exception {
+        Filter filter = ff.and(ff.greater(ff.property("i"), ff.literal(0)),
+                RandomFeatureFixtures.bbox(10, 10, 50, 60));
+        List<String> expected = new ArrayList<String>();
+        for (SimpleFeature f : features) {
+            if (filter.evaluate(f)) {
+                expected.add(f.getID());
+            }
+        }
+        assertFalse(expected.isEmpty());
+
+        List<String> actual = new ArrayList<String>();
+        SimpleFeatureReader reader = new BatchFilteringFeatureReader(reader(), filter, 100);
+        try {
+            while (reader.hasNext()) {
+                actual.add(reader.next().getID());
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(expected, actual);
+
+        // same, by batch
+        actual.clear();
+        reader = new BatchFilteringFeatureReader(reader(), filter, 100);
+        try {
+            FeatureBatch batch;
+            while ((batch = FeatureBatch.read(reader, 7)) != null) {
+                assertTrue(batch.size() <= 7);
+                for (int i = 0; i < batch.size(); i++) {
+                    actual.add(batch.getFeature(i).getID());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(expected, actual);
+    }
+
+    SimpleFeatureReader reader() {
+        return new DelegateSimpleFeatureReader(schema,
+                new ListFeatureCollection(schema, features).features());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.sort;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.DelegateSimpleFeatureReader;
+import org.geotools.data.simple.SimpleFeatureReader;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+public class ParallelMergeSorterTest {
+
+    static final int FEATURES = 5000;
+
+    SimpleFeatureType schema;
+
+    ListFeatureCollection fc;
+
+    Comparator<SimpleFeature> comparator;
+
+    @Before
+    public void setup() throws Exception {
+        schema = DataUtilities.createType("test", "geom:Point,key:int,seq:int,name:String");
+        fc = new ListFeatureCollection(schema);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(schema);
+        GeometryFactory gf = new GeometryFactory();
+        Random random = new Random(0);
+        for (int i = 0; i < FEATURES; i++) {
+            fb.add(gf.createPoint(new Coordinate(i, i)));
+            // lots of duplicate keys, to check the sort is stable
+            fb.add(random.nextInt(100));
+            fb.add(i);
+            fb.add(i % 7 == 0 ? null : "name" + i);
+            fc.add(fb.buildFeature("test." + i));
+        }
+
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+        comparator = MergeSortDumper.getComparator(new SortBy[] { ff.sort("key",
+                SortOrder.ASCENDING) });
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        ParallelMergeSorter sorter = new ParallelMergeSorter(schema, comparator, FEATURES, 4,
+                1024 * 1024);
+        assertSorted(sorter.sort(reader()));
+        assertTrue(sorter.file == null);
+    }
+
+    @Test
+    public void testParallelRuns() throws IOException {
+        ParallelMergeSorter sorter = new ParallelMergeSorter(schema, comparator, 100, 4,
+                16 * 1024 * 1024);
+        assertSorted(sorter.sort(reader()));
+        assertFalse(sorter.file.exists());
+    }
+
+    @Test
+    public void testIntermediateMerges() throws IOException {
+        // a budget allowing to merge only a few runs at a time
+        long memory = 4 * ParallelMergeSorter.WINDOW_SIZE;
+        ParallelMergeSorter sorter = new ParallelMergeSorter(schema, comparator, 50, 3, memory);
+        assertSorted(sorter.sort(reader()));
+        assertFalse(sorter.file.exists());
+    }
+
+    @Test
+    public void testSingleThread() throws IOException {
+        ParallelMergeSorter sorter = new ParallelMergeSorter(schema, comparator, 10, 1,
+                8 * ParallelMergeSorter.WINDOW_SIZE);
+        assertSorted(sorter.sort(reader()));
+    }
+
+    @Test
+    public void testBoundedBuffers() throws IOException {
+        // each builder gets a single buffer, larger blocks get split in several runs
+        final AtomicInteger used = new AtomicInteger();
+        final AtomicInteger maxUsed = new AtomicInteger();
+        ParallelMergeSorter sorter = new ParallelMergeSorter(schema, comparator, FEATURES - 1,
+                2, 2 * ParallelMergeSorter.WINDOW_SIZE) {
+
+            @Override
+            ByteBuffer getWindow() throws IOException {
+                ByteBuffer window = super.getWindow();
+                int current = used.incrementAndGet();
+                synchronized (maxUsed) {
+                    maxUsed.set(Math.max(maxUsed.get(), current));
+                }
+                return window;
+            }
+
+            @Override
+            void releaseWindow(ByteBuffer window) {
+                used.decrementAndGet();
+                super.releaseWindow(window);
+            }
+        };
+        assertSorted(sorter.sort(reader()));
+        assertEquals(0, used.get());
+        assertTrue(maxUsed.get() <= 2);
+    }
+
+    SimpleFeatureReader reader() {
+        return new DelegateSimpleFeatureReader(schema, fc.features());
+    }
+
+    void assertSorted(SimpleFeatureReader reader) throws IOException {
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        try {
+            while (reader.hasNext()) {
+                features.add(reader.next());
+            }
+        } finally {
+            reader.close();
+        }
+
+        assertEquals(FEATURES, features.size());
+        SimpleFeature prev = null;
+        for (SimpleFeature f : features) {
+            String id = f.getID();
+            int seq = (Integer) f.getAttribute("seq");
+            assertEquals("test." + seq, id);
+            assertEquals(seq % 7 == 0 ? null : "name" + seq, f.getAttribute("name"));
+            assertEquals(seq, ((Point) f.getDefaultGeometry()).getX(),
+                    0d);
+            if (prev != null) {
+                int prevKey = (Integer) prev.getAttribute("key");
+                int key = (Integer) f.getAttribute("key");
+                assertTrue(prevKey <= key);
+                if (prevKey == key) {
+                    // stable sort
+                    assertTrue((Integer) prev.getAttribute("seq") < seq);
+                }
+            }
+            prev = f;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.sort;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.WKBWriter;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class SimpleFeatureCodecTest {
+
+    SimpleFeatureType schema;
+
+    SimpleFeatureBuilder fb;
+
+    SimpleFeatureCodec codec;
+
+    @Before
+    public void setup() {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("test");
+        tb.add("geom", Geometry.class, DefaultGeographicCRS.WGS84);
+        tb.add("bool", Boolean.class);
+        tb.add("byte", Byte.class);
+        tb.add("short", Short.class);
+        tb.add("int", Integer.class);
+        tb.add("long", Long.class);
+        tb.add("float", Float.class);
+        tb.add("double", Double.class);
+        tb.add("string", String.class);
+        tb.add("date", Date.class);
+        tb.add("sql_date", java.sql.Date.class);
+        tb.add("sql_time", java.sql.Time.class);
+        tb.add("sql_timestamp", java.sql.Timestamp.class);
+        tb.add("decimal", BigDecimal.class);
+        schema = tb.buildFeatureType();
+        fb = new SimpleFeatureBuilder(schema);
+        codec = new SimpleFeatureCodec(schema);
+    }
+
+    SimpleFeature feature(String fid, Geometry geometry) {
+        java.sql.Timestamp ts = new java.sql.Timestamp(123456789L);
+        ts.setNanos(123456789);
+        fb.add(geometry);
+        fb.add(true);
+        fb.add((byte) -3);
+        fb.add((short) 1000);
+        fb.add(-123456);
+        fb.add(Long.MAX_VALUE);
+        fb.add(1.5f);
+        fb.add(Math.PI);
+        fb.add("àèìòù, a rather long string to make the buffer grow: "
+                + new String(new char[2000]).replace('\0', 'x'));
+        fb.add(new Date(1000));
+        fb.add(new java.sql.Date(2000));
+        fb.add(new java.sql.Time(3000));
+        fb.add(ts);
+        fb.add(new BigDecimal("12.345"));
+        return fb.buildFeature(fid);
+    }
+
+    SimpleFeature roundTrip(SimpleFeature feature) throws IOException {
+        ByteBuffer encoded = codec.encode(feature);
+        // copy, the codec buffer gets reused
+        ByteBuffer copy = ByteBuffer.allocate(encoded.remaining());
+        copy.put(encoded).flip();
+        SimpleFeature decoded = codec.decode(copy);
+        assertFalse(copy.hasRemaining());
+        return decoded;
+    }
+
+    void assertRoundTrip(SimpleFeature feature) throws IOException {
+        SimpleFeature decoded = roundTrip(feature);
+        assertEquals(feature.getID(), decoded.getID());
+        for (int i = 0; i < schema.getAttributeCount(); i++) {
+            Object expected = feature.getAttribute(i);
+            Object actual = decoded.getAttribute(i);
+            if (expected instanceof Geometry) {
+                assertTrue(((Geometry) expected).equalsExact((Geometry) actual));
+                assertEquals(expected.getClass(), actual.getClass());
+            } else {
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        assertRoundTrip(feature("test.1", new WKTReader().read("POINT(1 2)")));
+    }
+
+    /**
+     * Builds a feature without converting the values to the attribute bindings, as some data
+     * stores do
+     */
+    SimpleFeature rawFeature(String fid, List<Object> values) {
+        return new SimpleFeatureImpl(values, schema, new FeatureIdImpl(fid));
+    }
+
+    @Test
+    public void testMismatchedNumbers() throws Exception {
+        List<Object> values = new ArrayList<Object>(feature("test.1",
+                new WKTReader().read("POINT(1 2)")).getAttributes());
+        // a long in the integer attribute, an integer in the double one
+        values.set(schema.indexOf("int"), Long.valueOf(Long.MAX_VALUE));
+        values.set(schema.indexOf("double"), Integer.valueOf(10));
+        SimpleFeature feature = rawFeature("test.1", values);
+        assertRoundTrip(feature);
+
+        SimpleFeature decoded = roundTrip(feature);
+        assertEquals(Long.class, decoded.getAttribute("int").getClass());
+        assertEquals(Integer.class, decoded.getAttribute("double").getClass());
+    }
+
+    @Test
+    public void testTimestampInDate() throws Exception {
+        List<Object> values = new ArrayList<Object>(feature("test.1",
+                new WKTReader().read("POINT(1 2)")).getAttributes());
+        java.sql.Timestamp ts = new java.sql.Timestamp(5000);
+        ts.setNanos(123456789);
+        values.set(schema.indexOf("date"), ts);
+        SimpleFeature feature = rawFeature("test.1", values);
+
+        // the class and the nanoseconds are preserved
+        SimpleFeature decoded = roundTrip(feature);
+        Object date = decoded.getAttribute("date");
+        assertEquals(java.sql.Timestamp.class, date.getClass());
+        assertEquals(123456789, ((java.sql.Timestamp) date).getNanos());
+        assertRoundTrip(feature);
+    }
+
+    @Test
+    public void testNulls() throws Exception {
+        for (int i = 0; i < schema.getAttributeCount(); i++) {
+            fb.add(null);
+        }
+        SimpleFeature feature = fb.buildFeature("test.2");
+        SimpleFeature decoded = roundTrip(feature);
+        assertEquals("test.2", decoded.getID());
+        for (int i = 0; i < schema.getAttributeCount(); i++) {
+            assertNull(decoded.getAttribute(i));
+        }
+    }
+
+    @Test
+    public void testGeometries() throws Exception {
+        WKTReader reader = new WKTReader();
+        String[] wkts = { "POINT EMPTY", "LINESTRING(0 0, 10.5 3.25, -7.125 1e6)",
+                "LINEARRING(0 0, 10 0, 10 10, 0 0)",
+                "POLYGON((0 0, 10 0, 10 10, 0 10, 0 0), (1 1, 2 1, 2 2, 1 1))", "POLYGON EMPTY",
+                "MULTIPOINT((0 0), (1 1))", "MULTILINESTRING((0 0, 1 1), (2 2, 3 3))",
+                "MULTIPOLYGON(((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))",
+                "GEOMETRYCOLLECTION(POINT(1 1), LINESTRING(0 0, 1 1))",
+                "LINESTRING(0.1 0.2, 0.30000000000000004 -0, 1e300 -1e-300)",
+                "LINESTRING(1 2 3, 4 5 6)" };
+        for (String wkt : wkts) {
+            assertRoundTrip(feature("test.g", reader.read(wkt)));
+        }
+
+        // z values preserved, sign of zeros and NaNs too
+        GeometryFactory gf = new GeometryFactory();
+        Geometry line = gf.createLineString(new Coordinate[] { new Coordinate(1.1, 2.2, 3.3),
+                new Coordinate(-0d, Double.NaN, 5), new Coordinate(7, 8, Double.NaN) });
+        line.setSRID(4326);
+        Geometry decoded = (Geometry) roundTrip(feature("test.z", line)).getDefaultGeometry();
+        assertEquals(4326, decoded.getSRID());
+        Coordinate[] expected = line.getCoordinates();
+        Coordinate[] actual = decoded.getCoordinates();
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(Double.doubleToLongBits(expected[i].x),
+                    Double.doubleToLongBits(actual[i].x));
+            assertEquals(Double.doubleToLongBits(expected[i].y),
+                    Double.doubleToLongBits(actual[i].y));
+            assertEquals(Double.doubleToLongBits(expected[i].z),
+                    Double.doubleToLongBits(actual[i].z));
+        }
+    }
+
+    @Test
+    public void testCompactCoordinates() throws Exception {
+        // coordinates with few decimals are quantized, and end up much smaller than in WKB
+        Coordinate[] coordinates = new Coordinate[1000];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = new Coordinate((12345 + i) / 1000d, (45678 - i) / 1000d);
+        }
+        Geometry line = new GeometryFactory().createLineString(coordinates);
+        int wkbSize = new WKBWriter().write(line).length;
+        SimpleFeatureCodec codec = new SimpleFeatureCodec(schema);
+        int codecSize = codec.encode(feature("test.c", line)).remaining()
+                - codec.encode(feature("test.c", null)).remaining();
+        assertTrue(codecSize * 4 < wkbSize);
+        assertRoundTrip(feature("test.c", line));
+    }
+
+    @Test
+    public void testMappedReader() throws Exception {
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        GeometryFactory gf = new GeometryFactory();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (int i = 0; i < 100; i++) {
+            SimpleFeature f = feature("test." + i, gf.createPoint(new Coordinate(i, i)));
+            features.add(f);
+            ByteBuffer record = codec.encode(f);
+            SimpleFeatureCodec.writeVarInt(bos, record.remaining());
+            bos.write(record.array(), record.position(), record.remaining());
+        }
+
+        File file = File.createTempFile("codec", ".features");
+        try {
+            FileOutputStream fos = new FileOutputStream(file);
+            try {
+                bos.writeTo(fos);
+            } finally {
+                fos.close();
+            }
+
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            // mapping size smaller than a record, forces remapping at each feature
+            MappedFeatureReader reader = new MappedFeatureReader(new SimpleFeatureCodec(
+                    schema), channel, 0, file.length(), 64);
+            try {
+                int i = 0;
+                while (reader.hasNext()) {
+                    SimpleFeature f = reader.next();
+                    assertEquals(features.get(i).getID(), f.getID());
+                    assertEquals(features.get(i).getAttribute("string"), f.getAttribute("string"));
+                    i++;
+                }
+                assertEquals(features.size(), i);
+            } finally {
+                reader.close();
+                raf.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
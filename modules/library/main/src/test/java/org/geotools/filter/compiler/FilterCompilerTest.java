@@ -0,0 +1,205 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.filter.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.geotools.filter.visitor.DuplicatingFilterVisitor;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.expression.Expression;
+
+public class FilterCompilerTest {
+
+    FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    SimpleFeatureType schema;
+
+    List<SimpleFeature> features;
+
+    @Before
+    public void setup() throws Exception {
+        schema = RandomFeatureFixtures.createSchema();
+        features = RandomFeatureFixtures.createFeatures(schema);
+    }
+
+    void assertSameResults(Filter filter, boolean compiled) {
+        Filter cf = FilterCompiler.compile(filter, schema);
+        assertEquals(filter.toString(), compiled, cf instanceof CompiledFilter);
+        for (SimpleFeature feature : features) {
+            assertEquals(filter + " on " + feature.getID(), filter.evaluate(feature),
+                    cf.evaluate(feature));
+        }
+    }
+
+    @Test
+    public void testComparisons() throws Exception {
+        String[] attributes = { "i", "l", "f", "d" };
+        Object[] values = { 0, 10L, -3, 2.5, 2.5f, "7", "1.5", "abc" };
+        for (String attribute : attributes) {
+            for (Object value : values) {
+                Expression p = ff.property(attribute);
+                Expression l = ff.literal(value);
+                Filter[] filters = { ff.equals(p, l), ff.notEqual(p, l), ff.less(p, l),
+                        ff.lessOrEqual(p, l), ff.greater(p, l), ff.greaterOrEqual(p, l),
+                        ff.equals(l, p), ff.less(l, p) };
+                for (Filter filter : filters) {
+                    assertSameResults(filter, true);
+                }
+            }
+        }
+        assertSameResults(ff.less(ff.property("d"), ff.literal(Double.NaN)), true);
+        assertSameResults(ff.equals(ff.property("d"), ff.literal(Double.NaN)), true);
+        assertSameResults(ff.equals(ff.property("d"), ff.literal(0)), true);
+    }
+
+    @Test
+    public void testStrings() throws Exception {
+        Expression s = ff.property("s");
+        for (String value : new String[] { "s3", "S3", "x", "" }) {
+            assertSameResults(ff.equals(s, ff.literal(value)), true);
+            assertSameResults(ff.equal(s, ff.literal(value), false), true);
+            assertSameResults(ff.notEqual(s, ff.literal(value)), true);
+            assertSameResults(ff.notEqual(s, ff.literal(value), false), true);
+        }
+        assertSameResults(ff.less(s, ff.literal("s5")), true);
+        assertSameResults(ff.like(s, "s%"), true);
+    }
+
+    @Test
+    public void testBetweenAndNull() throws Exception {
+        assertSameResults(ff.between(ff.property("i"), ff.literal(-10), ff.literal(10)), true);
+        assertSameResults(ff.between(ff.property("l"), ff.literal(100), ff.literal(500)), true);
+        assertSameResults(ff.between(ff.property("d"), ff.literal(-1), ff.literal(1)), true);
+        assertSameResults(ff.between(ff.property("f"), ff.literal(2.5), ff.literal(7)), true);
+        assertSameResults(ff.isNull(ff.property("i")), true);
+        assertSameResults(ff.isNull(ff.property("geom")), true);
+        assertSameResults(ff.isNull(ff.property("missing")), false);
+    }
+
+    @Test
+    public void testBBOX() throws Exception {
+        assertSameResults(RandomFeatureFixtures.bbox(10, 10, 50, 60), true);
+        assertSameResults(RandomFeatureFixtures.bbox(-10, -10, 0, 0), true);
+        assertSameResults(RandomFeatureFixtures.bbox(0, 0, 200, 200), true);
+        assertSameResults(ff.bbox("", 10, 10, 50, 60, null), true);
+    }
+
+    @Test
+    public void testLogic() throws Exception {
+        Filter iPositive = ff.greater(ff.property("i"), ff.literal(0));
+        Filter s3 = ff.equals(ff.property("s"), ff.literal("s3"));
+        assertSameResults(ff.and(iPositive, RandomFeatureFixtures.bbox(10, 10, 50, 60)), true);
+        assertSameResults(ff.or(iPositive, ff.less(ff.property("l"), ff.literal(500))), true);
+        assertSameResults(ff.not(ff.or(iPositive, ff.equals(ff.property("d"), ff.literal(1)))),
+                true);
+        assertSameResults(ff.and(ff.not(s3), ff.like(ff.property("s"), "S%")), true);
+        assertSameResults(ff.or(Filter.EXCLUDE, iPositive), true);
+    }
+
+    @Test
+    public void testNothingToCompile() throws Exception {
+        assertSame(Filter.INCLUDE, FilterCompiler.compile(Filter.INCLUDE, schema));
+        assertSame(Filter.EXCLUDE, FilterCompiler.compile(Filter.EXCLUDE, schema));
+        Filter id = ff.id(ff.featureId("test.1"));
+        assertSame(id, FilterCompiler.compile(id, schema));
+        Filter missing = ff.equals(ff.property("missing"), ff.literal(1));
+        assertSame(missing, FilterCompiler.compile(missing, schema));
+
+        Filter compiled = FilterCompiler.compile(ff.equals(ff.property("i"), ff.literal(1)),
+                schema);
+        assertSame(compiled, FilterCompiler.compile(compiled, schema));
+    }
+
+    @Test
+    public void testMixedTypes() throws Exception {
+        // values not matching the declared binding are handled by the interpreter
+        Object[] values = new Object[schema.getAttributeCount()];
+        values[schema.indexOf("i")] = 5L;
+        values[schema.indexOf("s")] = 3;
+        features.add(new SimpleFeatureImpl(values, schema, new FeatureIdImpl("test.mixed"), false));
+        assertSameResults(ff.greaterOrEqual(ff.property("i"), ff.literal(5)), true);
+        assertSameResults(ff.equals(ff.property("i"), ff.literal(5)), true);
+        assertSameResults(ff.equals(ff.property("s"), ff.literal("3")), true);
+    }
+
+    @Test
+    public void testOtherFeatureType() throws Exception {
+        // same attribute names in a different order, the indexes cannot be used
+        SimpleFeatureType other = DataUtilities.createType("test",
+                "s:String,d:Double,i:Integer");
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(other);
+        fb.add("s3");
+        fb.add(2.5);
+        fb.add(7);
+        SimpleFeature feature = fb.buildFeature("test.other");
+
+        Filter filter = ff.and(ff.equals(ff.property("s"), ff.literal("s3")),
+                ff.or(ff.less(ff.property("d"), ff.literal(3)),
+                        ff.like(ff.property("s"), "x%")));
+        Filter compiled = FilterCompiler.compile(filter, schema);
+        assertTrue(compiled instanceof CompiledFilter);
+        assertTrue(filter.evaluate(feature));
+        assertTrue(compiled.evaluate(feature));
+        assertEquals(filter.evaluate(null), compiled.evaluate(null));
+
+        // the mismatch is remembered, the original filter keeps on being used
+        assertSame(other, ((CompiledFilter) compiled).incompatible);
+        assertTrue(compiled.evaluate(feature));
+    }
+
+    @Test
+    public void testExpression() throws Exception {
+        Expression d = FilterCompiler.compile(ff.property("d"), schema);
+        assertTrue(d instanceof IndexedPropertyName);
+        Expression sum = FilterCompiler.compile(ff.add(ff.property("i"), ff.literal(1)), schema);
+        Expression expected = ff.add(ff.property("i"), ff.literal(1));
+        for (SimpleFeature feature : features) {
+            assertEquals(feature.getAttribute("d"), d.evaluate(feature));
+            assertEquals(feature.getAttribute("d") == null ? null : String.valueOf(feature
+                    .getAttribute("d")), d.evaluate(feature, String.class));
+            assertEquals(expected.evaluate(feature), sum.evaluate(feature));
+        }
+
+        Expression missing = ff.property("missing");
+        assertSame(missing, FilterCompiler.compile(missing, schema));
+    }
+
+    @Test
+    public void testVisitor() throws Exception {
+        // visitors see the original filter
+        Filter filter = ff.and(ff.greater(ff.property("i"), ff.literal(0)),
+                ff.like(ff.property("s"), "s%"));
+        Filter compiled = FilterCompiler.compile(filter, schema);
+        assertEquals(filter, compiled.accept(new DuplicatingFilterVisitor(), null));
+        assertEquals(filter.toString(), compiled.toString());
+        assertSame(filter, ((CompiledFilter) compiled).getOriginal());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.filter.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Builds the random features used to check the compiled and batched filters against the plain
+ * ones. All attribute types get nulls sprinkled in, the doubles also NaNs and negative zeros.
+ */
+public class RandomFeatureFixtures {
+
+    public static final int FEATURES = 2000;
+
+    static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2(null);
+
+    public static SimpleFeatureType createSchema() throws SchemaException {
+        return DataUtilities.createType("test",
+                "geom:LineString,i:Integer,l:java.lang.Long,f:Float,d:Double,s:String");
+    }
+
+    /**
+     * Returns {@link #FEATURES} features of the {@link #createSchema()} type, always the same ones
+     */
+    public static List<SimpleFeature> createFeatures(SimpleFeatureType schema) {
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(schema);
+        GeometryFactory gf = new GeometryFactory();
+        Random random = new Random(0);
+        for (int i = 0; i < FEATURES; i++) {
+            if (i % 13 == 0) {
+                fb.add(null);
+            } else {
+                double x = random.nextDouble() * 100;
+                double y = random.nextDouble() * 100;
+                double dx = random.nextDouble() * 10;
+                double dy = random.nextDouble() * 10;
+                fb.add(gf.createLineString(new Coordinate[] { new Coordinate(x, y),
+                        new Coordinate(x + dx, y + dy) }));
+            }
+            fb.add(i % 11 == 0 ? null : random.nextInt(100) - 50);
+            fb.add(i % 17 == 0 ? null : (long) random.nextInt(1000));
+            fb.add(i % 7 == 0 ? null : random.nextFloat() * 10);
+            double d = random.nextInt(20) / 2d - 5;
+            if (i % 19 == 0) {
+                d = Double.NaN;
+            } else if (i % 23 == 0) {
+                d = -0d;
+            }
+            fb.add(d);
+            fb.add(i % 29 == 0 ? null : (random.nextBoolean() ? "s" : "S") + random.nextInt(10));
+            features.add(fb.buildFeature("test." + i));
+        }
+        return features;
+    }
+
+    /**
+     * A BBOX filter on the geometry of the {@link #createSchema()} type
+     */
+    public static Filter bbox(double minx, double miny, double maxx, double maxy) {
+        return FF.bbox("geom", minx, miny, maxx, maxy, null);
+    }
+}
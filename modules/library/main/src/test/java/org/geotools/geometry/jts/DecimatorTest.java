@@ -18,6 +18,8 @@ package org.geotools.geometry.jts;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.Rectangle;
@@ -29,12 +31,15 @@ import org.junit.Test;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.LinearRing;
 import com.vividsolutions.jts.geom.MultiLineString;
 import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.WKTReader;
 
 /**
  * 
@@ -209,4 +214,59 @@ public class DecimatorTest {
         assertEquals("CircularString", origin.getGeometryN(1).getGeometryType());
         assertEquals("LineString", simplified.getGeometryN(1).getGeometryType());
     }
+
+    @Test
+    public void testCopyLeavesSourceUntouched() throws Exception {
+        // a plain JTS geometry, not based on LiteCoordinateSequence
+        WKTReader reader = new WKTReader(gf);
+        Geometry original = reader
+                .read("POLYGON((0 0, 0 1, 0 2, 0 10, 2 10, 2 0, 0 0), (0.5 0.5, 0.5 1, 1 1, 0.5 0.5))");
+        Geometry source = (Geometry) original.clone();
+        MathTransform scale = new AffineTransform2D(AffineTransform.getScaleInstance(10, 10));
+
+        Decimator d = new Decimator(1.5, 1.5);
+        Geometry copy = d.decimateTransformGeneralizeCopy(source, scale);
+        assertTrue(original.equalsExact(source));
+        assertTrue(copy.getFactory().getCoordinateSequenceFactory() instanceof LiteCoordinateSequenceFactory);
+
+        // same result as decimating a clone in place
+        Geometry clone = LiteCoordinateSequence.cloneGeometry(source);
+        Geometry inPlace = d.decimateTransformGeneralize(clone, scale);
+        inPlace.geometryChanged();
+        assertTrue(inPlace.equalsExact(copy));
+        assertEquals(6, ((Polygon) copy).getExteriorRing().getNumPoints());
+        assertEquals(20, copy.getEnvelopeInternal().getMaxX(), 0d);
+    }
+
+    @Test
+    public void testCopyPseudoRing() throws Exception {
+        // closed line with just 3 points, not enough to build a valid LinearRing
+        LineString line = new GeometryFactory().createLineString(new Coordinate[] {
+                new Coordinate(0, 0), new Coordinate(0, 10), new Coordinate(0, 0) });
+        Decimator d = new Decimator(4, 4);
+        Geometry copy = d.decimateTransformGeneralizeCopy(line, identity);
+        assertTrue(copy instanceof LinearRing);
+        assertEquals(3, copy.getNumPoints());
+    }
+
+    @Test
+    public void testCopy3DPoint() throws Exception {
+        Point p = gf.createPoint(csf.create(new double[] { 1, 2, 3 }, 3));
+        Decimator d = new Decimator(identity, new Rectangle(0, 0, 5, 5), 0.8);
+        Point copy = (Point) d.decimateTransformGeneralizeCopy(p, identity);
+        assertEquals(3, p.getCoordinateSequence().getDimension());
+        assertEquals(2, copy.getCoordinateSequence().getDimension());
+        assertEquals(1, copy.getX(), 0d);
+        assertEquals(2, copy.getY(), 0d);
+    }
+
+    @Test
+    public void testScratchBuffer() {
+        double[] buffer = Decimator.getScratchBuffer(10);
+        assertSame(buffer, Decimator.getScratchBuffer(buffer.length));
+        assertTrue(Decimator.getScratchBuffer(buffer.length + 1).length > buffer.length);
+        // large requests are not cached
+        int large = Decimator.MAX_SCRATCH_LENGTH + 1;
+        assertNotSame(Decimator.getScratchBuffer(large), Decimator.getScratchBuffer(large));
+    }
 }
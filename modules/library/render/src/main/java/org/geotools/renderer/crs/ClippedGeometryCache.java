@@ -0,0 +1,295 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.crs;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFilter;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A cache of the geometries cut by {@link ProjectionHandler#preProcess(Geometry, String)} against
+ * the area of validity of the rendering projection. Cutting large geometries, such as world
+ * coastlines, is expensive, and the same features are cut over and over when rendering
+ * neighbouring tiles of a global map, while the result does not depend on the area being
+ * rendered.
+ * <p>
+ * The cut geometries are cached by feature id, source and rendering CRS, along with a copy of
+ * the original coordinates, so that a feature whose geometry changed (or that is returned with
+ * a different generalization level) is cut again.
+ * <p>
+ * The cache keeps at most {@link #getMaxCoordinates()} coordinates, original and cut ones,
+ * evicting the least recently used geometries. The size of the default instance can be controlled with the
+ * <code>org.geotools.render.clippedGeometryCacheSize</code> system variable (setting it to zero
+ * disables the cache).
+ */
+public class ClippedGeometryCache {
+
+    /**
+     * Default number of coordinates kept in the default cache
+     */
+    public static final int DEFAULT_MAX_COORDINATES = 1000000;
+
+    static final ClippedGeometryCache DEFAULT_INSTANCE = new ClippedGeometryCache(
+            Integer.getInteger("org.geotools.render.clippedGeometryCacheSize",
+                    DEFAULT_MAX_COORDINATES));
+
+    /**
+     * Returns the default, system wide cache
+     */
+    public static ClippedGeometryCache getDefaultInstance() {
+        return DEFAULT_INSTANCE;
+    }
+
+    final int maxCoordinates;
+
+    final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    long coordinates;
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Builds a new cache holding at most the specified number of coordinates
+     * 
+     * @param maxCoordinates
+     */
+    public ClippedGeometryCache(int maxCoordinates) {
+        this.maxCoordinates = maxCoordinates;
+    }
+
+    /**
+     * Returns true if the cache can hold geometries, false if it has been disabled
+     */
+    public boolean isEnabled() {
+        return maxCoordinates > 0;
+    }
+
+    /**
+     * Returns the cached result of cutting the geometry, or null if not found. The returned entry
+     * geometry is a copy the caller can modify
+     */
+    Entry get(Key key) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Caches the result of cutting a geometry, null if the geometry was cut away entirely
+     */
+    void put(Key key, Geometry clipped) {
+        Entry entry = new Entry(clipped, key.numPoints);
+        if (entry.weight > maxCoordinates) {
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                coordinates -= previous.weight;
+            }
+            coordinates += entry.weight;
+            Iterator<Entry> it = entries.values().iterator();
+            while (coordinates > maxCoordinates && it.hasNext()) {
+                coordinates -= it.next().weight;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the geometries from the cache
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            coordinates = 0;
+        }
+    }
+
+    /**
+     * The max number of coordinates kept in the cache
+     */
+    public int getMaxCoordinates() {
+        return maxCoordinates;
+    }
+
+    /**
+     * The number of geometries currently in the cache
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * The number of coordinates currently in the cache
+     */
+    public long getCoordinates() {
+        synchronized (entries) {
+            return coordinates;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * The result of cutting a geometry
+     */
+    static class Entry {
+        final Geometry geometry;
+
+        final int weight;
+
+        Entry(Geometry geometry, int keyPoints) {
+            // the renderer transforms the geometries in place, keep a private copy
+            this.geometry = geometry != null ? (Geometry) geometry.clone() : null;
+            // count the entry itself as a coordinate, cut away geometries take some space too
+            this.weight = 1 + keyPoints + (geometry != null ? geometry.getNumPoints() : 0);
+        }
+
+        /**
+         * Returns a copy of the cut geometry, or null if the geometry was cut away entirely
+         */
+        Geometry getGeometry() {
+            return geometry != null ? (Geometry) geometry.clone() : null;
+        }
+    }
+
+    /**
+     * Identifies a geometry cut in a given context (the source and rendering CRS, the valid area)
+     */
+    static class Key {
+        final Object context;
+
+        final String featureId;
+
+        final int numPoints;
+
+        final String geometryType;
+
+        final long fingerprint;
+
+        /**
+         * The original coordinates, each sequence preceded by its size
+         */
+        final double[] ordinates;
+
+        Key(Object context, String featureId, Geometry geometry) {
+            this.context = context;
+            this.featureId = featureId;
+            this.numPoints = geometry.getNumPoints();
+            this.geometryType = geometry.getGeometryType();
+            FingerprintFilter filter = new FingerprintFilter(numPoints);
+            geometry.apply(filter);
+            this.ordinates = filter.ordinates.length == filter.size ? filter.ordinates : Arrays
+                    .copyOf(filter.ordinates, filter.size);
+            this.fingerprint = 31 * filter.hash + geometryType.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            int result = context.hashCode();
+            result = 31 * result + featureId.hashCode();
+            result = 31 * result + numPoints;
+            result = 31 * result + (int) (fingerprint ^ (fingerprint >>> 32));
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            // the fingerprint can collide, the coordinates are compared exactly once it matches
+            return numPoints == other.numPoints && fingerprint == other.fingerprint
+                    && featureId.equals(other.featureId) && context.equals(other.context)
+                    && geometryType.equals(other.geometryType)
+                    && Arrays.equals(ordinates, other.ordinates);
+        }
+    }
+
+    /**
+     * Hashes and copies the coordinates of a geometry, including the ring/part boundaries
+     */
+    static class FingerprintFilter implements CoordinateSequenceFilter {
+        long hash = 1;
+
+        double[] ordinates;
+
+        int size;
+
+        FingerprintFilter(int numPoints) {
+            this.ordinates = new double[numPoints * 2 + 4];
+        }
+
+        @Override
+        public void filter(CoordinateSequence seq, int i) {
+            if (i == 0) {
+                hash = 31 * hash + seq.size();
+                add(seq.size());
+            }
+            double x = seq.getX(i);
+            double y = seq.getY(i);
+            hash = 31 * hash + Double.doubleToLongBits(x);
+            hash = 31 * hash + Double.doubleToLongBits(y);
+            add(x);
+            add(y);
+        }
+
+        private void add(double value) {
+            if (size == ordinates.length) {
+                ordinates = Arrays.copyOf(ordinates, size * 2);
+            }
+            ordinates[size++] = value;
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+
+        @Override
+        public boolean isGeometryChanged() {
+            return false;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.geotools.renderer.crs;
 import static org.geotools.referencing.crs.DefaultGeographicCRS.WGS84;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
@@ -90,6 +91,15 @@ public class ProjectionHandler {
 
     protected boolean queryAcrossDateline;
 
+    protected ClippedGeometryCache geometryCache = ClippedGeometryCache.getDefaultInstance();
+
+    private Object cacheContext;
+
+    /**
+     * The id of the feature being pre processed by {@link #preProcess(Geometry, String)}
+     */
+    private static final ThreadLocal<String> CURRENT_FEATURE_ID = new ThreadLocal<String>();
+
     /**
      * Initializes a projection handler 
      * 
@@ -405,7 +415,6 @@ public class ProjectionHandler {
             return geometry;
         }
         
-        Geometry mask;
         // fast path for the rectangular case, more complex one for the
         // non rectangular one
         ReferencedEnvelope ge = new ReferencedEnvelope(geometry.getEnvelopeInternal(), geometryCRS);
@@ -421,7 +430,73 @@ public class ProjectionHandler {
             if (validAreaBounds.contains((Envelope) geWGS84)) {
                 return geometry;
             }
+        } else {
+            // if the geometry is within the valid area for this projection
+            // just skip expensive cutting
+            if (validaAreaTester.contains(JTS.toGeometry(geWGS84))) {
+                return geometry;
+            }
+        }
 
+        return cut(geometry, geWGS84, geometryCRS);
+    }
+
+    /**
+     * Same as {@link #preProcess(Geometry)}, which is called to do the actual work, but lets the
+     * geometries cut against the valid area be cached by feature id in the
+     * {@link #getGeometryCache() geometry cache}. Subclasses should keep on overriding
+     * {@link #preProcess(Geometry)}.
+     * 
+     * @param geometry The geometry to be processed
+     * @param featureId The id of the feature the geometry belongs to, or null if not known (the
+     *        cache won't be used)
+     */
+    public Geometry preProcess(Geometry geometry, String featureId) throws TransformException,
+            FactoryException {
+        String previous = CURRENT_FEATURE_ID.get();
+        CURRENT_FEATURE_ID.set(featureId);
+        try {
+            return preProcess(geometry);
+        } finally {
+            if (previous == null) {
+                CURRENT_FEATURE_ID.remove();
+            } else {
+                CURRENT_FEATURE_ID.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Cuts the geometry against the valid area, returns null if nothing is left. Cutting is
+     * expensive, when called on behalf of {@link #preProcess(Geometry, String)} the result is
+     * looked up in the geometry cache first
+     * 
+     * @param geometry The geometry to be cut
+     * @param geWGS84 The geometry envelope, in WGS84
+     * @param geometryCRS The geometry CRS
+     */
+    protected Geometry cut(Geometry geometry, ReferencedEnvelope geWGS84,
+            CoordinateReferenceSystem geometryCRS) throws TransformException, FactoryException {
+        String featureId = CURRENT_FEATURE_ID.get();
+        ClippedGeometryCache cache = geometryCache;
+        if (featureId == null || cache == null || !cache.isEnabled()) {
+            return cutValidArea(geometry, geWGS84, geometryCRS);
+        }
+        ClippedGeometryCache.Key key = new ClippedGeometryCache.Key(getCacheContext(), featureId,
+                geometry);
+        ClippedGeometryCache.Entry entry = cache.get(key);
+        if (entry != null) {
+            return entry.getGeometry();
+        }
+        Geometry result = cutValidArea(geometry, geWGS84, geometryCRS);
+        cache.put(key, result);
+        return result;
+    }
+
+    private Geometry cutValidArea(Geometry geometry, ReferencedEnvelope geWGS84,
+            CoordinateReferenceSystem geometryCRS) throws TransformException, FactoryException {
+        Geometry mask;
+        if(validArea == null) {
             // we need to cut, first thing, we intersect the geometry envelope
             // and the valid area in WGS84, which is a neutral, everything can
             // be turned into it, and then turn back the intersection into
@@ -436,12 +511,6 @@ public class ProjectionHandler {
             ReferencedEnvelope envInt = envIntWgs84.transform(geometryCRS, true);
             mask = JTS.toGeometry((Envelope) envInt);
         } else {
-            // if the geometry is within the valid area for this projection
-            // just skip expensive cutting
-            if (validaAreaTester.contains(JTS.toGeometry(geWGS84))) {
-                return geometry;
-            }
-
             // we need to cut, first thing, we intersect the geometry envelope
             // and the valid area in WGS84, which is a neutral, everything can
             // be turned into it, and then turn back the intersection into
@@ -464,6 +533,34 @@ public class ProjectionHandler {
         return intersect(geometry, mask, geometryCRS);
     }
 
+    /**
+     * Returns the elements the cut geometries depend on, other than the geometry itself
+     */
+    private Object getCacheContext() {
+        if (cacheContext == null) {
+            cacheContext = Arrays.asList(getClass(), sourceCRS, targetCRS, validAreaBounds,
+                    validArea);
+        }
+        return cacheContext;
+    }
+
+    /**
+     * Returns the cache of the geometries cut against the valid area, by default the one shared by
+     * all handlers, {@link ClippedGeometryCache#getDefaultInstance()}
+     */
+    public ClippedGeometryCache getGeometryCache() {
+        return geometryCache;
+    }
+
+    /**
+     * Sets the cache of the geometries cut against the valid area, null to disable caching
+     * 
+     * @param geometryCache
+     */
+    public void setGeometryCache(ClippedGeometryCache geometryCache) {
+        this.geometryCache = geometryCache;
+    }
+
     protected Geometry intersect(Geometry geometry, Geometry mask,
             CoordinateReferenceSystem geometryCRS) {
         // this seems to cause issues to JTS, reduce to
@@ -0,0 +1,55 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.label;
+
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+/**
+ * Base class for the indexes storing the bounds of the painted labels, used to find the ones
+ * interfering with a new label, either by pure overlap or within a certain distance from its
+ * bounds. See {@link LabelIndex} for a quadtree based implementation, and {@link GridLabelIndex}
+ * for a grid based one.
+ */
+public abstract class AbstractLabelIndex {
+
+    /**
+     * Returns true if there is any label in the index within the specified distance from the
+     * bounds. For speed reasons the bounds will be simply expanded by the distance, no curved
+     * buffer will be generated
+     * 
+     * @param bounds
+     * @param distance
+     * @return
+     */
+    public abstract boolean labelsWithinDistance(Rectangle2D bounds, double distance);
+
+    /**
+     * Adds a label into the index
+     * 
+     * @param item
+     * @param bounds
+     */
+    public abstract void addLabel(LabelCacheItem item, Rectangle2D bounds);
+
+    /**
+     * Reserve the area indicated by these rectangles.
+     * 
+     * @param reserved
+     */
+    public abstract void reserveArea(List<Rectangle2D> reserved);
+}
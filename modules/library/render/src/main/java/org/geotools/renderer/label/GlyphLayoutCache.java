@@ -0,0 +1,197 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.label;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread safe cache of laid out label text, keyed by font (which includes the size),
+ * font render context and text. Street and place names repeat over and over across map requests,
+ * the cache avoids running the text layout machinery every time one of them is labelled.
+ * <p>
+ * Only the immutable {@link TextLayout} objects are cached and shared among threads. Glyph vectors
+ * are not, they are not thread safe (their lazily computed outlines and bounds are soft references
+ * that can be rebuilt at any time) and cannot be copied, so they are laid out for each label.
+ * <p>
+ * The default instance is shared by all the renderers in the JVM, its size can be controlled
+ * with the <code>org.geotools.labelcache.glyphCacheSize</code> system variable (setting it to zero
+ * disables the caching).
+ */
+public class GlyphLayoutCache {
+
+    /**
+     * Default number of laid out strings kept in the default cache
+     */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    static final GlyphLayoutCache DEFAULT_INSTANCE = new GlyphLayoutCache(Integer.getInteger(
+            "org.geotools.labelcache.glyphCacheSize", DEFAULT_MAX_SIZE));
+
+    /**
+     * Returns the default, system wide glyph layout cache
+     */
+    public static GlyphLayoutCache getDefaultInstance() {
+        return DEFAULT_INSTANCE;
+    }
+
+    final int maxSize;
+
+    final Map<Key, TextLayout> entries;
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Builds a new cache holding at most the specified number of laid out strings
+     * 
+     * @param maxSize
+     */
+    public GlyphLayoutCache(final int maxSize) {
+        this.maxSize = maxSize;
+        // access ordered, evicts the least recently used entries
+        this.entries = new LinkedHashMap<Key, TextLayout>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, TextLayout> eldest) {
+                return size() > GlyphLayoutCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the text layout for the specified text, font and render context. The returned object
+     * is shared, but immutable.
+     */
+    TextLayout getTextLayout(String text, Font font, FontRenderContext frc) {
+        if (maxSize <= 0) {
+            return new TextLayout(text, font, frc);
+        }
+        Key key = new Key(text, font, frc);
+        TextLayout layout;
+        synchronized (entries) {
+            layout = entries.get(key);
+        }
+        if (layout != null) {
+            hits.incrementAndGet();
+            return layout;
+        }
+
+        // compute out of the lock, text layout is expensive
+        misses.incrementAndGet();
+        layout = new TextLayout(text, font, frc);
+        synchronized (entries) {
+            TextLayout existing = entries.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            entries.put(key, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Number of lookups that found the text layout in the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of lookups that had to perform the text layout
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * The ratio of lookups served from the cache, between 0 and 1
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : ((double) h) / total;
+    }
+
+    /**
+     * Number of laid out strings currently in the cache
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * The maximum number of laid out strings kept in the cache
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Removes all the cached layouts and resets the statistics
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    static final class Key {
+        final String text;
+
+        final Font font;
+
+        final FontRenderContext frc;
+
+        final int hashCode;
+
+        Key(String text, Font font, FontRenderContext frc) {
+            this.text = text;
+            this.font = font;
+            this.frc = frc;
+            this.hashCode = 31 * (31 * text.hashCode() + font.hashCode()) + frc.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hashCode == other.hashCode && text.equals(other.text)
+                    && font.equals(other.font) && frc.equals(other.frc);
+        }
+    }
+}
@@ -71,13 +71,14 @@ abstract class GlyphProcessor {
     public static class ConflictDetector extends GlyphProcessor {
 
         Rectangle displayArea;
-        LabelIndex paintedBounds;
-        LabelIndex groupLabels;
+        AbstractLabelIndex paintedBounds;
+        AbstractLabelIndex groupLabels;
         int extraSpace;
         double minDistance;
 
         public ConflictDetector(LabelPainter painter, Rectangle displayArea,
-                                 LabelIndex paintedBounds, LabelIndex groupLabels) {
+                                 AbstractLabelIndex paintedBounds,
+                                 AbstractLabelIndex groupLabels) {
             super(painter);
             this.displayArea = displayArea;
             this.paintedBounds = paintedBounds;
@@ -110,9 +111,9 @@ abstract class GlyphProcessor {
      */
     public static class IndexAdder extends GlyphProcessor {
 
-        LabelIndex index;
+        AbstractLabelIndex index;
 
-        public IndexAdder(LabelPainter painter, LabelIndex index) {
+        public IndexAdder(LabelPainter painter, AbstractLabelIndex index) {
             super(painter);
             this.index = index;
         }
@@ -0,0 +1,256 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.label;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+/**
+ * A label index backed by a fixed resolution grid of screen cells. Each cell keeps the
+ * identifiers of the label bounds touching it, while the bounds are stored in a packed
+ * array of ordinates, and a bitmap tracks the non empty cells to quickly skip empty areas.
+ * <p>
+ * The conflict checks are exact (the stored bounds are compared with the query ones), so the
+ * results are the same as the quadtree based {@link LabelIndex}, but no objects are allocated
+ * while adding and querying labels. The index can be {@link #reset(Rectangle) reset} and reused
+ * across renderings, keeping all the allocated structures around.
+ * <p>
+ * Bounds falling outside of the grid area are associated with the border cells, so they are
+ * still handled correctly, just less efficiently.
+ */
+public class GridLabelIndex extends AbstractLabelIndex {
+
+    /**
+     * The default cell size, in pixels
+     */
+    public static final int DEFAULT_CELL_SIZE = 16;
+
+    int cellSize;
+
+    int minX;
+
+    int minY;
+
+    int cols;
+
+    int rows;
+
+    /**
+     * The label bounds, as sequences of minx, miny, maxx, maxy
+     */
+    double[] bounds = new double[256];
+
+    int count;
+
+    /**
+     * The identifiers of the bounds touching each cell (allocated lazily)
+     */
+    int[][] cellItems;
+
+    /**
+     * Number of identifiers in each cell
+     */
+    int[] cellCounts;
+
+    /**
+     * Bitmap of the non empty cells
+     */
+    long[] occupied;
+
+    /**
+     * Builds a grid index covering the specified area, with the default cell size
+     * 
+     * @param area
+     */
+    public GridLabelIndex(Rectangle area) {
+        this(area, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Builds a grid index covering the specified area
+     * 
+     * @param area The area the labels are expected to fall into (usually, the display area)
+     * @param cellSize The cell size, in pixels
+     */
+    public GridLabelIndex(Rectangle area, int cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("The cell size must be positive");
+        }
+        this.cellSize = cellSize;
+        reset(area);
+    }
+
+    /**
+     * Removes all labels from the index, and sets it up to cover the specified area. The
+     * internal structures are reused whenever possible
+     * 
+     * @param area
+     */
+    public void reset(Rectangle area) {
+        int newCols = Math.max(1, (area.width + cellSize - 1) / cellSize);
+        int newRows = Math.max(1, (area.height + cellSize - 1) / cellSize);
+        if (cellCounts != null && newCols * newRows <= cellCounts.length) {
+            clear();
+        } else {
+            cellItems = new int[newCols * newRows][];
+            cellCounts = new int[newCols * newRows];
+            occupied = new long[(newCols * newRows + 63) / 64];
+            count = 0;
+        }
+        this.minX = area.x;
+        this.minY = area.y;
+        this.cols = newCols;
+        this.rows = newRows;
+    }
+
+    /**
+     * Removes all the labels from the index
+     */
+    public void clear() {
+        for (int i = 0; i < occupied.length; i++) {
+            long bits = occupied[i];
+            while (bits != 0) {
+                int bit = Long.numberOfTrailingZeros(bits);
+                cellCounts[i * 64 + bit] = 0;
+                bits &= bits - 1;
+            }
+            occupied[i] = 0;
+        }
+        count = 0;
+    }
+
+    /**
+     * Returns the number of bounds stored in the index
+     */
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean labelsWithinDistance(Rectangle2D bounds, double distance) {
+        if (distance < 0 || count == 0)
+            return false;
+
+        final double qMinX = bounds.getMinX() - distance;
+        final double qMinY = bounds.getMinY() - distance;
+        final double qMaxX = bounds.getMaxX() + distance;
+        final double qMaxY = bounds.getMaxY() + distance;
+
+        final int c1 = col(qMinX);
+        final int c2 = col(qMaxX);
+        final int r1 = row(qMinY);
+        final int r2 = row(qMaxY);
+        final double[] ordinates = this.bounds;
+        for (int r = r1; r <= r2; r++) {
+            for (int c = c1; c <= c2; c++) {
+                int cell = r * cols + c;
+                if ((occupied[cell >>> 6] & (1L << cell)) == 0) {
+                    continue;
+                }
+                int[] items = cellItems[cell];
+                int cellCount = cellCounts[cell];
+                for (int i = 0; i < cellCount; i++) {
+                    int base = items[i] * 4;
+                    // same semantics as JTS Envelope.intersects, touching bounds do interfere
+                    if (!(ordinates[base] > qMaxX || ordinates[base + 2] < qMinX
+                            || ordinates[base + 1] > qMaxY || ordinates[base + 3] < qMinY)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void addLabel(LabelCacheItem item, Rectangle2D bounds) {
+        add(bounds);
+    }
+
+    @Override
+    public void reserveArea(List<Rectangle2D> reserved) {
+        for (Rectangle2D area : reserved) {
+            add(area);
+        }
+    }
+
+    void add(Rectangle2D area) {
+        final double x1 = area.getMinX();
+        final double y1 = area.getMinY();
+        final double x2 = area.getMaxX();
+        final double y2 = area.getMaxY();
+
+        // store the bounds
+        int id = count++;
+        int base = id * 4;
+        if (base + 4 > bounds.length) {
+            double[] grown = new double[bounds.length * 2];
+            System.arraycopy(bounds, 0, grown, 0, base);
+            bounds = grown;
+        }
+        bounds[base] = x1;
+        bounds[base + 1] = y1;
+        bounds[base + 2] = x2;
+        bounds[base + 3] = y2;
+
+        // register it in all the cells it touches
+        final int c1 = col(x1);
+        final int c2 = col(x2);
+        final int r1 = row(y1);
+        final int r2 = row(y2);
+        for (int r = r1; r <= r2; r++) {
+            for (int c = c1; c <= c2; c++) {
+                int cell = r * cols + c;
+                int[] items = cellItems[cell];
+                int cellCount = cellCounts[cell];
+                if (items == null) {
+                    items = new int[4];
+                    cellItems[cell] = items;
+                } else if (cellCount == items.length) {
+                    int[] grown = new int[items.length * 2];
+                    System.arraycopy(items, 0, grown, 0, cellCount);
+                    items = grown;
+                    cellItems[cell] = items;
+                }
+                items[cellCount] = id;
+                cellCounts[cell] = cellCount + 1;
+                occupied[cell >>> 6] |= 1L << cell;
+            }
+        }
+    }
+
+    private int col(double x) {
+        double c = Math.floor((x - minX) / cellSize);
+        if (c < 0 || Double.isNaN(c)) {
+            return 0;
+        } else if (c >= cols) {
+            return cols - 1;
+        }
+        return (int) c;
+    }
+
+    private int row(double y) {
+        double r = Math.floor((y - minY) / cellSize);
+        if (r < 0 || Double.isNaN(r)) {
+            return 0;
+        } else if (r >= rows) {
+            return rows - 1;
+        }
+        return (int) r;
+    }
+}
@@ -93,7 +93,7 @@ import com.vividsolutions.jts.operation.linemerge.LineMerger;
  *
  * @source $URL$
  */
-public final class LabelCacheImpl implements LabelCache {
+public class LabelCacheImpl implements LabelCache {
     
     static final boolean DEBUG_CACHE_BOUNDS = Boolean.getBoolean("org.geotools.labelcache.showbounds");
 
@@ -162,6 +162,12 @@ public final class LabelCacheImpl implements LabelCache {
     
     private VendorOptionParser voParser = new VendorOptionParser();
 
+    /** The conflict index, kept around and reused across renderings */
+    private AbstractLabelIndex labelIndex;
+
+    /** The index of the labels of a single group, kept around and reused across groups */
+    private AbstractLabelIndex groupLabelIndex;
+
     public void enableLayer(String layerId) {
         needsOrdering = true;
         enabledLayers.add(layerId);
@@ -429,7 +435,8 @@ public final class LabelCacheImpl implements LabelCache {
                     + " are layers that started rendering but have not completed,"
                     + " stop() or endLayer() must be called before end() is called");
         }
-        LabelIndex glyphs = new LabelIndex();
+        labelIndex = reuseLabelIndex(labelIndex, displayArea);
+        AbstractLabelIndex glyphs = labelIndex;
         glyphs.reserveArea( reserved );
 
         //Used to check the paintLineLabel function
@@ -512,6 +519,50 @@ public final class LabelCacheImpl implements LabelCache {
         LOGGER.log(Level.FINE, "REMAINING LINE LABELS : {0}", nonPaintedLineLabels);
     }
 
+    /**
+     * Creates an index used to check label conflicts, both against all the painted labels and
+     * among the labels of a single group. A grid based index is used by default. Subclasses can
+     * override this method to use a different index
+     *
+     * @param displayArea
+     * @return
+     */
+    protected AbstractLabelIndex createLabelIndex(Rectangle displayArea) {
+        return new GridLabelIndex(displayArea);
+    }
+
+    /**
+     * Resets and returns the index if it's a grid one, which can be reused without re-allocating
+     * its structures, otherwise creates a new one
+     */
+    private AbstractLabelIndex reuseLabelIndex(AbstractLabelIndex index, Rectangle displayArea) {
+        if (index instanceof GridLabelIndex) {
+            ((GridLabelIndex) index).reset(displayArea);
+            return index;
+        }
+        return createLabelIndex(displayArea);
+    }
+
+    /**
+     * Computes the bounds of the rectangle transformed by the specified affine transform,
+     * without building the intermediate transformed shape
+     *
+     * @param tx
+     * @param bounds
+     * @return
+     */
+    static Rectangle2D transformBounds(AffineTransform tx, Rectangle2D bounds) {
+        double[] pts = new double[] { bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(),
+                bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(), bounds.getMinX(),
+                bounds.getMaxY() };
+        tx.transform(pts, 0, pts, 0, 4);
+        double minX = Math.min(Math.min(pts[0], pts[2]), Math.min(pts[4], pts[6]));
+        double maxX = Math.max(Math.max(pts[0], pts[2]), Math.max(pts[4], pts[6]));
+        double minY = Math.min(Math.min(pts[1], pts[3]), Math.min(pts[5], pts[7]));
+        double maxY = Math.max(Math.max(pts[1], pts[3]), Math.max(pts[5], pts[7]));
+        return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+    }
+
 
     private Envelope toEnvelope(Rectangle2D bounds) {
         return new Envelope(bounds.getMinX(), bounds.getMaxX(), bounds.getMinY(), bounds.getMaxY());
@@ -577,7 +628,7 @@ public final class LabelCacheImpl implements LabelCache {
                 Geometry g = representativeGeom.getGeometry();
                 g.geometryChanged();
                 Envelope ePoly = g.getEnvelopeInternal();
-                Envelope eglyph = toEnvelope(transform.createTransformedShape(glyphBounds).getBounds2D());
+                Envelope eglyph = toEnvelope(transformBounds(transform, glyphBounds));
                 Envelope inter = intersection(ePoly, eglyph);
                 if (inter != null) {
                     return (inter.getWidth() * inter.getHeight())
@@ -595,7 +646,7 @@ public final class LabelCacheImpl implements LabelCache {
     //We compute the Bounding box for each letters instead of the whole label
     //then we check each letters for collisions
     private boolean paintLineLabelsWithLetterConflict(LabelPainter painter, AffineTransform originalTransform,
-            Rectangle displayArea, LabelIndex paintedBounds) throws Exception {
+            Rectangle displayArea, AbstractLabelIndex paintedBounds) throws Exception {
         final LabelCacheItem labelItem = painter.getLabel();
         List<LineString> lines = getLineSetRepresentativeLocation(
                 labelItem.getGeoms(), displayArea, labelItem.removeGroupOverlaps(),
@@ -621,7 +672,8 @@ public final class LabelCacheImpl implements LabelCache {
         int labelDistance = (int) (labelItem.getRepeat() > 0 ? labelItem.getRepeat() + (textBounds.getWidth()*2) : 0);
         // min distance, if any
         int minDistance = labelItem.getMinGroupDistance();
-        LabelIndex groupLabels = new LabelIndex();
+        groupLabelIndex = reuseLabelIndex(groupLabelIndex, displayArea);
+        AbstractLabelIndex groupLabels = groupLabelIndex;
         // Max displacement for the current label
         double labelOffset = labelItem.getMaxDisplacement();
         boolean allowOverruns = labelItem.allowOverruns();
@@ -813,7 +865,7 @@ public final class LabelCacheImpl implements LabelCache {
 
 
     private boolean paintLineLabels(LabelPainter painter, AffineTransform originalTransform,
-            Rectangle displayArea, LabelIndex paintedBounds) throws Exception {
+            Rectangle displayArea, AbstractLabelIndex paintedBounds) throws Exception {
         final LabelCacheItem labelItem = painter.getLabel();
         List<LineString> lines = getLineSetRepresentativeLocation(
                 labelItem.getGeoms(), displayArea, labelItem.removeGroupOverlaps(),
@@ -839,7 +891,8 @@ public final class LabelCacheImpl implements LabelCache {
         int labelDistance = labelItem.getRepeat();
         // min distance, if any
         int minDistance = labelItem.getMinGroupDistance();
-        LabelIndex groupLabels = new LabelIndex();
+        groupLabelIndex = reuseLabelIndex(groupLabelIndex, displayArea);
+        AbstractLabelIndex groupLabels = groupLabelIndex;
         // Max displacement for the current label
         double labelOffset = labelItem.getMaxDisplacement();
         boolean allowOverruns = labelItem.allowOverruns();
@@ -920,7 +973,7 @@ public final class LabelCacheImpl implements LabelCache {
                             // if label will be painted as straight, use the
                             // straight bounds
                             setupLineTransform(painter, cursor, centroid, tx, true);
-                            labelEnvelope = tx.createTransformedShape(textBounds).getBounds2D();
+                            labelEnvelope = transformBounds(tx, textBounds);
                         } else {
                             // otherwise use curved bounds, more expensive to
                             // compute
@@ -929,7 +982,7 @@ public final class LabelCacheImpl implements LabelCache {
                         }
                     } else {
                         setupLineTransform(painter, cursor, centroid, tx, false);
-                        labelEnvelope = tx.createTransformedShape(textBounds).getBounds2D();
+                        labelEnvelope = transformBounds(tx, textBounds);
                     }
 
                     // try to paint the label, the condition under which this
@@ -1120,7 +1173,7 @@ public final class LabelCacheImpl implements LabelCache {
      * up until the radius of the circle becomes bigger than the max displacement
      */
     private boolean paintPointLabel(LabelPainter painter, AffineTransform tempTransform,
-            Rectangle displayArea, LabelIndex glyphs) throws Exception {
+            Rectangle displayArea, AbstractLabelIndex glyphs) throws Exception {
         LabelCacheItem labelItem = painter.getLabel();
         // get the point onto the shape has to be painted
         Point point = getPointSetRepresentativeLocation(labelItem.getGeoms(),
@@ -1226,13 +1279,12 @@ public final class LabelCacheImpl implements LabelCache {
      * @throws Exception
      */
     private boolean paintPointLabelInternal(LabelPainter painter, AffineTransform tempTransform,
-            Rectangle displayArea, LabelIndex glyphs, LabelCacheItem labelItem, Point point,
+            Rectangle displayArea, AbstractLabelIndex glyphs, LabelCacheItem labelItem, Point point,
             TextStyle2D textStyle) throws Exception {
         setupPointTransform(tempTransform, point, textStyle, painter);
 
         // check for overlaps and paint
-        Rectangle2D transformed = tempTransform
-                .createTransformedShape(painter.getFullLabelBounds()).getBounds2D();
+        Rectangle2D transformed = transformBounds(tempTransform, painter.getFullLabelBounds());
         if (!(displayArea.contains(transformed) || labelItem.isPartialsEnabled())
                 || (labelItem.isConflictResolutionEnabled() && 
                         glyphs.labelsWithinDistance(transformed, labelItem.getSpaceAround()))) {
@@ -1257,7 +1309,7 @@ public final class LabelCacheImpl implements LabelCache {
      * the outside line and label it, but spec is unclear)
      */
     private boolean paintPolygonLabel(LabelPainter painter, AffineTransform tempTransform,
-            Rectangle displayArea, LabelIndex glyphs) throws Exception {
+            Rectangle displayArea, AbstractLabelIndex glyphs) throws Exception {
         LabelCacheItem labelItem = painter.getLabel();
         Polygon geom = getPolySetRepresentativeLocation(labelItem.getGeoms(), displayArea, labelItem.isPartialsEnabled());
         if (geom == null) {
@@ -1369,7 +1421,7 @@ public final class LabelCacheImpl implements LabelCache {
     }
     
     private boolean paintPolygonLabelInternal(LabelPainter painter, AffineTransform tempTransform,
-            Rectangle displayArea, LabelIndex glyphs, LabelCacheItem labelItem, PreparedGeometry pg,
+            Rectangle displayArea, AbstractLabelIndex glyphs, LabelCacheItem labelItem, PreparedGeometry pg,
             Point centroid, TextStyle2DExt textStyle) throws Exception {
         // useful to debug the label/centroid relationship 
         // painter.graphics.setColor(Color.RED);
@@ -1378,8 +1430,7 @@ public final class LabelCacheImpl implements LabelCache {
         AffineTransform original = new AffineTransform(tempTransform);
         setupPointTransform(tempTransform, centroid, textStyle, painter);
 
-        Rectangle2D transformed = tempTransform
-                .createTransformedShape(painter.getFullLabelBounds()).getBounds2D();
+        Rectangle2D transformed = transformBounds(tempTransform, painter.getFullLabelBounds());
         if (!(displayArea.contains(transformed) || labelItem.isPartialsEnabled())
                 || (labelItem.isConflictResolutionEnabled() 
                         && glyphs.labelsWithinDistance(transformed, labelItem.getSpaceAround()))
@@ -1389,7 +1440,7 @@ public final class LabelCacheImpl implements LabelCache {
                 tempTransform.setTransform(original);
                 setupPointTransform(tempTransform, centroid, textStyle, painter);
 
-                transformed = tempTransform.createTransformedShape(painter.getFullLabelBounds()).getBounds2D();
+                transformed = transformBounds(tempTransform, painter.getFullLabelBounds());
                 if (!(displayArea.contains(transformed) || labelItem.isPartialsEnabled())
                         || (labelItem.isConflictResolutionEnabled() 
                                 && glyphs.labelsWithinDistance(transformed, labelItem.getSpaceAround()))
@@ -34,7 +34,7 @@ import com.vividsolutions.jts.index.quadtree.Quadtree;
  *
  * @source $URL$
  */
-public class LabelIndex {
+public class LabelIndex extends AbstractLabelIndex {
 
     Quadtree index = new Quadtree();
 
@@ -47,6 +47,7 @@ public class LabelIndex {
      * @param distance
      * @return
      */
+    @Override
     @SuppressWarnings("unchecked")
     public boolean labelsWithinDistance(Rectangle2D bounds, double distance) {
         if (distance < 0)
@@ -72,6 +73,7 @@ public class LabelIndex {
      * @param item
      * @param bounds
      */
+    @Override
     public void addLabel(LabelCacheItem item, Rectangle2D bounds) {
         Envelope e = toEnvelope(bounds);
         index.insert(e, new InterferenceItem(e, item));
@@ -112,6 +114,7 @@ public class LabelIndex {
      * 
      * @param reserved
      */
+    @Override
     public void reserveArea(List<Rectangle2D> reserved) {
         for( Rectangle2D area : reserved ){
             Envelope env = toEnvelope(area);
@@ -49,6 +49,8 @@ class LabelSplitter {
 
     private static final String NOT_EMPTY_STRING = " ";
 
+    GlyphLayoutCache glyphCache = GlyphLayoutCache.getDefaultInstance();
+
     public List<LineInfo> layout(LabelCacheItem labelItem, Graphics2D graphics) {
         String text = labelItem.getLabel();
         Font[] fonts = labelItem.getTextStyle().getFonts();
@@ -59,9 +61,9 @@ class LabelSplitter {
                 || textLength == fonts[0].canDisplayUpTo(text.toCharArray(), 0, textLength);
         if (!(text.contains("\n") || labelItem.getAutoWrap() > 0) && singleFont) {
             FontRenderContext frc = graphics.getFontRenderContext();
-            TextLayout layout = new TextLayout(text, fonts[0], frc);
+            TextLayout layout = glyphCache.getTextLayout(text, fonts[0], frc);
             LineComponent component = new LineComponent(text,
-                    layoutSentence(text, labelItem, graphics, fonts[0]), layout);
+                    layoutSentence(text, fonts[0], frc), layout);
             LineInfo line = new LineInfo(component);
             return Collections.singletonList(line);
         }
@@ -81,9 +83,9 @@ class LabelSplitter {
                     graphics.setFont(range.font);
                     FontRenderContext frc = graphics.getFontRenderContext();
 
-                    TextLayout layout = new TextLayout(range.text, range.font, frc);
+                    TextLayout layout = glyphCache.getTextLayout(range.text, range.font, frc);
                     LineComponent component = new LineComponent(range.text,
-                            layoutSentence(range.text, labelItem, graphics, range.font), layout);
+                            layoutSentence(range.text, range.font, frc), layout);
                     lineInfo.add(component);
                 }
                 lines.add(lineInfo);
@@ -156,7 +158,8 @@ class LabelSplitter {
                         }
                         currentLineRange++;
                         LineComponent component = new LineComponent(extracted,
-                                layoutSentence(extracted, labelItem, graphics, range.font), layout);
+                                layoutSentence(extracted, range.font,
+                                        graphics.getFontRenderContext()), layout);
                         lineInfo.add(component);
                     }
                     lines.add(lineInfo);
@@ -225,17 +228,17 @@ class LabelSplitter {
      * Turns a string into the corresponding {@link GlyphVector}
      * 
      * @param label
-     * @param item
+     * @param font
+     * @param frc
      * @return
      */
-    GlyphVector layoutSentence(String label, LabelCacheItem item, Graphics2D graphics,
-            Font font) {
+    static GlyphVector layoutSentence(String label, Font font, FontRenderContext frc) {
         final char[] chars = label.toCharArray();
         final int length = label.length();
         if (Bidi.requiresBidi(chars, 0, length)) {
             Bidi bidi = new Bidi(label, Bidi.DIRECTION_DEFAULT_LEFT_TO_RIGHT);
             if (bidi.isRightToLeft()) {
-                return font.layoutGlyphVector(graphics.getFontRenderContext(), chars, 0, length,
+                return font.layoutGlyphVector(frc, chars, 0, length,
                         Font.LAYOUT_RIGHT_TO_LEFT);
             } else if (bidi.isMixed()) {
                 String r = "";
@@ -247,11 +250,11 @@ class LabelSplitter {
                     r = r + s1;
                 }
                 char[] chars2 = r.toCharArray();
-                return font.layoutGlyphVector(graphics.getFontRenderContext(), chars2, 0, length,
+                return font.layoutGlyphVector(frc, chars2, 0, length,
                         Font.LAYOUT_RIGHT_TO_LEFT);
             }
         }
-        return font.createGlyphVector(graphics.getFontRenderContext(), chars);
+        return font.createGlyphVector(frc, chars);
     }
 
     List<FontRange> buildFontRanges(String text, Font[] fonts) {
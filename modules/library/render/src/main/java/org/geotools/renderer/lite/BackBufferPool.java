@@ -0,0 +1,248 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates the back buffers used by the {@link StreamingRenderer} to paint feature type styles
+ * and compositing groups, within a global memory budget, and keeps the released ones around for
+ * reuse, avoiding the allocation of large images at each request (and the ensuing garbage
+ * collections).
+ * <p>
+ * The budget accounts for all the back buffers in use or idle in the pool: when a new back buffer
+ * would exceed it, the idle images are evicted first, and if that is not enough, no image is
+ * returned, and the renderer falls back on painting directly on the target graphics. Mind, direct
+ * painting ignores the feature type style compositing and blending, and paints the feature type
+ * styles of a layer interleaved, it's meant as a way to survive memory pressure, not as a normal
+ * way of operation.
+ * <p>
+ * The budget of the default instance can be controlled with the
+ * <code>org.geotools.render.backBufferMemory</code> system variable, in bytes, defaulting to a
+ * quarter of the max heap size, while the bytes kept idle for reuse can be controlled with
+ * <code>org.geotools.render.backBufferPoolSize</code> (setting it to zero disables the reuse).
+ */
+public class BackBufferPool {
+
+    /**
+     * Default number of bytes kept idle in the default pool
+     */
+    public static final long DEFAULT_MAX_IDLE_BYTES = 64 * 1024 * 1024;
+
+    static final BackBufferPool DEFAULT_INSTANCE = new BackBufferPool(Long.getLong(
+            "org.geotools.render.backBufferMemory", Runtime.getRuntime().maxMemory() / 4),
+            Long.getLong("org.geotools.render.backBufferPoolSize", DEFAULT_MAX_IDLE_BYTES));
+
+    /**
+     * Returns the default, system wide back buffer pool
+     */
+    public static BackBufferPool getDefaultInstance() {
+        return DEFAULT_INSTANCE;
+    }
+
+    final long maxBytes;
+
+    final long maxIdleBytes;
+
+    /**
+     * The idle images, most recently released first
+     */
+    final LinkedList<BufferedImage> idle = new LinkedList<BufferedImage>();
+
+    long usedBytes;
+
+    long idleBytes;
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * Builds a new pool
+     * 
+     * @param maxBytes The max number of bytes of all back buffers, in use or idle
+     * @param maxIdleBytes The max number of bytes kept idle for reuse
+     */
+    public BackBufferPool(long maxBytes, long maxIdleBytes) {
+        this.maxBytes = maxBytes;
+        this.maxIdleBytes = Math.min(maxBytes, maxIdleBytes);
+    }
+
+    /**
+     * Returns a fully transparent image compatible with the graphics configuration, or null if
+     * allocating it would exceed the memory budget. The image must be given back to the pool with
+     * {@link #release(BufferedImage)} or {@link #discard(BufferedImage)} once done with it.
+     * 
+     * @param configuration The configuration of the graphics the image will be painted onto
+     * @param width
+     * @param height
+     */
+    public BufferedImage acquire(GraphicsConfiguration configuration, int width, int height) {
+        ColorModel cm = configuration.getColorModel(Transparency.TRANSLUCENT);
+        long estimate = (long) width * height * Math.max(cm.getPixelSize() / 8, 1);
+        BufferedImage reused = null;
+        synchronized (this) {
+            for (Iterator<BufferedImage> it = idle.iterator(); it.hasNext() && reused == null;) {
+                BufferedImage image = it.next();
+                if (image.getWidth() == width && image.getHeight() == height
+                        && image.getColorModel().equals(cm)) {
+                    it.remove();
+                    long bytes = StreamingRenderer.getImageBytes(image);
+                    idleBytes -= bytes;
+                    usedBytes += bytes;
+                    reused = image;
+                }
+            }
+        }
+        if (reused != null) {
+            hits.incrementAndGet();
+            clear(reused);
+            return reused;
+        }
+
+        synchronized (this) {
+            // make room evicting the least recently released images
+            while (usedBytes + idleBytes + estimate > maxBytes && !idle.isEmpty()) {
+                idleBytes -= StreamingRenderer.getImageBytes(idle.removeLast());
+            }
+            if (usedBytes + estimate > maxBytes) {
+                rejections.incrementAndGet();
+                return null;
+            }
+            usedBytes += estimate;
+            misses.incrementAndGet();
+        }
+
+        // allocate outside of the lock, large images take time to be zeroed out
+        BufferedImage image = null;
+        try {
+            image = configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+            return image;
+        } finally {
+            synchronized (this) {
+                usedBytes += (image != null ? StreamingRenderer.getImageBytes(image) : 0)
+                        - estimate;
+            }
+        }
+    }
+
+    private void clear(BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setComposite(AlphaComposite.Clear);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * Gives back an image acquired from this pool, making it available for reuse. The caller
+     * must not use the image anymore.
+     * 
+     * @param image
+     */
+    public synchronized void release(BufferedImage image) {
+        long bytes = StreamingRenderer.getImageBytes(image);
+        usedBytes -= bytes;
+        if (bytes <= maxIdleBytes) {
+            idle.addFirst(image);
+            idleBytes += bytes;
+            while (idleBytes > maxIdleBytes) {
+                idleBytes -= StreamingRenderer.getImageBytes(idle.removeLast());
+            }
+        }
+    }
+
+    /**
+     * Gives back an image acquired from this pool without making it available for reuse, to be
+     * used when the image might still be painted onto (e.g., by a painter that has been asked to
+     * stop, but might not have done so yet)
+     * 
+     * @param image
+     */
+    public synchronized void discard(BufferedImage image) {
+        usedBytes -= StreamingRenderer.getImageBytes(image);
+    }
+
+    /**
+     * Removes all the idle images from the pool
+     */
+    public synchronized void clear() {
+        idle.clear();
+        idleBytes = 0;
+    }
+
+    /**
+     * The max number of bytes of all back buffers, in use or idle
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * The max number of bytes kept idle for reuse
+     */
+    public long getMaxIdleBytes() {
+        return maxIdleBytes;
+    }
+
+    /**
+     * The number of bytes of the back buffers currently in use
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * The number of bytes of the back buffers currently idle in the pool
+     */
+    public synchronized long getIdleBytes() {
+        return idleBytes;
+    }
+
+    /**
+     * The number of back buffers reused from the pool
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * The number of back buffers newly allocated
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * The number of back buffers refused because of the memory budget
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+}
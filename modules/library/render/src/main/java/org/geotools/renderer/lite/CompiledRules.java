@@ -0,0 +1,524 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.geotools.styling.Rule;
+import org.geotools.util.Converters;
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+
+/**
+ * A decision structure built out of the rules of a {@link LiteFeatureTypeStyle}, used to avoid
+ * evaluating each rule filter against each feature when a style has many thematic rules keyed on
+ * the same attribute.
+ * <p>
+ * The attribute most rules are testing is located, and the rules are indexed either by the
+ * values they compare it to, in a hash table, or by the numeric ranges they accept, in a sorted
+ * table of segments. For each feature the attribute is then evaluated once, and a single lookup
+ * returns the rules that might match, in their original order. The index is conservative, the
+ * candidate rules are a superset of the matching ones, so their filters are still evaluated, but
+ * the rules that cannot possibly match are skipped. Rules that cannot be indexed are always part
+ * of the candidates.
+ * <p>
+ * The filters perform type conversions when comparing values, some of them lossy (e.g., a
+ * literal 7.5 can be truncated to match an integer attribute valued 7), so the index is used only
+ * for strings, doubles, and integral attributes when all the indexed values are integral. For
+ * other attribute types all rules are returned.
+ */
+abstract class CompiledRules {
+
+    /**
+     * Below this number of indexable rules evaluating all filters in sequence is just as fast
+     */
+    static final int MIN_INDEXED_RULES = 4;
+
+    static final Pattern PLAIN_DECIMAL = Pattern.compile("[+-]?\\d+(\\.\\d+)?");
+
+    final PropertyName property;
+
+    /**
+     * The rules that cannot be excluded by the index
+     */
+    final int[] residual;
+
+    CompiledRules(PropertyName property, int[] residual) {
+        this.property = property;
+        this.residual = residual;
+    }
+
+    /**
+     * Returns the indexes of the rules that might match the feature, in ascending order, or null
+     * if all rules need to be evaluated
+     */
+    abstract int[] getCandidates(Object feature);
+
+    /**
+     * Compiles the rules, returns null if the rules are too few or too heterogeneous to benefit
+     * from an index
+     */
+    static CompiledRules compile(Rule[] rules) {
+        if (rules == null || rules.length < MIN_INDEXED_RULES) {
+            return null;
+        }
+
+        // analyze the filters and find the most used property and condition type
+        Condition[] conditions = new Condition[rules.length];
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        String best = null;
+        int bestCount = 0;
+        for (int i = 0; i < rules.length; i++) {
+            Condition c = analyze(rules[i].getFilter());
+            conditions[i] = c;
+            if (c != null) {
+                String id = c.getId();
+                Integer count = counts.get(id);
+                count = count == null ? 1 : count + 1;
+                counts.put(id, count);
+                if (count > bestCount) {
+                    best = id;
+                    bestCount = count;
+                }
+            }
+        }
+        if (bestCount < MIN_INDEXED_RULES) {
+            return null;
+        }
+
+        List<Integer> residual = new ArrayList<Integer>();
+        List<Integer> indexed = new ArrayList<Integer>();
+        PropertyName property = null;
+        for (int i = 0; i < conditions.length; i++) {
+            Condition c = conditions[i];
+            if (c != null && best.equals(c.getId())) {
+                indexed.add(i);
+                if (property == null) {
+                    property = c.property;
+                }
+            } else {
+                residual.add(i);
+            }
+        }
+
+        if (conditions[indexed.get(0)].keys != null) {
+            return new EqualityRules(property, conditions, indexed, toArray(residual));
+        } else {
+            return new RangeRules(property, conditions, indexed, toArray(residual));
+        }
+    }
+
+    /**
+     * Indexes rules comparing the attribute with a set of values
+     */
+    static final class EqualityRules extends CompiledRules {
+
+        final Map<Object, int[]> buckets = new HashMap<Object, int[]>();
+
+        /**
+         * True if all the numeric keys are integral, in that case lossy conversions to integral
+         * attribute types cannot generate unexpected matches
+         */
+        final boolean integralKeys;
+
+        EqualityRules(PropertyName property, Condition[] conditions, List<Integer> indexed,
+                int[] residual) {
+            super(property, residual);
+            boolean integral = true;
+            Map<Object, List<Integer>> rulesByKey = new LinkedHashMap<Object, List<Integer>>();
+            for (Integer i : indexed) {
+                integral &= conditions[i].integral;
+                for (Object key : conditions[i].keys) {
+                    List<Integer> list = rulesByKey.get(key);
+                    if (list == null) {
+                        list = new ArrayList<Integer>();
+                        rulesByKey.put(key, list);
+                    }
+                    list.add(i);
+                }
+            }
+            for (Map.Entry<Object, List<Integer>> entry : rulesByKey.entrySet()) {
+                buckets.put(entry.getKey(), merge(toArray(entry.getValue()), residual));
+            }
+            this.integralKeys = integral;
+        }
+
+        @Override
+        int[] getCandidates(Object feature) {
+            Object value = property.evaluate(feature);
+            if (value == null) {
+                // cannot be equal to any of the non null keys
+                return residual;
+            } else if (!(value instanceof String) && !(value instanceof Double)
+                    && !(integralKeys && isIntegral(value))) {
+                return null;
+            }
+            int[] candidates = buckets.get(toKey(value));
+            return candidates != null ? candidates : residual;
+        }
+    }
+
+    /**
+     * Indexes rules accepting a numeric range of attribute values. The number line is split in
+     * segments at the range boundaries, each boundary and each open interval between two of them
+     * has its own list of candidate rules
+     */
+    static final class RangeRules extends CompiledRules {
+
+        final double[] boundaries;
+
+        final int[][] atBoundary;
+
+        final int[][] between;
+
+        /**
+         * True if all the bounds are integral, in that case lossy conversions to integral
+         * attribute types do not alter the comparisons
+         */
+        final boolean integralBounds;
+
+        RangeRules(PropertyName property, Condition[] conditions, List<Integer> indexed,
+                int[] residual) {
+            super(property, residual);
+            boolean integral = true;
+            Set<Double> values = new LinkedHashSet<Double>();
+            for (Integer i : indexed) {
+                Condition c = conditions[i];
+                integral &= c.integral;
+                if (!Double.isInfinite(c.min)) {
+                    values.add(c.min);
+                }
+                if (!Double.isInfinite(c.max)) {
+                    values.add(c.max);
+                }
+            }
+            this.integralBounds = integral;
+            this.boundaries = new double[values.size()];
+            int k = 0;
+            for (Double value : values) {
+                boundaries[k++] = value;
+            }
+            Arrays.sort(boundaries);
+
+            int n = boundaries.length;
+            this.atBoundary = new int[n][];
+            this.between = new int[n + 1][];
+            for (int j = 0; j <= n; j++) {
+                double lo = j == 0 ? Double.NEGATIVE_INFINITY : boundaries[j - 1];
+                double hi = j == n ? Double.POSITIVE_INFINITY : boundaries[j];
+                List<Integer> gap = new ArrayList<Integer>();
+                List<Integer> point = new ArrayList<Integer>();
+                for (Integer i : indexed) {
+                    Condition c = conditions[i];
+                    // the boundaries include all bounds, a range either covers a gap or not
+                    if (c.min <= lo && c.max >= hi) {
+                        gap.add(i);
+                    }
+                    if (j < n && c.min <= hi && c.max >= hi) {
+                        point.add(i);
+                    }
+                }
+                between[j] = merge(toArray(gap), residual);
+                if (j < n) {
+                    atBoundary[j] = merge(toArray(point), residual);
+                }
+            }
+        }
+
+        @Override
+        int[] getCandidates(Object feature) {
+            Object value = property.evaluate(feature);
+            if (value == null) {
+                return null;
+            }
+            // strings are compared as strings, floats after a round trip to string
+            if (!(value instanceof Double) && !(integralBounds && isIntegral(value))) {
+                return null;
+            }
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d)) {
+                return null;
+            } else if (d == 0) {
+                // the binary search would place -0.0 before 0.0
+                d = 0;
+            }
+            int idx = Arrays.binarySearch(boundaries, d);
+            if (idx >= 0) {
+                return atBoundary[idx];
+            } else {
+                return between[-idx - 1];
+            }
+        }
+    }
+
+    /**
+     * What a filter requires on a single property: either one of a set of values, or a closed
+     * numeric range
+     */
+    static final class Condition {
+        PropertyName property;
+
+        Set<Object> keys;
+
+        double min = Double.NEGATIVE_INFINITY;
+
+        double max = Double.POSITIVE_INFINITY;
+
+        /**
+         * True if all the numeric values in the condition are integral
+         */
+        boolean integral = true;
+
+        String getId() {
+            return (keys != null ? "=" : "<>") + property.getPropertyName();
+        }
+    }
+
+    /**
+     * Extracts a condition from the filter, that is, a requirement that the feature must satisfy
+     * in order to match it. Returns null if the filter cannot be reduced to a single condition
+     */
+    static Condition analyze(Filter filter) {
+        if (filter instanceof PropertyIsEqualTo) {
+            PropertyIsEqualTo equal = (PropertyIsEqualTo) filter;
+            if (!equal.isMatchingCase()) {
+                return null;
+            }
+            return equality(equal.getExpression1(), equal.getExpression2());
+        } else if (filter instanceof Or) {
+            // a set of equalities on the same property
+            Condition result = null;
+            for (Filter child : ((Or) filter).getChildren()) {
+                Condition c = analyze(child);
+                if (c == null || c.keys == null) {
+                    return null;
+                } else if (result == null) {
+                    result = c;
+                } else if (!samePropertyName(result, c)) {
+                    return null;
+                } else {
+                    result.keys.addAll(c.keys);
+                    result.integral &= c.integral;
+                }
+            }
+            return result;
+        } else if (filter instanceof And) {
+            // each child condition is a requirement, pick the ones on the first property found
+            Condition result = null;
+            for (Filter child : ((And) filter).getChildren()) {
+                Condition c = analyze(child);
+                if (c == null) {
+                    continue;
+                } else if (result == null) {
+                    result = c;
+                } else if (samePropertyName(result, c)) {
+                    if (result.keys == null && c.keys == null) {
+                        result.min = Math.max(result.min, c.min);
+                        result.max = Math.min(result.max, c.max);
+                        result.integral &= c.integral;
+                    } else if (result.keys == null) {
+                        // an equality is more selective than a range
+                        result = c;
+                    }
+                }
+            }
+            return result;
+        } else if (filter instanceof PropertyIsBetween) {
+            PropertyIsBetween between = (PropertyIsBetween) filter;
+            Condition result = range(between.getExpression(), between.getLowerBoundary(), true);
+            Condition upper = range(between.getExpression(), between.getUpperBoundary(), false);
+            if (result == null || upper == null) {
+                return null;
+            }
+            result.max = upper.max;
+            result.integral &= upper.integral;
+            return result;
+        } else if (filter instanceof PropertyIsGreaterThan
+                || filter instanceof PropertyIsGreaterThanOrEqualTo) {
+            // property > literal, or literal > property
+            BinaryComparisonOperator bc = (BinaryComparisonOperator) filter;
+            if (bc.getExpression1() instanceof PropertyName) {
+                return range(bc.getExpression1(), bc.getExpression2(), true);
+            } else {
+                return range(bc.getExpression2(), bc.getExpression1(), false);
+            }
+        } else if (filter instanceof PropertyIsLessThan
+                || filter instanceof PropertyIsLessThanOrEqualTo) {
+            BinaryComparisonOperator bc = (BinaryComparisonOperator) filter;
+            if (bc.getExpression1() instanceof PropertyName) {
+                return range(bc.getExpression1(), bc.getExpression2(), false);
+            } else {
+                return range(bc.getExpression2(), bc.getExpression1(), true);
+            }
+        }
+
+        return null;
+    }
+
+    static boolean samePropertyName(Condition c1, Condition c2) {
+        return c1.property.getPropertyName().equals(c2.property.getPropertyName());
+    }
+
+    static Condition equality(Expression e1, Expression e2) {
+        PropertyName property;
+        Literal literal;
+        if (e1 instanceof PropertyName && e2 instanceof Literal) {
+            property = (PropertyName) e1;
+            literal = (Literal) e2;
+        } else if (e2 instanceof PropertyName && e1 instanceof Literal) {
+            property = (PropertyName) e2;
+            literal = (Literal) e1;
+        } else {
+            return null;
+        }
+        Object value = literal.getValue();
+        if (!(value instanceof String) && !(value instanceof Double) && !isIntegral(value)) {
+            return null;
+        }
+        Object key = toKey(value);
+        if (key instanceof String && Converters.convert(value, Double.class) != null) {
+            // a number the filter would recognize but the index would not, bail out
+            return null;
+        }
+        Condition result = new Condition();
+        result.property = property;
+        result.keys = new LinkedHashSet<Object>();
+        result.keys.add(key);
+        if (key instanceof Double) {
+            double d = (Double) key;
+            result.integral = d == Math.rint(d);
+        }
+        return result;
+    }
+
+    /**
+     * Builds a range condition with the literal as the lower or upper bound. Bounds are
+     * inclusive, the condition being a superset of what the filter accepts
+     */
+    static Condition range(Expression e, Expression bound, boolean lower) {
+        if (!(e instanceof PropertyName) || !(bound instanceof Literal)) {
+            return null;
+        }
+        Object value = ((Literal) bound).getValue();
+        double d;
+        boolean integral;
+        if (value instanceof Double || isIntegral(value)) {
+            d = ((Number) value).doubleValue();
+            integral = d == Math.rint(d);
+        } else if (value instanceof String && PLAIN_DECIMAL.matcher((String) value).matches()) {
+            // other formats (e.g., exponents) can end up being compared as strings
+            String s = (String) value;
+            try {
+                d = Long.parseLong(s);
+                integral = true;
+            } catch (NumberFormatException e1) {
+                d = Double.parseDouble(s);
+                integral = false;
+            }
+        } else {
+            return null;
+        }
+        if (Double.isNaN(d)) {
+            return null;
+        } else if (d == 0) {
+            d = 0;
+        }
+        Condition result = new Condition();
+        result.property = (PropertyName) e;
+        if (lower) {
+            result.min = d;
+        } else {
+            result.max = d;
+        }
+        result.integral = integral;
+        return result;
+    }
+
+    /**
+     * Turns a value into a hash key, numbers and strings representing numbers are turned into
+     * the same key if numerically equal
+     */
+    static Object toKey(Object value) {
+        double d;
+        if (value instanceof Number) {
+            d = ((Number) value).doubleValue();
+        } else {
+            String s = value.toString();
+            try {
+                d = Long.parseLong(s);
+            } catch (NumberFormatException e1) {
+                try {
+                    d = Double.parseDouble(s);
+                } catch (NumberFormatException e2) {
+                    return s;
+                }
+            }
+        }
+        // +0.0 and -0.0 are equal for the filters, but not for Double.equals
+        return d == 0 ? 0d : d;
+    }
+
+    static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte;
+    }
+
+    static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Merges two sorted arrays of rule indexes into a sorted one
+     */
+    static int[] merge(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            result[k++] = a[i] < b[j] ? a[i++] : b[j++];
+        }
+        while (i < a.length) {
+            result[k++] = a[i++];
+        }
+        while (j < b.length) {
+            result[k++] = b[j++];
+        }
+        return result;
+    }
+}
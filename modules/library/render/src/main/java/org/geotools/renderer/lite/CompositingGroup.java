@@ -51,9 +51,12 @@ class CompositingGroup {
 
     private static StyleFactory STYLE_FACTORY = CommonFactoryFinder.getStyleFactory();
 
+    /**
+     * Splits the map content in groups sharing the same compositing base, the back buffers of the
+     * groups are taken from the specified pool (if null, they are allocated directly)
+     */
     public static List<CompositingGroup> splitOnCompositingBase(Graphics2D graphics,
-            Rectangle screenSize,
-            MapContent mc) {
+            Rectangle screenSize, MapContent mc, BackBufferPool pool) {
         List<CompositingGroup> result = new ArrayList<>();
         List<Layer> layers = new ArrayList<>();
         for (Layer layer : mc.layers()) {
@@ -63,7 +66,7 @@ class CompositingGroup {
             } else if (layer instanceof ZGroupLayer) {
                 ZGroupLayer zLayer = (ZGroupLayer) layer;
                 if(zLayer.isCompositingBase()) {
-                    addToCompositingMapContents(graphics, screenSize, result, layers);
+                    addToCompositingMapContents(graphics, screenSize, result, layers, pool);
                 } 
                 layers.add(layer);
             } else {
@@ -71,7 +74,7 @@ class CompositingGroup {
                 for (Style s : styles) {
                     FeatureTypeStyle firstFts = s.featureTypeStyles().get(0);
                     if (isCompositingBase(firstFts) && !layers.isEmpty()) {
-                        addToCompositingMapContents(graphics, screenSize, result, layers);
+                        addToCompositingMapContents(graphics, screenSize, result, layers, pool);
                     }
                     if (s == style) {
                         layers.add(layer);
@@ -91,25 +94,27 @@ class CompositingGroup {
 
         // do we have it simple?
         if (!layers.isEmpty()) {
-            addToCompositingMapContents(graphics, screenSize, result, layers);
+            addToCompositingMapContents(graphics, screenSize, result, layers, pool);
         }
 
         return result;
     }
 
     private static void addToCompositingMapContents(Graphics2D graphics, Rectangle screenSize,
-            List<CompositingGroup> compositingContents, List<Layer> layers) {
+            List<CompositingGroup> compositingContents, List<Layer> layers, BackBufferPool pool) {
         Composite composite = getComposite(layers);
-        addToCompositingMapContents(graphics, screenSize, compositingContents, layers, composite);
+        addToCompositingMapContents(graphics, screenSize, compositingContents, layers, composite,
+                pool);
     }
 
     private static void addToCompositingMapContents(Graphics2D graphics, Rectangle screenSize,
-            List<CompositingGroup> compositingContents, List<Layer> layers, Composite composite) {
+            List<CompositingGroup> compositingContents, List<Layer> layers, Composite composite,
+            BackBufferPool pool) {
         Graphics2D cmcGraphic;
         if (compositingContents.size() == 0 && !hasAlphaCompositing(layers)) {
             cmcGraphic = graphics;
         } else {
-            cmcGraphic = new DelayedBackbufferGraphic(graphics, screenSize);
+            cmcGraphic = new DelayedBackbufferGraphic(graphics, screenSize, pool);
         }
         MapContent current = new MapContent();
         current.addLayers(layers);
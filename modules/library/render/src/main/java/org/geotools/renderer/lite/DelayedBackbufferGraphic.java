@@ -54,9 +54,19 @@ final class DelayedBackbufferGraphic extends Graphics2D {
 
     Rectangle screenSize;
 
+    /**
+     * The pool the back buffer is taken from, or null if it's allocated directly
+     */
+    BackBufferPool pool;
+
     public DelayedBackbufferGraphic(Graphics2D master, Rectangle screenSize) {
+        this(master, screenSize, null);
+    }
+
+    public DelayedBackbufferGraphic(Graphics2D master, Rectangle screenSize, BackBufferPool pool) {
         this.master = master;
         this.screenSize = screenSize;
+        this.pool = pool;
     }
 
     BufferedImage image;
@@ -71,13 +81,37 @@ final class DelayedBackbufferGraphic extends Graphics2D {
             if (master instanceof DelayedBackbufferGraphic) {
                 ((DelayedBackbufferGraphic) master).init();
             }
-            image = master.getDeviceConfiguration().createCompatibleImage(screenSize.width,
-                    screenSize.height, Transparency.TRANSLUCENT);
+            GraphicsConfiguration configuration = master.getDeviceConfiguration();
+            if (pool != null) {
+                image = pool.acquire(configuration, screenSize.width, screenSize.height);
+                if (image == null) {
+                    // out of the memory budget, paint directly on the master graphics
+                    delegate = (Graphics2D) master.create();
+                    return;
+                }
+            } else {
+                image = configuration.createCompatibleImage(screenSize.width,
+                        screenSize.height, Transparency.TRANSLUCENT);
+            }
             delegate = image.createGraphics();
             delegate.setRenderingHints(master.getRenderingHints());
         }
     }
 
+    /**
+     * Disposes the graphics, and gives the back buffer back to the pool without allowing its
+     * reuse, for the cases where it might still be painted onto
+     */
+    public void discard() {
+        if (delegate != null) {
+            delegate.dispose();
+        }
+        if (pool != null && image != null) {
+            pool.discard(image);
+            image = null;
+        }
+    }
+
     public void addRenderingHints(Map<?, ?> hints) {
         delegate.addRenderingHints(hints);
     }
@@ -110,6 +144,11 @@ final class DelayedBackbufferGraphic extends Graphics2D {
         if(delegate != null) {
             delegate.dispose();
         }
+        // the back buffer is reused by other paint requests, it cannot be used anymore
+        if (pool != null && image != null) {
+            pool.release(image);
+            image = null;
+        }
     }
 
     public void draw(Shape s) {
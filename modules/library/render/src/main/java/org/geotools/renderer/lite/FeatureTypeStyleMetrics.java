@@ -0,0 +1,44 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import org.geotools.styling.FeatureTypeStyle;
+
+/**
+ * The {@link RenderingMetrics} collected for a single {@link FeatureTypeStyle} of a layer
+ */
+public class FeatureTypeStyleMetrics extends RenderingMetrics {
+
+    FeatureTypeStyle featureTypeStyle;
+
+    FeatureTypeStyleMetrics(FeatureTypeStyle featureTypeStyle) {
+        this.featureTypeStyle = featureTypeStyle;
+    }
+
+    /**
+     * The feature type style these metrics refer to
+     */
+    public FeatureTypeStyle getFeatureTypeStyle() {
+        return featureTypeStyle;
+    }
+
+    @Override
+    public String toString() {
+        return "FeatureTypeStyleMetrics[" + featureTypeStyle.getName() + ": " + super.toString()
+                + "]";
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.geotools.map.Layer;
+import org.geotools.styling.FeatureTypeStyle;
+
+/**
+ * The {@link RenderingMetrics} collected for a layer. The values returned by the getters are the
+ * totals for the layer, including the ones of each {@link FeatureTypeStyle}, and the ones that
+ * could not be attributed to a single feature type style (e.g., the query time when a single
+ * query is shared by multiple feature type styles).
+ */
+public class LayerRenderingMetrics extends RenderingMetrics {
+
+    Layer layer;
+
+    String layerId;
+
+    long renderingTime;
+
+    List<FeatureTypeStyleMetrics> featureTypeStyles = new CopyOnWriteArrayList<FeatureTypeStyleMetrics>();
+
+    LayerRenderingMetrics(Layer layer, String layerId) {
+        this.layer = layer;
+        this.layerId = layerId;
+    }
+
+    FeatureTypeStyleMetrics addFeatureTypeStyle(FeatureTypeStyle fts) {
+        FeatureTypeStyleMetrics result = new FeatureTypeStyleMetrics(fts);
+        featureTypeStyles.add(result);
+        return result;
+    }
+
+    /**
+     * The layer these metrics refer to
+     */
+    public Layer getLayer() {
+        return layer;
+    }
+
+    /**
+     * The layer identifier used in the label cache
+     */
+    public String getLayerId() {
+        return layerId;
+    }
+
+    /**
+     * Time spent by the renderer reading and preparing the layer data, including waiting for the
+     * painter to catch up, but not the painting happening after all the data has been read. This
+     * only covers the submission of the paint requests, with parallel painting most of the
+     * painting happens after it, see {@link #getPaintTime()} for that
+     */
+    public long getRenderingTime() {
+        return renderingTime;
+    }
+
+    /**
+     * The metrics for each of the feature type styles that were active at the current scale
+     */
+    public List<FeatureTypeStyleMetrics> getFeatureTypeStyles() {
+        return featureTypeStyles;
+    }
+
+    @Override
+    public long getQueryTime() {
+        long result = super.getQueryTime();
+        for (FeatureTypeStyleMetrics fts : featureTypeStyles) {
+            result += fts.getQueryTime();
+        }
+        return result;
+    }
+
+    @Override
+    public long getFeaturesRead() {
+        long result = super.getFeaturesRead();
+        for (FeatureTypeStyleMetrics fts : featureTypeStyles) {
+            result += fts.getFeaturesRead();
+        }
+        return result;
+    }
+
+    @Override
+    public long getScreenMapSkips() {
+        long result = super.getScreenMapSkips();
+        for (FeatureTypeStyleMetrics fts : featureTypeStyles) {
+            result += fts.getScreenMapSkips();
+        }
+        return result;
+    }
+
+    @Override
+    public long getTransformTime() {
+        long result = super.getTransformTime();
+        for (FeatureTypeStyleMetrics fts : featureTypeStyles) {
+            result += fts.getTransformTime();
+        }
+        return result;
+    }
+
+    @Override
+    public long getPaintTime() {
+        long result = super.getPaintTime();
+        for (FeatureTypeStyleMetrics fts : featureTypeStyles) {
+            result += fts.getPaintTime();
+        }
+        return result;
+    }
+
+    @Override
+    public long getLabelTime() {
+        long result = super.getLabelTime();
+        for (FeatureTypeStyleMetrics fts : featureTypeStyles) {
+            result += fts.getLabelTime();
+        }
+        return result;
+    }
+
+    @Override
+    public long getBackBufferBytes() {
+        long result = super.getBackBufferBytes();
+        for (FeatureTypeStyleMetrics fts : featureTypeStyles) {
+            result += fts.getBackBufferBytes();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "LayerRenderingMetrics[" + layerId + " " + layer.getTitle() + ": renderingTime="
+                + renderingTime + ", " + super.toString() + "]";
+    }
+}
@@ -19,11 +19,13 @@ package org.geotools.renderer.lite;
 import java.awt.Composite;
 import java.awt.Graphics2D;
 import java.util.List;
+import java.util.Map;
 
 import org.geotools.map.Layer;
 import org.geotools.renderer.ScreenMap;
 import org.geotools.renderer.crs.ProjectionHandler;
 import org.geotools.styling.Rule;
+import org.geotools.styling.Symbolizer;
 import org.opengis.filter.expression.Expression;
 import org.opengis.filter.sort.SortBy;
 
@@ -74,11 +76,23 @@ final class LiteFeatureTypeStyle {
      */
     boolean matchFirst = false;
 
+    /**
+     * The index used to locate the rules that might match a feature, or null if all the rules
+     * should be evaluated in sequence
+     */
+    CompiledRules compiledRules;
+
     /**
      * The bit map used to decide whether to skip geometries that have been already drawn
      */
     ScreenMap screenMap;
 
+    /**
+     * The bit maps used to skip points that a feature independent point symbolizer already
+     * painted in the same pixel, one per symbolizer (null if not in use)
+     */
+    Map<Symbolizer, ScreenMap> pointScreenMaps;
+
     /**
      * Whether the feature should be generalized in memory, or not (in this case, the store did it
      * for us). True by default
@@ -96,6 +110,11 @@ final class LiteFeatureTypeStyle {
      */
     int metaBuffer;
 
+    /**
+     * The metrics for this feature type style, if metrics collection is enabled
+     */
+    FeatureTypeStyleMetrics metrics;
+
     /**
      * use this for only the 1st FTS. We don't actually create an image for it -- we just use the
      * graphics. WATCH OUT FOR THIS. NOTE: image=null in this case
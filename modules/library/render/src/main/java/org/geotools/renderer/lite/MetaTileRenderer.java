@@ -0,0 +1,183 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
+
+import org.geotools.geometry.jts.ReferencedEnvelope;
+
+/**
+ * Renders a meta-tile, that is, a block of tilesX by tilesY tiles, in a single pass of the
+ * {@link StreamingRenderer}, and splits the result into the single tiles. Compared to rendering
+ * each tile separately, each layer is queried once, and the labels are placed once for the whole
+ * meta-tile, so they are consistent across the borders of the tiles inside it.
+ * <p>
+ * A gutter can be added around the meta-tile, to allow the symbols and labels of features
+ * sitting just outside of it to be painted, and to reduce the label conflicts at its borders.
+ * The gutter is not part of any tile.
+ * <p>
+ * Example usage:
+ * 
+ * <pre>
+ * MetaTileRenderer mtr = new MetaTileRenderer(renderer, 256, 256);
+ * mtr.setGutter(32);
+ * BufferedImage[][] tiles = mtr.render(metaTileEnvelope, 4, 4);
+ * </pre>
+ */
+public class MetaTileRenderer {
+
+    StreamingRenderer renderer;
+
+    int tileWidth;
+
+    int tileHeight;
+
+    int gutter = 0;
+
+    int imageType = BufferedImage.TYPE_4BYTE_ABGR;
+
+    Color background;
+
+    /**
+     * Builds a new meta-tile renderer
+     * 
+     * @param renderer The renderer, already configured with the map content, hints and
+     *        listeners
+     * @param tileWidth The width of a single tile, in pixels
+     * @param tileHeight The height of a single tile, in pixels
+     */
+    public MetaTileRenderer(StreamingRenderer renderer, int tileWidth, int tileHeight) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Invalid tile size " + tileWidth + "x"
+                    + tileHeight);
+        }
+        this.renderer = renderer;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * The gutter, in pixels, added on each side of the meta-tile
+     */
+    public int getGutter() {
+        return gutter;
+    }
+
+    public void setGutter(int gutter) {
+        if (gutter < 0) {
+            throw new IllegalArgumentException("The gutter cannot be negative");
+        }
+        this.gutter = gutter;
+    }
+
+    /**
+     * The type of the tile images, as in {@link BufferedImage#getType()}. Defaults to
+     * {@link BufferedImage#TYPE_4BYTE_ABGR}
+     */
+    public int getImageType() {
+        return imageType;
+    }
+
+    public void setImageType(int imageType) {
+        this.imageType = imageType;
+    }
+
+    /**
+     * The background color of the tiles, or null for a transparent background
+     */
+    public Color getBackground() {
+        return background;
+    }
+
+    public void setBackground(Color background) {
+        this.background = background;
+    }
+
+    /**
+     * Renders the meta-tile and splits it into tiles
+     * 
+     * @param metaTileEnvelope The envelope covered by the tiles (not including the gutter)
+     * @param tilesX The number of tiles along the horizontal axis
+     * @param tilesY The number of tiles along the vertical axis
+     * @return The tiles, indexed by row and column, the first row being the northernmost one
+     */
+    public BufferedImage[][] render(ReferencedEnvelope metaTileEnvelope, int tilesX, int tilesY) {
+        if (tilesX <= 0 || tilesY <= 0) {
+            throw new IllegalArgumentException("Invalid meta-tile factors " + tilesX + "x"
+                    + tilesY);
+        }
+        BufferedImage metaTile = renderMetaTile(metaTileEnvelope, tilesX, tilesY);
+
+        BufferedImage[][] tiles = new BufferedImage[tilesY][tilesX];
+        for (int row = 0; row < tilesY; row++) {
+            for (int col = 0; col < tilesX; col++) {
+                tiles[row][col] = extractTile(metaTile, gutter + col * tileWidth, gutter + row
+                        * tileHeight);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Renders the whole meta-tile, gutter included
+     */
+    BufferedImage renderMetaTile(ReferencedEnvelope metaTileEnvelope, int tilesX, int tilesY) {
+        int width = tilesX * tileWidth;
+        int height = tilesY * tileHeight;
+
+        // expand the envelope so that the gutter has the same resolution as the tiles
+        ReferencedEnvelope renderingEnvelope = metaTileEnvelope;
+        if (gutter > 0) {
+            double dx = metaTileEnvelope.getWidth() / width * gutter;
+            double dy = metaTileEnvelope.getHeight() / height * gutter;
+            renderingEnvelope = new ReferencedEnvelope(metaTileEnvelope.getMinX() - dx,
+                    metaTileEnvelope.getMaxX() + dx, metaTileEnvelope.getMinY() - dy,
+                    metaTileEnvelope.getMaxY() + dy,
+                    metaTileEnvelope.getCoordinateReferenceSystem());
+        }
+
+        Rectangle paintArea = new Rectangle(width + gutter * 2, height + gutter * 2);
+        BufferedImage image = new BufferedImage(paintArea.width, paintArea.height, imageType);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            if (background != null) {
+                graphics.setColor(background);
+                graphics.fill(paintArea);
+            }
+            renderer.paint(graphics, paintArea, renderingEnvelope);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Copies a tile out of the meta-tile, so that the latter can be garbage collected as soon
+     * as all the tiles have been extracted
+     */
+    BufferedImage extractTile(BufferedImage metaTile, int x, int y) {
+        ColorModel cm = metaTile.getColorModel();
+        WritableRaster raster = cm.createCompatibleWritableRaster(tileWidth, tileHeight);
+        raster.setRect(-x, -y, metaTile.getRaster());
+        return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+    }
+}
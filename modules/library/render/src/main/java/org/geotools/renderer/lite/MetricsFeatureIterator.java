@@ -0,0 +1,68 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import org.geotools.feature.FeatureIterator;
+import org.opengis.feature.Feature;
+
+/**
+ * Wraps a feature iterator collecting the time spent reading and the number of features read
+ * into a {@link RenderingMetrics}
+ */
+class MetricsFeatureIterator<F extends Feature> implements FeatureIterator<F> {
+
+    FeatureIterator<F> delegate;
+
+    RenderingMetrics metrics;
+
+    public MetricsFeatureIterator(FeatureIterator<F> delegate, RenderingMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean hasNext() {
+        long start = System.nanoTime();
+        try {
+            return delegate.hasNext();
+        } finally {
+            metrics.queryTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public F next() {
+        long start = System.nanoTime();
+        try {
+            F result = delegate.next();
+            metrics.featuresRead.incrementAndGet();
+            return result;
+        } finally {
+            metrics.queryTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void close() {
+        long start = System.nanoTime();
+        try {
+            delegate.close();
+        } finally {
+            metrics.queryTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+}
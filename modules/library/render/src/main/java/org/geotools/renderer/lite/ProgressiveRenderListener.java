@@ -0,0 +1,44 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import org.geotools.renderer.RenderListener;
+
+/**
+ * A {@link RenderListener} that is notified every time the graphics the {@link StreamingRenderer}
+ * is painting on contains a consistent partial rendering, allowing interactive clients to show
+ * the map while it's being built.
+ * <p>
+ * Frames are notified after each layer has been painted, and, if the
+ * {@link StreamingRenderer#PROGRESSIVE_RENDERING_INTERVAL_KEY} hint is set, at regular intervals
+ * while painting a layer. Labels are painted only at the end of the rendering, layers painted in
+ * a compositing group show up once the whole group is merged on the target.
+ * <p>
+ * The notification happens in the painting thread, which is paused until the listener returns:
+ * the listener can safely copy the image being painted, but should return as quickly as
+ * possible.
+ */
+public interface ProgressiveRenderListener extends RenderListener {
+
+    /**
+     * Notifies that a partial rendering is available in the target graphics
+     * 
+     * @param completedLayers The number of layers fully painted so far
+     * @param layerCount The number of layers in the map
+     */
+    public void frameRendered(int completedLayers, int layerCount);
+}
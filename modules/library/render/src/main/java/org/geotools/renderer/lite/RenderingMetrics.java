@@ -0,0 +1,106 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters collected by the {@link StreamingRenderer} while rendering, when at least one
+ * {@link RenderingMetricsListener} is registered. All times are expressed in nanoseconds.
+ * <p>
+ * The counters are updated by different threads (the one reading the data, the painter ones) and
+ * are complete only once the metrics have been handed over to the listeners.
+ */
+public class RenderingMetrics {
+
+    final AtomicLong queryTime = new AtomicLong();
+
+    final AtomicLong featuresRead = new AtomicLong();
+
+    final AtomicLong screenMapSkips = new AtomicLong();
+
+    final AtomicLong transformTime = new AtomicLong();
+
+    final AtomicLong paintTime = new AtomicLong();
+
+    final AtomicLong labelTime = new AtomicLong();
+
+    final AtomicLong backBufferBytes = new AtomicLong();
+
+    /**
+     * Time spent running the query and reading the features from the source
+     */
+    public long getQueryTime() {
+        return queryTime.get();
+    }
+
+    /**
+     * Number of features read from the source
+     */
+    public long getFeaturesRead() {
+        return featuresRead.get();
+    }
+
+    /**
+     * Number of features skipped by the renderer {@link org.geotools.renderer.ScreenMap}, because
+     * they would have been painted over pixels already painted by other features. Features
+     * skipped by the data source itself (when it supports the screen map hint) are not counted
+     */
+    public long getScreenMapSkips() {
+        return screenMapSkips.get();
+    }
+
+    /**
+     * Time spent reprojecting, generalizing and clipping the geometries before painting them
+     */
+    public long getTransformTime() {
+        return transformTime.get();
+    }
+
+    /**
+     * Time spent painting the features and rasters on the target graphics. When painting in
+     * parallel bands the time spent on each band is summed up, so it can exceed the elapsed time
+     */
+    public long getPaintTime() {
+        return paintTime.get();
+    }
+
+    /**
+     * Time spent adding the labels to the label cache. The final label conflict resolution
+     * and painting happens for all layers at the end of the rendering, and is not included, see
+     * {@link RenderingMetricsListener#labelsPainted(long)} for that
+     */
+    public long getLabelTime() {
+        return labelTime.get();
+    }
+
+    /**
+     * Size in bytes of the back buffers allocated to paint feature type styles that could not
+     * be painted directly on the target graphics
+     */
+    public long getBackBufferBytes() {
+        return backBufferBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "queryTime=" + getQueryTime() + ", featuresRead=" + getFeaturesRead()
+                + ", screenMapSkips=" + getScreenMapSkips() + ", transformTime="
+                + getTransformTime() + ", paintTime=" + getPaintTime() + ", labelTime="
+                + getLabelTime() + ", backBufferBytes=" + getBackBufferBytes();
+    }
+}
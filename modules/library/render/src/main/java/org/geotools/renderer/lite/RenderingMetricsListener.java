@@ -0,0 +1,40 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import org.geotools.renderer.RenderListener;
+
+/**
+ * A {@link RenderListener} that also receives the {@link LayerRenderingMetrics} collected by the
+ * {@link StreamingRenderer}. Metrics are collected only if at least one listener of this type is
+ * registered, and are notified once the rendering is complete, in layer order, followed by the
+ * time spent placing and painting the labels of all layers.
+ */
+public interface RenderingMetricsListener extends RenderListener {
+
+    /**
+     * Notifies the metrics collected for a layer
+     */
+    public void layerRendered(LayerRenderingMetrics metrics);
+
+    /**
+     * Notifies the time, in nanoseconds, spent resolving the label conflicts and painting the
+     * labels at the end of the rendering. Labels are placed for all layers at once, so this time
+     * cannot be attributed to a single layer. Not called if the rendering was stopped
+     */
+    public void labelsPainted(long labelPlacementTime);
+}
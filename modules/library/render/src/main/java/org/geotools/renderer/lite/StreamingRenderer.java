@@ -19,8 +19,11 @@ package org.geotools.renderer.lite;
 import static java.lang.Math.abs;
 
 import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
 import java.awt.Composite;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.RenderingHints.Key;
@@ -28,25 +31,40 @@ import java.awt.Shape;
 import java.awt.font.GlyphVector;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.text.NumberFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -63,12 +81,14 @@ import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
 import org.geotools.data.QueryCapabilities;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.sort.SortedFeatureReader;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.Hints;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.FeatureTypes;
 import org.geotools.feature.SchemaException;
+import org.geotools.feature.collection.SortedSimpleFeatureCollection;
 import org.geotools.filter.IllegalFilterException;
 import org.geotools.filter.function.GeometryTransformationVisitor;
 import org.geotools.filter.spatial.DefaultCRSFilterVisitor;
@@ -104,7 +124,12 @@ import org.geotools.renderer.label.LabelCacheImpl;
 import org.geotools.renderer.label.LabelCacheImpl.LabelRenderingMode;
 import org.geotools.renderer.lite.gridcoverage2d.GridCoverageReaderHelper;
 import org.geotools.renderer.lite.gridcoverage2d.GridCoverageRenderer;
+import org.geotools.renderer.lite.gridcoverage2d.ReprojectedCoverageCache;
+import org.geotools.renderer.style.IconStyle2D;
 import org.geotools.renderer.style.LineStyle2D;
+import org.geotools.renderer.style.MarkSpriteCache;
+import org.geotools.renderer.style.PointStyle2D;
+import org.geotools.renderer.style.PolygonStyle2D;
 import org.geotools.renderer.style.SLDStyleFactory;
 import org.geotools.renderer.style.Style2D;
 import org.geotools.resources.coverage.FeatureUtilities;
@@ -115,6 +140,7 @@ import org.geotools.styling.RasterSymbolizer;
 import org.geotools.styling.Rule;
 import org.geotools.styling.RuleImpl;
 import org.geotools.styling.StyleAttributeExtractor;
+import org.geotools.styling.StyleAttributeExtractorTruncated;
 import org.geotools.styling.Symbolizer;
 import org.geotools.styling.TextSymbolizer;
 import org.geotools.styling.visitor.DpiRescaleStyleVisitor;
@@ -145,10 +171,12 @@ import org.opengis.referencing.operation.TransformException;
 import org.opengis.style.LineSymbolizer;
 import org.opengis.style.PolygonSymbolizer;
 
+import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiPoint;
 import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
@@ -364,6 +392,75 @@ public class StreamingRenderer implements GTRenderer {
     public static final String VECTOR_RENDERING_KEY = "vectorRenderingEnabled";
     private static boolean VECTOR_RENDERING_ENABLED_DEFAULT = false;
 
+    /**
+     * Enables parallel painting of the shapes when rendering against an image. The value can be
+     * a Boolean, in which case the number of painting threads will match the available
+     * processors, or an Integer with the desired number of painting threads. The image is split
+     * in as many horizontal bands, each painted by a separate task submitted to the
+     * {@link #setThreadPool(ExecutorService) thread pool}. The output is the same as the
+     * one of serial painting.
+     */
+    public static final String PARALLEL_PAINTING_KEY = "parallelPainting";
+
+    /**
+     * Enables parallel preparation of the features, that is, the evaluation of the rules, the
+     * reprojection, generalization and clipping of the geometries happening before painting.
+     * The value can be a Boolean, in which case the number of preparation threads will match the
+     * available processors, or an Integer with the desired number of threads. The preparation
+     * tasks are submitted to the {@link #setThreadPool(ExecutorService) thread pool}, or to a
+     * local one if none was set. The paint order is preserved.
+     * <p>
+     * Layers whose features are thinned out by the renderer screen map (that is, when the data
+     * store cannot do it) are still prepared serially, as the result depends on the order in
+     * which the features are processed.
+     */
+    public static final String PARALLEL_PREPARATION_KEY = "parallelPreparation";
+
+    /**
+     * The maximum number of features kept in memory while z-ordering a layer, either when sorting
+     * the features of a source that cannot sort on its own, or while scanning the features of a
+     * z-group. Past the budget the features are spilled to temporary files and merge-sorted. The
+     * value is an Integer, if not set the {@link Hints#MAX_MEMORY_SORT} hint, or its system
+     * default, is used.
+     */
+    public static final String SORT_MEMORY_BUDGET_KEY = "sortMemoryBudget";
+
+    /**
+     * The interval, in milliseconds, between the partial frames notified to the
+     * {@link ProgressiveRenderListener} objects while painting a layer. The value is a Number,
+     * if not set frames are notified only after each layer has been painted.
+     */
+    public static final String PROGRESSIVE_RENDERING_INTERVAL_KEY = "progressiveRenderingInterval";
+
+    /**
+     * The maximum number of vertices of a batch of polygons painted with a single fill and draw
+     * call. Consecutive polygons sharing the same style are batched, saving the Java2D per call
+     * overhead on layers made of many small polygons. Only styles with either a fill or a stroke
+     * are batched, a batch painted with both would paint all the outlines above all the fills.
+     * The value is a Number, if not set batching is disabled, as the output differs where
+     * polygons with translucent fills or strokes overlap.
+     */
+    public static final String POLYGON_BATCH_SIZE_KEY = "polygonBatchSize";
+
+    /**
+     * Boolean flag enabling the painting of small marks as pre-rasterized sprites taken from the
+     * {@link MarkSpriteCache#getDefaultInstance() shared sprite cache}, instead of filling and
+     * stroking the mark shape at each point. Sprites are rasterized at a fixed set of sub-pixel
+     * positions and rotations, so the marks can be shifted up to an eighth of a pixel and rotated
+     * up to half a degree compared to the vector painting. If not set sprites are disabled. They
+     * are never used when vector rendering is enabled.
+     */
+    public static final String MARK_SPRITES_KEY = "markSprites";
+
+    /**
+     * Boolean flag enabling the screen map culling of points: a point painted by a feature
+     * independent point symbolizer is skipped if the same symbolizer already painted a point
+     * in the same pixel. The output can differ from the one without culling, as the skipped
+     * marks would have been painted at a slightly different sub-pixel position, and above
+     * whatever the features in between painted. If not set points are not culled.
+     */
+    public static final String POINT_SCREENMAP_KEY = "pointScreenMap";
+
     public static final String LABEL_CACHE_KEY = "labelCache";
     public static final String FORCE_EPSG_AXIS_ORDER_KEY = "ForceEPSGAxisOrder";
     public static final String DPI_KEY = "dpi";
@@ -405,6 +502,40 @@ public class StreamingRenderer implements GTRenderer {
 
     private PainterThread painterThread;
 
+    /**
+     * The pool the feature type style and compositing group back buffers are taken from
+     */
+    private BackBufferPool backBufferPool = BackBufferPool.getDefaultInstance();
+
+    /**
+     * The back buffers created during the current paint, released at its end
+     */
+    private List<DelayedBackbufferGraphic> backBuffers = new ArrayList<DelayedBackbufferGraphic>();
+
+    /**
+     * The executor used to prepare features in parallel, set only during paint if
+     * {@link #PARALLEL_PREPARATION_KEY} is enabled
+     */
+    private ExecutorService preparationExecutor;
+
+    private int preparationThreads;
+
+    /**
+     * How many features per thread can be waiting to be sent out during parallel preparation
+     */
+    private static final int PREPARATION_QUEUE_FACTOR = 16;
+
+    /**
+     * The metrics collected for each layer during the current paint, null if no
+     * {@link RenderingMetricsListener} is registered
+     */
+    private List<LayerRenderingMetrics> layerMetrics;
+
+    /**
+     * The metrics of the layer being currently processed
+     */
+    private LayerRenderingMetrics currentLayerMetrics;
+
     /**
      * Creates a new instance of LiteRenderer without a context. Use it only to
      * gain access to utility methods of this class or if you want to render
@@ -414,6 +545,24 @@ public class StreamingRenderer implements GTRenderer {
 
     }
 
+    /**
+     * Returns the pool back buffers are taken from, by default the one shared by all renderers,
+     * {@link BackBufferPool#getDefaultInstance()}
+     */
+    public BackBufferPool getBackBufferPool() {
+        return backBufferPool;
+    }
+
+    /**
+     * Sets the pool back buffers are taken from, null to allocate them without limits (and without
+     * reusing them)
+     * 
+     * @param backBufferPool
+     */
+    public void setBackBufferPool(BackBufferPool backBufferPool) {
+        this.backBufferPool = backBufferPool;
+    }
+
     /**
      * Sets a thread pool to be used in parallel rendering
      * @param threadPool
@@ -485,6 +634,66 @@ public class StreamingRenderer implements GTRenderer {
         }
     }
 
+    private void fireLayerRenderedEvents(List<LayerRenderingMetrics> metrics,
+            long labelPlacementTime) {
+        for (RenderListener listener : renderListeners) {
+            if (listener instanceof RenderingMetricsListener) {
+                RenderingMetricsListener metricsListener = (RenderingMetricsListener) listener;
+                for (LayerRenderingMetrics layerMetrics : metrics) {
+                    metricsListener.layerRendered(layerMetrics);
+                }
+                if (labelPlacementTime >= 0) {
+                    metricsListener.labelsPainted(labelPlacementTime);
+                }
+            }
+        }
+    }
+
+    private void fireFrameRenderedEvent(int completedLayers, int layerCount) {
+        for (RenderListener listener : renderListeners) {
+            if (listener instanceof ProgressiveRenderListener) {
+                try {
+                    ((ProgressiveRenderListener) listener).frameRendered(completedLayers,
+                            layerCount);
+                } catch (Throwable t) {
+                    LOGGER.log(Level.WARNING, "Progressive render listener failed", t);
+                }
+            }
+        }
+    }
+
+    private boolean isProgressiveRenderingEnabled() {
+        for (RenderListener listener : renderListeners) {
+            if (listener instanceof ProgressiveRenderListener) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the interval between partial frames, in nanoseconds, or 0 if only frames at the
+     * end of layers should be notified
+     */
+    private long getProgressiveRenderingInterval() {
+        if (rendererHints == null)
+            return 0;
+        Object result = rendererHints.get(PROGRESSIVE_RENDERING_INTERVAL_KEY);
+        if (result instanceof Number && ((Number) result).longValue() > 0) {
+            return TimeUnit.MILLISECONDS.toNanos(((Number) result).longValue());
+        }
+        return 0;
+    }
+
+    private boolean isMetricsCollectionEnabled() {
+        for (RenderListener listener : renderListeners) {
+            if (listener instanceof RenderingMetricsListener) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void fireErrorEvent(Throwable t) {
         LOGGER.log(Level.SEVERE, t.getLocalizedMessage(), t);
         if (renderListeners.size() > 0) {
@@ -762,14 +971,43 @@ public class StreamingRenderer implements GTRenderer {
 
         // Setup the secondary painting thread
         requests = getRequestsQueue();
-        painterThread = new PainterThread(requests);
+        int paintingThreads = getParallelThreads(PARALLEL_PAINTING_KEY);
         ExecutorService localThreadPool = threadPool;
         boolean localPool = false;
         if(localThreadPool == null) {
-            localThreadPool = Executors.newSingleThreadExecutor();
+            if(paintingThreads > 1) {
+                // one thread for the painter, the others for the bands
+                localThreadPool = Executors.newFixedThreadPool(paintingThreads + 1);
+            } else {
+                localThreadPool = Executors.newSingleThreadExecutor();
+            }
             localPool = true;
         }
+        if(paintingThreads > 1) {
+            painterThread = new ParallelPainterThread(requests, localThreadPool, paintingThreads);
+        } else {
+            painterThread = new PainterThread(requests);
+        }
+        painterThread.batchSize = getPolygonBatchSize();
+        boolean progressive = isProgressiveRenderingEnabled();
+        if (progressive) {
+            painterThread.frameInterval = getProgressiveRenderingInterval();
+        }
         Future painterFuture = localThreadPool.submit(painterThread);
+        layerMetrics = isMetricsCollectionEnabled() ? new ArrayList<LayerRenderingMetrics>() : null;
+        currentLayerMetrics = null;
+        preparationThreads = getParallelThreads(PARALLEL_PREPARATION_KEY);
+        ExecutorService localPreparationPool = null;
+        if(preparationThreads > 1) {
+            if(threadPool != null) {
+                preparationExecutor = threadPool;
+            } else {
+                localPreparationPool = Executors.newFixedThreadPool(preparationThreads);
+                preparationExecutor = localPreparationPool;
+            }
+        } else {
+            preparationExecutor = null;
+        }
         try {
             if(mapContent == null) {
                 throw new IllegalStateException("Cannot call paint, you did not set a MapContent in this renderer");
@@ -779,9 +1017,20 @@ public class StreamingRenderer implements GTRenderer {
             MapContent zGroupedMapContent = ZGroupLayerFactory.filter(mapContent);
 
             // split over multiple map contents, one per composition base
-            List<CompositingGroup> compositingGroups = CompositingGroup
-                    .splitOnCompositingBase(graphics, paintArea, zGroupedMapContent);
+            List<CompositingGroup> compositingGroups = CompositingGroup.splitOnCompositingBase(
+                    graphics, paintArea, zGroupedMapContent, backBufferPool);
+            for (CompositingGroup compositingGroup : compositingGroups) {
+                if (compositingGroup.graphics instanceof DelayedBackbufferGraphic) {
+                    backBuffers.add((DelayedBackbufferGraphic) compositingGroup.graphics);
+                }
+            }
             
+            int layerCount = 0;
+            for (CompositingGroup compositingGroup : compositingGroups) {
+                layerCount += compositingGroup.mapContent.layers().size();
+            }
+            painterThread.layerCount = layerCount;
+
             int layerCounter = 0;
             for (CompositingGroup compositingGroup : compositingGroups) {
                 MapContent currentMapContent = compositingGroup.mapContent;
@@ -802,7 +1051,11 @@ public class StreamingRenderer implements GTRenderer {
                     layerCounter++;
                     String layerId = String.valueOf(layerCounter);
                     if (!layer.isVisible()) {
-                        // Only render layer when layer is visible
+                        // Only render layer when layer is visible, but still count it as done
+                        if (progressive
+                                && !(compositingGraphic instanceof DelayedBackbufferGraphic)) {
+                            putFrameRequest(layerCounter);
+                        }
                         continue;
                     }
         
@@ -811,6 +1064,12 @@ public class StreamingRenderer implements GTRenderer {
                     }
 
                     labelCache.startLayer(layerId);
+                    long layerStart = 0;
+                    if (layerMetrics != null) {
+                        currentLayerMetrics = new LayerRenderingMetrics(layer, layerId);
+                        layerMetrics.add(currentLayerMetrics);
+                        layerStart = System.nanoTime();
+                    }
                     if (layer instanceof DirectLayer) {
                         RenderingRequest request = new RenderDirectLayerRequest(compositingGraphic,
                                 (DirectLayer) layer);
@@ -836,7 +1095,21 @@ public class StreamingRenderer implements GTRenderer {
                         }
                     }
         
-                    labelCache.endLayer(layerId, graphics, screenSize);
+                    if (currentLayerMetrics != null) {
+                        long labelStart = System.nanoTime();
+                        labelCache.endLayer(layerId, graphics, screenSize);
+                        long end = System.nanoTime();
+                        currentLayerMetrics.labelTime.addAndGet(end - labelStart);
+                        currentLayerMetrics.renderingTime = end - layerStart;
+                        currentLayerMetrics = null;
+                    } else {
+                        labelCache.endLayer(layerId, graphics, screenSize);
+                    }
+
+                    // a layer painted on a back buffer shows up only when the group is merged
+                    if (progressive && !(compositingGraphic instanceof DelayedBackbufferGraphic)) {
+                        putFrameRequest(layerCounter);
+                    }
                 }
                 
                 // have we been painting on a back buffer? If so, merge on the main graphic
@@ -848,6 +1121,9 @@ public class StreamingRenderer implements GTRenderer {
                     } catch (InterruptedException e) {
                         fireErrorEvent(e);
                     }
+                    if (progressive) {
+                        putFrameRequest(layerCounter);
+                    }
                 }
                 // the compositing group has its own map content, clones of the original one,
                 // they need to be disposed to avoid nagging messages (not that disposing here
@@ -855,26 +1131,46 @@ public class StreamingRenderer implements GTRenderer {
                 compositingGroup.mapContent.dispose();
             }
         } finally {
+            boolean painterCompleted = false;
             try {
                 if(!renderingStopRequested) {
                     requests.put(new EndRequest());
                     painterFuture.get();
+                    painterCompleted = true;
                 }
             } catch(Exception e) {
                 painterFuture.cancel(true);
                 fireErrorEvent(e);
             } finally {
+                releaseBackBuffers(painterCompleted);
                 if(localPool) {
                     localThreadPool.shutdown();
                 }
+                if(localPreparationPool != null) {
+                    localPreparationPool.shutdown();
+                }
+                preparationExecutor = null;
             }
         }
         
+        long labelPlacementTime = -1;
         if(!renderingStopRequested) {
-            labelCache.end(graphics, paintArea);
+            if (layerMetrics != null) {
+                long labelStart = System.nanoTime();
+                labelCache.end(graphics, paintArea);
+                labelPlacementTime = System.nanoTime() - labelStart;
+            } else {
+                labelCache.end(graphics, paintArea);
+            }
         } else {
             labelCache.clear();
         }
+
+        if(layerMetrics != null) {
+            List<LayerRenderingMetrics> metrics = layerMetrics;
+            layerMetrics = null;
+            fireLayerRenderedEvents(metrics, labelPlacementTime);
+        }
     
         if (LOGGER.isLoggable(Level.FINE))
             LOGGER.fine(new StringBuffer("Style cache hit ratio: ").append(
@@ -890,6 +1186,29 @@ public class StreamingRenderer implements GTRenderer {
         
     }
 
+    /**
+     * Gives back all the back buffers used during the paint to the pool. If the painter did not
+     * complete, it might still be painting on them, so they cannot be reused
+     */
+    private void releaseBackBuffers(boolean painterCompleted) {
+        for (DelayedBackbufferGraphic backBuffer : backBuffers) {
+            if (painterCompleted) {
+                backBuffer.dispose();
+            } else {
+                backBuffer.discard();
+            }
+        }
+        backBuffers.clear();
+    }
+
+    private void putFrameRequest(int completedLayers) {
+        try {
+            requests.put(new FrameRequest(completedLayers));
+        } catch (InterruptedException e) {
+            fireErrorEvent(e);
+        }
+    }
+
     /**
      * Builds the blocking queue used to bridge between the data loading thread and
      * the painting one
@@ -1079,10 +1398,15 @@ public class StreamingRenderer implements GTRenderer {
         if(sortBy != null) {
             QueryCapabilities qc = source.getQueryCapabilities();
             if (qc != null && !qc.supportsSorting(sortBy)) {
-                throw new IllegalArgumentException("The feature source in layer " + layer.getTitle()
-                        + " cannot sort on " + Arrays.toString(sortBy));
+                if (!isRendererSortable(schema, sortBy, hasRenderingTransformation)) {
+                    throw new IllegalArgumentException("The feature source in layer "
+                            + layer.getTitle() + " cannot sort on " + Arrays.toString(sortBy));
+                }
+                // the features will be sorted by the renderer, which needs the sort attributes
+                addSortAttributes(query, sortBy);
+            } else {
+                query.setSortBy(sortBy);
             }
-            query.setSortBy(sortBy);
         }
         
         
@@ -1114,6 +1438,8 @@ public class StreamingRenderer implements GTRenderer {
                             // the work twice
                             hints.put(Hints.SCREENMAP, fts.screenMap);
                             fts.screenMap = null;
+                        } else if (isPointScreenMapEnabled()) {
+                            fts.pointScreenMaps = createPointScreenMaps(fts, mt, spans);
                         }
                     }
                 }
@@ -1177,6 +1503,60 @@ public class StreamingRenderer implements GTRenderer {
         }
     }
     
+    /**
+     * Returns true if the renderer can sort the features on its own, with a bounded memory merge
+     * sort, when the feature source cannot
+     */
+    private boolean isRendererSortable(FeatureType schema, SortBy[] sortBy,
+            boolean hasRenderingTransformation) {
+        // the style sort refers to the transformation output, which we do not know yet
+        return !hasRenderingTransformation && schema instanceof SimpleFeatureType
+                && SortedFeatureReader.canSort((SimpleFeatureType) schema, sortBy);
+    }
+
+    private void addSortAttributes(Query query, SortBy[] sortBy) {
+        if (query.getProperties() == null) {
+            return;
+        }
+        List<PropertyName> properties = new ArrayList<PropertyName>(query.getProperties());
+        Set<String> names = new HashSet<String>(Arrays.asList(query.getPropertyNames()));
+        for (SortBy sb : sortBy) {
+            PropertyName property = sb.getPropertyName();
+            if (property != null && names.add(property.getPropertyName())) {
+                properties.add(property);
+            }
+        }
+        query.setProperties(properties);
+    }
+
+    /**
+     * Returns the maximum number of features to be kept in memory while sorting, see
+     * {@link #SORT_MEMORY_BUDGET_KEY}
+     */
+    int getSortMemoryBudget(Query layerQuery) {
+        if (rendererHints != null) {
+            Object budget = rendererHints.get(SORT_MEMORY_BUDGET_KEY);
+            if (budget instanceof Number) {
+                return Math.max(1, ((Number) budget).intValue());
+            }
+        }
+        return SortedFeatureReader.getMaxFeaturesInMemory(layerQuery);
+    }
+
+    /**
+     * Returns the maximum number of vertices in a polygon batch, or 0 if batching is disabled,
+     * see {@link #POLYGON_BATCH_SIZE_KEY}
+     */
+    private int getPolygonBatchSize() {
+        if (rendererHints != null) {
+            Object size = rendererHints.get(POLYGON_BATCH_SIZE_KEY);
+            if (size instanceof Number) {
+                return Math.max(0, ((Number) size).intValue());
+            }
+        }
+        return 0;
+    }
+
     /**
      * Returns the sort-by from the list of feature type styles for a given layer. The code assumes
      * the styles have already been classified and are uniform in sorting clauses
@@ -1485,6 +1865,21 @@ public class StreamingRenderer implements GTRenderer {
     }
 
 
+    /**
+     * Returns the number of threads configured by a parallelism hint, see
+     * {@link #PARALLEL_PAINTING_KEY} and {@link #PARALLEL_PREPARATION_KEY}
+     */
+    private int getParallelThreads(String key) {
+        if (rendererHints == null)
+            return 1;
+        Object result = rendererHints.get(key);
+        if (result instanceof Number)
+            return Math.max(1, ((Number) result).intValue());
+        if (Boolean.TRUE.equals(result))
+            return Runtime.getRuntime().availableProcessors();
+        return 1;
+    }
+
     /**
      * Checks if vector rendering is enabled or not.
      * See {@link SLDStyleFactory#isVectorRenderingEnabled()} for a full explanation.
@@ -1498,6 +1893,22 @@ public class StreamingRenderer implements GTRenderer {
         return ((Boolean)result).booleanValue();
     }
 
+    /**
+     * Checks if points should be culled by the screen maps, see {@link #POINT_SCREENMAP_KEY}
+     */
+    private boolean isPointScreenMapEnabled() {
+        return rendererHints != null
+                && Boolean.TRUE.equals(rendererHints.get(POINT_SCREENMAP_KEY));
+    }
+
+    /**
+     * Checks if marks can be painted as sprites, see {@link #MARK_SPRITES_KEY}
+     */
+    private boolean isMarkSpritesEnabled() {
+        return rendererHints != null && Boolean.TRUE.equals(rendererHints.get(MARK_SPRITES_KEY))
+                && !isVectorRenderingEnabled();
+    }
+
     /**
      * Returns an estimate of the rendering buffer needed to properly display this
      * layer taking into consideration the constant stroke sizes in the feature type
@@ -1730,11 +2141,16 @@ public class StreamingRenderer implements GTRenderer {
                     lfts = new LiteFeatureTypeStyle(layer, graphics, ruleList,
                             elseRuleList, fts.getTransformation());
                 } else {
-                    lfts = new LiteFeatureTypeStyle(layer,
-                            new DelayedBackbufferGraphic(graphics, screenSize), 
-                            ruleList, elseRuleList, fts.getTransformation());
+                    DelayedBackbufferGraphic backBuffer = new DelayedBackbufferGraphic(graphics,
+                            screenSize, backBufferPool);
+                    backBuffers.add(backBuffer);
+                    lfts = new LiteFeatureTypeStyle(layer, backBuffer, ruleList, elseRuleList,
+                            fts.getTransformation());
                 }
                 lfts.composite = composite;
+                if (currentLayerMetrics != null) {
+                    lfts.metrics = currentLayerMetrics.addFeatureTypeStyle(fts);
+                }
                 if (FeatureTypeStyle.VALUE_EVALUATION_MODE_FIRST.equals(fts.getOptions().get(
                         FeatureTypeStyle.KEY_EVALUATION_MODE))) {
                     lfts.matchFirst = true;
@@ -1761,6 +2177,11 @@ public class StreamingRenderer implements GTRenderer {
 
             // apply the uom and dpi rescale
             applyUnitRescale(result);
+
+            // index the rules, now that the filters won't be changed anymore
+            for (LiteFeatureTypeStyle fts : result) {
+                fts.compiledRules = CompiledRules.compile(fts.ruleList);
+            }
         }
 
         return result;
@@ -1792,6 +2213,44 @@ public class StreamingRenderer implements GTRenderer {
     }
 
 
+    /**
+     * Builds a screenmap for each feature independent point symbolizer in the feature type
+     * style. Points painted by such a symbolizer in a pixel where it already painted would look
+     * the same, so they can be skipped.
+     * 
+     * @param lfts
+     * @param mt The full transform from data to screen
+     * @param spans The generalization spans
+     * @return The screenmaps, or null if there is no suitable symbolizer
+     */
+    Map<Symbolizer, ScreenMap> createPointScreenMaps(LiteFeatureTypeStyle lfts, MathTransform mt,
+            double[] spans) {
+        Map<Symbolizer, ScreenMap> result = null;
+        for (Rule[] rules : new Rule[][] { lfts.ruleList, lfts.elseRules }) {
+            for (Rule r : rules) {
+                for (Symbolizer symbolizer : r.symbolizers()) {
+                    if (!(symbolizer instanceof PointSymbolizer)) {
+                        continue;
+                    }
+                    StyleAttributeExtractorTruncated extractor = new StyleAttributeExtractorTruncated();
+                    symbolizer.accept(extractor);
+                    Set<String> attributes = extractor.getAttributeNameSet();
+                    if ((attributes == null || attributes.isEmpty())
+                            && !extractor.isUsingVolatileFunctions()) {
+                        if (result == null) {
+                            result = new IdentityHashMap<Symbolizer, ScreenMap>();
+                        }
+                        ScreenMap screenMap = new ScreenMap(lfts.screenMap, 0);
+                        screenMap.setTransform(mt);
+                        screenMap.setSpans(spans[0], spans[1]);
+                        result.put(symbolizer, screenMap);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
     private boolean isFeatureTypeStyleActive(FeatureType ftype, FeatureTypeStyle fts) {
         // TODO: find a complex feature equivalent for this check
         return fts.featureTypeNames().isEmpty() || ((ftype.getName().getLocalPart() != null)
@@ -1908,7 +2367,12 @@ public class StreamingRenderer implements GTRenderer {
         
         // render groups by uniform transformation
         for (List<LiteFeatureTypeStyle> uniform : txClassified) {
+            RenderingMetrics metrics = getMetrics(uniform);
+            long start = metrics != null ? System.nanoTime() : 0;
             FeatureCollection features = getFeatures(layer, schema, uniform);
+            if (metrics != null) {
+                metrics.queryTime.addAndGet(System.nanoTime() - start);
+            }
 
             // finally, perform rendering
             if (isOptimizedFTSRenderingEnabled() && lfts.size() > 1) {
@@ -1919,6 +2383,35 @@ public class StreamingRenderer implements GTRenderer {
         }
     }
 
+    /**
+     * Returns the metrics to be used for work shared by the given feature type styles
+     */
+    private RenderingMetrics getMetrics(List<LiteFeatureTypeStyle> lfts) {
+        if (lfts.size() == 1) {
+            return lfts.get(0).metrics;
+        } else {
+            return currentLayerMetrics;
+        }
+    }
+
+    /**
+     * Opens an iterator over the features, eventually tracking the query time and
+     * the features read in the metrics
+     */
+    private FeatureIterator<?> openFeatures(FeatureCollection<?, ?> features,
+            RenderingMetrics metrics) {
+        if (metrics == null) {
+            return features.features();
+        }
+        long start = System.nanoTime();
+        FeatureIterator<?> iterator = features.features();
+        metrics.queryTime.addAndGet(System.nanoTime() - start);
+        if (iterator == null) {
+            return null;
+        }
+        return new MetricsFeatureIterator(iterator, metrics);
+    }
+
     FeatureCollection getFeatures(final Layer layer, final FeatureType schema,
             List<LiteFeatureTypeStyle> featureTypeStyles) throws IOException, FactoryException,
                     NoninvertibleTransformException, SchemaException, TransformException {
@@ -2000,9 +2493,19 @@ public class StreamingRenderer implements GTRenderer {
             } else {
                 mixed.setSortBy(definitionQuery.getSortBy());
             }
+            SortBy[] sortBy = getSortByFromLiteStyles(featureTypeStyles);
+            boolean rendererSort = sortBy != null && styleQuery.getSortBy() == null;
+            if (rendererSort) {
+                // the source cannot sort, no point asking for the definition query sort either
+                mixed.setSortBy(null);
+            }
             checkAttributeExistence(featureSource.getSchema(), mixed);
             features = featureSource.getFeatures(mixed);
             features = RendererUtilities.fixFeatureCollectionReferencing(features, sourceCrs);
+            if (rendererSort) {
+                features = new SortedSimpleFeatureCollection(DataUtilities.simple(features),
+                        sortBy, getSortMemoryBudget(layer.getQuery()));
+            }
         }
 
         // HACK HACK HACK
@@ -2278,23 +2781,37 @@ public class StreamingRenderer implements GTRenderer {
         
         // for each lite feature type style, scan the whole collection and draw
         for (LiteFeatureTypeStyle liteFeatureTypeStyle : lfts) {
-            try (FeatureIterator<?> featureIterator = ((FeatureCollection<?, ?>) features)
-                    .features()) {
+            try (FeatureIterator<?> featureIterator = openFeatures(features,
+                    liteFeatureTypeStyle.metrics)) {
                 if( featureIterator == null ){
                     return; // nothing to do
                 }
-                RenderableFeature rf = createRenderableFeature(layerId, isCloningRequired(lfts));
-                rf.layer = liteFeatureTypeStyle.layer;
-                rf.setScreenMap(liteFeatureTypeStyle.screenMap);
-                // loop exit condition tested inside try catch
-                // make sure we test hasNext() outside of the try/cath that follows, as that
-                // one is there to make sure a single feature error does not ruin the rendering
-                // (best effort) whilst an exception in hasNext() + ignoring catch results in
-                // an infinite loop
-                while (featureIterator.hasNext() && !renderingStopRequested) {
-                    rf.setFeature(featureIterator.next());
-                    processFeature(rf, liteFeatureTypeStyle);
+                List<LiteFeatureTypeStyle> current = Collections
+                        .singletonList(liteFeatureTypeStyle);
+                FeaturePreparationStage stage = createPreparationStage(layerId, lfts, current);
+                if (stage != null) {
+                    while (featureIterator.hasNext() && !renderingStopRequested) {
+                        stage.submit(featureIterator.next());
+                    }
+                    stage.complete();
+                } else {
+                    RenderableFeature rf = createRenderableFeature(layerId,
+                            isCloningRequired(lfts));
+                    rf.layer = liteFeatureTypeStyle.layer;
+                    rf.setScreenMap(liteFeatureTypeStyle.screenMap);
+                    rf.pointScreenMaps = liteFeatureTypeStyle.pointScreenMaps;
+                    // loop exit condition tested inside try catch
+                    // make sure we test hasNext() outside of the try/cath that follows, as that
+                    // one is there to make sure a single feature error does not ruin the rendering
+                    // (best effort) whilst an exception in hasNext() + ignoring catch results in
+                    // an infinite loop
+                    while (featureIterator.hasNext() && !renderingStopRequested) {
+                        rf.setFeature(featureIterator.next());
+                        processFeature(rf, liteFeatureTypeStyle);
+                    }
                 }
+            } catch (InterruptedException e) {
+                fireErrorEvent(e);
             }
 
             if (liteFeatureTypeStyle.composite != null) {
@@ -2321,6 +2838,32 @@ public class StreamingRenderer implements GTRenderer {
         return rf;
     }
 
+    /**
+     * Builds a stage preparing the features in parallel, or returns null if parallel preparation
+     * is disabled, or cannot be used with the given feature type styles
+     * 
+     * @param layerId
+     * @param lfts The feature type styles sharing the feature collection
+     * @param processed The feature type styles that will be applied to each feature
+     * @return
+     */
+    FeaturePreparationStage createPreparationStage(String layerId,
+            List<LiteFeatureTypeStyle> lfts, List<LiteFeatureTypeStyle> processed) {
+        if (preparationExecutor == null) {
+            return null;
+        }
+        // the screenmap checks depend on the order features are processed in, if
+        // the renderer is running them (instead of the store) we have to stay serial
+        for (LiteFeatureTypeStyle fts : processed) {
+            if (fts.screenMap != null || fts.pointScreenMaps != null) {
+                return null;
+            }
+        }
+
+        return new FeaturePreparationStage(layerId, isCloningRequired(lfts), processed,
+                preparationExecutor, preparationThreads * PREPARATION_QUEUE_FACTOR);
+    }
+
     /**
      * Performs rendering so that the collection is scanned only once even in presence
      * of multiple feature type styles, using the in memory buffer for each feature type
@@ -2329,21 +2872,29 @@ public class StreamingRenderer implements GTRenderer {
     private void drawOptimized(final Graphics2D graphics, String layerId,
             FeatureCollection features, final List<LiteFeatureTypeStyle> lfts) {
 
-        try (FeatureIterator<?> iterator = features.features()) {
+        try (FeatureIterator<?> iterator = openFeatures(features, getMetrics(lfts))) {
             if (iterator == null)
                 return; // nothing to do
 
-            RenderableFeature rf = createRenderableFeature(layerId, isCloningRequired(lfts));
-            // loop exit condition tested inside try catch
-            // make sure we test hasNext() outside of the try/cath that follows, as that
-            // one is there to make sure a single feature error does not ruin the rendering
-            // (best effort) whilst an exception in hasNext() + ignoring catch results in
-            // an infinite loop
-            while (iterator.hasNext() && !renderingStopRequested) {
-                rf.setFeature(iterator.next());
-                // draw the feature on the main graphics and on the eventual extra image buffers
-                for (LiteFeatureTypeStyle liteFeatureTypeStyle : lfts) {
-                    processFeature(rf, liteFeatureTypeStyle);
+            FeaturePreparationStage stage = createPreparationStage(layerId, lfts, lfts);
+            if (stage != null) {
+                while (iterator.hasNext() && !renderingStopRequested) {
+                    stage.submit(iterator.next());
+                }
+                stage.complete();
+            } else {
+                RenderableFeature rf = createRenderableFeature(layerId, isCloningRequired(lfts));
+                // loop exit condition tested inside try catch
+                // make sure we test hasNext() outside of the try/cath that follows, as that
+                // one is there to make sure a single feature error does not ruin the rendering
+                // (best effort) whilst an exception in hasNext() + ignoring catch results in
+                // an infinite loop
+                while (iterator.hasNext() && !renderingStopRequested) {
+                    rf.setFeature(iterator.next());
+                    // draw the feature on the main graphics and on the eventual extra image buffers
+                    for (LiteFeatureTypeStyle liteFeatureTypeStyle : lfts) {
+                        processFeature(rf, liteFeatureTypeStyle);
+                    }
                 }
             }
             // submit the merge request
@@ -2418,8 +2969,10 @@ public class StreamingRenderer implements GTRenderer {
             rf.inMemoryGeneralization = fts.inMemoryGeneralization;
             rf.projectionHandler = fts.projectionHandler;
             rf.setScreenMap(fts.screenMap);
+            rf.pointScreenMaps = fts.pointScreenMaps;
             rf.layer = fts.layer;
             rf.metaBuffer = fts.metaBuffer;
+            rf.metrics = fts.metrics;
 
             // can the rules
             boolean doElse = true;
@@ -2428,10 +2981,12 @@ public class StreamingRenderer implements GTRenderer {
             Rule r;
             Filter filter;
             Graphics2D graphics = fts.graphics;
-            // applicable rules
-            final int length = ruleList.length;
+            // applicable rules, if the rules are indexed only the candidates are evaluated
+            int[] candidates = fts.compiledRules != null ? fts.compiledRules
+                    .getCandidates(rf.feature) : null;
+            final int length = candidates != null ? candidates.length : ruleList.length;
             for (int t = 0; t < length; t++) {
-                r = ruleList[t];
+                r = ruleList[candidates != null ? candidates[t] : t];
                 filter = r.getFilter();
 
                 if (filter == null || filter.evaluate(rf.feature)) {
@@ -2506,19 +3061,23 @@ public class StreamingRenderer implements GTRenderer {
                         coverage = (GridCoverage2D) grid;
                         if (coverage != null) {
                             disposeCoverage = grid instanceof DisposableGridCoverage;
-                            requests.put(new RenderRasterRequest(graphics, coverage,
-                                    disposeCoverage, (RasterSymbolizer) symbolizer, destinationCrs,
-                                    worldToScreenTransform));
+                            RenderRasterRequest request = new RenderRasterRequest(graphics,
+                                    coverage, disposeCoverage, (RasterSymbolizer) symbolizer,
+                                    destinationCrs, worldToScreenTransform);
+                            request.metrics = drawMe.metrics;
+                            putRequest(drawMe, request);
                             paintCommands++;
                         }
                     } else if (grid instanceof GridCoverage2DReader) {
                         final GeneralParameterValue[] params = (GeneralParameterValue[]) paramsPropertyName
                                 .evaluate(drawMe.feature);
                         GridCoverage2DReader reader = (GridCoverage2DReader) grid;
-                        requests.put(new RenderCoverageReaderRequest(graphics, reader, params,
-                                (RasterSymbolizer) symbolizer, destinationCrs,
-                                worldToScreenTransform,
-                                getRenderingInterpolation(drawMe.layer)));
+                        RenderCoverageReaderRequest request = new RenderCoverageReaderRequest(
+                                graphics, reader, params, (RasterSymbolizer) symbolizer,
+                                destinationCrs, worldToScreenTransform,
+                                getRenderingInterpolation(drawMe.layer));
+                        request.metrics = drawMe.metrics;
+                        putRequest(drawMe, request);
                     }
                 } catch (IllegalArgumentException e) {
                     LOGGER.log(Level.WARNING, e.getLocalizedMessage(), e);
@@ -2531,18 +3090,22 @@ public class StreamingRenderer implements GTRenderer {
                 // FEATURE
                 //
                 // /////////////////////////////////////////////////////////////////
+                long transformStart = drawMe.metrics != null ? System.nanoTime() : 0;
                 LiteShape2 shape = drawMe.getShape(symbolizer, worldToScreenTransform);
                 if(shape == null) {
+                    addTransformTime(drawMe, transformStart);
                     continue;
                 }
                 
                 if (symbolizer instanceof TextSymbolizer && drawMe.feature instanceof Feature) {
-                    labelCache.put(drawMe.layerId, (TextSymbolizer) symbolizer, drawMe.feature,
-                            shape,
-                            null);
+                    addTransformTime(drawMe, transformStart);
+                    LabelCacheRequest request = new LabelCacheRequest(drawMe.layerId,
+                            (TextSymbolizer) symbolizer, drawMe.feature, shape);
+                    request.metrics = drawMe.metrics;
+                    putRequest(drawMe, request);
                     paintCommands++;
                 } else {
-                    Style2D style = styleFactory.createStyle(drawMe.feature, symbolizer);
+                    Style2D style = createStyle(drawMe, symbolizer);
                     
                     // clip to the visible area + the size of the symbolizer (with some extra 
                     // to make sure we get no artifacts from polygon new borders)
@@ -2584,17 +3147,20 @@ public class StreamingRenderer implements GTRenderer {
                         }
                     }
                     if(g == null) {
+                        addTransformTime(drawMe, transformStart);
                         continue;
                     } else {
                         shape = new LiteShape2(g, null, null, false);
                     }
+                    addTransformTime(drawMe, transformStart);
                     
                     PaintShapeRequest paintShapeRequest = 
                         new PaintShapeRequest(graphics, shape, style, scaleDenominator);
+                    paintShapeRequest.metrics = drawMe.metrics;
                     if (symbolizer.hasOption("labelObstacle")) {
                         paintShapeRequest.setLabelObstacle(true);
                     }
-                    requests.put(paintShapeRequest);
+                    putRequest(drawMe, paintShapeRequest);
                     paintCommands++;
                 }
 
@@ -2603,7 +3169,42 @@ public class StreamingRenderer implements GTRenderer {
         // only emit a feature drawn event if we actually painted something with it, 
         // if it has been clipped out or eliminated by the screenmap we won't emit the event instead
         if(paintCommands > 0) {
-            requests.put(new FeatureRenderedRequest(drawMe.feature));
+            putRequest(drawMe, new FeatureRenderedRequest(drawMe.feature));
+        }
+    }
+
+    private void addTransformTime(RenderableFeature drawMe, long start) {
+        if (drawMe.metrics != null) {
+            drawMe.metrics.transformTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sends out a request generated while processing the feature, either to the painter
+     * thread, or to the feature output, if the feature is being prepared in parallel
+     */
+    private void putRequest(RenderableFeature drawMe, RenderingRequest request)
+            throws InterruptedException {
+        if (drawMe.output != null) {
+            drawMe.output.add(request);
+        } else if (request instanceof LabelCacheRequest) {
+            request.execute();
+        } else {
+            requests.put(request);
+        }
+    }
+
+    /**
+     * Builds the Style2D for the feature. The style factory is not thread safe, access is
+     * synchronized when the features are prepared in parallel
+     */
+    private Style2D createStyle(RenderableFeature drawMe, Symbolizer symbolizer) {
+        if (drawMe.output != null) {
+            synchronized (styleFactory) {
+                return styleFactory.createStyle(drawMe.feature, symbolizer);
+            }
+        } else {
+            return styleFactory.createStyle(drawMe.feature, symbolizer);
         }
     }
 
@@ -2856,6 +3457,9 @@ public class StreamingRenderer implements GTRenderer {
 
         // sets whether vector rendering is enabled in the SLDStyleFactory
         styleFactory.setVectorRenderingEnabled(isVectorRenderingEnabled());
+        // sprites are opt-in, and vector outputs should get vector marks anyways
+        painter.setMarkSpriteCache(isMarkSpritesEnabled() ? MarkSpriteCache
+                .getDefaultInstance() : null);
     }
 
     /*
@@ -2957,7 +3561,20 @@ public class StreamingRenderer implements GTRenderer {
         private boolean clone;
         private IdentityHashMap decimators = new IdentityHashMap();
         private ScreenMap screenMap;
+        /**
+         * The screenmaps used to skip points, by point symbolizer (null if not in use)
+         */
+        Map<Symbolizer, ScreenMap> pointScreenMaps;
         private String layerId;
+        /**
+         * When not null, the requests generated for this feature are accumulated here instead
+         * of being sent to the painter
+         */
+        List<RenderingRequest> output;
+        /**
+         * The metrics of the feature type style being applied, if any
+         */
+        RenderingMetrics metrics;
 
 
         public RenderableFeature(String layerId, boolean clone) {
@@ -2993,11 +3610,28 @@ public class StreamingRenderer implements GTRenderer {
                     Envelope env = g.getEnvelopeInternal();
                     if(screenMap.canSimplify(env))
                         if (screenMap.checkAndSet(env)) {
+                            if (metrics != null) {
+                                metrics.screenMapSkips.incrementAndGet();
+                            }
                             return null;
                         } else {
-                            g = screenMap.getSimplifiedShape(env.getMinX(), env.getMinY(), 
+                            g = screenMap.getSimplifiedShape(env.getMinX(), env.getMinY(),
                                     env.getMaxX(), env.getMaxY(), g.getFactory(), g.getClass());
                         }
+                } else if (pointScreenMaps != null
+                        && (g instanceof Point || g instanceof MultiPoint)) {
+                    // a feature independent symbolizer already painted in this pixel, painting
+                    // again would not change the output. The geometry is not simplified, the
+                    // marks are larger than a pixel
+                    ScreenMap pointScreenMap = pointScreenMaps.get(symbolizer);
+                    Envelope env = g.getEnvelopeInternal();
+                    if (pointScreenMap != null && pointScreenMap.canSimplify(env)
+                            && pointScreenMap.checkAndSet(env)) {
+                        if (metrics != null) {
+                            metrics.screenMapSkips.incrementAndGet();
+                        }
+                        return null;
+                    }
                 }
     
                 SymbolizerAssociation sa = (SymbolizerAssociation) symbolizerAssociationHT
@@ -3089,16 +3723,21 @@ public class StreamingRenderer implements GTRenderer {
 
             // we need to clone if the clone flag is high or if the coordinate sequence is not the one we asked for
             Geometry geom = originalGeom;
-            if (clone
-                    || !(geom.getFactory().getCoordinateSequenceFactory() instanceof LiteCoordinateSequenceFactory)) {
-                int dim = sa.crs != null ? sa.crs.getCoordinateSystem().getDimension() : 2;
-                geom = LiteCoordinateSequence.cloneGeometry(geom, dim);
-            }
+            boolean cloningRequired = clone
+                    || !(geom.getFactory().getCoordinateSequenceFactory() instanceof LiteCoordinateSequenceFactory);
 
             LiteShape2 shape;
             if(projectionHandler != null && sa != null) {
+                if (cloningRequired) {
+                    int dim = sa.crs != null ? sa.crs.getCoordinateSystem().getDimension() : 2;
+                    geom = LiteCoordinateSequence.cloneGeometry(geom, dim);
+                }
+
                 // first generalize and transform the geometry into the rendering CRS
-                geom = projectionHandler.preProcess(geom);
+                // the feature id allows caching expensive cuts across requests
+                String featureId = feature != null && feature.getIdentifier() != null ? feature
+                        .getIdentifier().getID() : null;
+                geom = projectionHandler.preProcess(geom, featureId);
                 if(geom == null) {
                     shape = null;
                 } else {
@@ -3140,7 +3779,14 @@ public class StreamingRenderer implements GTRenderer {
                 MathTransform xform = null;
                 if (sa != null)
                     xform = sa.xform;
-                shape = new LiteShape2(geom, xform, getDecimator(xform), false, false);
+                if (cloningRequired) {
+                    // decimate and transform into a new geometry, avoids a full clone
+                    // followed by a copy of the generalized coordinates
+                    geom = getDecimator(xform).decimateTransformGeneralizeCopy(geom, xform);
+                    shape = new LiteShape2(geom, null, null, false, false);
+                } else {
+                    shape = new LiteShape2(geom, xform, getDecimator(xform), false, false);
+                }
             }
 
             // cache the result
@@ -3179,10 +3825,160 @@ public class StreamingRenderer implements GTRenderer {
     }
     
     /**
-     * A request sent to the painting thread 
+     * Prepares features in parallel: each feature is run through the rules and symbolizers,
+     * reprojected, generalized and clipped by a task submitted to an executor, while the
+     * resulting requests are sent out in the same order the features have been submitted.
+     * <p>
+     * The requests are sent out by the thread submitting the features, and the label cache is
+     * fed by the same thread, so that it does not need to be thread safe.
+     */
+    class FeaturePreparationStage {
+
+        String layerId;
+
+        boolean cloningRequired;
+
+        List<LiteFeatureTypeStyle> lfts;
+
+        ExecutorService executor;
+
+        int maxPending;
+
+        ArrayDeque<FutureTask<List<RenderingRequest>>> pending = new ArrayDeque<FutureTask<List<RenderingRequest>>>();
+
+        /**
+         * The renderable features are stateful, but cache transformations and decimators, so
+         * they get reused by the tasks
+         */
+        Queue<RenderableFeature> renderables = new ConcurrentLinkedQueue<RenderableFeature>();
+
+        public FeaturePreparationStage(String layerId, boolean cloningRequired,
+                List<LiteFeatureTypeStyle> lfts, ExecutorService executor, int maxPending) {
+            this.layerId = layerId;
+            this.cloningRequired = cloningRequired;
+            this.lfts = lfts;
+            this.executor = executor;
+            this.maxPending = maxPending;
+        }
+
+        /**
+         * Submits a feature for preparation, eventually sending out the requests of the
+         * features submitted before it, if too many are pending
+         */
+        public void submit(final Feature feature) throws InterruptedException {
+            while (pending.size() >= maxPending) {
+                emit(pending.poll());
+            }
+
+            FutureTask<List<RenderingRequest>> task = new FutureTask<List<RenderingRequest>>(
+                    new Callable<List<RenderingRequest>>() {
+
+                        @Override
+                        public List<RenderingRequest> call() throws Exception {
+                            return prepare(feature);
+                        }
+                    });
+            pending.add(task);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // will be run by the submitting thread in emit
+            }
+        }
+
+        /**
+         * Sends out the requests for all the pending features
+         */
+        public void complete() throws InterruptedException {
+            while (!pending.isEmpty()) {
+                emit(pending.poll());
+            }
+        }
+
+        List<RenderingRequest> prepare(Feature feature) {
+            RenderableFeature rf = renderables.poll();
+            if (rf == null) {
+                rf = createRenderableFeature(layerId, cloningRequired);
+            }
+            List<RenderingRequest> result = new ArrayList<RenderingRequest>();
+            rf.output = result;
+            try {
+                rf.setFeature(feature);
+                for (LiteFeatureTypeStyle liteFeatureTypeStyle : lfts) {
+                    processFeature(rf, liteFeatureTypeStyle);
+                }
+            } finally {
+                rf.output = null;
+                rf.setFeature(null);
+                renderables.add(rf);
+            }
+            return result;
+        }
+
+        void emit(FutureTask<List<RenderingRequest>> task) throws InterruptedException {
+            if (renderingStopRequested) {
+                task.cancel(false);
+                return;
+            }
+            // if no executor thread picked up the task yet, run it here (no-op otherwise)
+            task.run();
+            try {
+                for (RenderingRequest request : task.get()) {
+                    if (request instanceof LabelCacheRequest) {
+                        request.execute();
+                    } else {
+                        requests.put(request);
+                    }
+                }
+            } catch (ExecutionException e) {
+                fireErrorEvent(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * A request to add a label to the label cache. Unlike the other requests, it's not executed
+     * by the painter thread, but by the one processing the features
+     */
+    protected class LabelCacheRequest extends RenderingRequest {
+        String layerId;
+
+        TextSymbolizer symbolizer;
+
+        Feature feature;
+
+        LiteShape2 shape;
+
+        public LabelCacheRequest(String layerId, TextSymbolizer symbolizer, Feature feature,
+                LiteShape2 shape) {
+            this.layerId = layerId;
+            this.symbolizer = symbolizer;
+            this.feature = feature;
+            this.shape = shape;
+        }
+
+        @Override
+        void execute() {
+            if (metrics != null) {
+                long start = System.nanoTime();
+                labelCache.put(layerId, symbolizer, feature, shape, null);
+                metrics.labelTime.addAndGet(System.nanoTime() - start);
+            } else {
+                labelCache.put(layerId, symbolizer, feature, shape, null);
+            }
+        }
+    }
+
+    /**
+     * A request sent to the painting thread 
      * @author aaime
      */
     protected abstract class RenderingRequest {
+        /**
+         * The metrics the execution time is accounted to, if any
+         */
+        RenderingMetrics metrics;
+
         abstract void execute();
     }
     
@@ -3219,11 +4015,135 @@ public class StreamingRenderer implements GTRenderer {
                 ((DelayedBackbufferGraphic) graphic).init();
             }
             
+            paint(graphic);
+        }
+
+        /**
+         * Paints the shape against the specified graphics, which can be the request one, or a
+         * copy of it clipped to a portion of the output during parallel painting
+         * @param target
+         */
+        void paint(Graphics2D target) {
+            long start = metrics != null ? System.nanoTime() : 0;
             try {
-                painter.paint(graphic, shape, style, scale, labelObstacle);
+                paintShape(target);
             } catch(Throwable t) {
                 fireErrorEvent(t);
+            } finally {
+                if (metrics != null) {
+                    metrics.paintTime.addAndGet(System.nanoTime() - start);
+                }
+            }
+        }
+
+        void paintShape(Graphics2D target) {
+            painter.paint(target, shape, style, scale, labelObstacle);
+        }
+
+        /**
+         * Returns the bounds of the painted shape, in the graphics coordinate system
+         */
+        Rectangle2D getShapeBounds() {
+            return shape.getBounds2D();
+        }
+    }
+
+    /**
+     * A request painting a batch of polygons sharing the same style with a single fill and a
+     * single draw call, see {@link StyledShapePainter#paintPolygons(Graphics2D, Shape, PolygonStyle2D)}.
+     * Shells and holes are oriented in opposite directions, so that the non-zero winding rule
+     * fills the union of the polygons, as if they were painted one by one.
+     */
+    protected class PaintPolygonBatchRequest extends PaintShapeRequest {
+        PaintShapeRequest first;
+
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO);
+
+        Rectangle2D bounds;
+
+        int size;
+
+        int vertices;
+
+        int maxVertices;
+
+        public PaintPolygonBatchRequest(PaintShapeRequest first, int maxVertices) {
+            super(first.graphic, null, first.style, first.scale);
+            this.metrics = first.metrics;
+            this.first = first;
+            this.maxVertices = maxVertices;
+            append(first.shape);
+        }
+
+        /**
+         * Adds the request polygons to the batch, returns false if the request is not compatible
+         * with the batch, or would make it exceed its maximum size
+         */
+        boolean add(PaintShapeRequest request) {
+            if (request.getClass() != PaintShapeRequest.class || request.style != style
+                    || request.graphic != graphic || request.metrics != metrics
+                    || request.scale != scale || request.labelObstacle) {
+                return false;
+            }
+            Geometry geometry = request.shape.getGeometry();
+            if (!(geometry instanceof Polygon || geometry instanceof MultiPolygon)
+                    || vertices + geometry.getNumPoints() > maxVertices) {
+                return false;
+            }
+            append(request.shape);
+            return true;
+        }
+
+        private void append(LiteShape2 shape) {
+            Geometry geometry = shape.getGeometry();
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                Polygon polygon = (Polygon) geometry.getGeometryN(i);
+                appendRing(polygon.getExteriorRing().getCoordinateSequence(), true);
+                for (int j = 0; j < polygon.getNumInteriorRing(); j++) {
+                    appendRing(polygon.getInteriorRingN(j).getCoordinateSequence(), false);
+                }
+            }
+            vertices += geometry.getNumPoints();
+            size++;
+            if (bounds == null) {
+                bounds = shape.getBounds2D();
+            } else {
+                bounds.add(shape.getBounds2D());
+            }
+        }
+
+        private void appendRing(CoordinateSequence cs, boolean shell) {
+            int n = cs.size();
+            if (n == 0) {
+                return;
+            }
+            // twice the signed area, gives the ring orientation
+            double area = 0;
+            for (int i = 0; i < n - 1; i++) {
+                area += cs.getX(i) * cs.getY(i + 1) - cs.getX(i + 1) * cs.getY(i);
             }
+            if ((area >= 0) == shell) {
+                path.moveTo(cs.getX(0), cs.getY(0));
+                for (int i = 1; i < n; i++) {
+                    path.lineTo(cs.getX(i), cs.getY(i));
+                }
+            } else {
+                path.moveTo(cs.getX(n - 1), cs.getY(n - 1));
+                for (int i = n - 2; i >= 0; i--) {
+                    path.lineTo(cs.getX(i), cs.getY(i));
+                }
+            }
+            path.closePath();
+        }
+
+        @Override
+        void paintShape(Graphics2D target) {
+            painter.paintPolygons(target, path, (PolygonStyle2D) style);
+        }
+
+        @Override
+        Rectangle2D getShapeBounds() {
+            return bounds;
         }
     }
     
@@ -3274,6 +4194,9 @@ public class StreamingRenderer implements GTRenderer {
                     // we may have not found anything to paint, in that case the delegate
                     // has not been initialized
                     if(image != null) {
+                        if (currentLayer.metrics != null) {
+                            currentLayer.metrics.backBufferBytes.addAndGet(getImageBytes(image));
+                        }
                         if (currentLayer.composite == null) {
                             graphics.setComposite(AlphaComposite.SrcOver);
                         } else {
@@ -3288,6 +4211,15 @@ public class StreamingRenderer implements GTRenderer {
         }
     }
     
+    /**
+     * Returns the size in bytes of the image data
+     */
+    static long getImageBytes(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
     protected class MargeCompositingGroupRequest extends RenderingRequest {
         Graphics2D graphics;
 
@@ -3307,7 +4239,6 @@ public class StreamingRenderer implements GTRenderer {
             // we may have not found anything to paint, in that case the delegate
             // has not been initialized
             if (image != null) {
-                compositingGroup.graphics.dispose();
                 Composite composite = compositingGroup.composite;
                 if (composite == null) {
                     graphics.setComposite(AlphaComposite.SrcOver);
@@ -3315,6 +4246,8 @@ public class StreamingRenderer implements GTRenderer {
                     graphics.setComposite(composite);
                 }
                 graphics.drawImage(image, 0, 0, null);
+                // gives back the image to the pool, must happen after the merge
+                compositingGroup.graphics.dispose();
             }
 
         }
@@ -3451,6 +4384,7 @@ public class StreamingRenderer implements GTRenderer {
                 // Checks on the Reprojection parameters
                 gcr.setAdvancedProjectionHandlingEnabled(isAdvancedProjectionHandlingEnabled());
                 gcr.setWrapEnabled(isMapWrappingEnabled());
+                gcr.setCoverageCache(ReprojectedCoverageCache.getDefaultInstance());
                 gcr.paint(graphics, reader, readParams, symbolizer, interpolation, null);
 
                 if (LOGGER.isLoggable(Level.FINE)) {
@@ -3499,6 +4433,23 @@ public class StreamingRenderer implements GTRenderer {
         
     }
     
+    /**
+     * Notifies the {@link ProgressiveRenderListener} objects that all the requests so far have
+     * been painted
+     */
+    protected class FrameRequest extends RenderingRequest {
+        int completedLayers;
+
+        public FrameRequest(int completedLayers) {
+            this.completedLayers = completedLayers;
+        }
+
+        @Override
+        void execute() {
+            painterThread.frame(completedLayers);
+        }
+    }
+
     /**
      * Marks the end of the request flow, instructs the painting thread to exit
      * @author Andrea Aime - OpenGeo
@@ -3520,6 +4471,34 @@ public class StreamingRenderer implements GTRenderer {
     class PainterThread implements Runnable {
         BlockingQueue<RenderingRequest> requests;
         Thread thread;
+
+        /**
+         * The interval between timed partial frames, in nanoseconds, or 0 if disabled
+         */
+        long frameInterval;
+
+        long nextFrame;
+
+        /**
+         * True if requests have been painted since the last frame
+         */
+        boolean painted;
+
+        int completedLayers;
+
+        int layerCount;
+
+        /**
+         * The maximum number of vertices in a polygon batch, or 0 if batching is disabled
+         */
+        int batchSize;
+
+        PaintPolygonBatchRequest batch;
+
+        /**
+         * The feature rendered events received while the current polygon batch was being built
+         */
+        List<RenderingRequest> batchEvents = new ArrayList<RenderingRequest>();
         
         public PainterThread(BlockingQueue<RenderingRequest> requests) {
             this.requests = requests;
@@ -3534,27 +4513,502 @@ public class StreamingRenderer implements GTRenderer {
         public void run() {
             thread = Thread.currentThread();
             boolean done = false;
-            while(!done) {
-                try {
-                    RenderingRequest request = requests.take();
-                    if(request instanceof EndRequest || renderingStopRequested) {
-                        done = true;
-                    } else {
-                        request.execute();
-                    }
-                } catch(InterruptedException e) {
-                    // ok, we might have been interrupted to stop processing
-                    if(renderingStopRequested) {
-                        done = true;
+            nextFrame = System.nanoTime() + frameInterval;
+            try {
+                while(!done) {
+                    try {
+                        RenderingRequest request = nextRequest();
+                        if (request == null) {
+                            // the frame interval elapsed while waiting for requests
+                            timedFrame();
+                        } else if(request instanceof EndRequest || renderingStopRequested) {
+                            done = true;
+                            if (!renderingStopRequested) {
+                                flushBatch();
+                            }
+                        } else {
+                            if (!(request instanceof FrameRequest)) {
+                                painted = true;
+                            }
+                            process(request);
+                            if (frameInterval > 0 && System.nanoTime() >= nextFrame) {
+                                timedFrame();
+                            }
+                        }
+                    } catch(InterruptedException e) {
+                        // ok, we might have been interrupted to stop processing
+                        if(renderingStopRequested) {
+                            done = true;
+                        }
+                    } catch(Throwable t) {
+                        fireErrorEvent(t);
                     }
-                } catch(Throwable t) {
-                    fireErrorEvent(t);
+                    
                 }
-                
+            } finally {
+                completed();
             }
-            
         }
         
+        /**
+         * Waits for the next request. With timed frames enabled the wait ends when the next
+         * frame is due, in which case null is returned
+         */
+        RenderingRequest nextRequest() throws InterruptedException {
+            if (frameInterval <= 0) {
+                return requests.take();
+            }
+            long wait = nextFrame - System.nanoTime();
+            if (wait <= 0) {
+                return null;
+            }
+            return requests.poll(wait, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Notifies a timed partial frame, if anything got painted since the last one
+         */
+        void timedFrame() {
+            if (painted) {
+                flushBatch();
+                frame(completedLayers);
+            } else {
+                nextFrame = System.nanoTime() + frameInterval;
+            }
+        }
+
+        /**
+         * Executes the request, or accumulates it in the current polygon batch, flushing the
+         * batch when the request cannot be added to it
+         */
+        void process(RenderingRequest request) {
+            if (batchSize > 0 && request instanceof PaintShapeRequest) {
+                PaintShapeRequest paintRequest = (PaintShapeRequest) request;
+                if (batch != null && batch.add(paintRequest)) {
+                    return;
+                }
+                flushBatch();
+                if (isBatchable(paintRequest)) {
+                    batch = new PaintPolygonBatchRequest(paintRequest, batchSize);
+                    return;
+                }
+            } else if (batch != null && request instanceof FeatureRenderedRequest) {
+                // the feature might be in the batch, notify once the batch is painted
+                batchEvents.add(request);
+                return;
+            } else if (batch != null) {
+                flushBatch();
+            }
+            execute(request);
+        }
+
+        /**
+         * Returns true if the request paints polygons with a style that can be batched
+         */
+        boolean isBatchable(PaintShapeRequest request) {
+            if (request.getClass() != PaintShapeRequest.class || request.labelObstacle
+                    || !(request.style instanceof PolygonStyle2D)) {
+                return false;
+            }
+            PolygonStyle2D style = (PolygonStyle2D) request.style;
+            if (style.getGraphicFill() != null || style.getGraphicStroke() != null
+                    || !style.isScaleInRange(request.scale)) {
+                return false;
+            }
+            // the batch is filled and then stroked as a whole, with both a fill and a stroke
+            // an outline would end up above the fill of the polygons painted after it
+            if (style.getFill() != null && style.getStroke() != null) {
+                return false;
+            }
+            // dashes would restart at each polygon
+            if (style.getStroke() != null && (!(style.getStroke() instanceof BasicStroke)
+                    || ((BasicStroke) style.getStroke()).getDashArray() != null)) {
+                return false;
+            }
+            Geometry geometry = request.shape.getGeometry();
+            return (geometry instanceof Polygon || geometry instanceof MultiPolygon)
+                    && geometry.getNumPoints() < batchSize;
+        }
+
+        /**
+         * Paints the current polygon batch, if any
+         */
+        void flushBatch() {
+            if (batch != null) {
+                PaintPolygonBatchRequest request = batch;
+                batch = null;
+                // a single polygon is painted exactly as it would without batching
+                execute(request.size == 1 ? request.first : request);
+                for (RenderingRequest event : batchEvents) {
+                    execute(event);
+                }
+                batchEvents.clear();
+            }
+        }
+
+        /**
+         * Executes a single request
+         * @param request
+         */
+        void execute(RenderingRequest request) {
+            // shape painting tracks its own time, as it might be painted in parallel bands
+            if (request.metrics != null && !(request instanceof PaintShapeRequest)) {
+                long start = System.nanoTime();
+                request.execute();
+                request.metrics.paintTime.addAndGet(System.nanoTime() - start);
+            } else {
+                request.execute();
+            }
+        }
+
+        /**
+         * Notifies a partial frame, with all the requests received so far painted
+         */
+        void frame(int completedLayers) {
+            this.completedLayers = completedLayers;
+            fireFrameRenderedEvent(completedLayers, layerCount);
+            painted = false;
+            nextFrame = System.nanoTime() + frameInterval;
+        }
+
+        /**
+         * Called once the request flow is over, before the painter exits
+         */
+        void completed() {
+            // nothing to do
+        }
+        
+    }
+
+    /**
+     * A painter thread that paints shapes in parallel when the target is an image. The output is
+     * split in horizontal bands, each one painted by a different task submitted to the executor,
+     * against its own copy of the graphics clipped to the band. Every pixel is thus painted by a
+     * single band, in the same order as the serial painter, so the output does not change.
+     * <p>
+     * Requests other than plain shape painting (label obstacles, layer merges, rasters, direct
+     * layers) act as barriers: the pending band painting is completed before they are executed
+     * on the painter thread itself.
+     */
+    class ParallelPainterThread extends PainterThread {
+
+        /**
+         * Number of paint requests queued in a band before the batch is handed to the executor
+         */
+        static final int BATCH_SIZE = 128;
+
+        ExecutorService executor;
+
+        int bandCount;
+
+        /**
+         * Maximum number of feature rendered events waiting for the band painting to complete,
+         * once reached the bands are completed so that the events can be fired
+         */
+        static final int MAX_PENDING_EVENTS = 1024;
+
+        Map<Graphics2D, PaintBandSet> bandSets = new IdentityHashMap<Graphics2D, PaintBandSet>();
+
+        /**
+         * Feature rendered events to be fired once the pending band painting is complete
+         */
+        List<RenderingRequest> pendingEvents = new ArrayList<RenderingRequest>();
+
+        public ParallelPainterThread(BlockingQueue<RenderingRequest> requests,
+                ExecutorService executor, int bandCount) {
+            super(requests);
+            this.executor = executor;
+            this.bandCount = bandCount;
+        }
+
+        @Override
+        void execute(RenderingRequest request) {
+            if (request instanceof PaintShapeRequest && !((PaintShapeRequest) request).labelObstacle
+                    && !usesIcons(((PaintShapeRequest) request).style)) {
+                PaintShapeRequest paintRequest = (PaintShapeRequest) request;
+                PaintBandSet bandSet = getBandSet(paintRequest.graphic);
+                if (bandSet == null) {
+                    completeBands();
+                    super.execute(request);
+                } else {
+                    bandSet.add(paintRequest);
+                }
+            } else if (request instanceof FeatureRenderedRequest) {
+                // the feature is on the canvas only once the pending band painting is complete
+                if (bandSets.isEmpty()) {
+                    request.execute();
+                } else {
+                    pendingEvents.add(request);
+                    if (pendingEvents.size() >= MAX_PENDING_EVENTS) {
+                        completeBands();
+                    }
+                }
+            } else {
+                completeBands();
+                super.execute(request);
+            }
+        }
+
+        @Override
+        void frame(int completedLayers) {
+            completeBands();
+            super.frame(completedLayers);
+        }
+
+        @Override
+        void completed() {
+            completeBands();
+        }
+
+        /**
+         * Icons are not guaranteed to be thread safe (e.g., SVG ones), styles using them
+         * are painted serially
+         */
+        boolean usesIcons(Style2D style) {
+            if (style instanceof IconStyle2D) {
+                return true;
+            } else if (style instanceof LineStyle2D
+                    && usesIcons(((LineStyle2D) style).getGraphicStroke())) {
+                return true;
+            } else if (style instanceof PolygonStyle2D
+                    && usesIcons(((PolygonStyle2D) style).getGraphicFill())) {
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Returns the bands for the specified graphics, or null if the graphics cannot be
+         * painted in parallel
+         */
+        PaintBandSet getBandSet(Graphics2D graphic) {
+            if (bandSets.containsKey(graphic)) {
+                return bandSets.get(graphic);
+            }
+
+            Graphics2D target = graphic;
+            if (graphic instanceof DelayedBackbufferGraphic) {
+                DelayedBackbufferGraphic dbg = (DelayedBackbufferGraphic) graphic;
+                dbg.init();
+                target = dbg.delegate;
+            }
+            PaintBandSet result = null;
+            GraphicsConfiguration gc = target.getDeviceConfiguration();
+            if (gc != null && gc.getDevice().getType() == GraphicsDevice.TYPE_IMAGE_BUFFER
+                    && !(gc.getColorModel() instanceof IndexColorModel)) {
+                Rectangle area = gc.getBounds();
+                int bands = Math.min(bandCount, area.height);
+                if (bands > 1) {
+                    result = new PaintBandSet(target, area, bands);
+                }
+            }
+            bandSets.put(graphic, result);
+            return result;
+        }
+
+        /**
+         * Waits for all the pending band painting to complete, and releases the band graphics
+         * (the next requests might modify the state of the original graphics, or dispose it),
+         * then fires the feature rendered events that were waiting for it
+         */
+        void completeBands() {
+            for (PaintBandSet bandSet : bandSets.values()) {
+                if (bandSet != null) {
+                    bandSet.complete();
+                }
+            }
+            bandSets.clear();
+            for (RenderingRequest event : pendingEvents) {
+                event.execute();
+            }
+            pendingEvents.clear();
+        }
+
+        /**
+         * The set of bands a single graphics has been split into
+         */
+        class PaintBandSet {
+            PaintBand[] bands;
+
+            boolean cullable;
+
+            PaintBandSet(Graphics2D target, Rectangle area, int count) {
+                // shape coordinates are in device space only if the graphics is not transformed
+                this.cullable = target.getTransform().isIdentity();
+                this.bands = new PaintBand[count];
+                for (int i = 0; i < count; i++) {
+                    int minY = area.y + (int) ((long) area.height * i / count);
+                    int maxY = area.y + (int) ((long) area.height * (i + 1) / count);
+                    Rectangle bandArea = new Rectangle(area.x, minY, area.width, maxY - minY);
+
+                    // clip in device space
+                    Graphics2D bandGraphics = (Graphics2D) target.create();
+                    AffineTransform at = bandGraphics.getTransform();
+                    bandGraphics.setTransform(new AffineTransform());
+                    bandGraphics.clip(bandArea);
+                    bandGraphics.setTransform(at);
+
+                    bands[i] = new PaintBand(bandGraphics, bandArea);
+                }
+            }
+
+            void add(PaintShapeRequest request) {
+                Rectangle2D bounds = cullable ? getPaintedBounds(request) : null;
+                for (PaintBand band : bands) {
+                    if (bounds == null || bounds.intersects(band.area)) {
+                        band.add(request);
+                    }
+                }
+            }
+
+            void complete() {
+                for (PaintBand band : bands) {
+                    band.complete();
+                }
+            }
+
+            /**
+             * Returns a conservative estimate of the area touched by painting the request, or
+             * null if it cannot be computed cheaply (the request will be sent to all bands)
+             */
+            Rectangle2D getPaintedBounds(PaintShapeRequest request) {
+                Style2D style = request.style;
+                if (!(style instanceof LineStyle2D) || style instanceof PointStyle2D) {
+                    return null;
+                }
+                LineStyle2D ls = (LineStyle2D) style;
+                if (ls.getGraphicStroke() != null || ls.getPerpendicularOffset() != 0
+                        || (style instanceof PolygonStyle2D
+                                && ((PolygonStyle2D) style).getGraphicFill() != null)) {
+                    return null;
+                }
+                double margin = 1;
+                if (ls.getStroke() != null) {
+                    if (!(ls.getStroke() instanceof BasicStroke)) {
+                        return null;
+                    }
+                    BasicStroke stroke = (BasicStroke) ls.getStroke();
+                    // account for the antialiasing and the miter joins
+                    double halfWidth = (Math.max(stroke.getLineWidth(), 1) + 1) / 2;
+                    if (stroke.getLineJoin() == BasicStroke.JOIN_MITER) {
+                        halfWidth *= Math.max(stroke.getMiterLimit(), 1);
+                    }
+                    margin += halfWidth;
+                }
+                Rectangle2D bounds = request.getShapeBounds();
+                return new Rectangle2D.Double(bounds.getMinX() - margin, bounds.getMinY()
+                        - margin, bounds.getWidth() + margin * 2, bounds.getHeight() + margin * 2);
+            }
+        }
+
+        /**
+         * A horizontal band of the output, accumulates paint requests and hands them over in
+         * batches to the executor, keeping at most one batch in flight to preserve the order
+         */
+        class PaintBand {
+            Graphics2D graphics;
+
+            Rectangle area;
+
+            List<PaintShapeRequest> pending = new ArrayList<PaintShapeRequest>(BATCH_SIZE);
+
+            PaintBatch running;
+
+            PaintBand(Graphics2D graphics, Rectangle area) {
+                this.graphics = graphics;
+                this.area = area;
+            }
+
+            void add(PaintShapeRequest request) {
+                pending.add(request);
+                if (pending.size() >= BATCH_SIZE) {
+                    submit();
+                }
+            }
+
+            void submit() {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                if (running != null) {
+                    running.awaitOrRun();
+                }
+                running = new PaintBatch(graphics, pending);
+                pending = new ArrayList<PaintShapeRequest>(BATCH_SIZE);
+                try {
+                    executor.execute(running);
+                } catch (RejectedExecutionException e) {
+                    // will be run by the painter thread in awaitOrRun
+                }
+            }
+
+            void complete() {
+                submit();
+                if (running != null) {
+                    running.awaitOrRun();
+                    running = null;
+                }
+                graphics.dispose();
+            }
+        }
+    }
+
+    /**
+     * A list of paint requests to be executed in order against a band graphics. The batch can
+     * be run either by the executor or by the painter thread, whichever gets to it first: this
+     * avoids deadlocks when the executor has no free threads (e.g., because it's a shared pool
+     * also running the painter thread)
+     */
+    class PaintBatch implements Runnable {
+        Graphics2D graphics;
+
+        List<PaintShapeRequest> requests;
+
+        AtomicBoolean claimed = new AtomicBoolean();
+
+        CountDownLatch done = new CountDownLatch(1);
+
+        PaintBatch(Graphics2D graphics, List<PaintShapeRequest> requests) {
+            this.graphics = graphics;
+            this.requests = requests;
+        }
+
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                for (PaintShapeRequest request : requests) {
+                    if (renderingStopRequested) {
+                        break;
+                    }
+                    request.paint(graphics);
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+
+        /**
+         * Runs the batch in the current thread if nobody picked it up yet, otherwise waits for
+         * its completion. Interruptions are not allowed to break the wait, as the graphics
+         * cannot be used by other requests while the batch is still painting
+         */
+        void awaitOrRun() {
+            run();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
     
     /**
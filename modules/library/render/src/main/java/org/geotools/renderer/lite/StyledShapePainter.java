@@ -46,6 +46,7 @@ import org.geotools.referencing.operation.transform.AffineTransform2D;
 import org.geotools.renderer.style.GraphicStyle2D;
 import org.geotools.renderer.style.IconStyle2D;
 import org.geotools.renderer.style.LineStyle2D;
+import org.geotools.renderer.style.MarkSpriteCache;
 import org.geotools.renderer.style.MarkStyle2D;
 import org.geotools.renderer.style.PointStyle2D;
 import org.geotools.renderer.style.PolygonStyle2D;
@@ -90,6 +91,11 @@ public final class StyledShapePainter {
      */
     LabelCache labelCache;
 
+    /**
+     * The cache of pre-rasterized marks, if null marks are always painted as vectors
+     */
+    MarkSpriteCache markSpriteCache;
+
     public StyledShapePainter() {
         // nothing do do, just needs to exist
     }
@@ -98,6 +104,24 @@ public final class StyledShapePainter {
         this.labelCache = cache;
     }
 
+    /**
+     * Returns the cache used to paint marks as pre-rasterized sprites, or null if marks are
+     * painted as vectors (the default)
+     */
+    public MarkSpriteCache getMarkSpriteCache() {
+        return markSpriteCache;
+    }
+
+    /**
+     * Sets the cache used to paint marks as pre-rasterized sprites, null to paint them as
+     * vectors. The sprites are used only when painting on images.
+     * 
+     * @param markSpriteCache
+     */
+    public void setMarkSpriteCache(MarkSpriteCache markSpriteCache) {
+        this.markSpriteCache = markSpriteCache;
+    }
+
     public void paint(final Graphics2D graphics, final LiteShape2 shape,
             final Style2D style, final double scale) {
         paint(graphics, shape, style, scale, false);
@@ -180,27 +204,37 @@ public final class StyledShapePainter {
             // get the point onto the shape has to be painted
             float[] coords = new float[2];
             MarkStyle2D ms2d = (MarkStyle2D) style;
+            boolean useSprites = markSpriteCache != null
+                    && markSpriteCache.canPaint(graphics, ms2d);
 
             Shape transformedShape ;
             while (!(citer.isDone())) {
                 if (citer.currentSegment(coords) != PathIterator.SEG_MOVETO) {
-                    transformedShape = ms2d.getTransformedShape(coords[0], coords[1]);
-                    if (transformedShape != null) {
-                        if (ms2d.getFill() != null) {
-                            graphics.setPaint(ms2d.getFill());
-                            graphics.setComposite(ms2d.getFillComposite());
-                            graphics.fill(transformedShape);
+                    if (useSprites) {
+                        Rectangle2D bounds = markSpriteCache.paint(graphics, ms2d, coords[0],
+                                coords[1]);
+                        if (isLabelObstacle) {
+                            labelCache.put(bounds);
                         }
+                    } else {
+                        transformedShape = ms2d.getTransformedShape(coords[0], coords[1]);
+                        if (transformedShape != null) {
+                            if (ms2d.getFill() != null) {
+                                graphics.setPaint(ms2d.getFill());
+                                graphics.setComposite(ms2d.getFillComposite());
+                                graphics.fill(transformedShape);
+                            }
 
-                        if (ms2d.getContour() != null) {
-                            graphics.setPaint(ms2d.getContour());
-                            graphics.setStroke(ms2d.getStroke());
-                            graphics.setComposite(ms2d.getContourComposite());
-                            graphics.draw(transformedShape);
-                        }
+                            if (ms2d.getContour() != null) {
+                                graphics.setPaint(ms2d.getContour());
+                                graphics.setStroke(ms2d.getStroke());
+                                graphics.setComposite(ms2d.getContourComposite());
+                                graphics.draw(transformedShape);
+                            }
 
-                        if (isLabelObstacle) {
-                            labelCache.put(transformedShape.getBounds2D());
+                            if (isLabelObstacle) {
+                                labelCache.put(transformedShape.getBounds2D());
+                            }
                         }
                     }
                 }
@@ -233,27 +267,7 @@ public final class StyledShapePainter {
                 PolygonStyle2D ps2d = (PolygonStyle2D) style;
 
                 if (ps2d.getFill() != null) {
-                    Paint paint = ps2d.getFill();
-
-                    if (paint instanceof TexturePaint) {
-                        TexturePaint tp = (TexturePaint) paint;
-                        BufferedImage image = tp.getImage();
-                        Rectangle2D cornerRect = tp.getAnchorRect();
-                        Point2D anchorPoint = (Point2D) graphics
-                                .getRenderingHint(TEXTURE_ANCHOR_HINT_KEY);
-                        Rectangle2D alignedRect = null;
-                        if (anchorPoint != null) {
-                            alignedRect = new Rectangle2D.Double(Math.round(anchorPoint.getX()),
-                                    Math.round(anchorPoint.getY()), cornerRect.getWidth(),
-                                    cornerRect.getHeight());
-                        } else {
-                            alignedRect = new Rectangle2D.Double(0.0, 0.0, cornerRect.getWidth(),
-                                    cornerRect.getHeight());
-                        }
-                        paint = new TexturePaint(image, alignedRect);
-                    }
-
-                    graphics.setPaint(paint);
+                    graphics.setPaint(getFillPaint(graphics, ps2d));
                     graphics.setComposite(ps2d.getFillComposite());
                     fillLiteShape(graphics, shape);
                 }
@@ -277,43 +291,98 @@ public final class StyledShapePainter {
                     if (ls2d.getGraphicStroke() != null) {
                         drawWithGraphicsStroke(graphics, dashShape(shape, ls2d.getStroke()), ls2d.getGraphicStroke(), isLabelObstacle);
                     } else {
-                        Paint paint = ls2d.getContour();
-
-                        if (paint instanceof TexturePaint) {
-                            TexturePaint tp = (TexturePaint) paint;
-                            BufferedImage image = tp.getImage();
-                            Rectangle2D rect = tp.getAnchorRect();
-                            AffineTransform at = graphics.getTransform();
-                            double width = rect.getWidth() * at.getScaleX();
-                            double height = rect.getHeight() * at.getScaleY();
-                            Rectangle2D scaledRect = new Rectangle2D.Double(0,
-                                    0, width, height);
-                            paint = new TexturePaint(image, scaledRect);
-                        }
-
                         // debugShape(shape);
-                        Stroke stroke = ls2d.getStroke();
-                        if (graphics
-                                .getRenderingHint(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON) {
-                            if (stroke instanceof BasicStroke) {
-                                BasicStroke bs = (BasicStroke) stroke;
-                                stroke = new BasicStroke(
-                                        bs.getLineWidth() + 0.5f, bs
-                                                .getEndCap(), bs.getLineJoin(),
-                                        bs.getMiterLimit(), bs.getDashArray(),
-                                        bs.getDashPhase());
-                            }
-                        }
-
-                        graphics.setPaint(paint);
-                        graphics.setStroke(stroke);
-                        graphics.setComposite(ls2d.getContourComposite());
-                        graphics.draw(shape);
+                        drawContour(graphics, shape, ls2d);
                     }
                 }
             }
         }
     }
+
+    /**
+     * Paints a set of polygons sharing the same style with a single fill and a single draw
+     * call, saving the per call overhead of Java2D. The polygons are expected to be
+     * non overlapping, with the shells and holes oriented so that the non-zero winding rule
+     * fills their union: where they do overlap, translucent fills and strokes are not composited
+     * in the same order as painting them one by one. All the outlines are drawn after all the
+     * fills, so with a style having both the output matches the one by one painting only if the
+     * polygons are further apart than the stroke width. Graphic fills and graphic strokes are not
+     * supported.
+     * 
+     * @param graphics The graphics in which to draw
+     * @param polygons The polygons to draw
+     * @param style The style to apply
+     */
+    public void paintPolygons(final Graphics2D graphics, final Shape polygons,
+            final PolygonStyle2D style) {
+        if (style.getFill() != null) {
+            graphics.setPaint(getFillPaint(graphics, style));
+            graphics.setComposite(style.getFillComposite());
+            graphics.fill(polygons);
+        }
+        if (style.getStroke() != null) {
+            drawContour(graphics, polygons, style);
+        }
+    }
+
+    /**
+     * Returns the paint filling the polygons, with texture paints aligned to the
+     * {@link #TEXTURE_ANCHOR_HINT_KEY} anchor, if any
+     */
+    private Paint getFillPaint(Graphics2D graphics, PolygonStyle2D ps2d) {
+        Paint paint = ps2d.getFill();
+
+        if (paint instanceof TexturePaint) {
+            TexturePaint tp = (TexturePaint) paint;
+            BufferedImage image = tp.getImage();
+            Rectangle2D cornerRect = tp.getAnchorRect();
+            Point2D anchorPoint = (Point2D) graphics.getRenderingHint(TEXTURE_ANCHOR_HINT_KEY);
+            Rectangle2D alignedRect = null;
+            if (anchorPoint != null) {
+                alignedRect = new Rectangle2D.Double(Math.round(anchorPoint.getX()),
+                        Math.round(anchorPoint.getY()), cornerRect.getWidth(),
+                        cornerRect.getHeight());
+            } else {
+                alignedRect = new Rectangle2D.Double(0.0, 0.0, cornerRect.getWidth(),
+                        cornerRect.getHeight());
+            }
+            paint = new TexturePaint(image, alignedRect);
+        }
+        return paint;
+    }
+
+    /**
+     * Draws the outline of the shape with a plain stroke (no graphic stroke)
+     */
+    private void drawContour(Graphics2D graphics, Shape shape, LineStyle2D ls2d) {
+        Paint paint = ls2d.getContour();
+
+        if (paint instanceof TexturePaint) {
+            TexturePaint tp = (TexturePaint) paint;
+            BufferedImage image = tp.getImage();
+            Rectangle2D rect = tp.getAnchorRect();
+            AffineTransform at = graphics.getTransform();
+            double width = rect.getWidth() * at.getScaleX();
+            double height = rect.getHeight() * at.getScaleY();
+            Rectangle2D scaledRect = new Rectangle2D.Double(0, 0, width, height);
+            paint = new TexturePaint(image, scaledRect);
+        }
+
+        Stroke stroke = ls2d.getStroke();
+        if (graphics.getRenderingHint(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON) {
+            if (stroke instanceof BasicStroke) {
+                BasicStroke bs = (BasicStroke) stroke;
+                stroke = new BasicStroke(bs.getLineWidth() + 0.5f, bs.getEndCap(),
+                        bs.getLineJoin(), bs.getMiterLimit(), bs.getDashArray(),
+                        bs.getDashPhase());
+            }
+        }
+
+        graphics.setPaint(paint);
+        graphics.setStroke(stroke);
+        graphics.setComposite(ls2d.getContourComposite());
+        graphics.draw(shape);
+    }
     
     /**
      * Paints a GraphicLegend in the supplied graphics
@@ -28,7 +28,6 @@ import java.util.Map;
 import java.util.logging.Level;
 
 import org.geotools.data.FeatureSource;
-import org.geotools.data.sort.SortedFeatureReader;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.SchemaException;
 import org.geotools.geometry.jts.ReferencedEnvelope;
@@ -180,7 +179,7 @@ class ZGroupLayer extends Layer {
                 // with a single painter with a single fts (due to scale dependencies)
                 // but we'd have to delay opening the MarkFeatureIterator to recognize the
                 // situation
-                int maxFeatures = SortedFeatureReader.getMaxFeaturesInMemory(layer.getQuery());
+                int maxFeatures = renderer.getSortMemoryBudget(layer.getQuery());
                 MarkFeatureIterator fi = MarkFeatureIterator.create(features,
                         maxFeatures, cancellationListener);
                 if (fi.hasNext()) {
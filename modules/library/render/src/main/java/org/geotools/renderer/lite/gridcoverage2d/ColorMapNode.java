@@ -156,50 +156,58 @@ class ColorMapNode extends StyleVisitorCoverageProcessingNodeAdapter implements
 			// have a valid NoDataValue that we can use.
 			//
 			// /////////////////////////////////////////////////////////////////////
-			final GridSampleDimension candidateSD = sourceCoverage.getSampleDimension(0);
-			double[] candidateNoDataValues = preparaNoDataValues(candidateSD);
+			colorMapTransform = buildColorMap(colorMap, sourceCoverage.getSampleDimension(0));
 
-			// /////////////////////////////////////////////////////////////////////
-			//
-			// Main Loop
-			//
-			// /////////////////////////////////////////////////////////////////////
-			//TODO MAKE THE COLORS CONFIGURABLE 
-			final SLDColorMapBuilder builder = new SLDColorMapBuilder();
-			builder.setExtendedColors(this.extendedColors)
-					.setLinearColorMapType(this.type)
-					.setNumberColorMapEntries(cmEntries.length)
-					.setColorForValuesToPreserve(new Color(0, 0, 0, 0))
-					.setGapsColor(new Color(0, 0, 0, 0));
-			for (int i = 0; i < cmEntries.length; i++) {
-				builder.addColorMapEntry(cmEntries[i]);
+		} else
+			this.type = -1;
 
-			}
+	}
 
+    /**
+     * Builds the {@link LinearColorMap} for the provided {@link ColorMap}, using the provided
+     * {@link GridSampleDimension} to look up the no data values to preserve.
+     */
+    static LinearColorMap buildColorMap(ColorMap colorMap, GridSampleDimension sampleDimension) {
+		final ColorMapEntry[] cmEntries = colorMap.getColorMapEntries();
+		double[] candidateNoDataValues = preparaNoDataValues(sampleDimension);
 
+		// /////////////////////////////////////////////////////////////////////
+		//
+		// Main Loop
+		//
+		// /////////////////////////////////////////////////////////////////////
+		//TODO MAKE THE COLORS CONFIGURABLE 
+		final SLDColorMapBuilder builder = new SLDColorMapBuilder();
+		builder.setExtendedColors(colorMap.getExtendedColors())
+				.setLinearColorMapType(colorMap.getType())
+				.setNumberColorMapEntries(cmEntries.length)
+				.setColorForValuesToPreserve(new Color(0, 0, 0, 0))
+				.setGapsColor(new Color(0, 0, 0, 0));
+		for (int i = 0; i < cmEntries.length; i++) {
+			builder.addColorMapEntry(cmEntries[i]);
 
-			// /////////////////////////////////////////////////////////////////////
-			//
-			// Create the list of no data colorMapTransform domain elements. Note that all of them 
-			//
-			// /////////////////////////////////////////////////////////////////////
-			if(candidateNoDataValues!=null&&candidateNoDataValues.length>0){
-				final LinearColorMapElement noDataCategories[] = new LinearColorMapElement[candidateNoDataValues.length];
-				for (int i = 0; i < noDataCategories.length; i++) {
-					builder.addValueToPreserve(candidateNoDataValues[i]);
-				}
-			}
+		}
 
-			// /////////////////////////////////////////////////////////////////////
-			//
-			// Create the list of colorMapTransform categories
-			//
-			// /////////////////////////////////////////////////////////////////////
-			colorMapTransform = builder.buildLinearColorMap();
 
-		} else
-			this.type = -1;
 
+		// /////////////////////////////////////////////////////////////////////
+		//
+		// Create the list of no data colorMapTransform domain elements. Note that all of them 
+		//
+		// /////////////////////////////////////////////////////////////////////
+		if(candidateNoDataValues!=null&&candidateNoDataValues.length>0){
+			final LinearColorMapElement noDataCategories[] = new LinearColorMapElement[candidateNoDataValues.length];
+			for (int i = 0; i < noDataCategories.length; i++) {
+				builder.addValueToPreserve(candidateNoDataValues[i]);
+			}
+		}
+
+		// /////////////////////////////////////////////////////////////////////
+		//
+		// Create the list of colorMapTransform categories
+		//
+		// /////////////////////////////////////////////////////////////////////
+		return builder.buildLinearColorMap();
 	}
 
     /**
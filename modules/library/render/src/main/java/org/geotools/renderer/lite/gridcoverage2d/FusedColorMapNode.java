@@ -0,0 +1,303 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite.gridcoverage2d;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.RenderedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.media.jai.IHSColorSpace;
+import javax.media.jai.ImageLayout;
+import javax.media.jai.NullOpImage;
+import javax.media.jai.OpImage;
+
+import org.geotools.coverage.GridSampleDimension;
+import org.geotools.coverage.TypeMap;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.factory.Hints;
+import org.geotools.image.ImageWorker;
+import org.geotools.renderer.i18n.ErrorKeys;
+import org.geotools.renderer.i18n.Errors;
+import org.geotools.renderer.i18n.Vocabulary;
+import org.geotools.renderer.i18n.VocabularyKeys;
+import org.geotools.resources.coverage.CoverageUtilities;
+import org.geotools.styling.ChannelSelection;
+import org.geotools.styling.ColorMap;
+import org.geotools.styling.ContrastEnhancement;
+import org.geotools.styling.RasterSymbolizer;
+import org.geotools.styling.SelectedChannelType;
+import org.geotools.styling.StyleVisitor;
+import org.geotools.util.SimpleInternationalString;
+import org.opengis.coverage.grid.GridCoverage;
+import org.opengis.filter.expression.Expression;
+import org.opengis.util.InternationalString;
+
+import it.geosolutions.jaiext.classifier.LinearColorMap;
+import it.geosolutions.jaiext.range.NoDataContainer;
+
+/**
+ * {@link CoverageProcessingNode} running the channel selection, color map and contrast
+ * enhancement steps of a {@link RasterSymbolizer} in a single pass, the typical case of a DEM
+ * styled with a color map.
+ * <p>
+ * The {@link ChannelSelectionNode}, {@link ColorMapNode}, {@link ContrastEnhancementNode} chain
+ * builds a separate image operation for each step, each one with its own tiles in the tile
+ * cache. This node instead classifies the selected band straight from the source image, and
+ * applies the gamma correction to the palette of the classified image, so that the only tiles
+ * computed are the ones of the final, color mapped image.
+ * <p>
+ * Only symbolizers that can be fused are supported, see {@link #canFuse(RasterSymbolizer)}.
+ */
+class FusedColorMapNode extends StyleVisitorCoverageProcessingNodeAdapter implements
+        StyleVisitor, CoverageProcessingNode {
+
+    /*
+     * (non-Javadoc)
+     * @see CoverageProcessingNode#getName()
+     */
+    public InternationalString getName() {
+        return Vocabulary.formatInternational(VocabularyKeys.COLOR_MAP);
+    }
+
+    /**
+     * One based index of the band to classify, or -1 if no channel selection was specified
+     */
+    private int bandIndex = -1;
+
+    private LinearColorMap colorMapTransform;
+
+    private ContrastEnhancement contrastEnhancement;
+
+    private double gammaValue = Double.NaN;
+
+    public FusedColorMapNode(Hints hints) {
+        super(1, hints, SimpleInternationalString.wrap("FusedColorMapNode"),
+                SimpleInternationalString.wrap("Node which applies ChannelSelection, "
+                        + "ColorMap and ContrastEnhancement in a single step."));
+    }
+
+    /**
+     * Returns true if the symbolizer can be executed by this node, that is, if it has a color
+     * map, it selects at most a single gray channel without a contrast enhancement of its own,
+     * and its contrast enhancement, if any, is a plain gamma correction. Contrast enhancement
+     * methods need the statistics of the image, so they cannot be fused.
+     */
+    static boolean canFuse(RasterSymbolizer rs) {
+        final ColorMap cm = rs.getColorMap();
+        if (cm == null || cm.getColorMapEntries() == null
+                || cm.getColorMapEntries().length == 0) {
+            return false;
+        }
+        if (!isGammaOnly(rs.getContrastEnhancement())) {
+            return false;
+        }
+        final ChannelSelection cs = rs.getChannelSelection();
+        if (cs != null) {
+            final SelectedChannelType gray = cs.getGrayChannel();
+            final SelectedChannelType[] rgb = cs.getRGBChannels();
+            if (rgb != null && rgb[0] != null && rgb[1] != null && rgb[2] != null) {
+                // either invalid, or a color map applied to a rgb image, let the chain complain
+                return false;
+            }
+            if (gray != null) {
+                final ContrastEnhancement ce = gray.getContrastEnhancement();
+                if (!isGammaOnly(ce) || !Double.isNaN(getGamma(ce))) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isGammaOnly(ContrastEnhancement ce) {
+        return ce == null || ce.getMethod() == null
+                || "NONE".equalsIgnoreCase(ce.getMethod().name());
+    }
+
+    /**
+     * Returns the gamma value of the contrast enhancement, or NaN if it does not change the
+     * image
+     */
+    private static double getGamma(ContrastEnhancement ce) {
+        final Expression gamma = ce != null ? ce.getGammaValue() : null;
+        if (gamma != null) {
+            final Number number = gamma.evaluate(null, Double.class);
+            if (number != null) {
+                final double value = number.doubleValue();
+                if (value < 0 || Double.isNaN(value) || Double.isInfinite(value)) {
+                    throw new IllegalArgumentException(Errors.format(
+                            ErrorKeys.ILLEGAL_ARGUMENT_$2, "Gamma", number));
+                }
+                if (Math.abs(value - 1) > 1E-6) {
+                    return value;
+                }
+            }
+        }
+        return Double.NaN;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.geotools.renderer.lite.gridcoverage2d.StyleVisitorAdapter#visit(org.geotools.styling.RasterSymbolizer)
+     */
+    public void visit(RasterSymbolizer rs) {
+        ColorMapUtilities.ensureNonNull("RasterSymbolizer", rs);
+        final CoverageProcessingNode source = getSource(0);
+        GridCoverageRendererUtilities.ensureSourceNotNull(source, "FusedColorMapNode");
+        final GridCoverage2D sourceCoverage = (GridCoverage2D) source.getOutput();
+        GridCoverageRendererUtilities.ensureSourceNotNull(sourceCoverage, "FusedColorMapNode");
+        final int numSD = sourceCoverage.getNumSampleDimensions();
+
+        // the band we are going to classify, same checks as the BandSelectionNode
+        final ChannelSelection cs = rs.getChannelSelection();
+        final SelectedChannelType gray = cs != null ? cs.getGrayChannel() : null;
+        if (gray != null) {
+            try {
+                bandIndex = Integer.parseInt(gray.getChannelName());
+            } catch (NumberFormatException e) {
+                final IllegalArgumentException iee = new IllegalArgumentException(
+                        Errors.format(ErrorKeys.BAD_BAND_NUMBER_$1, Integer.valueOf(bandIndex)));
+                iee.initCause(e);
+                throw iee;
+            }
+            if (bandIndex < 1 || bandIndex > numSD) {
+                throw new IllegalArgumentException(Errors.format(ErrorKeys.BAD_BAND_NUMBER_$1,
+                        Integer.valueOf(bandIndex)));
+            }
+        } else if (numSD > 1) {
+            // same as the ColorMapNode, only gray + alpha is accepted
+            ColorModel cm = sourceCoverage.getRenderedImage().getColorModel();
+            if (!cm.hasAlpha() && cm.getNumColorComponents() != 2) {
+                throw new IllegalArgumentException(Errors.format(ErrorKeys.BAD_BAND_NUMBER_$1,
+                        Integer.valueOf(numSD)));
+            }
+        }
+
+        final int band = bandIndex > 0 ? bandIndex - 1 : 0;
+        colorMapTransform = ColorMapNode.buildColorMap(rs.getColorMap(),
+                sourceCoverage.getSampleDimension(band));
+        contrastEnhancement = rs.getContrastEnhancement();
+        gammaValue = getGamma(contrastEnhancement);
+    }
+
+    protected GridCoverage2D execute() {
+        final CoverageProcessingNode sourceNode = getSource(0);
+        GridCoverageRendererUtilities.ensureSourceNotNull(sourceNode, this.getName().toString());
+        final GridCoverage2D sourceCoverage = (GridCoverage2D) sourceNode.getOutput();
+        GridCoverageRendererUtilities.ensureSourceNotNull(sourceCoverage, this.getName()
+                .toString());
+        if (colorMapTransform == null) {
+            return sourceCoverage;
+        }
+
+        // classify the selected band directly, without a band select in between
+        final RenderedImage sourceImage = sourceCoverage.getRenderedImage();
+        GridCoverageRendererUtilities.ensureSourceNotNull(sourceImage, this.getName().toString());
+        ImageWorker w = new ImageWorker(sourceImage).setRenderingHints(getHints());
+        w.setROI(CoverageUtilities.getROIProperty(sourceCoverage));
+        NoDataContainer noDataProperty = CoverageUtilities.getNoDataProperty(sourceCoverage);
+        w.setNoData(noDataProperty != null ? noDataProperty.getAsRange() : null);
+        final int band = bandIndex > 0 ? bandIndex - 1 : 0;
+        w.classify(colorMapTransform, sourceImage.getSampleModel().getNumBands() > 1 ? band
+                : null);
+        RenderedImage classified = w.getRenderedImage();
+
+        // the gamma correction works on the intensity of the colors, on a paletted image
+        // it can be applied to the palette instead of the pixels
+        if (!Double.isNaN(gammaValue)) {
+            if (classified.getColorModel() instanceof IndexColorModel) {
+                final IndexColorModel icm = applyGamma(
+                        (IndexColorModel) classified.getColorModel(), gammaValue);
+                final ImageLayout layout = new ImageLayout().setColorModel(icm);
+                classified = new NullOpImage(classified, layout, null, OpImage.OP_COMPUTE_BOUND);
+            } else {
+                // should not happen, but let's be safe and fall back on the pixel by pixel one
+                final ContrastEnhancementNode ceNode = new ContrastEnhancementNode(getHints());
+                ceNode.addSource(new RootNode(createCoverage(sourceCoverage, classified, w),
+                        getHints()));
+                ceNode.visit(contrastEnhancement);
+                return (GridCoverage2D) ceNode.getOutput();
+            }
+        }
+
+        return createCoverage(sourceCoverage, classified, w);
+    }
+
+    private GridCoverage2D createCoverage(GridCoverage2D sourceCoverage, RenderedImage image,
+            ImageWorker worker) {
+        final int numBands = image.getSampleModel().getNumBands();
+        final GridSampleDimension[] sd = new GridSampleDimension[numBands];
+        for (int i = 0; i < numBands; i++) {
+            sd[i] = new GridSampleDimension(TypeMap.getColorInterpretation(image.getColorModel(),
+                    i).name());
+        }
+
+        Map properties = sourceCoverage.getProperties();
+        if (properties == null) {
+            properties = new HashMap<>();
+        }
+        CoverageUtilities.setROIProperty(properties, worker.getROI());
+        CoverageUtilities.setNoDataProperty(properties, worker.getNoData());
+
+        return getCoverageFactory().create("color_mapped_" + sourceCoverage.getName().toString(),
+                image, sourceCoverage.getGridGeometry(), sd, new GridCoverage[] { sourceCoverage },
+                properties);
+    }
+
+    /**
+     * Applies the gamma correction to the intensity of each palette entry, the same way the
+     * {@link ContrastEnhancementNode} does on each pixel of a RGB image
+     */
+    static IndexColorModel applyGamma(IndexColorModel icm, double gamma) {
+        final byte[] lut = new byte[256];
+        for (int i = 1; i < lut.length; i++) {
+            lut[i] = (byte) (255.0 * Math.pow(i / 255.0, gamma) + 0.5d);
+        }
+
+        final ColorSpace ihs = IHSColorSpace.getInstance();
+        final int size = icm.getMapSize();
+        final int[] rgbs = new int[size];
+        icm.getRGBs(rgbs);
+        for (int i = 0; i < size; i++) {
+            final int argb = rgbs[i];
+            final int alpha = argb >>> 24;
+            if (alpha == 0) {
+                continue;
+            }
+            final float[] components = ihs.fromRGB(new float[] { ((argb >> 16) & 0xFF) / 255f,
+                    ((argb >> 8) & 0xFF) / 255f, (argb & 0xFF) / 255f });
+            final int intensity = Math.min(255, Math.max(0, Math.round(components[0] * 255)));
+            components[0] = (lut[intensity] & 0xFF) / 255f;
+            final float[] rgb = ihs.toRGB(components);
+            rgbs[i] = (alpha << 24) | (toByte(rgb[0]) << 16) | (toByte(rgb[1]) << 8)
+                    | toByte(rgb[2]);
+        }
+
+        return new IndexColorModel(icm.getPixelSize(), size, rgbs, 0, icm.hasAlpha(),
+                icm.getTransparentPixel(), icm.getTransferType());
+    }
+
+    private static int toByte(float value) {
+        return Math.min(255, Math.max(0, Math.round(value * 255)));
+    }
+
+}
@@ -28,10 +28,13 @@ import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.ImagingOpException;
 import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -169,6 +172,8 @@ public final class GridCoverageRenderer {
 
     private boolean advancedProjectionHandlingEnabled = true;
 
+    private ReprojectedCoverageCache coverageCache;
+
     /**
      * Enables/disable map wrapping (active only when rendering off a {@link GridCoverage2DReader}
      * and when advanced projection handling has been enabled too)
@@ -203,6 +208,23 @@ public final class GridCoverageRenderer {
         return this.advancedProjectionHandlingEnabled;
     }
 
+    /**
+     * Sets the cache of reprojected tiles used when rendering off a {@link GridCoverage2DReader}
+     * in a CRS different from the native one. The cache is used only for requests aligned with
+     * its tile grid, and only if enabled. Set to <code>null</code> (the default) to disable
+     * caching.
+     */
+    public void setCoverageCache(ReprojectedCoverageCache coverageCache) {
+        this.coverageCache = coverageCache;
+    }
+
+    /**
+     * Returns the cache of reprojected tiles, if any
+     */
+    public ReprojectedCoverageCache getCoverageCache() {
+        return coverageCache;
+    }
+
 
     /**
      * Creates a new {@link GridCoverageRenderer} object.
@@ -772,6 +794,171 @@ public final class GridCoverageRenderer {
             GeneralParameterValue[] readParams, final RasterSymbolizer symbolizer,
             final Interpolation interpolation, final Color background) throws FactoryException,
             IOException, TransformException {
+        if (isCacheable(reader, background)) {
+            return renderCachedImage(reader, readParams, symbolizer, interpolation);
+        } else {
+            return renderUncachedImage(reader, readParams, symbolizer, interpolation, background);
+        }
+    }
+
+    /**
+     * Checks if the request can be satisfied using the reprojected tile cache: the cache must be
+     * enabled, the request must involve a reprojection, have no rotation and no background, and
+     * its pixels must be aligned with the grid of the cached tiles
+     */
+    private boolean isCacheable(GridCoverage2DReader reader, Color background)
+            throws IOException {
+        if (coverageCache == null || !coverageCache.isEnabled() || background != null) {
+            return false;
+        }
+        if (destinationSize.x != 0 || destinationSize.y != 0
+                || GridCoverageReaderHelper.isReprojectingReader(reader)) {
+            return false;
+        }
+        if (finalGridToWorld.getShearX() != 0 || finalGridToWorld.getShearY() != 0
+                || finalGridToWorld.getScaleX() <= 0 || finalGridToWorld.getScaleY() >= 0) {
+            return false;
+        }
+        if (CRS.equalsIgnoreMetadata(reader.getCoordinateReferenceSystem(), destinationCRS)) {
+            return false;
+        }
+        // the request origin has to fall on the tile grid pixels
+        double px = finalGridToWorld.getTranslateX() / finalGridToWorld.getScaleX();
+        double py = finalGridToWorld.getTranslateY() / finalGridToWorld.getScaleY();
+        return Math.abs(px - Math.rint(px)) < EPS && Math.abs(py - Math.rint(py)) < EPS;
+    }
+
+    /**
+     * Assembles the requested image out of cached reprojected tiles, reading and reprojecting the
+     * missing ones, and then applies the symbolizer on the result
+     */
+    private RenderedImage renderCachedImage(final GridCoverage2DReader reader,
+            GeneralParameterValue[] readParams, final RasterSymbolizer symbolizer,
+            final Interpolation interpolation) throws FactoryException, IOException,
+            TransformException {
+        final int tileSize = coverageCache.getTileSize();
+        final double resX = finalGridToWorld.getScaleX();
+        final double resY = -finalGridToWorld.getScaleY();
+        final long px0 = Math.round(finalGridToWorld.getTranslateX() / resX);
+        final long py0 = Math.round(-finalGridToWorld.getTranslateY() / resY);
+        final int width = destinationSize.width;
+        final int height = destinationSize.height;
+        final long minCol = Math.floorDiv(px0, tileSize);
+        final long maxCol = Math.floorDiv(px0 + width - 1, tileSize);
+        final long minRow = Math.floorDiv(py0, tileSize);
+        final long maxRow = Math.floorDiv(py0 + height - 1, tileSize);
+        final List<Object> parameters = new ArrayList<>();
+        if (readParams != null) {
+            parameters.addAll(Arrays.asList(readParams));
+        }
+        parameters.add(interpolation != null ? interpolation.getClass() : null);
+
+        // collect the tiles, reading and reprojecting the missing ones
+        List<ReprojectedCoverageCache.CachedTile> tiles = new ArrayList<>();
+        List<Rectangle> areas = new ArrayList<>();
+        boolean complete = true;
+        ColorModel cm = null;
+        for (long row = minRow; row <= maxRow; row++) {
+            for (long col = minCol; col <= maxCol; col++) {
+                ReprojectedCoverageCache.TileKey key = new ReprojectedCoverageCache.TileKey(
+                        reader, destinationCRS, resX, resY, col, row, parameters);
+                ReprojectedCoverageCache.CachedTile tile = coverageCache.get(key);
+                if (tile == null) {
+                    tile = renderTile(reader, readParams, interpolation, col, row, resX, resY,
+                            tileSize);
+                    coverageCache.put(key, tile);
+                }
+                if (tile.raster == null) {
+                    complete = false;
+                    continue;
+                }
+                if (cm == null) {
+                    cm = tile.colorModel;
+                } else if (!cm.equals(tile.colorModel)) {
+                    // tiles cannot be assembled in a single image, use the normal path
+                    return renderUncachedImage(reader, readParams, symbolizer, interpolation,
+                            null);
+                }
+                if (tile.raster.getWidth() < tileSize || tile.raster.getHeight() < tileSize) {
+                    complete = false;
+                }
+                tiles.add(tile);
+                areas.add(new Rectangle((int) (col * tileSize - px0),
+                        (int) (row * tileSize - py0), tileSize, tileSize));
+            }
+        }
+        if (tiles.isEmpty()) {
+            return null;
+        }
+        // the areas not covered by data can be left transparent only if there is an alpha channel
+        if (!complete && (!cm.hasAlpha() || cm instanceof IndexColorModel)) {
+            return renderUncachedImage(reader, readParams, symbolizer, interpolation, null);
+        }
+
+        // assemble the tiles
+        WritableRaster raster = cm.createCompatibleWritableRaster(width, height);
+        for (int i = 0; i < tiles.size(); i++) {
+            Rectangle area = areas.get(i);
+            Raster source = tiles.get(i).raster;
+            raster.setRect(area.x, area.y, source);
+        }
+        BufferedImage image = new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+        if (symbolizer == null) {
+            return image;
+        }
+        GridCoverage2D assembled = gridCoverageFactory.create("reprojected", image,
+                destinationEnvelope);
+        GridCoverage2D symbolized = symbolize(assembled, symbolizer, null);
+        return symbolized != null ? symbolized.getRenderedImage() : null;
+    }
+
+    /**
+     * Reads and reprojects a single tile of the cache grid, without symbolization. The returned
+     * raster is located in the tile own pixel space
+     */
+    private ReprojectedCoverageCache.CachedTile renderTile(GridCoverage2DReader reader,
+            GeneralParameterValue[] readParams, Interpolation interpolation, long col, long row,
+            double resX, double resY, int tileSize) throws FactoryException, IOException,
+            TransformException {
+        double minX = col * tileSize * resX;
+        double maxY = -row * tileSize * resY;
+        ReferencedEnvelope tileEnvelope = new ReferencedEnvelope(minX, minX + tileSize * resX,
+                maxY - tileSize * resY, maxY, destinationCRS);
+        GridCoverageRenderer tileRenderer;
+        try {
+            tileRenderer = new GridCoverageRenderer(destinationCRS, tileEnvelope, new Rectangle(0,
+                    0, tileSize, tileSize), null, hints);
+        } catch (NoninvertibleTransformException e) {
+            throw new TransformException("Failed to setup the tile renderer", e);
+        }
+        tileRenderer.setWrapEnabled(wrapEnabled);
+        tileRenderer.setAdvancedProjectionHandlingEnabled(advancedProjectionHandlingEnabled);
+        tileRenderer.setupInterpolationHints(interpolation);
+        RenderedImage image = tileRenderer.renderUncachedImage(reader, readParams, null,
+                interpolation, null);
+        if (image == null) {
+            return ReprojectedCoverageCache.CachedTile.EMPTY;
+        }
+        try {
+            // the image might be slightly smaller than the tile if the data does not cover it
+            Rectangle bounds = new Rectangle(image.getMinX(), image.getMinY(), image.getWidth(),
+                    image.getHeight()).intersection(new Rectangle(0, 0, tileSize, tileSize));
+            if (bounds.isEmpty()) {
+                return ReprojectedCoverageCache.CachedTile.EMPTY;
+            }
+            Raster data = image.getData(bounds);
+            return new ReprojectedCoverageCache.CachedTile(data, image.getColorModel());
+        } finally {
+            if (image instanceof PlanarImage) {
+                ImageUtilities.disposePlanarImageChain((PlanarImage) image);
+            }
+        }
+    }
+
+    private RenderedImage renderUncachedImage(final GridCoverage2DReader reader,
+            GeneralParameterValue[] readParams, final RasterSymbolizer symbolizer,
+            final Interpolation interpolation, final Color background) throws FactoryException,
+            IOException, TransformException {
         // see if we have a projection handler
         CoordinateReferenceSystem sourceCRS = reader.getCoordinateReferenceSystem();
         CoordinateReferenceSystem targetCRS = destinationEnvelope.getCoordinateReferenceSystem();
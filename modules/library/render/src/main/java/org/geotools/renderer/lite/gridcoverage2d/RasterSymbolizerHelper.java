@@ -58,6 +58,22 @@ import org.opengis.filter.expression.Expression;
 public class RasterSymbolizerHelper extends
 		SubchainStyleVisitorCoverageProcessingAdapter implements StyleVisitor {
 
+	/**
+	 * When true symbolizers made of a color map, an optional gray channel selection and an
+	 * optional gamma correction are executed by a single {@link FusedColorMapNode} instead of
+	 * a chain of nodes, each one with its own tiles. The output is paletted, and the gamma
+	 * correction is applied to the palette, so it can slightly differ from the chained one:
+	 * off by default, enable it with the
+	 * "org.geotools.renderer.lite.gridcoverage2d.fusedExecution" system property
+	 */
+	public static final boolean FUSED_EXECUTION = Boolean
+			.getBoolean("org.geotools.renderer.lite.gridcoverage2d.fusedExecution");
+
+	/**
+	 * Whether this helper uses the fused execution, defaults to {@link #FUSED_EXECUTION}
+	 */
+	boolean fusedExecution = FUSED_EXECUTION;
+
 	private float opacity=1.0F;
 
         /**
@@ -214,6 +230,14 @@ public class RasterSymbolizerHelper extends
 		// the source node for the internal chains
 		// final RootNode sourceNode = new RootNode(sourceCoverage, adopt,
 		// hints);
+		if (fusedExecution && FusedColorMapNode.canFuse(rs)) {
+			final FusedColorMapNode fusedNode = new FusedColorMapNode(this.getHints());
+			fusedNode.addSource(this.getSource(0));
+			setSink(fusedNode);
+			fusedNode.visit(rs);
+			visitOpacity(rs);
+			return;
+		}
 		final ChannelSelectionNode csNode = new ChannelSelectionNode();
 		final ColorMapNode cmNode = new ColorMapNode(this.getHints());
 		final ContrastEnhancementNode ceNode = new ContrastEnhancementNode(this.getHints());
@@ -249,7 +273,10 @@ public class RasterSymbolizerHelper extends
 		cmNode.addSink(ceNode);
 		ceNode.visit(ce);
 
-		
+		visitOpacity(rs);
+	}
+
+	private void visitOpacity(RasterSymbolizer rs) {
 		 //
 		 /////////////////////////////////////////////////////////////////////
 		 //
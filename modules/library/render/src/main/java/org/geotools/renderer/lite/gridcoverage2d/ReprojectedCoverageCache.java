@@ -0,0 +1,350 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite.gridcoverage2d;
+
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geotools.coverage.grid.io.GridCoverage2DReader;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * A memory bounded, thread safe cache of reprojected raster tiles, used by
+ * {@link GridCoverageRenderer} to avoid reading, cropping and warping over and over the same
+ * source data when rendering adjacent or repeated map tiles in a projection different from the
+ * native one.
+ * <p>
+ * At a given resolution the target CRS plane is split in a grid of square tiles anchored at the
+ * CRS origin. Each tile is read and reprojected once, before symbolization, and it's keyed by
+ * reader, target CRS, resolution, position in the tile grid, read parameters and interpolation.
+ * Only requests whose pixels are aligned with the tile grid can use the cache, which is the case
+ * for tiled clients using the common gridsets. The least recently used tiles are evicted when the
+ * memory used by the cached rasters goes beyond the configured maximum.
+ * <p>
+ * The cache does not track changes in the source data, it should be
+ * {@link #invalidate(GridCoverage2DReader) invalidated} when the contents of a reader change. For
+ * this reason the default instance is disabled, its memory limit can be set, in megabytes, with
+ * the <code>org.geotools.coverage.reprojectedCacheSize</code> system variable.
+ */
+public class ReprojectedCoverageCache {
+
+    /**
+     * Default size, in pixels, of the cached tiles
+     */
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    static final ReprojectedCoverageCache DEFAULT_INSTANCE = new ReprojectedCoverageCache(
+            Long.getLong("org.geotools.coverage.reprojectedCacheSize", 0) * 1024 * 1024,
+            DEFAULT_TILE_SIZE);
+
+    /**
+     * Returns the default, system wide reprojected tile cache
+     */
+    public static ReprojectedCoverageCache getDefaultInstance() {
+        return DEFAULT_INSTANCE;
+    }
+
+    final long maxMemory;
+
+    final int tileSize;
+
+    /**
+     * Access ordered, the eldest entries are the least recently used ones
+     */
+    final LinkedHashMap<TileKey, CachedTile> tiles = new LinkedHashMap<TileKey, CachedTile>(16,
+            0.75f, true);
+
+    /**
+     * Memory used by the cached tiles, guarded by the tiles map lock
+     */
+    long memory;
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Builds a new cache
+     * 
+     * @param maxMemory The maximum amount of memory used by the cached rasters, in bytes. Zero or
+     *        negative values disable the cache
+     * @param tileSize The size in pixels of the cached tiles
+     */
+    public ReprojectedCoverageCache(long maxMemory, int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("The tile size should be positive, but was "
+                    + tileSize);
+        }
+        this.maxMemory = maxMemory;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Returns true if the cache is enabled, that is, if it has a positive memory limit
+     */
+    public boolean isEnabled() {
+        return maxMemory > 0;
+    }
+
+    /**
+     * The size, in pixels, of the cached tiles
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Returns the cached tile, or null if not found
+     */
+    CachedTile get(TileKey key) {
+        CachedTile tile;
+        synchronized (tiles) {
+            tile = tiles.get(key);
+        }
+        if (tile != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return tile;
+    }
+
+    /**
+     * Caches the tile, evicting the least recently used ones if the memory limit is exceeded.
+     * Tiles larger than the limit are not cached.
+     */
+    void put(TileKey key, CachedTile tile) {
+        if (tile.memory > maxMemory) {
+            return;
+        }
+        synchronized (tiles) {
+            CachedTile previous = tiles.put(key, tile);
+            if (previous != null) {
+                memory -= previous.memory;
+            }
+            memory += tile.memory;
+            Iterator<CachedTile> it = tiles.values().iterator();
+            while (memory > maxMemory && it.hasNext()) {
+                CachedTile eldest = it.next();
+                it.remove();
+                memory -= eldest.memory;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all the tiles read from the specified reader
+     */
+    public void invalidate(GridCoverage2DReader reader) {
+        synchronized (tiles) {
+            for (Iterator<Map.Entry<TileKey, CachedTile>> it = tiles.entrySet().iterator(); it
+                    .hasNext();) {
+                Map.Entry<TileKey, CachedTile> entry = it.next();
+                Object keyReader = entry.getKey().reader.get();
+                if (keyReader == null || keyReader == reader) {
+                    it.remove();
+                    memory -= entry.getValue().memory;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached tiles
+     */
+    public void clear() {
+        synchronized (tiles) {
+            tiles.clear();
+            memory = 0;
+        }
+    }
+
+    /**
+     * Number of tiles currently in the cache
+     */
+    public int getSize() {
+        synchronized (tiles) {
+            return tiles.size();
+        }
+    }
+
+    /**
+     * The memory, in bytes, used by the cached tiles
+     */
+    public long getMemoryUsage() {
+        synchronized (tiles) {
+            return memory;
+        }
+    }
+
+    /**
+     * The maximum amount of memory, in bytes, the cached tiles can use
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Number of tile lookups that found the tile in the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of tile lookups that had to read and reproject the tile
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of tiles evicted to respect the memory limit
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * The ratio between hits and total lookups, or 0 if no lookup was performed yet
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : ((double) h) / total;
+    }
+
+    /**
+     * Rounds the resolution so that requests whose resolution differs only because of numerical
+     * noise share the same tiles
+     */
+    static double normalizeResolution(double resolution) {
+        return new BigDecimal(resolution).round(new MathContext(12)).doubleValue();
+    }
+
+    /**
+     * Key of a cached tile. The reader is compared by identity and weakly referenced, so that
+     * the cache does not keep disposed readers alive.
+     */
+    static final class TileKey {
+        final WeakReference<Object> reader;
+
+        final CoordinateReferenceSystem crs;
+
+        final double resX;
+
+        final double resY;
+
+        final long col;
+
+        final long row;
+
+        final Object parameters;
+
+        final int hashCode;
+
+        TileKey(Object reader, CoordinateReferenceSystem crs, double resX, double resY, long col,
+                long row, Object parameters) {
+            this.reader = new WeakReference<Object>(reader);
+            this.crs = crs;
+            this.resX = normalizeResolution(resX);
+            this.resY = normalizeResolution(resY);
+            this.col = col;
+            this.row = row;
+            this.parameters = parameters;
+
+            int result = System.identityHashCode(reader);
+            result = 31 * result + (crs == null ? 0 : crs.hashCode());
+            long temp = Double.doubleToLongBits(this.resX);
+            result = 31 * result + (int) (temp ^ (temp >>> 32));
+            temp = Double.doubleToLongBits(this.resY);
+            result = 31 * result + (int) (temp ^ (temp >>> 32));
+            result = 31 * result + (int) (col ^ (col >>> 32));
+            result = 31 * result + (int) (row ^ (row >>> 32));
+            result = 31 * result + (parameters == null ? 0 : parameters.hashCode());
+            this.hashCode = result;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) obj;
+            if (hashCode != other.hashCode || col != other.col || row != other.row
+                    || resX != other.resX || resY != other.resY) {
+                return false;
+            }
+            Object r = reader.get();
+            if (r == null || r != other.reader.get()) {
+                return false;
+            }
+            if (crs == null ? other.crs != null : !crs.equals(other.crs)) {
+                return false;
+            }
+            return parameters == null ? other.parameters == null : parameters
+                    .equals(other.parameters);
+        }
+    }
+
+    /**
+     * A reprojected tile, with the raster located in the tile pixel space. Tiles without any
+     * data have a null raster.
+     */
+    static final class CachedTile {
+
+        static final CachedTile EMPTY = new CachedTile(null, null);
+
+        final Raster raster;
+
+        final ColorModel colorModel;
+
+        final long memory;
+
+        CachedTile(Raster raster, ColorModel colorModel) {
+            this.raster = raster;
+            this.colorModel = colorModel;
+            if (raster == null) {
+                // just the key and entry overhead
+                this.memory = 64;
+            } else {
+                DataBuffer db = raster.getDataBuffer();
+                this.memory = 64 + (long) db.getSize() * db.getNumBanks()
+                        * DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+            }
+        }
+    }
+}
@@ -0,0 +1,607 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite.mvt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Encodes features into a Mapbox Vector Tile, version 2.1. The geometries are expected to be
+ * already transformed in the tile coordinate space, which has the origin in the upper left
+ * corner, the y axis pointing down, and is <code>extent</code> units wide and tall. Coordinates
+ * are rounded to the closest integer, and consecutive duplicate points are removed. Polygon
+ * rings are oriented as mandated by the specification, rings and lines collapsing to less than
+ * the minimum number of points are skipped.
+ * <p>
+ * The protocol buffers wire format is written directly, the encoder does not depend on the
+ * protobuf libraries. Feature attributes are encoded as tags, with keys and values shared among
+ * the features of the same layer. Numbers, booleans and strings are supported, any other value
+ * is encoded using its string representation.
+ * <p>
+ * Example usage:
+ * 
+ * <pre>
+ * VectorTileEncoder encoder = new VectorTileEncoder(4096);
+ * encoder.addFeature(&quot;roads&quot;, attributes, geometry);
+ * byte[] tile = encoder.encode();
+ * </pre>
+ */
+public class VectorTileEncoder {
+
+    /**
+     * The default extent of a tile
+     */
+    public static final int DEFAULT_EXTENT = 4096;
+
+    static final int VERSION = 2;
+
+    // geometry types
+    static final int POINT = 1;
+
+    static final int LINESTRING = 2;
+
+    static final int POLYGON = 3;
+
+    // geometry commands
+    static final int MOVE_TO = 1;
+
+    static final int LINE_TO = 2;
+
+    static final int CLOSE_PATH = 7;
+
+    // protobuf wire types
+    static final int VARINT = 0;
+
+    static final int FIXED64 = 1;
+
+    static final int LENGTH_DELIMITED = 2;
+
+    static final int FIXED32 = 5;
+
+    final int extent;
+
+    final Map<String, Layer> layers = new LinkedHashMap<String, Layer>();
+
+    public VectorTileEncoder() {
+        this(DEFAULT_EXTENT);
+    }
+
+    /**
+     * Builds a new encoder
+     * 
+     * @param extent The size of the tile in its own coordinate space
+     */
+    public VectorTileEncoder(int extent) {
+        if (extent <= 0) {
+            throw new IllegalArgumentException("The tile extent must be positive, but was "
+                    + extent);
+        }
+        this.extent = extent;
+    }
+
+    public int getExtent() {
+        return extent;
+    }
+
+    /**
+     * Adds a feature to the specified layer, creating the layer if missing. Features with empty
+     * geometries, or geometries that collapse once rounded to the tile grid, are skipped.
+     * 
+     * @param layerName The layer name
+     * @param attributes The feature attributes, null values are skipped
+     * @param geometry The geometry, in tile coordinates
+     * @return true if the feature was added, false if it was skipped
+     */
+    public boolean addFeature(String layerName, Map<String, ?> attributes, Geometry geometry) {
+        return addFeature(layerName, attributes, geometry, -1);
+    }
+
+    /**
+     * Adds a feature to the specified layer, see {@link #addFeature(String, Map, Geometry)}
+     * 
+     * @param id The feature identifier, or a negative value if the feature has none
+     */
+    public boolean addFeature(String layerName, Map<String, ?> attributes, Geometry geometry,
+            long id) {
+        if (geometry == null || geometry.isEmpty()) {
+            return false;
+        }
+        GeometryEncoder ge = new GeometryEncoder();
+        int type = ge.encode(geometry);
+        if (type == 0) {
+            return false;
+        }
+
+        Layer layer = layers.get(layerName);
+        if (layer == null) {
+            layer = new Layer(layerName);
+            layers.put(layerName, layer);
+        }
+        Feature feature = new Feature();
+        feature.id = id;
+        feature.type = type;
+        feature.geometry = ge.commands.toArray();
+        if (attributes != null) {
+            IntList tags = new IntList();
+            for (Map.Entry<String, ?> entry : attributes.entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) {
+                    continue;
+                }
+                tags.add(layer.key(entry.getKey()));
+                tags.add(layer.value(entry.getValue()));
+            }
+            feature.tags = tags.toArray();
+        }
+        layer.features.add(feature);
+        return true;
+    }
+
+    /**
+     * Returns the number of features added to the layer, or 0 if the layer is not there
+     */
+    public int getFeatureCount(String layerName) {
+        Layer layer = layers.get(layerName);
+        return layer == null ? 0 : layer.features.size();
+    }
+
+    /**
+     * Returns true if no feature has been added to the tile
+     */
+    public boolean isEmpty() {
+        return layers.isEmpty();
+    }
+
+    /**
+     * Encodes the tile
+     */
+    public byte[] encode() {
+        ProtobufWriter tile = new ProtobufWriter();
+        for (Layer layer : layers.values()) {
+            tile.writeMessage(3, layer.encode(extent));
+        }
+        return tile.toByteArray();
+    }
+
+    /**
+     * Encodes the tile into the output stream, without closing it
+     */
+    public void encode(OutputStream out) throws IOException {
+        out.write(encode());
+    }
+
+    /**
+     * A layer, with its features and the keys and values shared by them
+     */
+    static final class Layer {
+        final String name;
+
+        final List<Feature> features = new ArrayList<Feature>();
+
+        final Map<String, Integer> keys = new LinkedHashMap<String, Integer>();
+
+        final Map<Object, Integer> values = new LinkedHashMap<Object, Integer>();
+
+        Layer(String name) {
+            this.name = name;
+        }
+
+        int key(String key) {
+            Integer index = keys.get(key);
+            if (index == null) {
+                index = keys.size();
+                keys.put(key, index);
+            }
+            return index;
+        }
+
+        int value(Object value) {
+            value = normalizeValue(value);
+            Integer index = values.get(value);
+            if (index == null) {
+                index = values.size();
+                values.put(value, index);
+            }
+            return index;
+        }
+
+        /**
+         * Reduces the value to one of the types the encoder can write. Integral numbers are
+         * stored as longs, so that the same value coming from attributes of different types is
+         * shared
+         */
+        static Object normalizeValue(Object value) {
+            if (value instanceof Byte || value instanceof Short || value instanceof Integer) {
+                return ((Number) value).longValue();
+            } else if (value instanceof Long || value instanceof Float
+                    || value instanceof Double || value instanceof Boolean
+                    || value instanceof String) {
+                return value;
+            } else {
+                return value.toString();
+            }
+        }
+
+        ProtobufWriter encode(int extent) {
+            ProtobufWriter out = new ProtobufWriter();
+            out.writeUInt32(15, VERSION);
+            out.writeString(1, name);
+            for (Feature feature : features) {
+                out.writeMessage(2, feature.encode());
+            }
+            for (String key : keys.keySet()) {
+                out.writeString(3, key);
+            }
+            for (Object value : values.keySet()) {
+                out.writeMessage(4, encodeValue(value));
+            }
+            out.writeUInt32(5, extent);
+            return out;
+        }
+
+        static ProtobufWriter encodeValue(Object value) {
+            ProtobufWriter out = new ProtobufWriter();
+            if (value instanceof String) {
+                out.writeString(1, (String) value);
+            } else if (value instanceof Float) {
+                out.writeTag(2, FIXED32);
+                out.writeFixed32(Float.floatToIntBits((Float) value));
+            } else if (value instanceof Double) {
+                out.writeTag(3, FIXED64);
+                out.writeFixed64(Double.doubleToLongBits((Double) value));
+            } else if (value instanceof Long) {
+                long l = (Long) value;
+                if (l < 0) {
+                    out.writeTag(6, VARINT);
+                    out.writeVarint(zigZag(l));
+                } else {
+                    out.writeTag(5, VARINT);
+                    out.writeVarint(l);
+                }
+            } else if (value instanceof Boolean) {
+                out.writeTag(7, VARINT);
+                out.writeVarint(((Boolean) value) ? 1 : 0);
+            }
+            return out;
+        }
+    }
+
+    /**
+     * A feature ready to be encoded
+     */
+    static final class Feature {
+        long id;
+
+        int type;
+
+        int[] tags;
+
+        int[] geometry;
+
+        ProtobufWriter encode() {
+            ProtobufWriter out = new ProtobufWriter();
+            if (id >= 0) {
+                out.writeTag(1, VARINT);
+                out.writeVarint(id);
+            }
+            if (tags != null && tags.length > 0) {
+                out.writePacked(2, tags);
+            }
+            out.writeTag(3, VARINT);
+            out.writeVarint(type);
+            out.writePacked(4, geometry);
+            return out;
+        }
+    }
+
+    /**
+     * Turns a geometry into a sequence of MVT commands, tracking the cursor position
+     */
+    final class GeometryEncoder {
+        final IntList commands = new IntList();
+
+        int x;
+
+        int y;
+
+        /**
+         * Encodes the geometry, returns its MVT type or 0 if nothing was encoded
+         */
+        int encode(Geometry geometry) {
+            if (geometry instanceof Point || geometry instanceof MultiPoint) {
+                encodePoints(geometry);
+                return commands.size > 0 ? POINT : 0;
+            } else if (geometry instanceof LineString || geometry instanceof MultiLineString) {
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    encodeLine(((LineString) geometry.getGeometryN(i)).getCoordinateSequence(),
+                            false, false);
+                }
+                return commands.size > 0 ? LINESTRING : 0;
+            } else if (geometry instanceof Polygon || geometry instanceof MultiPolygon) {
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    encodePolygon((Polygon) geometry.getGeometryN(i));
+                }
+                return commands.size > 0 ? POLYGON : 0;
+            } else if (geometry instanceof GeometryCollection) {
+                // a tile feature has a single type, use the one of the first non empty element
+                GeometryCollection gc = (GeometryCollection) geometry;
+                for (int i = 0; i < gc.getNumGeometries(); i++) {
+                    Geometry g = gc.getGeometryN(i);
+                    if (!g.isEmpty()) {
+                        return encode(homogeneous(gc, g));
+                    }
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Collects the elements of the collection having the same type as the reference one
+         */
+        Geometry homogeneous(GeometryCollection gc, Geometry reference) {
+            List<Geometry> result = new ArrayList<Geometry>();
+            for (int i = 0; i < gc.getNumGeometries(); i++) {
+                Geometry g = gc.getGeometryN(i);
+                if (sameType(g, reference) && !g.isEmpty()) {
+                    result.add(g);
+                }
+            }
+            return gc.getFactory().buildGeometry(result);
+        }
+
+        boolean sameType(Geometry g1, Geometry g2) {
+            if (g1 instanceof Polygon || g1 instanceof MultiPolygon) {
+                return g2 instanceof Polygon || g2 instanceof MultiPolygon;
+            } else if (g1 instanceof LineString || g1 instanceof MultiLineString) {
+                return g2 instanceof LineString || g2 instanceof MultiLineString;
+            } else if (g1 instanceof Point || g1 instanceof MultiPoint) {
+                return g2 instanceof Point || g2 instanceof MultiPoint;
+            }
+            return false;
+        }
+
+        void encodePoints(Geometry geometry) {
+            int n = geometry.getNumGeometries();
+            IntList points = new IntList();
+            for (int i = 0; i < n; i++) {
+                Point p = (Point) geometry.getGeometryN(i);
+                if (p.isEmpty()) {
+                    continue;
+                }
+                int px = (int) Math.round(p.getX());
+                int py = (int) Math.round(p.getY());
+                points.add(zigZag(px - x));
+                points.add(zigZag(py - y));
+                x = px;
+                y = py;
+            }
+            if (points.size > 0) {
+                commands.add(command(MOVE_TO, points.size / 2));
+                commands.addAll(points);
+            }
+        }
+
+        void encodePolygon(Polygon polygon) {
+            // the shell must have a positive area in tile coordinates, holes negative.
+            // If the shell collapses the holes are skipped too
+            if (!encodeLine(polygon.getExteriorRing().getCoordinateSequence(), true, true)) {
+                return;
+            }
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                encodeLine(polygon.getInteriorRingN(i).getCoordinateSequence(), true, false);
+            }
+        }
+
+        /**
+         * Encodes a line or a ring, returns false if it collapsed and was skipped
+         */
+        boolean encodeLine(CoordinateSequence cs, boolean ring, boolean shell) {
+            int[] points = round(cs, ring);
+            int count = points.length / 2;
+            if (ring) {
+                if (count < 3) {
+                    return false;
+                }
+                long area = signedArea(points);
+                if (area == 0) {
+                    return false;
+                }
+                if ((area > 0) != shell) {
+                    reverse(points);
+                }
+            } else if (count < 2) {
+                return false;
+            }
+
+            commands.add(command(MOVE_TO, 1));
+            commands.add(zigZag(points[0] - x));
+            commands.add(zigZag(points[1] - y));
+            commands.add(command(LINE_TO, count - 1));
+            for (int i = 2; i < points.length; i += 2) {
+                commands.add(zigZag(points[i] - points[i - 2]));
+                commands.add(zigZag(points[i + 1] - points[i - 1]));
+            }
+            x = points[points.length - 2];
+            y = points[points.length - 1];
+            if (ring) {
+                commands.add(command(CLOSE_PATH, 1));
+            }
+            return true;
+        }
+
+        /**
+         * Rounds the coordinates to the tile grid, removing consecutive duplicates and, for
+         * rings, the closing point
+         */
+        int[] round(CoordinateSequence cs, boolean ring) {
+            int size = cs.size();
+            IntList result = new IntList();
+            int px = 0, py = 0;
+            for (int i = 0; i < size; i++) {
+                int cx = (int) Math.round(cs.getOrdinate(i, 0));
+                int cy = (int) Math.round(cs.getOrdinate(i, 1));
+                if (result.size == 0 || cx != px || cy != py) {
+                    result.add(cx);
+                    result.add(cy);
+                    px = cx;
+                    py = cy;
+                }
+            }
+            if (ring && result.size >= 4 && result.data[0] == px && result.data[1] == py) {
+                result.size -= 2;
+            }
+            return result.toArray();
+        }
+    }
+
+    /**
+     * Twice the signed area of the ring, using the surveyor's formula
+     */
+    static long signedArea(int[] points) {
+        long area = 0;
+        int n = points.length;
+        for (int i = 0; i < n; i += 2) {
+            int j = (i + 2) % n;
+            area += (long) points[i] * points[j + 1] - (long) points[j] * points[i + 1];
+        }
+        return area;
+    }
+
+    static void reverse(int[] points) {
+        for (int i = 0, j = points.length - 2; i < j; i += 2, j -= 2) {
+            int tx = points[i];
+            int ty = points[i + 1];
+            points[i] = points[j];
+            points[i + 1] = points[j + 1];
+            points[j] = tx;
+            points[j + 1] = ty;
+        }
+    }
+
+    static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    static int zigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    static long zigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    /**
+     * A growable array of ints
+     */
+    static final class IntList {
+        int[] data = new int[16];
+
+        int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(data, 0, grown, 0, size);
+                data = grown;
+            }
+            data[size++] = value;
+        }
+
+        void addAll(IntList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.data[i]);
+            }
+        }
+
+        int[] toArray() {
+            int[] result = new int[size];
+            System.arraycopy(data, 0, result, 0, size);
+            return result;
+        }
+    }
+
+    /**
+     * Minimal writer for the protocol buffers wire format
+     */
+    static final class ProtobufWriter extends ByteArrayOutputStream {
+
+        void writeTag(int field, int wireType) {
+            writeVarint((field << 3) | wireType);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeFixed32(int value) {
+            for (int i = 0; i < 4; i++) {
+                write((value >>> (i * 8)) & 0xFF);
+            }
+        }
+
+        void writeFixed64(long value) {
+            for (int i = 0; i < 8; i++) {
+                write((int) ((value >>> (i * 8)) & 0xFF));
+            }
+        }
+
+        void writeUInt32(int field, int value) {
+            writeTag(field, VARINT);
+            writeVarint(value & 0xFFFFFFFFL);
+        }
+
+        void writeString(int field, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeTag(field, LENGTH_DELIMITED);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void writeMessage(int field, ProtobufWriter message) {
+            writeTag(field, LENGTH_DELIMITED);
+            writeVarint(message.size());
+            write(message.buf, 0, message.size());
+        }
+
+        void writePacked(int field, int[] values) {
+            ProtobufWriter packed = new ProtobufWriter();
+            for (int value : values) {
+                packed.writeVarint(value & 0xFFFFFFFFL);
+            }
+            writeMessage(field, packed);
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite.mvt;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.geometry.jts.Decimator;
+import org.geotools.geometry.jts.GeometryClipper;
+import org.geotools.geometry.jts.LiteCoordinateSequenceFactory;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.operation.transform.ConcatenatedTransform;
+import org.geotools.referencing.operation.transform.ProjectiveTransform;
+import org.geotools.renderer.ScreenMap;
+import org.geotools.renderer.crs.ProjectionHandler;
+import org.geotools.renderer.crs.ProjectionHandlerFinder;
+import org.geotools.renderer.lite.RendererUtilities;
+import org.opengis.feature.Feature;
+import org.opengis.feature.GeometryAttribute;
+import org.opengis.feature.Property;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.identity.FeatureId;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.NoninvertibleTransformException;
+import org.opengis.referencing.operation.TransformException;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Encodes the feature layers of a {@link MapContent} as a Mapbox Vector Tile, using the same
+ * pipeline the {@link org.geotools.renderer.lite.StreamingRenderer} uses to prepare the
+ * geometries before painting them: the data is queried with the tile bounds (split as needed by
+ * the {@link ProjectionHandler}), the lines and polygons falling in an already occupied tile cell
+ * are skipped using a {@link ScreenMap}, the geometries are generalized and transformed into the
+ * tile space by the {@link Decimator}, wrapped if the tile crosses the dateline, and then clipped
+ * to the tile bounds plus buffer.
+ * <p>
+ * Each feature layer becomes a tile layer named after its feature type, non geometric attributes
+ * become tags. Styles are not applied, vector tiles are meant to be styled by the client, but
+ * the layer query, if any, is honored.
+ * <p>
+ * Example usage:
+ * 
+ * <pre>
+ * VectorTileRenderer renderer = new VectorTileRenderer(mapContent);
+ * renderer.setBuffer(64);
+ * byte[] tile = renderer.render(tileEnvelope);
+ * </pre>
+ */
+public class VectorTileRenderer {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging
+            .getLogger(VectorTileRenderer.class);
+
+    static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+
+    MapContent mapContent;
+
+    int extent = VectorTileEncoder.DEFAULT_EXTENT;
+
+    int buffer = 64;
+
+    double generalizationDistance = 1;
+
+    boolean screenMapEnabled = true;
+
+    /**
+     * Builds a new vector tile renderer
+     * 
+     * @param mapContent The map content, only the visible {@link FeatureLayer} are encoded
+     */
+    public VectorTileRenderer(MapContent mapContent) {
+        this.mapContent = mapContent;
+    }
+
+    /**
+     * The size of the tile in its own coordinate space. Defaults to
+     * {@link VectorTileEncoder#DEFAULT_EXTENT}
+     */
+    public int getExtent() {
+        return extent;
+    }
+
+    public void setExtent(int extent) {
+        if (extent <= 0) {
+            throw new IllegalArgumentException("The tile extent must be positive");
+        }
+        this.extent = extent;
+    }
+
+    /**
+     * The buffer around the tile, in tile units, the geometries are clipped to. Defaults to 64
+     */
+    public int getBuffer() {
+        return buffer;
+    }
+
+    public void setBuffer(int buffer) {
+        if (buffer < 0) {
+            throw new IllegalArgumentException("The buffer cannot be negative");
+        }
+        this.buffer = buffer;
+    }
+
+    /**
+     * The generalization distance, in tile units. Zero disables generalization. Defaults to 1
+     */
+    public double getGeneralizationDistance() {
+        return generalizationDistance;
+    }
+
+    public void setGeneralizationDistance(double generalizationDistance) {
+        this.generalizationDistance = generalizationDistance;
+    }
+
+    /**
+     * When enabled, lines and polygons smaller than the generalization distance falling in a
+     * tile cell already occupied by another small feature are skipped. Points are always
+     * encoded, as each one usually stands for a distinct place. Defaults to true
+     */
+    public boolean isScreenMapEnabled() {
+        return screenMapEnabled;
+    }
+
+    public void setScreenMapEnabled(boolean screenMapEnabled) {
+        this.screenMapEnabled = screenMapEnabled;
+    }
+
+    /**
+     * Encodes the tile covering the specified envelope
+     * 
+     * @param tileEnvelope The tile envelope, its CRS is the tile one
+     * @return The encoded tile
+     */
+    public byte[] render(ReferencedEnvelope tileEnvelope) throws IOException {
+        VectorTileEncoder encoder = new VectorTileEncoder(extent);
+        render(tileEnvelope, encoder);
+        return encoder.encode();
+    }
+
+    /**
+     * Adds the features of the tile covering the specified envelope to the encoder
+     */
+    public void render(ReferencedEnvelope tileEnvelope, VectorTileEncoder encoder)
+            throws IOException {
+        if (tileEnvelope.getCoordinateReferenceSystem() == null) {
+            throw new IllegalArgumentException("The tile envelope must have a CRS");
+        }
+        if (encoder.getExtent() != extent) {
+            throw new IllegalArgumentException("The encoder extent " + encoder.getExtent()
+                    + " differs from the renderer one, " + extent);
+        }
+        Rectangle paintArea = new Rectangle(0, 0, extent, extent);
+        AffineTransform worldToTile = RendererUtilities.worldToScreenTransform(tileEnvelope,
+                paintArea);
+        double bufferWidth = tileEnvelope.getWidth() * buffer / extent;
+        double bufferHeight = tileEnvelope.getHeight() * buffer / extent;
+        ReferencedEnvelope bufferedEnvelope = new ReferencedEnvelope(tileEnvelope.getMinX()
+                - bufferWidth, tileEnvelope.getMaxX() + bufferWidth, tileEnvelope.getMinY()
+                - bufferHeight, tileEnvelope.getMaxY() + bufferHeight,
+                tileEnvelope.getCoordinateReferenceSystem());
+        GeometryClipper clipper = new GeometryClipper(new Envelope(-buffer, extent + buffer,
+                -buffer, extent + buffer));
+
+        for (Layer layer : mapContent.layers()) {
+            if (!layer.isVisible() || !(layer instanceof FeatureLayer)) {
+                continue;
+            }
+            try {
+                renderLayer((FeatureLayer) layer, bufferedEnvelope, worldToTile, paintArea,
+                        clipper, encoder);
+            } catch (FactoryException | TransformException e) {
+                throw new IOException("Failed to encode layer " + layer.getTitle(), e);
+            }
+        }
+    }
+
+    void renderLayer(FeatureLayer layer, ReferencedEnvelope bufferedEnvelope,
+            AffineTransform worldToTile, Rectangle paintArea, GeometryClipper clipper,
+            VectorTileEncoder encoder) throws IOException, FactoryException, TransformException {
+        FeatureSource<?, ?> source = layer.getFeatureSource();
+        FeatureType schema = source.getSchema();
+        GeometryDescriptor gd = schema.getGeometryDescriptor();
+        if (gd == null) {
+            return;
+        }
+        CoordinateReferenceSystem sourceCRS = gd.getCoordinateReferenceSystem();
+        CoordinateReferenceSystem tileCRS = bufferedEnvelope.getCoordinateReferenceSystem();
+        if (sourceCRS == null) {
+            sourceCRS = tileCRS;
+        }
+
+        // query envelopes, split and cut by the projection handler if needed
+        ProjectionHandler handler = ProjectionHandlerFinder.getHandler(bufferedEnvelope,
+                sourceCRS, true);
+        List<ReferencedEnvelope> envelopes;
+        if (handler != null) {
+            envelopes = handler.getQueryEnvelopes();
+        } else {
+            envelopes = Collections.singletonList(bufferedEnvelope.transform(sourceCRS, true));
+        }
+        // the tile crosses the dateline if the query had to be split, in that case the
+        // geometries have to be wrapped in the tile CRS before going to the tile space
+        boolean wrap = handler != null && envelopes.size() > 1;
+
+        // full transformation from the native CRS to the tile space
+        MathTransform crsTransform = CRS.findMathTransform(sourceCRS, tileCRS, true);
+        MathTransform tileTransform = ProjectiveTransform.create(worldToTile);
+        MathTransform mt;
+        if (crsTransform.isIdentity()) {
+            mt = tileTransform;
+        } else {
+            mt = ConcatenatedTransform.create(crsTransform, tileTransform);
+        }
+        MathTransform reverse = null;
+        if (wrap) {
+            try {
+                reverse = crsTransform.inverse();
+            } catch (NoninvertibleTransformException e) {
+                // the wrapping will work without unwrapping
+            }
+        }
+        Decimator decimator;
+        ScreenMap screenMap = null;
+        if (generalizationDistance > 0) {
+            decimator = new Decimator(mt.inverse(), paintArea, generalizationDistance);
+            if (screenMapEnabled && !isPoint(gd.getType().getBinding())) {
+                screenMap = new ScreenMap(-buffer, -buffer, extent + buffer * 2, extent
+                        + buffer * 2);
+                screenMap.setTransform(mt);
+                screenMap.setSpans(decimator.getSpanX(), decimator.getSpanY());
+            }
+        } else {
+            decimator = new Decimator(-1, -1);
+        }
+
+        Query query = buildQuery(layer, source, gd, envelopes);
+        if (screenMap != null && isLinealOrPolygonal(gd.getType().getBinding())
+                && source.getSupportedHints().contains(Hints.SCREENMAP)) {
+            // let the store skip the features, and avoid doing the work twice. Only when the
+            // geometry type is known not to contain points, the store would skip them too
+            query.getHints().put(Hints.SCREENMAP, screenMap);
+            screenMap = null;
+        }
+        FeatureCollection<?, ?> features = source.getFeatures(query);
+        String layerName = schema.getName().getLocalPart();
+        try (FeatureIterator<?> it = features.features()) {
+            while (it.hasNext()) {
+                Feature feature = it.next();
+                GeometryAttribute ga = feature.getDefaultGeometryProperty();
+                Geometry geometry = ga != null ? (Geometry) ga.getValue() : null;
+                if (geometry == null || geometry.isEmpty()) {
+                    continue;
+                }
+                if (screenMap != null && !isPoint(geometry.getClass())
+                        && screenMap.checkAndSet(geometry.getEnvelopeInternal())) {
+                    continue;
+                }
+                if (handler != null) {
+                    FeatureId id = feature.getIdentifier();
+                    geometry = handler.preProcess(geometry, id != null ? id.getID() : null);
+                    if (geometry == null) {
+                        continue;
+                    }
+                }
+                try {
+                    if (wrap) {
+                        geometry = decimator.decimateTransformGeneralizeCopy(geometry,
+                                crsTransform);
+                        geometry = handler.postProcess(reverse, geometry);
+                        if (geometry == null) {
+                            continue;
+                        }
+                        geometry = new Decimator(-1, -1).decimateTransformGeneralize(geometry,
+                                tileTransform);
+                        geometry.geometryChanged();
+                    } else {
+                        geometry = decimator.decimateTransformGeneralizeCopy(geometry, mt);
+                    }
+                } catch (TransformException e) {
+                    LOGGER.log(Level.FINE, "Skipping feature that cannot be transformed", e);
+                    continue;
+                }
+                geometry = clipper.clipSafe(geometry, true, 1);
+                if (geometry == null || geometry.isEmpty()) {
+                    continue;
+                }
+                encoder.addFeature(layerName, getAttributes(feature), geometry);
+            }
+        }
+    }
+
+    static boolean isPoint(Class<?> binding) {
+        return Point.class.isAssignableFrom(binding) || MultiPoint.class.isAssignableFrom(binding);
+    }
+
+    static boolean isLinealOrPolygonal(Class<?> binding) {
+        return LineString.class.isAssignableFrom(binding)
+                || MultiLineString.class.isAssignableFrom(binding)
+                || Polygon.class.isAssignableFrom(binding)
+                || MultiPolygon.class.isAssignableFrom(binding);
+    }
+
+    Query buildQuery(FeatureLayer layer, FeatureSource<?, ?> source, GeometryDescriptor gd,
+            List<ReferencedEnvelope> envelopes) {
+        String geomName = gd.getLocalName();
+        List<Filter> bboxes = new ArrayList<Filter>();
+        for (ReferencedEnvelope envelope : envelopes) {
+            bboxes.add(FF.bbox(FF.property(geomName), envelope));
+        }
+        Filter filter = bboxes.size() == 1 ? bboxes.get(0) : FF.or(bboxes);
+        Query definition = layer.getQuery();
+        if (definition != null && definition.getFilter() != null
+                && definition.getFilter() != Filter.INCLUDE) {
+            filter = FF.and(definition.getFilter(), filter);
+        }
+        Query query = new Query(source.getSchema().getName().getLocalPart(), filter);
+        if (definition != null && definition.getPropertyNames() != null) {
+            // the geometry is needed to build the tile, even if the definition leaves it out
+            List<String> names = new ArrayList<String>(Arrays.asList(definition
+                    .getPropertyNames()));
+            if (!names.contains(geomName)) {
+                names.add(geomName);
+            }
+            query.setPropertyNames(names);
+        }
+
+        // same geometry hints as the renderer, fast coordinate sequences and 2D only
+        Hints hints = new Hints(Hints.JTS_COORDINATE_SEQUENCE_FACTORY,
+                new LiteCoordinateSequenceFactory());
+        hints.put(Hints.FEATURE_2D, Boolean.TRUE);
+        query.setHints(hints);
+        return query;
+    }
+
+    /**
+     * Collects the non geometric attributes of the feature
+     */
+    Map<String, Object> getAttributes(Feature feature) {
+        Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+        for (Property property : feature.getProperties()) {
+            Object value = property.getValue();
+            if (value != null && !(value instanceof Geometry)) {
+                attributes.put(property.getName().getLocalPart(), value);
+            }
+        }
+        return attributes;
+    }
+}
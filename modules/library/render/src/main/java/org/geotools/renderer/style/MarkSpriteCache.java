@@ -0,0 +1,500 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.style;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of pre-rasterized {@link MarkStyle2D}, used to paint point symbols with a single image
+ * copy instead of filling and stroking the mark shape over and over.
+ * <p>
+ * A sprite is rasterized once for each combination of mark outline, fill, stroke, size, anchor,
+ * displacement, rotation (rounded to the closest {@link #ROTATION_STEPS} fraction of a full
+ * turn), sub-pixel position (rounded to the closest {@link #SUBPIXEL_STEPS} fraction of a
+ * pixel), {@link MarkStyle2D#isMaxMarkSizeEnabled()} setting and the rendering hints affecting
+ * how shapes are filled and stroked, see {@link #SPRITE_HINTS}. Sizes are expressed in pixels, so they already account for the DPI rescaling, while
+ * painting on a scaled or rotated graphics falls back on the vector path, as does painting
+ * marks larger than {@link #MAX_SPRITE_SIZE}, with non color paints, or with composites other
+ * than a plain alpha blending. Because of the rounding the output differs slightly from the
+ * vector painting, which is why the {@link org.geotools.renderer.lite.StreamingRenderer} uses
+ * sprites only when asked to.
+ * <p>
+ * The cache keeps at most {@link #getMaxSize()} sprites, evicting the least recently used ones.
+ * The size of the default instance can be controlled with the
+ * <code>org.geotools.render.markSpriteCacheSize</code> system variable (setting it to zero
+ * disables the sprites).
+ */
+public class MarkSpriteCache {
+
+    /**
+     * Default number of sprites kept in the default cache
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /**
+     * Marks larger than this size, in pixels, are painted as vectors
+     */
+    public static final int MAX_SPRITE_SIZE = 64;
+
+    /**
+     * Number of sub-pixel positions a sprite is rasterized at, on each axis
+     */
+    public static final int SUBPIXEL_STEPS = 4;
+
+    /**
+     * Number of rotations a sprite is rasterized at, in a full turn
+     */
+    public static final int ROTATION_STEPS = 360;
+
+    /**
+     * The rendering hints affecting the sprite contents, the other hints of the graphics are
+     * not used when rasterizing the sprites
+     */
+    static final RenderingHints.Key[] SPRITE_HINTS = { RenderingHints.KEY_ANTIALIASING,
+            RenderingHints.KEY_STROKE_CONTROL, RenderingHints.KEY_RENDERING };
+
+    static final MarkSpriteCache DEFAULT_INSTANCE = new MarkSpriteCache(Integer.getInteger(
+            "org.geotools.render.markSpriteCacheSize", DEFAULT_MAX_SIZE));
+
+    /**
+     * Returns the default, system wide sprite cache
+     */
+    public static MarkSpriteCache getDefaultInstance() {
+        return DEFAULT_INSTANCE;
+    }
+
+    final int maxSize;
+
+    final Map<SpriteKey, Sprite> sprites;
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Builds a new cache holding at most the specified number of sprites
+     * 
+     * @param maxSize
+     */
+    public MarkSpriteCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.sprites = new LinkedHashMap<SpriteKey, Sprite>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SpriteKey, Sprite> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns true if the mark can be painted as a sprite on the given graphics
+     * 
+     * @param graphics
+     * @param style
+     */
+    public boolean canPaint(Graphics2D graphics, MarkStyle2D style) {
+        if (maxSize <= 0 || style.getShape() == null || style.getSize() > MAX_SPRITE_SIZE) {
+            return false;
+        }
+        // no point in rasterizing on vector outputs, and sprites cannot be scaled or rotated
+        GraphicsConfiguration configuration = graphics.getDeviceConfiguration();
+        if (configuration == null
+                || configuration.getDevice().getType() != GraphicsDevice.TYPE_IMAGE_BUFFER) {
+            return false;
+        }
+        AffineTransform at = graphics.getTransform();
+        if ((at.getType() & ~AffineTransform.TYPE_TRANSLATION) != 0
+                || at.getTranslateX() != Math.rint(at.getTranslateX())
+                || at.getTranslateY() != Math.rint(at.getTranslateY())) {
+            return false;
+        }
+        // paints and composites need to be independent of the position
+        return isPlainPaint(style.getFill()) && isPlainPaint(style.getContour())
+                && isPlainComposite(style.getFillComposite())
+                && isPlainComposite(style.getContourComposite())
+                && (style.getContour() == null || style.getStroke() instanceof BasicStroke);
+    }
+
+    private boolean isPlainPaint(Paint paint) {
+        return paint == null || paint instanceof Color;
+    }
+
+    private boolean isPlainComposite(Composite composite) {
+        return composite == null || (composite instanceof AlphaComposite
+                && ((AlphaComposite) composite).getRule() == AlphaComposite.SRC_OVER);
+    }
+
+    /**
+     * Paints the mark centered in x, y, as {@link MarkStyle2D#getTransformedShape(float, float)}
+     * would, and returns the sprite bounds. The caller should have checked the mark can be
+     * painted with {@link #canPaint(Graphics2D, MarkStyle2D)} first.
+     * 
+     * @param graphics
+     * @param style
+     * @param x
+     * @param y
+     * @return The area covered by the sprite, in screen coordinates
+     */
+    public Rectangle2D paint(Graphics2D graphics, MarkStyle2D style, float x, float y) {
+        // split the position in the integer and sub-pixel parts
+        int sx = (int) Math.round(x * SUBPIXEL_STEPS);
+        int sy = (int) Math.round(y * SUBPIXEL_STEPS);
+        int ix = Math.floorDiv(sx, SUBPIXEL_STEPS);
+        int iy = Math.floorDiv(sy, SUBPIXEL_STEPS);
+        int rotation = (int) Math.round(style.getRotation() * ROTATION_STEPS / (2 * Math.PI))
+                % ROTATION_STEPS;
+        Object[] hints = new Object[SPRITE_HINTS.length];
+        for (int i = 0; i < hints.length; i++) {
+            hints[i] = graphics.getRenderingHint(SPRITE_HINTS[i]);
+        }
+        SpriteKey key = new SpriteKey(getShapeKey(style), style, sx - ix * SUBPIXEL_STEPS,
+                sy - iy * SUBPIXEL_STEPS, rotation, hints);
+
+        Sprite sprite = get(key);
+        if (sprite == null) {
+            sprite = new Sprite(graphics, style, key);
+            put(key, sprite);
+        }
+
+        graphics.setComposite(AlphaComposite.SrcOver);
+        graphics.drawImage(sprite.image, ix + sprite.x, iy + sprite.y, null);
+
+        return new Rectangle2D.Double(ix + sprite.x, iy + sprite.y, sprite.image.getWidth(),
+                sprite.image.getHeight());
+    }
+
+    /**
+     * Returns the outline key of the style shape, computing it only once per style. Shapes are
+     * compared by their outline as some mark factories (e.g., the TTF one) build a new shape at
+     * each call
+     */
+    ShapeKey getShapeKey(MarkStyle2D style) {
+        ShapeKey shapeKey = style.shapeKey;
+        if (shapeKey == null || shapeKey.shape != style.getShape()) {
+            shapeKey = new ShapeKey(style.getShape());
+            style.shapeKey = shapeKey;
+        }
+        return shapeKey;
+    }
+
+    Sprite get(SpriteKey key) {
+        Sprite sprite;
+        synchronized (sprites) {
+            sprite = sprites.get(key);
+        }
+        if (sprite != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return sprite;
+    }
+
+    void put(SpriteKey key, Sprite sprite) {
+        synchronized (sprites) {
+            sprites.put(key, sprite);
+        }
+    }
+
+    /**
+     * Removes all the sprites from the cache
+     */
+    public void clear() {
+        synchronized (sprites) {
+            sprites.clear();
+        }
+    }
+
+    /**
+     * The max number of sprites kept in the cache
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * The number of sprites currently in the cache
+     */
+    public int getSize() {
+        synchronized (sprites) {
+            return sprites.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * A mark rasterized at a given sub-pixel position, along with the offset of its top left
+     * corner from the integer position the mark is centered in
+     */
+    static final class Sprite {
+        final BufferedImage image;
+
+        final int x;
+
+        final int y;
+
+        Sprite(Graphics2D graphics, MarkStyle2D style, SpriteKey key) {
+            float rotation = (float) (key.rotation * 2 * Math.PI / ROTATION_STEPS);
+            Shape shape = style.getTransformedShape((float) key.subX / SUBPIXEL_STEPS,
+                    (float) key.subY / SUBPIXEL_STEPS, 0, rotation);
+            Rectangle2D bounds = shape.getBounds2D();
+            if (style.getContour() != null) {
+                bounds.add(style.getStroke().createStrokedShape(shape).getBounds2D());
+            }
+            // leave room for the antialiasing
+            this.x = (int) Math.floor(bounds.getMinX()) - 1;
+            this.y = (int) Math.floor(bounds.getMinY()) - 1;
+            int width = (int) Math.ceil(bounds.getMaxX()) + 1 - x;
+            int height = (int) Math.ceil(bounds.getMaxY()) + 1 - y;
+            this.image = new BufferedImage(Math.max(width, 1), Math.max(height, 1),
+                    BufferedImage.TYPE_INT_ARGB_PRE);
+
+            Graphics2D g = image.createGraphics();
+            try {
+                // only the hints in the key, the sprite has to look the same for any graphics
+                // sharing it
+                for (int i = 0; i < SPRITE_HINTS.length; i++) {
+                    if (key.hints[i] != null) {
+                        g.setRenderingHint(SPRITE_HINTS[i], key.hints[i]);
+                    }
+                }
+                g.translate(-x, -y);
+                if (style.getFill() != null) {
+                    g.setPaint(style.getFill());
+                    setComposite(g, style.getFillComposite());
+                    g.fill(shape);
+                }
+                if (style.getContour() != null) {
+                    g.setPaint(style.getContour());
+                    g.setStroke(style.getStroke());
+                    setComposite(g, style.getContourComposite());
+                    g.draw(shape);
+                }
+            } finally {
+                g.dispose();
+            }
+        }
+
+        private void setComposite(Graphics2D g, Composite composite) {
+            g.setComposite(composite != null ? composite : AlphaComposite.SrcOver);
+        }
+    }
+
+    /**
+     * The bits of a mark style, and painting context, that affect the sprite contents
+     */
+    static final class SpriteKey {
+        final ShapeKey shape;
+
+        final Paint fill;
+
+        final Paint contour;
+
+        final Stroke stroke;
+
+        final Composite fillComposite;
+
+        final Composite contourComposite;
+
+        final double size;
+
+        final float displacementX;
+
+        final float displacementY;
+
+        final float anchorPointX;
+
+        final float anchorPointY;
+
+        final int subX;
+
+        final int subY;
+
+        final int rotation;
+
+        final boolean maxMarkSizeEnabled;
+
+        /**
+         * The values of the {@link MarkSpriteCache#SPRITE_HINTS}
+         */
+        final Object[] hints;
+
+        SpriteKey(ShapeKey shape, MarkStyle2D style, int subX, int subY, int rotation,
+                Object[] hints) {
+            this.shape = shape;
+            this.fill = style.getFill();
+            this.contour = style.getContour();
+            this.stroke = style.getContour() != null ? style.getStroke() : null;
+            this.fillComposite = style.getFill() != null ? style.getFillComposite() : null;
+            this.contourComposite = style.getContour() != null ? style.getContourComposite()
+                    : null;
+            this.size = style.getSize();
+            this.displacementX = style.getDisplacementX();
+            this.displacementY = style.getDisplacementY();
+            this.anchorPointX = style.getAnchorPointX();
+            this.anchorPointY = style.getAnchorPointY();
+            this.subX = subX;
+            this.subY = subY;
+            this.rotation = rotation;
+            this.maxMarkSizeEnabled = MarkStyle2D.isMaxMarkSizeEnabled();
+            this.hints = hints;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = shape.hashCode();
+            result = 31 * result + (fill == null ? 0 : fill.hashCode());
+            result = 31 * result + (contour == null ? 0 : contour.hashCode());
+            result = 31 * result + (stroke == null ? 0 : stroke.hashCode());
+            long bits = Double.doubleToLongBits(size);
+            result = 31 * result + (int) (bits ^ (bits >>> 32));
+            result = 31 * result + Float.floatToIntBits(displacementX);
+            result = 31 * result + Float.floatToIntBits(displacementY);
+            result = 31 * result + Float.floatToIntBits(anchorPointX);
+            result = 31 * result + Float.floatToIntBits(anchorPointY);
+            result = 31 * result + subX;
+            result = 31 * result + subY;
+            result = 31 * result + rotation;
+            result = 31 * result + (maxMarkSizeEnabled ? 1 : 0);
+            result = 31 * result + Arrays.hashCode(hints);
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SpriteKey)) {
+                return false;
+            }
+            SpriteKey other = (SpriteKey) obj;
+            return shape.equals(other.shape) && subX == other.subX && subY == other.subY
+                    && rotation == other.rotation
+                    && maxMarkSizeEnabled == other.maxMarkSizeEnabled
+                    && Arrays.equals(hints, other.hints)
+                    && Double.doubleToLongBits(size) == Double.doubleToLongBits(other.size)
+                    && Float.floatToIntBits(displacementX) == Float
+                            .floatToIntBits(other.displacementX)
+                    && Float.floatToIntBits(displacementY) == Float
+                            .floatToIntBits(other.displacementY)
+                    && Float.floatToIntBits(anchorPointX) == Float
+                            .floatToIntBits(other.anchorPointX)
+                    && Float.floatToIntBits(anchorPointY) == Float
+                            .floatToIntBits(other.anchorPointY)
+                    && equals(fill, other.fill) && equals(contour, other.contour)
+                    && equals(stroke, other.stroke) && equals(fillComposite, other.fillComposite)
+                    && equals(contourComposite, other.contourComposite);
+        }
+
+        private static boolean equals(Object o1, Object o2) {
+            return o1 == null ? o2 == null : o1.equals(o2);
+        }
+    }
+
+    /**
+     * The outline of a mark shape, that is, its path segments and the bounds used to scale it
+     */
+    static final class ShapeKey {
+        final Shape shape;
+
+        final Rectangle2D bounds;
+
+        final int[] types;
+
+        final double[] coords;
+
+        final int windingRule;
+
+        final int hashCode;
+
+        ShapeKey(Shape shape) {
+            this.shape = shape;
+            this.bounds = shape.getBounds2D();
+            PathIterator pi = shape.getPathIterator(null);
+            this.windingRule = pi.getWindingRule();
+            int[] types = new int[16];
+            double[] coords = new double[96];
+            double[] segment = new double[6];
+            int segments = 0;
+            for (; !pi.isDone(); pi.next()) {
+                if (segments == types.length) {
+                    types = Arrays.copyOf(types, segments * 2);
+                    coords = Arrays.copyOf(coords, segments * 12);
+                }
+                types[segments] = pi.currentSegment(segment);
+                System.arraycopy(segment, 0, coords, segments * 6, 6);
+                Arrays.fill(segment, 0);
+                segments++;
+            }
+            this.types = Arrays.copyOf(types, segments);
+            this.coords = Arrays.copyOf(coords, segments * 6);
+
+            int result = bounds.hashCode();
+            result = 31 * result + windingRule;
+            result = 31 * result + Arrays.hashCode(this.types);
+            result = 31 * result + Arrays.hashCode(this.coords);
+            this.hashCode = result;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ShapeKey)) {
+                return false;
+            }
+            ShapeKey other = (ShapeKey) obj;
+            return shape == other.shape || (hashCode == other.hashCode
+                    && windingRule == other.windingRule && bounds.equals(other.bounds)
+                    && Arrays.equals(types, other.types) && Arrays.equals(coords, other.coords));
+        }
+    }
+}
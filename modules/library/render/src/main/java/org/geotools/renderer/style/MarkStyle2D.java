@@ -54,6 +54,11 @@ public class MarkStyle2D extends PolygonStyle2D implements PointStyle2D {
 
     Composite composite;
 
+    /**
+     * The shape outline, as compared by {@link MarkSpriteCache}, computed on demand
+     */
+    MarkSpriteCache.ShapeKey shapeKey;
+
     /**
      * Returns the shape rotation, in radians
      *
@@ -152,6 +157,7 @@ public class MarkStyle2D extends PolygonStyle2D implements PointStyle2D {
      */
     public void setShape(Shape shape) {
         this.shape = shape;
+        this.shapeKey = null;
     }
 
     /**
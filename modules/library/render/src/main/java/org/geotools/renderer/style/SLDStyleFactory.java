@@ -33,7 +33,9 @@ import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -163,6 +165,9 @@ public class SLDStyleFactory {
 	 */
     public static final int DEFAULT_MARK_SIZE = 16;
 
+	/** Maximum number of styles kept in the per factory identity lookup */
+	static final int MAX_STATIC_SYMBOLIZERS = 256;
+
 	static { // static block to populate the lookups
 		JOIN_LOOKUP.put("miter", new Integer(BasicStroke.JOIN_MITER));
 		JOIN_LOOKUP.put("bevel", new Integer(BasicStroke.JOIN_BEVEL));
@@ -193,8 +198,28 @@ public class SLDStyleFactory {
 	/** Symbolizers that depend on attributes */
 	Map dynamicSymbolizers = new SoftValueHashMap();
 
-	/** Symbolizers that do not depend on attributes */
-	Map staticSymbolizers = new SoftValueHashMap();
+	/** Styles built out of symbolizers that do not depend on attributes, shared across factories */
+	Style2DCache styleCache = Style2DCache.getDefaultInstance();
+
+	/**
+	 * The styles recently looked up in the style cache, by symbolizer identity, avoids comparing
+	 * the symbolizer contents for each feature
+	 */
+	Map<SymbolizerKey, Style2D> staticSymbolizers = new LinkedHashMap<SymbolizerKey, Style2D>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 4571698126391453917L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<SymbolizerKey, Style2D> eldest) {
+			return size() > MAX_STATIC_SYMBOLIZERS;
+		}
+	};
+
+	/** The style cache generation the static symbolizers have been looked up in */
+	private long staticGeneration;
+
+	/** The current configuration, used as part of the style cache keys */
+	private Object cacheConfiguration;
 
 	/**
 	 * Build a default rendering hint to avoid NPE
@@ -248,6 +273,7 @@ public class SLDStyleFactory {
 		if (renderingHints == null)
 			return;
 		this.renderingHints = renderingHints;
+		this.cacheConfiguration = null;
 	}
 
 	/**
@@ -264,6 +290,7 @@ public class SLDStyleFactory {
 
 	public void setLineOptimizationEnabled(boolean lineOptimizationEnabled) {
 		this.lineOptimizationEnabled = lineOptimizationEnabled;
+		this.cacheConfiguration = null;
 	}
 
 	/**
@@ -291,6 +318,42 @@ public class SLDStyleFactory {
 	 */
 	public void setVectorRenderingEnabled(boolean vectorRenderingEnabled) {
 		this.vectorRenderingEnabled = vectorRenderingEnabled;
+		this.cacheConfiguration = null;
+	}
+
+	/**
+	 * Returns the cache used for the styles built out of feature independent symbolizers, by
+	 * default the one shared by all factories, {@link Style2DCache#getDefaultInstance()}
+	 */
+	public Style2DCache getStyleCache() {
+		return styleCache;
+	}
+
+	/**
+	 * Sets the cache used for the styles built out of feature independent symbolizers
+	 * 
+	 * @param styleCache
+	 */
+	public void setStyleCache(Style2DCache styleCache) {
+		if (styleCache == null) {
+			throw new IllegalArgumentException("The style cache cannot be null");
+		}
+		this.styleCache = styleCache;
+		this.cacheConfiguration = null;
+	}
+
+	/**
+	 * Returns the configuration bits that affect the styles being built, as a canonical object
+	 * of the style cache
+	 */
+	private Object getCacheConfiguration() {
+		if (cacheConfiguration == null) {
+			// the hints are copied, they are mutable
+			cacheConfiguration = Arrays.asList((Object) lineOptimizationEnabled,
+					vectorRenderingEnabled, new RenderingHints((Map) renderingHints));
+			staticSymbolizers.clear();
+		}
+		return cacheConfiguration;
 	}
 
 	public double getHitRatio() {
@@ -351,8 +414,20 @@ public class SLDStyleFactory {
 			Range scaleRange) {
 		Style2D style = null;
 
+		Object configuration = getCacheConfiguration();
+		long generation = styleCache.getGeneration();
+		if (generation != staticGeneration) {
+			staticSymbolizers.clear();
+			staticGeneration = generation;
+		}
 		SymbolizerKey key = new SymbolizerKey(symbolizer, scaleRange);
-		style = (Style2D) staticSymbolizers.get(key);
+		style = staticSymbolizers.get(key);
+		if (style == null) {
+			style = styleCache.get(symbolizer, scaleRange, configuration);
+			if (style != null) {
+				staticSymbolizers.put(key, style);
+			}
+		}
 
 		requests++;
 
@@ -380,7 +455,10 @@ public class SLDStyleFactory {
 				Set nameSet = sae.getAttributeNameSet();
 				boolean noAttributes = (nameSet == null) || (nameSet.size() == 0);
 				if (noAttributes && !sae.isUsingVolatileFunctions()) {
-					staticSymbolizers.put(key, style);
+					styleCache.put(symbolizer, scaleRange, configuration, style);
+					if (styleCache.getMaxSize() > 0) {
+						staticSymbolizers.put(key, style);
+					}
 				} else {
 					dynamicSymbolizers.put(key, Boolean.TRUE);
 				}
@@ -0,0 +1,322 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.style;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.geotools.styling.Symbolizer;
+import org.geotools.styling.visitor.DuplicatingStyleVisitor;
+import org.geotools.util.Range;
+
+/**
+ * A thread safe cache of the {@link Style2D} objects built out of feature independent symbolizers.
+ * The default instance is shared by all the {@link SLDStyleFactory} objects in the JVM, so that
+ * concurrent rendering requests using the same style do not re-create over and over the same
+ * strokes, fills and mark shapes.
+ * <p>
+ * The styles are keyed by symbolizer contents, scale range and the style factory configuration
+ * (line width optimization, vector rendering, rendering hints). Comparing contents, rather than
+ * identity, allows hits across rendering requests, which usually work against copies of the
+ * symbolizers (e.g., rescaled to the output DPI). The keys hold a private copy of the symbolizer,
+ * so that modifying the original one does not alter them. At most {@link #getMaxSize()} entries
+ * are kept, evicting the least recently used ones first. The size of the default instance can be
+ * controlled with the <code>org.geotools.render.style2DCacheSize</code> system variable (setting
+ * it to zero disables the caching).
+ * <p>
+ * Text and icon styles are mutable or not thread safe, they are never shared, each style factory
+ * builds its own.
+ * <p>
+ * Style factories keep a short lived identity based lookup in front of this cache. If a style is
+ * modified after it has been used for rendering it should be {@link #invalidate(Style)
+ * invalidated}, so that the factories forget about it.
+ */
+public class Style2DCache {
+
+    /**
+     * Default number of styles kept in the default cache
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    static final Style2DCache DEFAULT_INSTANCE = new Style2DCache(Integer.getInteger(
+            "org.geotools.render.style2DCacheSize", DEFAULT_MAX_SIZE));
+
+    /**
+     * Returns the default, system wide style cache
+     */
+    public static Style2DCache getDefaultInstance() {
+        return DEFAULT_INSTANCE;
+    }
+
+    final int maxSize;
+
+    /**
+     * The cached styles, in access order. Guarded by its own lock
+     */
+    final Map<Key, Style2D> styles;
+
+    /**
+     * Incremented at each invalidation, lets the style factories know they have to drop the
+     * styles they looked up
+     */
+    volatile long generation;
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Builds a new cache holding at most the specified number of styles
+     * 
+     * @param maxSize
+     */
+    public Style2DCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.styles = new LinkedHashMap<Key, Style2D>(16, 0.75f, true) {
+            private static final long serialVersionUID = -2786547283913357839L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Style2D> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached style for the symbolizer, or null if not found
+     * 
+     * @param symbolizer
+     * @param scaleRange
+     * @param configuration The style factory configuration
+     * @return
+     */
+    Style2D get(Symbolizer symbolizer, Range scaleRange, Object configuration) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        Key key = new Key(symbolizer, scaleRange, configuration);
+        Style2D style;
+        synchronized (styles) {
+            style = styles.get(key);
+        }
+        if (style != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return style;
+    }
+
+    /**
+     * Caches the style for the symbolizer
+     * 
+     * @param symbolizer
+     * @param scaleRange
+     * @param configuration The style factory configuration
+     * @param style
+     */
+    void put(Symbolizer symbolizer, Range scaleRange, Object configuration, Style2D style) {
+        if (maxSize <= 0 || !isShareable(style)) {
+            return;
+        }
+        DuplicatingStyleVisitor duplicator = new DuplicatingStyleVisitor();
+        symbolizer.accept(duplicator);
+        Symbolizer copy = (Symbolizer) duplicator.getCopy();
+        // symbolizers whose copy is not equal to the original would never be looked up
+        if (!symbolizer.equals(copy)) {
+            return;
+        }
+        Key key = new Key(copy, scaleRange, configuration);
+        synchronized (styles) {
+            styles.put(key, style);
+        }
+    }
+
+    /**
+     * Returns true if the style can be handed out to several renderers at the same time. Text
+     * styles are not, the label painter writes the label of the feature being laid out in them,
+     * and neither are icons, which are not thread safe
+     * 
+     * @param style
+     */
+    static boolean isShareable(Style2D style) {
+        if (style instanceof TextStyle2D || style instanceof IconStyle2D) {
+            return false;
+        }
+        if (style instanceof PolygonStyle2D) {
+            Style2D graphicFill = ((PolygonStyle2D) style).getGraphicFill();
+            if (graphicFill != null && !isShareable(graphicFill)) {
+                return false;
+            }
+        }
+        if (style instanceof LineStyle2D) {
+            Style2D graphicStroke = ((LineStyle2D) style).getGraphicStroke();
+            if (graphicStroke != null && !isShareable(graphicStroke)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the current invalidation generation
+     */
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Removes all the styles built out of a symbolizer equal to the specified one
+     * 
+     * @param symbolizer
+     */
+    public void invalidate(Symbolizer symbolizer) {
+        invalidate(Collections.singleton(symbolizer));
+    }
+
+    /**
+     * Removes all the styles built out of symbolizers equal to the ones contained in the specified
+     * style, and makes the style factories forget the styles they looked up. To be called when
+     * the style is modified
+     * 
+     * @param style
+     */
+    public void invalidate(Style style) {
+        Set<Symbolizer> symbolizers = new HashSet<Symbolizer>();
+        for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+            for (Rule rule : fts.rules()) {
+                symbolizers.addAll(rule.symbolizers());
+            }
+        }
+        invalidate(symbolizers);
+    }
+
+    private void invalidate(Collection<Symbolizer> symbolizers) {
+        synchronized (styles) {
+            for (Iterator<Key> it = styles.keySet().iterator(); it.hasNext();) {
+                if (symbolizers.contains(it.next().symbolizer)) {
+                    it.remove();
+                }
+            }
+            generation++;
+        }
+    }
+
+    /**
+     * Removes all the cached styles and resets the statistics
+     */
+    public void clear() {
+        synchronized (styles) {
+            styles.clear();
+            generation++;
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * Number of lookups that found the style in the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of lookups that did not find the style in the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of styles currently in the cache
+     */
+    public int getSize() {
+        synchronized (styles) {
+            return styles.size();
+        }
+    }
+
+    /**
+     * The maximum number of styles kept in the cache
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Cache key, compares the symbolizers by contents
+     */
+    static final class Key {
+        final Symbolizer symbolizer;
+
+        final double minScale;
+
+        final double maxScale;
+
+        final Object configuration;
+
+        final int hashCode;
+
+        Key(Symbolizer symbolizer, Range scaleRange, Object configuration) {
+            this.symbolizer = symbolizer;
+            if (scaleRange == null) {
+                minScale = 0;
+                maxScale = Double.POSITIVE_INFINITY;
+            } else {
+                minScale = ((Number) scaleRange.getMinValue()).doubleValue();
+                maxScale = ((Number) scaleRange.getMaxValue()).doubleValue();
+            }
+            this.configuration = configuration;
+            int hash = 17 + symbolizer.hashCode();
+            hash = hash * 37 + Double.valueOf(minScale).hashCode();
+            hash = hash * 37 + Double.valueOf(maxScale).hashCode();
+            hash = hash * 37 + (configuration == null ? 0 : configuration.hashCode());
+            this.hashCode = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hashCode == other.hashCode && minScale == other.minScale
+                    && maxScale == other.maxScale
+                    && (configuration == null ? other.configuration == null : configuration
+                            .equals(other.configuration))
+                    && symbolizer.equals(other.symbolizer);
+        }
+    }
+}
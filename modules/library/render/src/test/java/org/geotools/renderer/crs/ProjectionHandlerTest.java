@@ -21,6 +21,7 @@ import static org.junit.Assert.*;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 
 import org.geotools.geometry.jts.JTS;
@@ -31,9 +32,11 @@ import org.geotools.referencing.operation.projection.PolarStereographic;
 import org.geotools.referencing.operation.transform.IdentityTransform;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.crs.SingleCRS;
 import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateFilter;
@@ -659,6 +662,83 @@ public class ProjectionHandlerTest {
         assertTrue(handler.validAreaBounds.contains(preProcessed.getEnvelopeInternal()));
     }
 
+    @Test
+    public void testCutGeometryCache() throws Exception {
+        Geometry g = new WKTReader().read("LINESTRING(-170 -40, 170 40)");
+        ClippedGeometryCache cache = new ClippedGeometryCache(1000);
+
+        // two adjacent tiles cut the same feature the same way
+        ReferencedEnvelope wgs84Envelope = new ReferencedEnvelope(8, 10, 40, 45, WGS84);
+        ProjectionHandler handler = ProjectionHandlerFinder.getHandler(
+                wgs84Envelope.transform(UTM32N, true), WGS84, true);
+        handler.setGeometryCache(cache);
+        Geometry first = handler.preProcess(g, "lines.1");
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getSize());
+
+        wgs84Envelope.translate(2, 0);
+        handler = ProjectionHandlerFinder.getHandler(wgs84Envelope.transform(UTM32N, true),
+                WGS84, true);
+        handler.setGeometryCache(cache);
+        Geometry second = handler.preProcess(g, "lines.1");
+        assertEquals(1, cache.getHits());
+        assertTrue(first.equalsExact(second));
+        // the renderer modifies the geometries in place, each call gets its own copy
+        assertNotSame(first, second);
+
+        // a different geometry for the same feature is cut again
+        Geometry changed = new WKTReader().read("LINESTRING(-170 -40, 170 30)");
+        Geometry third = handler.preProcess(changed, "lines.1");
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getSize());
+        assertTrue(third.equalsExact(handler.preProcess(changed)));
+
+        // without a feature id no caching happens
+        handler.preProcess(g);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    public void testCutGeometryCacheOverride() throws Exception {
+        // handlers overriding the single argument pre processing are still called by the
+        // feature id variant, which the renderer uses
+        final AtomicInteger calls = new AtomicInteger();
+        ProjectionHandler handler = new ProjectionHandler(WGS84, new Envelope(-180, 180, -90,
+                90), new ReferencedEnvelope(-10, 10, -10, 10, WGS84)) {
+            @Override
+            public Geometry preProcess(Geometry geometry) throws TransformException,
+                    FactoryException {
+                calls.incrementAndGet();
+                return super.preProcess(geometry);
+            }
+        };
+        Geometry g = new WKTReader().read("LINESTRING(0 0, 1 1)");
+        assertSame(g, handler.preProcess(g, "lines.1"));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testCutGeometryCacheEviction() throws Exception {
+        Geometry g = new WKTReader().read("LINESTRING(-170 -40, 170 40)");
+        ProjectionHandler handler = ProjectionHandlerFinder.getHandler(new ReferencedEnvelope(8,
+                10, 40, 45, WGS84).transform(UTM32N, true), WGS84, true);
+        // the original coordinates are kept along with the cut ones
+        int weight = 1 + g.getNumPoints() + handler.preProcess(g).getNumPoints();
+        ClippedGeometryCache cache = new ClippedGeometryCache(weight * 2);
+        handler.setGeometryCache(cache);
+        for (int i = 0; i < 3; i++) {
+            handler.preProcess(g, "lines." + i);
+        }
+        assertEquals(2, cache.getSize());
+        assertEquals(weight * 2, cache.getCoordinates());
+        // the least recently used one has been evicted
+        handler.preProcess(g, "lines.0");
+        assertEquals(0, cache.getHits());
+        handler.preProcess(g, "lines.2");
+        assertEquals(1, cache.getHits());
+    }
+
     @Test
     public void testPolarStereographic() throws Exception {
         ReferencedEnvelope envelope = new ReferencedEnvelope(-10700000, 14700000, -10700000,
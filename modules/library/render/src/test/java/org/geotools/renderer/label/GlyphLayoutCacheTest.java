@@ -0,0 +1,82 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.label;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+
+import org.junit.Test;
+
+public class GlyphLayoutCacheTest {
+
+    Font font = new Font("Serif", Font.PLAIN, 12);
+
+    FontRenderContext frc = new FontRenderContext(new AffineTransform(), true, true);
+
+    @Test
+    public void testHitsAndMisses() {
+        GlyphLayoutCache cache = new GlyphLayoutCache(10);
+        TextLayout tl1 = cache.getTextLayout("Main Street", font, frc);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        TextLayout tl2 = cache.getTextLayout("Main Street", font, frc);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertSame(tl1, tl2);
+        assertEquals(0.5, cache.getHitRatio(), 1e-9);
+
+        // a different size is a different entry
+        cache.getTextLayout("Main Street", font.deriveFont(14f), frc);
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.getSize());
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() {
+        GlyphLayoutCache cache = new GlyphLayoutCache(2);
+        cache.getTextLayout("a", font, frc);
+        cache.getTextLayout("b", font, frc);
+        // touch "a", so that "b" is the least recently used
+        cache.getTextLayout("a", font, frc);
+        cache.getTextLayout("c", font, frc);
+        assertEquals(2, cache.getSize());
+
+        cache.getTextLayout("a", font, frc);
+        assertEquals(2, cache.getHits());
+        cache.getTextLayout("b", font, frc);
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testDisabled() {
+        GlyphLayoutCache cache = new GlyphLayoutCache(0);
+        cache.getTextLayout("Main Street", font, frc);
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getHits() + cache.getMisses());
+    }
+}
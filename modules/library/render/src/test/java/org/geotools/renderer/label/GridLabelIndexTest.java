@@ -0,0 +1,101 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.label;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GridLabelIndexTest {
+
+    @Test
+    public void testSameResultsAsQuadtree() {
+        Rectangle area = new Rectangle(0, 0, 512, 512);
+        GridLabelIndex grid = new GridLabelIndex(area);
+        LabelIndex quadtree = new LabelIndex();
+
+        Random random = new Random(0);
+        for (int i = 0; i < 2000; i++) {
+            // also generate labels partially or fully outside of the display area
+            Rectangle2D bounds = new Rectangle2D.Double(random.nextDouble() * 600 - 50,
+                    random.nextDouble() * 600 - 50, random.nextDouble() * 80,
+                    random.nextDouble() * 20);
+            double distance = random.nextInt(4);
+            boolean expected = quadtree.labelsWithinDistance(bounds, distance);
+            assertEquals(expected, grid.labelsWithinDistance(bounds, distance));
+            if (!expected) {
+                quadtree.addLabel(null, bounds);
+                grid.addLabel(null, bounds);
+            }
+        }
+    }
+
+    @Test
+    public void testTouchingBounds() {
+        GridLabelIndex grid = new GridLabelIndex(new Rectangle(0, 0, 100, 100));
+        grid.addLabel(null, new Rectangle2D.Double(10, 10, 10, 10));
+        assertTrue(grid.labelsWithinDistance(new Rectangle2D.Double(20, 20, 5, 5), 0));
+        assertFalse(grid.labelsWithinDistance(new Rectangle2D.Double(21, 21, 5, 5), 0));
+        assertTrue(grid.labelsWithinDistance(new Rectangle2D.Double(21, 21, 5, 5), 1));
+        assertFalse(grid.labelsWithinDistance(new Rectangle2D.Double(10, 10, 10, 10), -1));
+    }
+
+    @Test
+    public void testReserveAndReset() {
+        GridLabelIndex grid = new GridLabelIndex(new Rectangle(0, 0, 256, 256));
+        grid.reserveArea(Arrays.asList((Rectangle2D) new Rectangle2D.Double(0, 0, 50, 50),
+                new Rectangle2D.Double(300, 300, 10, 10)));
+        assertEquals(2, grid.size());
+        assertTrue(grid.labelsWithinDistance(new Rectangle2D.Double(40, 40, 20, 20), 0));
+        assertTrue(grid.labelsWithinDistance(new Rectangle2D.Double(305, 305, 1, 1), 0));
+
+        // reuse with a smaller area, nothing should be left behind
+        grid.reset(new Rectangle(0, 0, 128, 128));
+        assertEquals(0, grid.size());
+        assertFalse(grid.labelsWithinDistance(new Rectangle2D.Double(0, 0, 128, 128), 0));
+        grid.addLabel(null, new Rectangle2D.Double(100, 100, 10, 10));
+        assertTrue(grid.labelsWithinDistance(new Rectangle2D.Double(105, 105, 1, 1), 0));
+
+        // and with a larger one, the structures get re-allocated
+        grid.reset(new Rectangle(0, 0, 1024, 1024));
+        assertFalse(grid.labelsWithinDistance(new Rectangle2D.Double(105, 105, 1, 1), 0));
+        grid.addLabel(null, new Rectangle2D.Double(1000, 1000, 10, 10));
+        assertTrue(grid.labelsWithinDistance(new Rectangle2D.Double(990, 990, 10, 10), 0));
+    }
+
+    @Test
+    public void testTransformBounds() {
+        Rectangle2D bounds = new Rectangle2D.Double(-5, -2, 30, 12);
+        AffineTransform tx = AffineTransform.getTranslateInstance(100, 50);
+        tx.rotate(0.7);
+        tx.scale(1.5, 1.5);
+        Rectangle2D expected = tx.createTransformedShape(bounds).getBounds2D();
+        Rectangle2D actual = LabelCacheImpl.transformBounds(tx, bounds);
+        assertEquals(expected.getMinX(), actual.getMinX(), 1e-9);
+        assertEquals(expected.getMinY(), actual.getMinY(), 1e-9);
+        assertEquals(expected.getMaxX(), actual.getMaxX(), 1e-9);
+        assertEquals(expected.getMaxY(), actual.getMaxY(), 1e-9);
+    }
+}
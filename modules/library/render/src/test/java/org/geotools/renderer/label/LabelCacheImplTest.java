@@ -3,6 +3,10 @@ package org.geotools.renderer.label;
 import static org.junit.Assert.assertEquals;
 
 import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -123,6 +127,33 @@ public class LabelCacheImplTest {
         assertEquals(Arrays.asList(L2), item2.getGeoms());
     }
 
+    @Test
+    public void testCustomLabelIndex() throws Exception {
+        final List<AbstractLabelIndex> created = new ArrayList<AbstractLabelIndex>();
+        LabelCacheImpl custom = new LabelCacheImpl() {
+            @Override
+            protected AbstractLabelIndex createLabelIndex(Rectangle displayArea) {
+                AbstractLabelIndex index = new LabelIndex();
+                created.add(index);
+                return index;
+            }
+        };
+        custom.startLayer(LAYER_ID);
+        TextSymbolizer ts = sb.createTextSymbolizer(Color.BLACK, (Font) null, "name");
+        SimpleFeature f = createFeature("label1", geometry("LINESTRING(10 50, 190 50)"));
+        custom.put(LAYER_ID, ts, f, new LiteShape2((Geometry) f.getDefaultGeometry(), null, null,
+                false), ALL_SCALES);
+        custom.endLayer(LAYER_ID, null, null);
+
+        BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = image.createGraphics();
+        custom.end(graphics, new Rectangle(200, 100));
+        graphics.dispose();
+
+        // both the painted labels and the line label group use the custom index
+        assertEquals(2, created.size());
+    }
+
     private SimpleFeature createFeature(String label, Geometry geom) {
         fb.add(label);
         fb.add(geom);
@@ -0,0 +1,205 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class BackBufferPoolTest {
+
+    static final int SIZE = 100;
+
+    static final long IMAGE_BYTES = SIZE * SIZE * 4;
+
+    BufferedImage target;
+
+    Graphics2D graphics;
+
+    GraphicsConfiguration configuration;
+
+    @Before
+    public void setUp() {
+        target = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_4BYTE_ABGR);
+        graphics = target.createGraphics();
+        configuration = graphics.getDeviceConfiguration();
+    }
+
+    @After
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Test
+    public void testReuse() {
+        BackBufferPool pool = new BackBufferPool(IMAGE_BYTES * 10, IMAGE_BYTES * 10);
+        BufferedImage image = pool.acquire(configuration, SIZE, SIZE);
+        assertNotNull(image);
+        assertEquals(1, pool.getMisses());
+        assertEquals(IMAGE_BYTES, pool.getUsedBytes());
+
+        // dirty it, and give it back
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, SIZE, SIZE);
+        g.dispose();
+        pool.release(image);
+        assertEquals(0, pool.getUsedBytes());
+        assertEquals(IMAGE_BYTES, pool.getIdleBytes());
+
+        // same image, but cleared
+        BufferedImage reused = pool.acquire(configuration, SIZE, SIZE);
+        assertSame(image, reused);
+        assertEquals(1, pool.getHits());
+        assertEquals(0, reused.getRGB(SIZE / 2, SIZE / 2));
+        assertEquals(0, pool.getIdleBytes());
+
+        // a different size is not reused
+        pool.release(reused);
+        BufferedImage other = pool.acquire(configuration, SIZE, SIZE / 2);
+        assertNotSame(image, other);
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void testBudget() {
+        BackBufferPool pool = new BackBufferPool(IMAGE_BYTES * 2, IMAGE_BYTES * 2);
+        BufferedImage first = pool.acquire(configuration, SIZE, SIZE);
+        BufferedImage second = pool.acquire(configuration, SIZE, SIZE);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(pool.acquire(configuration, SIZE, SIZE));
+        assertEquals(1, pool.getRejections());
+
+        // once an image is given back, there is room again
+        pool.release(first);
+        assertNotNull(pool.acquire(configuration, SIZE, SIZE));
+
+        // a discarded image frees up the budget, but is not reused
+        pool.discard(second);
+        assertEquals(IMAGE_BYTES, pool.getUsedBytes());
+        assertEquals(0, pool.getIdleBytes());
+    }
+
+    @Test
+    public void testIdleEviction() {
+        BackBufferPool pool = new BackBufferPool(IMAGE_BYTES * 3, IMAGE_BYTES);
+        BufferedImage first = pool.acquire(configuration, SIZE, SIZE);
+        BufferedImage second = pool.acquire(configuration, SIZE, SIZE);
+        pool.release(first);
+        pool.release(second);
+        assertEquals(IMAGE_BYTES, pool.getIdleBytes());
+        // the most recently released one is kept
+        assertSame(second, pool.acquire(configuration, SIZE, SIZE));
+
+        // idle images are evicted to make room for new ones within the budget
+        pool.release(second);
+        BufferedImage large = pool.acquire(configuration, SIZE * 2, SIZE);
+        assertNotNull(large);
+        BufferedImage third = pool.acquire(configuration, SIZE, SIZE / 2);
+        assertNotNull(third);
+        assertEquals(0, pool.getIdleBytes());
+    }
+
+    @Test
+    public void testRenderingReleasesBuffers() throws Exception {
+        BackBufferPool pool = new BackBufferPool(IMAGE_BYTES * 10, IMAGE_BYTES * 10);
+        BufferedImage expected = render(null);
+        BufferedImage first = render(pool);
+        BufferedImage second = render(pool);
+        // all buffers are given back, and reused by the second rendering
+        assertEquals(0, pool.getUsedBytes());
+        assertEquals(1, pool.getMisses());
+        assertEquals(1, pool.getHits());
+        assertSameImage(expected, first);
+        assertSameImage(expected, second);
+    }
+
+    @Test
+    public void testRenderingOutOfBudget() throws Exception {
+        BackBufferPool pool = new BackBufferPool(IMAGE_BYTES / 2, IMAGE_BYTES / 2);
+        BufferedImage expected = render(null);
+        BufferedImage actual = render(pool);
+        assertEquals(1, pool.getRejections());
+        assertEquals(0, pool.getUsedBytes());
+        // the lines do not overlap, direct painting produces the same output
+        assertSameImage(expected, actual);
+    }
+
+    void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    BufferedImage render(BackBufferPool pool) throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("lines", "geom:LineString:4326");
+        ListFeatureCollection lines = new ListFeatureCollection(type);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        GeometryFactory gf = new GeometryFactory();
+        for (int i = 1; i < 10; i += 2) {
+            fb.add(gf.createLineString(new Coordinate[] { new Coordinate(0, i),
+                    new Coordinate(10, i) }));
+            lines.add(fb.buildFeature(null));
+        }
+
+        // two feature type styles, the second one is painted on a back buffer
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createLineSymbolizer(Color.BLUE, 1));
+        style.featureTypeStyles().add(
+                sb.createFeatureTypeStyle(sb.createPointSymbolizer(sb.createGraphic(null,
+                        sb.createMark("square", Color.RED), null))));
+
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(lines, style));
+        try {
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mc);
+            renderer.setBackBufferPool(pool);
+            return RendererBaseTest.renderImage(renderer, new ReferencedEnvelope(0, 10, 0, 10,
+                    DefaultGeographicCRS.WGS84), null, SIZE, SIZE);
+        } finally {
+            mc.dispose();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.styling.Rule;
+import org.geotools.styling.StyleBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+public class CompiledRulesTest {
+
+    static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2(null);
+
+    static final StyleBuilder SB = new StyleBuilder();
+
+    SimpleFeatureType type;
+
+    @Before
+    public void setUp() throws Exception {
+        type = DataUtilities.createType("test",
+                "name:String,code:java.lang.Object,value:java.lang.Object");
+    }
+
+    @Test
+    public void testTooFewRules() {
+        Rule[] rules = rules(equal("name", "a"), equal("name", "b"), equal("name", "c"));
+        assertNull(CompiledRules.compile(rules));
+    }
+
+    @Test
+    public void testUnindexableRules() {
+        Rule[] rules = rules(Filter.INCLUDE, FF.like(FF.property("name"), "a*"),
+                FF.not(equal("name", "a")), null, Filter.EXCLUDE);
+        assertNull(CompiledRules.compile(rules));
+    }
+
+    @Test
+    public void testEqualityIndex() {
+        Rule[] rules = rules(equal("name", "a"), equal("name", "b"), Filter.INCLUDE,
+                FF.or(equal("name", "c"), equal("name", "a")), equal("name", "d"),
+                equal("code", "a"));
+        CompiledRules compiled = CompiledRules.compile(rules);
+        assertTrue(compiled instanceof CompiledRules.EqualityRules);
+        assertArrayEquals(new int[] { 0, 2, 3, 5 }, compiled.getCandidates(feature("a", 1, 0)));
+        assertArrayEquals(new int[] { 1, 2, 5 }, compiled.getCandidates(feature("b", 1, 0)));
+        assertArrayEquals(new int[] { 2, 5 }, compiled.getCandidates(feature("z", 1, 0)));
+        assertArrayEquals(new int[] { 2, 5 }, compiled.getCandidates(feature(null, 1, 0)));
+    }
+
+    @Test
+    public void testNumericKeys() {
+        Rule[] rules = rules(equal("code", 1), equal("code", "2"), equal("code", 3.0),
+                equal("code", "-0"), equal("code", 5.5));
+        CompiledRules compiled = CompiledRules.compile(rules);
+        assertNotNull(compiled);
+        assertArrayEquals(new int[] { 0 }, compiled.getCandidates(feature(null, "1.0", 0)));
+        assertArrayEquals(new int[] { 1 }, compiled.getCandidates(feature(null, 2d, 0)));
+        assertArrayEquals(new int[] { 2 }, compiled.getCandidates(feature(null, "3", 0)));
+        assertArrayEquals(new int[] { 3 }, compiled.getCandidates(feature(null, 0d, 0)));
+        assertArrayEquals(new int[] { 4 }, compiled.getCandidates(feature(null, 5.5, 0)));
+        // a non integral key, integers might match it after a lossy conversion
+        assertNull(compiled.getCandidates(feature(null, 5, 0)));
+        // and floats are not handled
+        assertNull(compiled.getCandidates(feature(null, 5.5f, 0)));
+    }
+
+    @Test
+    public void testRangeIndex() {
+        Rule[] rules = rules(FF.less(FF.property("value"), FF.literal(10)),
+                FF.between(FF.property("value"), FF.literal(10), FF.literal(20)),
+                FF.and(FF.greater(FF.property("value"), FF.literal(20)),
+                        FF.lessOrEqual(FF.property("value"), FF.literal(30))),
+                FF.lessOrEqual(FF.literal(30), FF.property("value")),
+                FF.like(FF.property("name"), "a*"));
+        CompiledRules compiled = CompiledRules.compile(rules);
+        assertTrue(compiled instanceof CompiledRules.RangeRules);
+        assertArrayEquals(new int[] { 0, 4 }, compiled.getCandidates(feature(null, null, 5)));
+        assertArrayEquals(new int[] { 0, 1, 4 }, compiled.getCandidates(feature(null, null, 10)));
+        assertArrayEquals(new int[] { 1, 4 }, compiled.getCandidates(feature(null, null, 15d)));
+        assertArrayEquals(new int[] { 1, 2, 4 }, compiled.getCandidates(feature(null, null, 20L)));
+        assertArrayEquals(new int[] { 2, 3, 4 }, compiled.getCandidates(feature(null, null, 30)));
+        assertArrayEquals(new int[] { 3, 4 }, compiled.getCandidates(feature(null, null, 1e9)));
+        // strings are compared as strings by the filters
+        assertNull(compiled.getCandidates(feature(null, null, "15")));
+        assertNull(compiled.getCandidates(feature(null, null, null)));
+    }
+
+    @Test
+    public void testNonPlainBounds() {
+        // exponents might end up being compared as strings
+        Rule[] rules = rules(FF.less(FF.property("value"), FF.literal("1e1")),
+                FF.less(FF.property("value"), FF.literal("2e1")),
+                FF.less(FF.property("value"), FF.literal("3e1")),
+                FF.less(FF.property("value"), FF.literal("4e1")));
+        assertNull(CompiledRules.compile(rules));
+    }
+
+    @Test
+    public void testSameResultsAsSequential() throws Exception {
+        Random random = new Random(0);
+        List<Object> values = new ArrayList<Object>();
+        for (int i = -3; i < 15; i++) {
+            values.add(i);
+            values.add((long) i);
+            values.add(i + 0.5);
+            values.add((double) i);
+            values.add(String.valueOf(i));
+            values.add(i + ".5");
+            values.add("v" + i);
+        }
+        values.add(null);
+        values.add(Double.NaN);
+        values.add(-0d);
+        values.add(1.5f);
+        values.add("");
+
+        for (int round = 0; round < 200; round++) {
+            int count = 4 + random.nextInt(12);
+            boolean ranges = random.nextBoolean();
+            Filter[] filters = new Filter[count];
+            for (int i = 0; i < count; i++) {
+                filters[i] = randomFilter(random, values, ranges);
+            }
+            Rule[] rules = rules(filters);
+            CompiledRules compiled = CompiledRules.compile(rules);
+
+            for (int i = 0; i < 50; i++) {
+                SimpleFeature f = feature(pick(random, values), pick(random, values),
+                        pick(random, values));
+                List<Integer> expected = new ArrayList<Integer>();
+                for (int j = 0; j < rules.length; j++) {
+                    Filter filter = rules[j].getFilter();
+                    if (filter == null || filter.evaluate(f)) {
+                        expected.add(j);
+                    }
+                }
+                List<Integer> actual = new ArrayList<Integer>();
+                int[] candidates = compiled == null ? null : compiled.getCandidates(f);
+                int length = candidates != null ? candidates.length : rules.length;
+                for (int j = 0; j < length; j++) {
+                    Filter filter = rules[candidates != null ? candidates[j] : j].getFilter();
+                    if (filter == null || filter.evaluate(f)) {
+                        actual.add(candidates != null ? candidates[j] : j);
+                    }
+                }
+                assertEquals("Mismatch on " + f + " with " + java.util.Arrays.toString(filters),
+                        expected, actual);
+            }
+        }
+    }
+
+    Filter randomFilter(Random random, List<Object> values, boolean ranges) {
+        String property = random.nextInt(5) == 0 ? "name" : "value";
+        int type = random.nextInt(ranges ? 6 : 3);
+        switch (type) {
+        case 0:
+            return equal(property, pickNotNull(random, values));
+        case 1:
+            return FF.or(equal(property, pickNotNull(random, values)),
+                    equal(property, pickNotNull(random, values)));
+        case 2:
+            return random.nextBoolean() ? Filter.INCLUDE : FF.like(FF.property("name"), "v1*");
+        case 3:
+            return FF.between(FF.property(property), FF.literal(pickNotNull(random, values)),
+                    FF.literal(pickNotNull(random, values)));
+        case 4:
+            return FF.and(FF.greaterOrEqual(FF.property(property),
+                    FF.literal(pickNotNull(random, values))), FF.less(FF.property(property),
+                    FF.literal(pickNotNull(random, values))));
+        default:
+            return FF.greater(FF.literal(pickNotNull(random, values)), FF.property(property));
+        }
+    }
+
+    Object pick(Random random, List<Object> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    Object pickNotNull(Random random, List<Object> values) {
+        Object value;
+        do {
+            value = pick(random, values);
+        } while (value == null);
+        return value;
+    }
+
+    Filter equal(String property, Object value) {
+        return FF.equals(FF.property(property), FF.literal(value));
+    }
+
+    Rule[] rules(Filter... filters) {
+        Rule[] rules = new Rule[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            rules[i] = SB.createRule(SB.createPointSymbolizer());
+            rules[i].setFilter(filters[i]);
+        }
+        return rules;
+    }
+
+    SimpleFeature feature(Object name, Object code, Object value) {
+        return SimpleFeatureBuilder.build(type, new Object[] { name, code, value }, null);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.data.collection.CollectionFeatureSource;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class MetaTileRendererTest {
+
+    static final int TILE_SIZE = 64;
+
+    AtomicInteger queries = new AtomicInteger();
+
+    MapContent mc;
+
+    ReferencedEnvelope bounds = new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("lines", "geom:LineString:4326,id:int");
+        ListFeatureCollection lines = new ListFeatureCollection(type);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        GeometryFactory gf = new GeometryFactory();
+        for (int i = 0; i < 10; i++) {
+            fb.add(gf.createLineString(new Coordinate[] { new Coordinate(-1, i),
+                    new Coordinate(11, 10 - i) }));
+            fb.add(i);
+            lines.add(fb.buildFeature(null));
+        }
+        CollectionFeatureSource source = new CollectionFeatureSource(lines) {
+            @Override
+            public SimpleFeatureCollection getFeatures(Query query) {
+                queries.incrementAndGet();
+                return super.getFeatures(query);
+            }
+        };
+
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createLineSymbolizer(Color.BLUE, 3));
+        mc = new MapContent();
+        mc.addLayer(new FeatureLayer(source, style));
+    }
+
+    @After
+    public void tearDown() {
+        mc.dispose();
+    }
+
+    @Test
+    public void testSplitMatchesFullRendering() throws Exception {
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(mc);
+        BufferedImage full = RendererBaseTest.renderImage(renderer, bounds, null,
+                TILE_SIZE * 2, TILE_SIZE * 2);
+        queries.set(0);
+
+        MetaTileRenderer mtr = new MetaTileRenderer(renderer, TILE_SIZE, TILE_SIZE);
+        mtr.setBackground(Color.WHITE);
+        BufferedImage[][] tiles = mtr.render(bounds, 2, 2);
+
+        // a single query for the whole meta-tile
+        assertEquals(1, queries.get());
+        assertEquals(2, tiles.length);
+        for (int row = 0; row < 2; row++) {
+            assertEquals(2, tiles[row].length);
+            for (int col = 0; col < 2; col++) {
+                BufferedImage tile = tiles[row][col];
+                assertEquals(TILE_SIZE, tile.getWidth());
+                assertEquals(TILE_SIZE, tile.getHeight());
+                assertArrayEquals(full.getRGB(col * TILE_SIZE, row * TILE_SIZE, TILE_SIZE,
+                        TILE_SIZE, null, 0, TILE_SIZE), tile.getRGB(0, 0, TILE_SIZE, TILE_SIZE,
+                        null, 0, TILE_SIZE));
+            }
+        }
+    }
+
+    @Test
+    public void testGutter() throws Exception {
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(mc);
+        MetaTileRenderer mtr = new MetaTileRenderer(renderer, TILE_SIZE, TILE_SIZE);
+        mtr.setGutter(16);
+        BufferedImage[][] tiles = mtr.render(bounds, 3, 1);
+
+        assertEquals(1, queries.get());
+        assertEquals(1, tiles.length);
+        assertEquals(3, tiles[0].length);
+        for (BufferedImage tile : tiles[0]) {
+            assertEquals(TILE_SIZE, tile.getWidth());
+            assertEquals(TILE_SIZE, tile.getHeight());
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.renderer.RenderListener;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.PointSymbolizer;
+import org.geotools.styling.PolygonSymbolizer;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.geotools.styling.Symbolizer;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Checks painting in parallel bands, and preparing the features in parallel, generates the same
+ * output as serial rendering
+ */
+public class ParallelPaintingTest {
+
+    static final int SIZE = 256;
+
+    ListFeatureCollection lines;
+
+    ListFeatureCollection polygons;
+
+    ReferencedEnvelope bounds = new ReferencedEnvelope(0, 100, 0, 100,
+            DefaultGeographicCRS.WGS84);
+
+    @Before
+    public void setUp() throws Exception {
+        GeometryFactory gf = new GeometryFactory();
+        Random random = new Random(0);
+
+        SimpleFeatureType lineType = DataUtilities.createType("lines",
+                "geom:LineString:4326,id:int");
+        lines = new ListFeatureCollection(lineType);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(lineType);
+        for (int i = 0; i < 200; i++) {
+            Coordinate[] coords = new Coordinate[4];
+            for (int j = 0; j < coords.length; j++) {
+                coords[j] = new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100);
+            }
+            fb.add(gf.createLineString(coords));
+            fb.add(i);
+            lines.add(fb.buildFeature(null));
+        }
+
+        SimpleFeatureType polygonType = DataUtilities.createType("polygons",
+                "geom:Polygon:4326,id:int");
+        polygons = new ListFeatureCollection(polygonType);
+        fb = new SimpleFeatureBuilder(polygonType);
+        for (int i = 0; i < 200; i++) {
+            double x = random.nextDouble() * 100;
+            double y = random.nextDouble() * 100;
+            double w = random.nextDouble() * 20;
+            double h = random.nextDouble() * 20;
+            fb.add(gf.createPolygon(new Coordinate[] { new Coordinate(x, y),
+                    new Coordinate(x + w, y), new Coordinate(x + w / 2, y + h),
+                    new Coordinate(x, y) }));
+            fb.add(i);
+            polygons.add(fb.buildFeature(null));
+        }
+    }
+
+    @Test
+    public void testThickLines() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createLineSymbolizer(new Color(0, 0, 255, 128), 7));
+        assertSameOutput(lines, style);
+    }
+
+    @Test
+    public void testTranslucentPolygons() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        PolygonSymbolizer polygon = sb.createPolygonSymbolizer(Color.RED, Color.BLACK, 3);
+        polygon.getFill().setOpacity(sb.literalExpression(0.5));
+        // marks are not culled, they get painted in all bands
+        PointSymbolizer point = sb.createPointSymbolizer(sb.createGraphic(null,
+                sb.createMark("circle"), null, 1, 12, 0));
+        Style style = sb.createStyle();
+        style.featureTypeStyles().add(sb.createFeatureTypeStyle(null,
+                new Symbolizer[] { polygon, point }));
+        assertSameOutput(polygons, style);
+    }
+
+    @Test
+    public void testMultipleFeatureTypeStyles() throws Exception {
+        // two feature type styles, will be painted in back buffers and merged
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createLineSymbolizer(Color.BLACK, 9));
+        FeatureTypeStyle fts = sb.createFeatureTypeStyle(sb.createLineSymbolizer(Color.YELLOW, 5));
+        style.featureTypeStyles().add(fts);
+        assertSameOutput(lines, style);
+    }
+
+    @Test
+    public void testSharedThreadPool() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createLineSymbolizer(Color.BLUE, 3));
+        BufferedImage expected = render(lines, style, 1, null);
+        // a single thread pool forces the painter thread to paint all the bands by itself
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        try {
+            BufferedImage actual = render(lines, style, 4, pool);
+            assertSameImage(expected, actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelPreparation() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createLineSymbolizer(new Color(0, 0, 255, 128), 3));
+        FeatureTypeStyle fts = sb.createFeatureTypeStyle(sb.createTextSymbolizer(Color.BLACK,
+                sb.createFont("Serif", 10), "id"));
+        style.featureTypeStyles().add(fts);
+        BufferedImage expected = render(lines, style, 1, null);
+        BufferedImage actual = render(lines, style, 1, null,
+                StreamingRenderer.PARALLEL_PREPARATION_KEY, 4);
+        assertSameImage(expected, actual);
+    }
+
+    @Test
+    public void testParallelPreparationAndPainting() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createPolygonSymbolizer(Color.ORANGE, Color.BLACK, 2));
+        BufferedImage expected = render(polygons, style, 1, null);
+        BufferedImage actual = render(polygons, style, 4, null,
+                StreamingRenderer.PARALLEL_PREPARATION_KEY, 4);
+        assertSameImage(expected, actual);
+    }
+
+    @Test
+    public void testFeatureRenderedEvents() throws Exception {
+        // when a feature is notified as rendered, it must already be on the canvas
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createPolygonSymbolizer(Color.RED));
+        final BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        final List<String> missing = new ArrayList<String>();
+        final AtomicInteger checked = new AtomicInteger();
+        RenderListener listener = new RenderListener() {
+
+            public void featureRenderer(SimpleFeature feature) {
+                Coordinate[] coords = ((Geometry) feature.getDefaultGeometry()).getCoordinates();
+                double w = coords[1].x - coords[0].x;
+                double h = coords[2].y - coords[0].y;
+                // only check the triangles large enough to cover the pixel sampled
+                if (w > 5 && h > 5) {
+                    int x = (int) ((coords[0].x + w / 2) * SIZE / 100);
+                    int y = (int) ((100 - coords[0].y - h / 3) * SIZE / 100);
+                    if (image.getRGB(x, y) != Color.RED.getRGB()) {
+                        missing.add(feature.getID());
+                    }
+                    checked.incrementAndGet();
+                }
+            }
+
+            public void errorOccurred(Exception e) {
+                throw new RuntimeException(e);
+            }
+        };
+
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(polygons, style));
+        try {
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mc);
+            renderer.setGeneralizationDistance(0);
+            Map<Object, Object> hints = new HashMap<Object, Object>();
+            hints.put(StreamingRenderer.PARALLEL_PAINTING_KEY, 4);
+            renderer.setRendererHints(hints);
+            renderer.addRenderListener(listener);
+            Graphics2D graphics = image.createGraphics();
+            renderer.paint(graphics, new Rectangle(SIZE, SIZE), bounds);
+            graphics.dispose();
+        } finally {
+            mc.dispose();
+        }
+        assertTrue(checked.get() > 0);
+        assertEquals(Collections.emptyList(), missing);
+    }
+
+    void assertSameOutput(ListFeatureCollection features, Style style) throws Exception {
+        BufferedImage expected = render(features, style, 1, null);
+        BufferedImage actual = render(features, style, 4, null);
+        assertSameImage(expected, actual);
+    }
+
+    void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        int[] expectedPixels = expected.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+        int[] actualPixels = actual.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+        assertArrayEquals(expectedPixels, actualPixels);
+    }
+
+    BufferedImage render(ListFeatureCollection features, Style style, int threads,
+            ExecutorService pool, Object... extraHints) throws Exception {
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(features, style));
+        try {
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mc);
+            // no renderer side screenmap, it would force serial feature preparation
+            renderer.setGeneralizationDistance(0);
+            renderer.setJava2DHints(new RenderingHints(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON));
+            if (pool != null) {
+                renderer.setThreadPool(pool);
+            }
+            Map<Object, Object> hints = new HashMap<Object, Object>();
+            hints.put(StreamingRenderer.PARALLEL_PAINTING_KEY, threads);
+            for (int i = 0; i < extraHints.length; i += 2) {
+                hints.put(extraHints[i], extraHints[i + 1]);
+            }
+            renderer.setRendererHints(hints);
+            return RendererBaseTest.renderImage(renderer, bounds, null, SIZE, SIZE);
+        } finally {
+            mc.dispose();
+        }
+    }
+}
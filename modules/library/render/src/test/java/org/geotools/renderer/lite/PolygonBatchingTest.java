@@ -0,0 +1,291 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.renderer.RenderListener;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.PolygonSymbolizer;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Checks painting consecutive polygons in batches generates the same output as painting them
+ * one by one, as long as they do not overlap, including polygons sharing borders
+ */
+public class PolygonBatchingTest {
+
+    static final int SIZE = 256;
+
+    ListFeatureCollection polygons;
+
+    ReferencedEnvelope bounds = new ReferencedEnvelope(0, 100, 0, 100,
+            DefaultGeographicCRS.WGS84);
+
+    @Before
+    public void setUp() throws Exception {
+        GeometryFactory gf = new GeometryFactory();
+        Random random = new Random(0);
+
+        SimpleFeatureType type = DataUtilities.createType("polygons",
+                "geom:MultiPolygon:4326,id:int,parity:int");
+        polygons = new ListFeatureCollection(type);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        // a grid of small non overlapping footprints, randomly oriented, some with holes,
+        // some made of two parts
+        int id = 0;
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 20; j++) {
+                double x = i * 5 + 0.5;
+                double y = j * 5 + 0.5;
+                Polygon footprint = footprint(gf, random, x, y, 3.5, 3.5);
+                if (random.nextBoolean()) {
+                    fb.add(gf.createMultiPolygon(new Polygon[] { footprint }));
+                } else {
+                    Polygon small = footprint(gf, random, x + 3.8, y + 3.8, 0.5, 0.5);
+                    fb.add(gf.createMultiPolygon(new Polygon[] { footprint, small }));
+                }
+                fb.add(id);
+                fb.add(id % 2);
+                id++;
+                polygons.add(fb.buildFeature(null));
+            }
+        }
+    }
+
+    Polygon footprint(GeometryFactory gf, Random random, double x, double y, double w, double h) {
+        Coordinate[] shell = new Coordinate[] { new Coordinate(x, y), new Coordinate(x + w, y),
+                new Coordinate(x + w, y + h), new Coordinate(x, y + h), new Coordinate(x, y) };
+        if (random.nextBoolean()) {
+            reverse(shell);
+        }
+        LinearRing[] holes = new LinearRing[0];
+        if (random.nextBoolean()) {
+            Coordinate[] hole = new Coordinate[] { new Coordinate(x + w / 4, y + h / 4),
+                    new Coordinate(x + w / 2, y + h / 4), new Coordinate(x + w / 2, y + h / 2),
+                    new Coordinate(x + w / 4, y + h / 4) };
+            if (random.nextBoolean()) {
+                reverse(hole);
+            }
+            holes = new LinearRing[] { gf.createLinearRing(hole) };
+        }
+        return gf.createPolygon(gf.createLinearRing(shell), holes);
+    }
+
+    void reverse(Coordinate[] coordinates) {
+        for (int i = 0, j = coordinates.length - 1; i < j; i++, j--) {
+            Coordinate tmp = coordinates[i];
+            coordinates[i] = coordinates[j];
+            coordinates[j] = tmp;
+        }
+    }
+
+    @Test
+    public void testTranslucentFillAndStroke() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        PolygonSymbolizer polygon = sb.createPolygonSymbolizer(Color.RED, Color.BLACK, 1);
+        polygon.getFill().setOpacity(sb.literalExpression(0.5));
+        assertSameOutput(sb.createStyle(polygon), 1000);
+    }
+
+    @Test
+    public void testTranslucentFill() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        PolygonSymbolizer polygon = sb.createPolygonSymbolizer(Color.RED);
+        polygon.getFill().setOpacity(sb.literalExpression(0.5));
+        assertSameOutput(sb.createStyle(polygon), 1000);
+    }
+
+    @Test
+    public void testAdjacentStrokedPolygons() throws Exception {
+        // polygons sharing borders, the fill of each one covers part of the previous outlines
+        polygons = adjacentSquares();
+        StyleBuilder sb = new StyleBuilder();
+        assertSameOutput(sb.createStyle(sb.createPolygonSymbolizer(Color.YELLOW, Color.BLACK, 3)),
+                1000);
+        assertSameOutput(sb.createStyle(sb.createPolygonSymbolizer(
+                sb.createStroke(Color.BLACK, 3), null)), 1000);
+        assertSameOutput(sb.createStyle(sb.createPolygonSymbolizer(Color.YELLOW)), 1000);
+    }
+
+    @Test
+    public void testFeatureRenderedEvents() throws Exception {
+        // when a feature is notified as rendered, it must already be on the canvas
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createPolygonSymbolizer(Color.BLUE));
+        final BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        final List<String> missing = new ArrayList<String>();
+        RenderListener listener = new RenderListener() {
+
+            public void featureRenderer(SimpleFeature feature) {
+                // a point inside the footprint, away from its hole and its second part
+                Envelope envelope = ((Geometry) feature.getDefaultGeometry()).getGeometryN(0)
+                        .getEnvelopeInternal();
+                int x = (int) ((envelope.getMinX() + 3.2) * SIZE / 100);
+                int y = (int) ((100 - envelope.getMinY() - 0.3) * SIZE / 100);
+                if (image.getRGB(x, y) != Color.BLUE.getRGB()) {
+                    missing.add(feature.getID());
+                }
+            }
+
+            public void errorOccurred(Exception e) {
+                throw new RuntimeException(e);
+            }
+        };
+
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(polygons, style));
+        try {
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mc);
+            renderer.setGeneralizationDistance(0);
+            Map<Object, Object> hints = new HashMap<Object, Object>();
+            hints.put(StreamingRenderer.POLYGON_BATCH_SIZE_KEY, 1000);
+            renderer.setRendererHints(hints);
+            renderer.addRenderListener(listener);
+            Graphics2D graphics = image.createGraphics();
+            renderer.paint(graphics, new Rectangle(SIZE, SIZE), bounds);
+            graphics.dispose();
+        } finally {
+            mc.dispose();
+        }
+        assertEquals(Collections.emptyList(), missing);
+    }
+
+    ListFeatureCollection adjacentSquares() throws Exception {
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureType type = DataUtilities.createType("squares", "geom:Polygon:4326,id:int");
+        ListFeatureCollection squares = new ListFeatureCollection(type);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        int id = 0;
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                double x = i * 10;
+                double y = j * 10;
+                fb.add(gf.createPolygon(new Coordinate[] { new Coordinate(x, y),
+                        new Coordinate(x + 10, y), new Coordinate(x + 10, y + 10),
+                        new Coordinate(x, y + 10), new Coordinate(x, y) }));
+                fb.add(id++);
+                squares.add(fb.buildFeature(null));
+            }
+        }
+        return squares;
+    }
+
+    @Test
+    public void testSmallBatches() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createPolygonSymbolizer(Color.BLUE));
+        // a few polygons per batch, plus the polygons too large to be batched at all
+        assertSameOutput(style, 20);
+    }
+
+    @Test
+    public void testAlternatingRules() throws Exception {
+        // consecutive features use different styles, the painting order must be preserved
+        StyleBuilder sb = new StyleBuilder();
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+        Rule even = sb.createRule(sb.createPolygonSymbolizer(Color.ORANGE, Color.BLACK, 1));
+        even.setFilter(ff.equals(ff.property("parity"), ff.literal(0)));
+        Rule odd = sb.createRule(sb.createPolygonSymbolizer(Color.GREEN, Color.BLUE, 2));
+        odd.setElseFilter(true);
+        FeatureTypeStyle fts = sb.createFeatureTypeStyle("polygons", new Rule[] { even, odd });
+        Style style = sb.createStyle();
+        style.featureTypeStyles().add(fts);
+        assertSameOutput(style, 1000);
+    }
+
+    @Test
+    public void testParallelPainting() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createPolygonSymbolizer(Color.YELLOW));
+        BufferedImage expected = render(style);
+        BufferedImage actual = render(style, StreamingRenderer.POLYGON_BATCH_SIZE_KEY, 1000,
+                StreamingRenderer.PARALLEL_PAINTING_KEY, 4);
+        assertSameImage(expected, actual);
+    }
+
+    void assertSameOutput(Style style, int batchSize) throws Exception {
+        BufferedImage expected = render(style);
+        BufferedImage actual = render(style, StreamingRenderer.POLYGON_BATCH_SIZE_KEY,
+                batchSize);
+        assertSameImage(expected, actual);
+    }
+
+    void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        int[] expectedPixels = expected.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+        int[] actualPixels = actual.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+        assertArrayEquals(expectedPixels, actualPixels);
+    }
+
+    BufferedImage render(Style style, Object... hints) throws Exception {
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(polygons, style));
+        try {
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mc);
+            renderer.setGeneralizationDistance(0);
+            // antialiasing off, older Java2D rasterizers compute slightly different edge
+            // coverage for a single path and its parts painted separately
+            renderer.setJava2DHints(new RenderingHints(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_OFF));
+            Map<Object, Object> rendererHints = new HashMap<Object, Object>();
+            for (int i = 0; i < hints.length; i += 2) {
+                rendererHints.put(hints[i], hints[i + 1]);
+            }
+            renderer.setRendererHints(rendererHints);
+            return RendererBaseTest.renderImage(renderer, bounds, null, SIZE, SIZE);
+        } finally {
+            mc.dispose();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.styling.StyleBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class ProgressiveRenderingTest {
+
+    static final int SIZE = 100;
+
+    static final Color[] COLORS = new Color[] { Color.RED, Color.GREEN, Color.BLUE };
+
+    ReferencedEnvelope bounds = new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
+
+    List<ListFeatureCollection> collections = new ArrayList<ListFeatureCollection>();
+
+    BufferedImage image;
+
+    List<Integer> completed = new ArrayList<Integer>();
+
+    List<BufferedImage> frames = new ArrayList<BufferedImage>();
+
+    ProgressiveRenderListener listener = new ProgressiveRenderListener() {
+
+        @Override
+        public void featureRenderer(SimpleFeature feature) {
+        }
+
+        @Override
+        public void errorOccurred(Exception e) {
+        }
+
+        @Override
+        public void frameRendered(int completedLayers, int layerCount) {
+            assertEquals(COLORS.length, layerCount);
+            completed.add(completedLayers);
+            BufferedImage copy = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_4BYTE_ABGR);
+            copy.setData(image.getData());
+            frames.add(copy);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("lines", "geom:LineString:4326");
+        GeometryFactory gf = new GeometryFactory();
+        // one vertical line per layer, at x = 2, 5, 8
+        for (int i = 0; i < COLORS.length; i++) {
+            ListFeatureCollection lines = new ListFeatureCollection(type);
+            SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+            double x = 2 + i * 3;
+            fb.add(gf.createLineString(new Coordinate[] { new Coordinate(x, 0),
+                    new Coordinate(x, 10) }));
+            lines.add(fb.buildFeature(null));
+            collections.add(lines);
+        }
+    }
+
+    @Test
+    public void testFramePerLayer() throws Exception {
+        render(Collections.<Object, Object> emptyMap());
+        assertFrames();
+    }
+
+    @Test
+    public void testFramePerLayerParallelPainting() throws Exception {
+        render(Collections.<Object, Object> singletonMap(
+                StreamingRenderer.PARALLEL_PAINTING_KEY, 4));
+        assertFrames();
+    }
+
+    @Test
+    public void testHiddenLastLayer() throws Exception {
+        MapContent mc = buildMap();
+        mc.layers().get(COLORS.length - 1).setVisible(false);
+        render(mc, Collections.<Object, Object> emptyMap());
+        // the hidden layer still completes the rendering
+        assertEquals(COLORS.length, completed.size());
+        assertEquals(COLORS.length, (int) completed.get(COLORS.length - 1));
+        BufferedImage frame = frames.get(COLORS.length - 1);
+        int x = (int) Math.round((2 + (COLORS.length - 1) * 3) * SIZE / 10d);
+        assertEquals(0, new Color(frame.getRGB(x, SIZE / 2), true).getAlpha());
+    }
+
+    @Test
+    public void testNoListener() throws Exception {
+        MapContent mc = buildMap();
+        try {
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mc);
+            RendererBaseTest.renderImage(renderer, bounds, new CountingRenderListener(), SIZE,
+                    SIZE);
+            assertEquals(0, completed.size());
+        } finally {
+            mc.dispose();
+        }
+    }
+
+    void assertFrames() {
+        assertEquals(3, completed.size());
+        for (int i = 0; i < COLORS.length; i++) {
+            assertEquals(i + 1, (int) completed.get(i));
+            BufferedImage frame = frames.get(i);
+            // the layers painted so far are in, the others are not
+            for (int j = 0; j < COLORS.length; j++) {
+                int x = (int) Math.round((2 + j * 3) * SIZE / 10d);
+                Color color = new Color(frame.getRGB(x, SIZE / 2), true);
+                if (j <= i) {
+                    assertEquals(COLORS[j], color);
+                } else {
+                    assertEquals(0, color.getAlpha());
+                }
+            }
+        }
+    }
+
+    MapContent buildMap() {
+        StyleBuilder sb = new StyleBuilder();
+        MapContent mc = new MapContent();
+        for (int i = 0; i < COLORS.length; i++) {
+            mc.addLayer(new FeatureLayer(collections.get(i),
+                    sb.createStyle(sb.createLineSymbolizer(COLORS[i], 3))));
+        }
+        return mc;
+    }
+
+    void render(Map<Object, Object> hints) {
+        render(buildMap(), hints);
+    }
+
+    void render(MapContent mc, Map<Object, Object> hints) {
+        try {
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mc);
+            renderer.setRendererHints(hints);
+            renderer.addRenderListener(listener);
+            image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_4BYTE_ABGR);
+            Graphics2D graphics = image.createGraphics();
+            try {
+                renderer.paint(graphics, new Rectangle(SIZE, SIZE), bounds);
+            } finally {
+                graphics.dispose();
+            }
+        } finally {
+            mc.dispose();
+        }
+    }
+}
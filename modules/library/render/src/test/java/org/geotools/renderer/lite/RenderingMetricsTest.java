@@ -0,0 +1,178 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class RenderingMetricsTest {
+
+    static final int SIZE = 100;
+
+    ListFeatureCollection lines;
+
+    ReferencedEnvelope bounds = new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
+
+    List<LayerRenderingMetrics> collected = new ArrayList<LayerRenderingMetrics>();
+
+    List<Long> labelPlacementTimes = new ArrayList<Long>();
+
+    RenderingMetricsListener listener = new RenderingMetricsListener() {
+
+        @Override
+        public void featureRenderer(SimpleFeature feature) {
+        }
+
+        @Override
+        public void errorOccurred(Exception e) {
+        }
+
+        @Override
+        public void layerRendered(LayerRenderingMetrics metrics) {
+            collected.add(metrics);
+        }
+
+        @Override
+        public void labelsPainted(long labelPlacementTime) {
+            labelPlacementTimes.add(labelPlacementTime);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("lines", "geom:LineString:4326,id:int");
+        lines = new ListFeatureCollection(type);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        GeometryFactory gf = new GeometryFactory();
+        for (int i = 0; i < 10; i++) {
+            fb.add(gf.createLineString(new Coordinate[] { new Coordinate(0, i),
+                    new Coordinate(10, i) }));
+            fb.add(i);
+            lines.add(fb.buildFeature(null));
+        }
+    }
+
+    @Test
+    public void testSingleFeatureTypeStyle() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createLineSymbolizer(Color.BLUE, 2));
+        Layer layer = new FeatureLayer(lines, style);
+
+        render(layer);
+
+        assertEquals(1, collected.size());
+        LayerRenderingMetrics metrics = collected.get(0);
+        assertSame(layer, metrics.getLayer());
+        assertEquals("1", metrics.getLayerId());
+        assertEquals(10, metrics.getFeaturesRead());
+        assertEquals(0, metrics.getBackBufferBytes());
+        assertTrue(metrics.getQueryTime() > 0);
+        assertTrue(metrics.getTransformTime() > 0);
+        assertTrue(metrics.getPaintTime() > 0);
+        assertTrue(metrics.getRenderingTime() > 0);
+
+        assertEquals(1, metrics.getFeatureTypeStyles().size());
+        FeatureTypeStyleMetrics fts = metrics.getFeatureTypeStyles().get(0);
+        assertSame(style.featureTypeStyles().get(0), fts.getFeatureTypeStyle());
+        assertEquals(10, fts.getFeaturesRead());
+        assertEquals(metrics.getPaintTime(), fts.getPaintTime());
+    }
+
+    @Test
+    public void testMultipleFeatureTypeStyles() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createLineSymbolizer(Color.BLACK, 4));
+        style.featureTypeStyles().add(
+                sb.createFeatureTypeStyle(sb.createLineSymbolizer(Color.YELLOW, 2)));
+        style.featureTypeStyles().add(
+                sb.createFeatureTypeStyle(sb.createTextSymbolizer(Color.BLACK,
+                        sb.createFont("Serif", 10), "id")));
+        Layer layer = new FeatureLayer(lines, style);
+
+        render(layer);
+
+        assertEquals(1, collected.size());
+        LayerRenderingMetrics metrics = collected.get(0);
+        // the feature type styles share the same query
+        assertEquals(10, metrics.getFeaturesRead());
+        assertEquals(3, metrics.getFeatureTypeStyles().size());
+        for (FeatureTypeStyleMetrics fts : metrics.getFeatureTypeStyles()) {
+            assertEquals(0, fts.getFeaturesRead());
+            assertTrue(fts.getTransformTime() > 0);
+        }
+        // the second fts is painted in a back buffer, the third only has labels
+        assertEquals(0, metrics.getFeatureTypeStyles().get(0).getBackBufferBytes());
+        assertEquals(SIZE * SIZE * 4, metrics.getFeatureTypeStyles().get(1).getBackBufferBytes());
+        assertTrue(metrics.getFeatureTypeStyles().get(2).getLabelTime() > 0);
+        assertEquals(0, metrics.getFeatureTypeStyles().get(2).getPaintTime());
+        // the final label placement is reported once, after the layers
+        assertEquals(1, labelPlacementTimes.size());
+        assertTrue(labelPlacementTimes.get(0) > 0);
+    }
+
+    @Test
+    public void testNoListener() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createLineSymbolizer(Color.BLUE, 2));
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(lines, style));
+        try {
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mc);
+            RendererBaseTest.renderImage(renderer, bounds, new CountingRenderListener(), SIZE,
+                    SIZE);
+            assertTrue(collected.isEmpty());
+        } finally {
+            mc.dispose();
+        }
+    }
+
+    void render(Layer layer) {
+        MapContent mc = new MapContent();
+        mc.addLayer(layer);
+        try {
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mc);
+            RendererBaseTest.renderImage(renderer, bounds, listener, SIZE, SIZE);
+        } finally {
+            mc.dispose();
+        }
+    }
+}
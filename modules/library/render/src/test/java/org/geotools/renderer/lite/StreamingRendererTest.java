@@ -24,19 +24,28 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.media.jai.Interpolation;
@@ -71,6 +80,8 @@ import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.renderer.RenderListener;
 import org.geotools.renderer.lite.StreamingRenderer.RenderingRequest;
+import org.geotools.renderer.style.MarkSpriteCache;
+import org.geotools.renderer.style.Style2DCache;
 import org.geotools.resources.coverage.FeatureUtilities;
 import org.geotools.styling.DescriptionImpl;
 import org.geotools.styling.Graphic;
@@ -524,6 +535,74 @@ public class StreamingRendererTest {
         graphics.dispose();
     }
 
+    @Test
+    public void testScreenMapPoints() {
+        // two points in the same pixel, and one far away
+        DefaultFeatureCollection fc = new DefaultFeatureCollection();
+        fc.add(SimpleFeatureBuilder.build(testPointFeatureType,
+                new Object[] { gf.createPoint(new Coordinate(1.1, 1.1)) }, "p1"));
+        fc.add(SimpleFeatureBuilder.build(testPointFeatureType,
+                new Object[] { gf.createPoint(new Coordinate(1.2, 1.2)) }, "p2"));
+        fc.add(SimpleFeatureBuilder.build(testPointFeatureType,
+                new Object[] { gf.createPoint(new Coordinate(6, 6)) }, "p3"));
+        SimpleFeatureSource pointSource = new CollectionFeatureSource(fc);
+
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(pointSource, createPointStyle()));
+        StreamingRenderer sr = new StreamingRenderer();
+        sr.setMapContent(mc);
+        final List<String> features = new ArrayList<String>();
+        sr.addRenderListener(new RenderListener() {
+
+            @Override
+            public void featureRenderer(SimpleFeature feature) {
+                features.add(feature.getID());
+            }
+
+            @Override
+            public void errorOccurred(Exception e) {
+                // nothing to do
+            }
+        });
+        ReferencedEnvelope envelope = new ReferencedEnvelope(0, 8, 0, 8,
+                DefaultGeographicCRS.WGS84);
+        try {
+            // culling is off by default, all points are painted
+            BufferedImage off = new BufferedImage(8, 8, BufferedImage.TYPE_3BYTE_BGR);
+            Graphics2D graphics = off.createGraphics();
+            sr.paint(graphics, new Rectangle(0, 0, 8, 8), envelope);
+            graphics.dispose();
+            assertEquals(Arrays.asList("p1", "p2", "p3"), features);
+
+            // one pixel per unit, the second point is skipped
+            features.clear();
+            Map hints = new HashMap();
+            hints.put(StreamingRenderer.POINT_SCREENMAP_KEY, true);
+            sr.setRendererHints(hints);
+            BufferedImage on = new BufferedImage(8, 8, BufferedImage.TYPE_3BYTE_BGR);
+            graphics = on.createGraphics();
+            sr.paint(graphics, new Rectangle(0, 0, 8, 8), envelope);
+            graphics.dispose();
+            assertEquals(Arrays.asList("p1", "p3"), features);
+            // the skipped mark was painted over the first one, at the same pixel
+            for (int x = 0; x < 8; x++) {
+                for (int y = 0; y < 8; y++) {
+                    assertEquals(off.getRGB(x, y), on.getRGB(x, y));
+                }
+            }
+
+            // without generalization all points are painted
+            features.clear();
+            sr.setGeneralizationDistance(0);
+            graphics = on.createGraphics();
+            sr.paint(graphics, new Rectangle(0, 0, 8, 8), envelope);
+            graphics.dispose();
+            assertEquals(Arrays.asList("p1", "p2", "p3"), features);
+        } finally {
+            mc.dispose();
+        }
+    }
+
     /**
      * Test that we don't have the geometry added twice by StreamingRenderer#findStyleAttributes when geofence is
      * filtering a layer.
@@ -632,6 +711,126 @@ public class StreamingRendererTest {
 
         assertTrue(errors == 0);
     }
-}
 
+    @Test
+    public void testStyleCacheAcrossPaints() throws Exception {
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(createLineCollection(), createLineStyle()));
+        ReferencedEnvelope reWgs = new ReferencedEnvelope(new Envelope(-180,
+                180, -90, 90), DefaultGeographicCRS.WGS84);
+        Style2DCache cache = Style2DCache.getDefaultInstance();
+
+        // a new renderer per paint, as a web map service would do per request
+        paintOnce(mc, reWgs);
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+        int size = cache.getSize();
+
+        paintOnce(mc, reWgs);
+        assertTrue(cache.getHits() > hits);
+        assertEquals(misses, cache.getMisses());
+        assertEquals(size, cache.getSize());
+    }
 
+    private BufferedImage paintOnce(MapContent mc, ReferencedEnvelope envelope) {
+        StreamingRenderer sr = new StreamingRenderer();
+        sr.setMapContent(mc);
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = image.createGraphics();
+        sr.paint(graphics, new Rectangle(200, 200), envelope);
+        graphics.dispose();
+        return image;
+    }
+
+    @Test
+    public void testConcurrentLabels() throws Exception {
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.setName("Labels");
+        builder.add("geom", Point.class, DefaultGeographicCRS.WGS84);
+        builder.add("name", String.class);
+        SimpleFeatureType type = builder.buildFeatureType();
+        StyleBuilder sb = new StyleBuilder();
+        final ReferencedEnvelope reWgs = new ReferencedEnvelope(new Envelope(-180,
+                180, -90, 90), DefaultGeographicCRS.WGS84);
+
+        // same style and locations, different labels
+        final MapContent[] maps = new MapContent[2];
+        String[] labels = new String[] { "Short", "A much longer label" };
+        for (int i = 0; i < maps.length; i++) {
+            DefaultFeatureCollection fc = new DefaultFeatureCollection();
+            for (int j = 0; j < 4; j++) {
+                fc.add(SimpleFeatureBuilder.build(type, new Object[] {
+                        gf.createPoint(new Coordinate(-120 + j * 80, j * 20 - 30)), labels[i] },
+                        null));
+            }
+            Style style = sb.createStyle(sb.createTextSymbolizer(Color.BLACK,
+                    sb.createFont("Serif", 12), "name"));
+            maps[i] = new MapContent();
+            maps[i].addLayer(new FeatureLayer(fc, style));
+        }
+        final BufferedImage[] expected = new BufferedImage[maps.length];
+        for (int i = 0; i < maps.length; i++) {
+            expected[i] = paintOnce(maps[i], reWgs);
+        }
+
+        // paint both maps at the same time, the labels must not leak from one to the other
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<BufferedImage>> results = new ArrayList<Future<BufferedImage>>();
+            for (int i = 0; i < 40; i++) {
+                final MapContent mc = maps[i % maps.length];
+                results.add(executor.submit(new Callable<BufferedImage>() {
+                    public BufferedImage call() throws Exception {
+                        return paintOnce(mc, reWgs);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertPixelsEqual(expected[i % maps.length], results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+            for (MapContent mc : maps) {
+                mc.dispose();
+            }
+        }
+    }
+
+    private void assertPixelsEqual(BufferedImage expected, BufferedImage actual) {
+        byte[] expectedData = ((DataBufferByte) expected.getRaster().getDataBuffer()).getData();
+        byte[] actualData = ((DataBufferByte) actual.getRaster().getDataBuffer()).getData();
+        assertTrue(Arrays.equals(expectedData, actualData));
+    }
+
+    @Test
+    public void testMarkSpritesOptIn() throws Exception {
+        DefaultFeatureCollection fc = new DefaultFeatureCollection();
+        for (int i = 0; i < 10; i++) {
+            fc.add(createPoint(i * 10 - 50, i * 5 - 25));
+        }
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(fc, createPointStyle()));
+        ReferencedEnvelope reWgs = new ReferencedEnvelope(new Envelope(-180,
+                180, -90, 90), DefaultGeographicCRS.WGS84);
+        MarkSpriteCache cache = MarkSpriteCache.getDefaultInstance();
+
+        // marks are painted as vectors unless sprites are requested
+        long lookups = cache.getHits() + cache.getMisses();
+        StreamingRenderer sr = new StreamingRenderer();
+        sr.setMapContent(mc);
+        sr.setRendererHints(new HashMap());
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = image.createGraphics();
+        sr.paint(graphics, new Rectangle(200, 200), reWgs);
+        graphics.dispose();
+        assertEquals(lookups, cache.getHits() + cache.getMisses());
+
+        Map hints = new HashMap();
+        hints.put(StreamingRenderer.MARK_SPRITES_KEY, true);
+        sr.setRendererHints(hints);
+        graphics = image.createGraphics();
+        sr.paint(graphics, new Rectangle(200, 200), reWgs);
+        graphics.dispose();
+        assertEquals(lookups + fc.size(), cache.getHits() + cache.getMisses());
+    }
+}
@@ -26,8 +26,12 @@ import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.geotools.data.collection.SpatialIndexFeatureCollection;
+import org.geotools.data.collection.SpatialIndexFeatureSource;
 import org.geotools.data.property.PropertyDataStore;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.geometry.jts.ReferencedEnvelope;
@@ -120,6 +124,35 @@ public class ZOrderTest {
         runRoadsBuildingTest("z", "theGroup", "roads-buildings-group-z-zoomedout");
     }
 
+    @Test
+    public void testSingleZAscendingRendererSort() throws Exception {
+        // the source cannot sort, the renderer does, spilling to disk past two features
+        Style style = RendererBaseTest.loadStyle(this, "zorder/zpolygon.sld");
+        forceSortBy(style, "z");
+
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(unsortable(zsquares), style));
+
+        runImageComparison("z-ascending", mc, StreamingRenderer.SORT_MEMORY_BUDGET_KEY, 2);
+    }
+
+    @Test
+    public void testCrossRoadsGroupedRendererSort() throws Exception {
+        Style style = RendererBaseTest.loadStyle(this, "zorder/zroads.sld");
+        forceSortBy(style, "z");
+        forceSortByGroup(style, "theGroup");
+
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(unsortable(zroads), style));
+
+        runImageComparison("roads-group", mc, StreamingRenderer.SORT_MEMORY_BUDGET_KEY, 2);
+    }
+
+    private SimpleFeatureSource unsortable(SimpleFeatureSource source) throws IOException {
+        return new SpatialIndexFeatureSource(new SpatialIndexFeatureCollection(
+                source.getFeatures()));
+    }
+
     private void runZSquaresTest(String styleName, String sortBy, String referenceImageName)
             throws Exception {
         Style style = RendererBaseTest.loadStyle(this, styleName);
@@ -160,10 +193,17 @@ public class ZOrderTest {
         runImageComparison(referenceImageName, mc);
     }
 
-    private void runImageComparison(String referenceImageName, MapContent mc)
-            throws Exception, IOException {
+    private void runImageComparison(String referenceImageName, MapContent mc,
+            Object... rendererHints) throws Exception, IOException {
         StreamingRenderer renderer = new StreamingRenderer();
         renderer.setMapContent(mc);
+        if (rendererHints.length > 0) {
+            Map<Object, Object> hints = new HashMap<Object, Object>();
+            for (int i = 0; i < rendererHints.length; i += 2) {
+                hints.put(rendererHints[i], rendererHints[i + 1]);
+            }
+            renderer.setRendererHints(hints);
+        }
         renderer.setJava2DHints(new RenderingHints(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON));
         renderer.addRenderListener(new RenderListener() {
 
@@ -2088,4 +2088,70 @@ public class RasterSymbolizerTest  extends org.junit.Assert{
 		int dataType = outputImage.getSampleModel().getDataType();
 		assertEquals(DataBuffer.TYPE_BYTE, dataType);
 	}
+
+	@Test
+	public void testFusedColorMap() throws IOException {
+		final GridSampleDimension[] gsd = { new GridSampleDimension("red"),
+				new GridSampleDimension("green"), new GridSampleDimension("blue") };
+		GeneralEnvelope envelope = new GeneralEnvelope(new double[] { -180, -90 },
+				new double[] { 180, 90 });
+		envelope.setCoordinateReferenceSystem(DefaultGeographicCRS.WGS84);
+		final GridCoverage2D gc = CoverageFactoryFinder.getGridCoverageFactory(null).create(
+				"name", JAI.create("ImageRead", TestData.file(this, "bahamas_hires.jpg")),
+				envelope, gsd, null, null);
+
+		// color map on the second band, the typical DEM style
+		StyleBuilder sldBuilder = new StyleBuilder();
+		RasterSymbolizer rs = sldBuilder.createRasterSymbolizer();
+		rs.setColorMap(sldBuilder.createColorMap(new String[] { "low", "mid", "high" },
+				new double[] { 0, 128, 255 }, new Color[] { Color.BLUE, Color.GREEN, Color.RED },
+				ColorMap.TYPE_RAMP));
+		final ChannelSelection chSel = new ChannelSelectionImpl();
+		final SelectedChannelType chTypeGray = new SelectedChannelTypeImpl();
+		chTypeGray.setChannelName("2");
+		chSel.setGrayChannel(chTypeGray);
+		rs.setChannelSelection(chSel);
+		assertFusedOutput(gc, rs, 0);
+
+		// the gamma correction is applied on the palette, small rounding differences expected
+		final ContrastEnhancement ce = new ContrastEnhancementImpl();
+		ce.setGammaValue(sldBuilder.literalExpression(0.5));
+		rs.setContrastEnhancement(ce);
+		assertFusedOutput(gc, rs, 4);
+
+		// contrast enhancement methods need the image statistics, cannot be fused
+		ce.setMethod(ContrastMethod.NORMALIZE);
+		assertFalse(FusedColorMapNode.canFuse(rs));
+	}
+
+	private void assertFusedOutput(GridCoverage2D gc, RasterSymbolizer rs, int tolerance) {
+		assertTrue(FusedColorMapNode.canFuse(rs));
+		RasterSymbolizerHelper rsh = new RasterSymbolizerHelper(gc, null);
+		rsh.fusedExecution = false;
+		rsh.visit(rs);
+		final RenderedImage expected = ((GridCoverage2D) rsh.getOutput()).getRenderedImage();
+
+		rsh = new RasterSymbolizerHelper(gc, null);
+		rsh.fusedExecution = true;
+		rsh.visit(rs);
+		final RenderedImage actual = ((GridCoverage2D) rsh.getOutput()).getRenderedImage();
+
+		// a single paletted image, no intermediate rgb expansion
+		assertTrue(actual.getColorModel() instanceof IndexColorModel);
+		final BufferedImage expectedImage = PlanarImage.wrapRenderedImage(expected)
+				.getAsBufferedImage();
+		final BufferedImage actualImage = PlanarImage.wrapRenderedImage(actual)
+				.getAsBufferedImage();
+		assertEquals(expectedImage.getWidth(), actualImage.getWidth());
+		assertEquals(expectedImage.getHeight(), actualImage.getHeight());
+		for (int y = 0; y < expectedImage.getHeight(); y += 7) {
+			for (int x = 0; x < expectedImage.getWidth(); x += 7) {
+				final int e = expectedImage.getRGB(x, y);
+				final int a = actualImage.getRGB(x, y);
+				for (int shift = 0; shift < 32; shift += 8) {
+					assertEquals((e >> shift) & 0xFF, (a >> shift) & 0xFF, tolerance);
+				}
+			}
+		}
+	}
 }
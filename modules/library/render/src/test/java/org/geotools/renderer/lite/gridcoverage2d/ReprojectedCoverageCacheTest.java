@@ -0,0 +1,174 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite.gridcoverage2d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import org.geotools.coverage.grid.io.GridCoverage2DReader;
+import org.geotools.referencing.crs.DefaultEngineeringCRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.renderer.lite.gridcoverage2d.ReprojectedCoverageCache.CachedTile;
+import org.geotools.renderer.lite.gridcoverage2d.ReprojectedCoverageCache.TileKey;
+import org.junit.Test;
+
+public class ReprojectedCoverageCacheTest {
+
+    static final int TILE_SIZE = 16;
+
+    /**
+     * Memory used by a 16x16 RGBA tile
+     */
+    static final long TILE_MEMORY = 64 + TILE_SIZE * TILE_SIZE * 4;
+
+    CachedTile newTile() {
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE,
+                BufferedImage.TYPE_4BYTE_ABGR);
+        return new CachedTile(image.getRaster(), image.getColorModel());
+    }
+
+    TileKey newKey(Object reader, long col, long row) {
+        return new TileKey(reader, DefaultGeographicCRS.WGS84, 0.1, 0.1, col, row,
+                Collections.emptyList());
+    }
+
+    @Test
+    public void testDisabled() {
+        assertFalse(new ReprojectedCoverageCache(0, TILE_SIZE).isEnabled());
+        assertTrue(new ReprojectedCoverageCache(1024, TILE_SIZE).isEnabled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTileSize() {
+        new ReprojectedCoverageCache(1024, 0);
+    }
+
+    @Test
+    public void testKeyEquality() {
+        Object reader = new Object();
+        assertEquals(newKey(reader, 1, 2), newKey(reader, 1, 2));
+        assertEquals(newKey(reader, 1, 2).hashCode(), newKey(reader, 1, 2).hashCode());
+        // numerical noise in the resolution does not matter
+        assertEquals(newKey(reader, 1, 2), new TileKey(reader, DefaultGeographicCRS.WGS84,
+                0.1 + 1e-15, 0.1, 1, 2, Collections.emptyList()));
+        // but everything else does
+        assertFalse(newKey(reader, 1, 2).equals(newKey(reader, 2, 1)));
+        assertFalse(newKey(reader, 1, 2).equals(newKey(new Object(), 1, 2)));
+        assertFalse(newKey(reader, 1, 2).equals(new TileKey(reader,
+                DefaultEngineeringCRS.GENERIC_2D, 0.1, 0.1, 1, 2, Collections.emptyList())));
+        assertFalse(newKey(reader, 1, 2).equals(new TileKey(reader,
+                DefaultGeographicCRS.WGS84, 0.2, 0.1, 1, 2, Collections.emptyList())));
+        assertFalse(newKey(reader, 1, 2).equals(new TileKey(reader,
+                DefaultGeographicCRS.WGS84, 0.1, 0.1, 1, 2, Collections.singletonList("x"))));
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        ReprojectedCoverageCache cache = new ReprojectedCoverageCache(TILE_MEMORY * 10, TILE_SIZE);
+        Object reader = new Object();
+        assertNull(cache.get(newKey(reader, 0, 0)));
+        CachedTile tile = newTile();
+        cache.put(newKey(reader, 0, 0), tile);
+        assertSame(tile, cache.get(newKey(reader, 0, 0)));
+        assertSame(tile, cache.get(newKey(reader, 0, 0)));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2d / 3, cache.getHitRatio(), 1e-9);
+        assertEquals(1, cache.getSize());
+        assertEquals(TILE_MEMORY, cache.getMemoryUsage());
+    }
+
+    @Test
+    public void testMemoryBound() {
+        ReprojectedCoverageCache cache = new ReprojectedCoverageCache(TILE_MEMORY * 3, TILE_SIZE);
+        Object reader = new Object();
+        cache.put(newKey(reader, 0, 0), newTile());
+        cache.put(newKey(reader, 1, 0), newTile());
+        cache.put(newKey(reader, 2, 0), newTile());
+        // touch the first one, the second becomes the least recently used
+        assertNotNull(cache.get(newKey(reader, 0, 0)));
+        cache.put(newKey(reader, 3, 0), newTile());
+
+        assertEquals(3, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(TILE_MEMORY * 3, cache.getMemoryUsage());
+        assertNotNull(cache.get(newKey(reader, 0, 0)));
+        assertNull(cache.get(newKey(reader, 1, 0)));
+        assertNotNull(cache.get(newKey(reader, 2, 0)));
+        assertNotNull(cache.get(newKey(reader, 3, 0)));
+    }
+
+    @Test
+    public void testTileTooLarge() {
+        ReprojectedCoverageCache cache = new ReprojectedCoverageCache(TILE_MEMORY - 1, TILE_SIZE);
+        cache.put(newKey(new Object(), 0, 0), newTile());
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getMemoryUsage());
+    }
+
+    @Test
+    public void testEmptyTile() {
+        ReprojectedCoverageCache cache = new ReprojectedCoverageCache(TILE_MEMORY, TILE_SIZE);
+        Object reader = new Object();
+        cache.put(newKey(reader, 0, 0), CachedTile.EMPTY);
+        CachedTile tile = cache.get(newKey(reader, 0, 0));
+        assertSame(CachedTile.EMPTY, tile);
+        assertNull(tile.raster);
+    }
+
+    @Test
+    public void testInvalidateAndClear() {
+        ReprojectedCoverageCache cache = new ReprojectedCoverageCache(TILE_MEMORY * 10, TILE_SIZE);
+        GridCoverage2DReader reader1 = newReader();
+        GridCoverage2DReader reader2 = newReader();
+        cache.put(newKey(reader1, 0, 0), newTile());
+        cache.put(newKey(reader1, 1, 0), newTile());
+        cache.put(newKey(reader2, 0, 0), newTile());
+
+        cache.invalidate(reader1);
+        assertEquals(1, cache.getSize());
+        assertEquals(TILE_MEMORY, cache.getMemoryUsage());
+        assertNotNull(cache.get(newKey(reader2, 0, 0)));
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getMemoryUsage());
+    }
+
+    GridCoverage2DReader newReader() {
+        // the cache only uses the reader identity
+        return (GridCoverage2DReader) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { GridCoverage2DReader.class }, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        throw new UnsupportedOperationException();
+                    }
+                });
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite.mvt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class VectorTileEncoderTest {
+
+    Geometry geometry(String wkt) throws Exception {
+        return new WKTReader().read(wkt);
+    }
+
+    @Test
+    public void testPoint() throws Exception {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        assertTrue(encoder.addFeature("points", null, geometry("POINT(25 17)")));
+        DecodedLayer layer = decode(encoder.encode()).get(0);
+        assertEquals("points", layer.name);
+        assertEquals(2, layer.version);
+        assertEquals(4096, layer.extent);
+        DecodedFeature feature = layer.features.get(0);
+        assertEquals(VectorTileEncoder.POINT, feature.type);
+        // the example from the specification
+        assertArrayEquals(new int[] { 9, 50, 34 }, feature.geometry);
+    }
+
+    @Test
+    public void testMultiPoint() throws Exception {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        encoder.addFeature("points", null, geometry("MULTIPOINT((5 7), (3 2))"));
+        DecodedFeature feature = decode(encoder.encode()).get(0).features.get(0);
+        assertArrayEquals(new int[] { 17, 10, 14, 3, 9 }, feature.geometry);
+    }
+
+    @Test
+    public void testLineString() throws Exception {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        encoder.addFeature("lines", null, geometry("LINESTRING(2 2, 2 10, 10 10)"));
+        DecodedFeature feature = decode(encoder.encode()).get(0).features.get(0);
+        assertEquals(VectorTileEncoder.LINESTRING, feature.type);
+        assertArrayEquals(new int[] { 9, 4, 4, 18, 0, 16, 16, 0 }, feature.geometry);
+    }
+
+    @Test
+    public void testMultiLineStringCursor() throws Exception {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        encoder.addFeature("lines", null,
+                geometry("MULTILINESTRING((2 2, 2 10, 10 10), (1 1, 3 5))"));
+        DecodedFeature feature = decode(encoder.encode()).get(0).features.get(0);
+        // the second line starts relative to the end of the first one
+        assertArrayEquals(new int[] { 9, 4, 4, 18, 0, 16, 16, 0, 9, 17, 17, 10, 4, 8 },
+                feature.geometry);
+    }
+
+    @Test
+    public void testPolygonOrientation() throws Exception {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        // the example from the specification, already clockwise in tile space
+        encoder.addFeature("polygons", null, geometry("POLYGON((3 6, 8 12, 20 34, 3 6))"));
+        // counter clockwise in tile space, has to be reversed, while the hole is fine
+        encoder.addFeature("polygons", null,
+                geometry("POLYGON((0 0, 0 10, 10 10, 10 0, 0 0), (2 2, 2 4, 4 4, 4 2, 2 2))"));
+        List<DecodedFeature> features = decode(encoder.encode()).get(0).features;
+        assertEquals(VectorTileEncoder.POLYGON, features.get(0).type);
+        assertArrayEquals(new int[] { 9, 6, 12, 18, 10, 12, 24, 44, 15 },
+                features.get(0).geometry);
+        assertArrayEquals(new int[] { 9, 20, 0, 26, 0, 20, 19, 0, 0, 19, 15, 9, 4, 4, 26, 0,
+                4, 4, 0, 0, 3, 15 }, features.get(1).geometry);
+    }
+
+    @Test
+    public void testCollapsed() throws Exception {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        assertFalse(encoder.addFeature("lines", null, geometry("LINESTRING(1 1, 1.2 1.1)")));
+        assertFalse(encoder.addFeature("polygons", null,
+                geometry("POLYGON((1 1, 1.2 1, 1.2 1.2, 1 1.2, 1 1))")));
+        assertFalse(encoder.addFeature("points", null, geometry("POINT EMPTY")));
+        assertTrue(encoder.isEmpty());
+        assertEquals(0, encoder.encode().length);
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+        attributes.put("name", "abc");
+        attributes.put("count", 3);
+        attributes.put("missing", null);
+        encoder.addFeature("points", attributes, geometry("POINT(1 1)"), 10);
+        attributes.put("name", "def");
+        attributes.put("count", 3L);
+        attributes.put("ratio", -1.5);
+        attributes.put("flag", true);
+        attributes.put("delta", -2);
+        encoder.addFeature("points", attributes, geometry("POINT(2 2)"), 11);
+
+        DecodedLayer layer = decode(encoder.encode()).get(0);
+        assertEquals(2, layer.features.size());
+        assertEquals(10, layer.features.get(0).id);
+        assertEquals(11, layer.features.get(1).id);
+        assertEquals(layer.keys.toString(), 5, layer.keys.size());
+        // the integer and long 3 share the same value
+        assertEquals(6, layer.values.size());
+        assertEquals(attributes(layer, "name", "abc", "count", 3L), layer.attributes(0));
+        assertEquals(attributes(layer, "name", "def", "count", 3L, "ratio", -1.5, "flag",
+                true, "delta", -2L), layer.attributes(1));
+    }
+
+    Map<String, Object> attributes(DecodedLayer layer, Object... kvp) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < kvp.length; i += 2) {
+            result.put((String) kvp[i], kvp[i + 1]);
+        }
+        return result;
+    }
+
+    @Test
+    public void testMultipleLayers() throws Exception {
+        VectorTileEncoder encoder = new VectorTileEncoder(256);
+        encoder.addFeature("a", Collections.<String, Object> emptyMap(), geometry("POINT(1 1)"));
+        encoder.addFeature("b", null, geometry("POINT(1 1)"));
+        encoder.addFeature("a", null, geometry("POINT(2 2)"));
+        assertEquals(2, encoder.getFeatureCount("a"));
+        assertEquals(1, encoder.getFeatureCount("b"));
+        List<DecodedLayer> layers = decode(encoder.encode());
+        assertEquals(2, layers.size());
+        assertEquals("a", layers.get(0).name);
+        assertEquals(256, layers.get(0).extent);
+        assertEquals(2, layers.get(0).features.size());
+        assertEquals("b", layers.get(1).name);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidExtent() {
+        new VectorTileEncoder(0);
+    }
+
+    static List<DecodedLayer> decode(byte[] tile) {
+        List<DecodedLayer> layers = new ArrayList<DecodedLayer>();
+        ProtobufReader reader = new ProtobufReader(tile, 0, tile.length);
+        while (reader.hasMore()) {
+            int tag = (int) reader.readVarint();
+            assertEquals(3, tag >>> 3);
+            layers.add(decodeLayer(reader.readMessage()));
+        }
+        return layers;
+    }
+
+    static DecodedLayer decodeLayer(ProtobufReader reader) {
+        DecodedLayer layer = new DecodedLayer();
+        while (reader.hasMore()) {
+            int tag = (int) reader.readVarint();
+            switch (tag >>> 3) {
+            case 15:
+                layer.version = (int) reader.readVarint();
+                break;
+            case 1:
+                layer.name = reader.readString();
+                break;
+            case 2:
+                layer.features.add(decodeFeature(reader.readMessage()));
+                break;
+            case 3:
+                layer.keys.add(reader.readString());
+                break;
+            case 4:
+                layer.values.add(decodeValue(reader.readMessage()));
+                break;
+            case 5:
+                layer.extent = (int) reader.readVarint();
+                break;
+            default:
+                throw new IllegalStateException("Unexpected layer field " + (tag >>> 3));
+            }
+        }
+        return layer;
+    }
+
+    static DecodedFeature decodeFeature(ProtobufReader reader) {
+        DecodedFeature feature = new DecodedFeature();
+        while (reader.hasMore()) {
+            int tag = (int) reader.readVarint();
+            switch (tag >>> 3) {
+            case 1:
+                feature.id = reader.readVarint();
+                break;
+            case 2:
+                feature.tags = reader.readMessage().readPacked();
+                break;
+            case 3:
+                feature.type = (int) reader.readVarint();
+                break;
+            case 4:
+                feature.geometry = reader.readMessage().readPacked();
+                break;
+            default:
+                throw new IllegalStateException("Unexpected feature field " + (tag >>> 3));
+            }
+        }
+        return feature;
+    }
+
+    static Object decodeValue(ProtobufReader reader) {
+        int tag = (int) reader.readVarint();
+        switch (tag >>> 3) {
+        case 1:
+            return reader.readString();
+        case 2:
+            return Float.intBitsToFloat((int) reader.readFixed(4));
+        case 3:
+            return Double.longBitsToDouble(reader.readFixed(8));
+        case 4:
+        case 5:
+            return reader.readVarint();
+        case 6:
+            long zz = reader.readVarint();
+            return (zz >>> 1) ^ -(zz & 1);
+        case 7:
+            return reader.readVarint() != 0;
+        default:
+            throw new IllegalStateException("Unexpected value field " + (tag >>> 3));
+        }
+    }
+
+    static class DecodedLayer {
+        int version;
+
+        String name;
+
+        int extent;
+
+        List<DecodedFeature> features = new ArrayList<DecodedFeature>();
+
+        List<String> keys = new ArrayList<String>();
+
+        List<Object> values = new ArrayList<Object>();
+
+        Map<String, Object> attributes(int featureIndex) {
+            int[] tags = features.get(featureIndex).tags;
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < tags.length; i += 2) {
+                result.put(keys.get(tags[i]), values.get(tags[i + 1]));
+            }
+            return result;
+        }
+    }
+
+    static class DecodedFeature {
+        long id = -1;
+
+        int type;
+
+        int[] tags = new int[0];
+
+        int[] geometry;
+    }
+
+    /**
+     * Just enough of the protobuf wire format to check the encoder output
+     */
+    static class ProtobufReader {
+        byte[] buffer;
+
+        int position;
+
+        int end;
+
+        ProtobufReader(byte[] buffer, int position, int end) {
+            this.buffer = buffer;
+            this.position = position;
+            this.end = end;
+        }
+
+        boolean hasMore() {
+            return position < end;
+        }
+
+        long readVarint() {
+            long result = 0;
+            int shift = 0;
+            while (true) {
+                byte b = buffer[position++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+                shift += 7;
+            }
+        }
+
+        long readFixed(int bytes) {
+            long result = 0;
+            for (int i = 0; i < bytes; i++) {
+                result |= (long) (buffer[position++] & 0xFF) << (i * 8);
+            }
+            return result;
+        }
+
+        ProtobufReader readMessage() {
+            int length = (int) readVarint();
+            ProtobufReader message = new ProtobufReader(buffer, position, position + length);
+            position += length;
+            return message;
+        }
+
+        String readString() {
+            int length = (int) readVarint();
+            String result = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return result;
+        }
+
+        int[] readPacked() {
+            List<Integer> values = new ArrayList<Integer>();
+            while (hasMore()) {
+                values.add((int) readVarint());
+            }
+            int[] result = new int[values.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = values.get(i);
+            }
+            return result;
+        }
+    }
+}
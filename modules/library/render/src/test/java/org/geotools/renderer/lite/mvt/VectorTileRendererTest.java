@@ -0,0 +1,231 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite.mvt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.filter.text.ecql.ECQL;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.renderer.lite.mvt.VectorTileEncoderTest.DecodedFeature;
+import org.geotools.renderer.lite.mvt.VectorTileEncoderTest.DecodedLayer;
+import org.geotools.styling.StyleBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.io.WKTReader;
+
+public class VectorTileRendererTest {
+
+    MapContent mc;
+
+    ListFeatureCollection features;
+
+    ReferencedEnvelope tile = new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("shapes",
+                "geom:Geometry:4326,name:String,value:int");
+        features = new ListFeatureCollection(type);
+        mc = new MapContent();
+        mc.addLayer(new FeatureLayer(features, new StyleBuilder().createStyle()));
+    }
+
+    @After
+    public void tearDown() {
+        mc.dispose();
+    }
+
+    void addFeature(String wkt, String name, int value) throws Exception {
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(features.getSchema());
+        fb.add(new WKTReader().read(wkt));
+        fb.add(name);
+        fb.add(value);
+        features.add(fb.buildFeature(null));
+    }
+
+    DecodedLayer render(VectorTileRenderer renderer) throws Exception {
+        List<DecodedLayer> layers = VectorTileEncoderTest.decode(renderer.render(tile));
+        assertEquals(1, layers.size());
+        return layers.get(0);
+    }
+
+    @Test
+    public void testTransformAndAttributes() throws Exception {
+        addFeature("POINT(5 5)", "center", 1);
+        addFeature("LINESTRING(0 10, 10 0)", "diagonal", 2);
+        // outside of the tile and its buffer
+        addFeature("POINT(20 20)", "far", 3);
+
+        VectorTileRenderer renderer = new VectorTileRenderer(mc);
+        renderer.setExtent(256);
+        DecodedLayer layer = render(renderer);
+        assertEquals("shapes", layer.name);
+        assertEquals(256, layer.extent);
+        assertEquals(2, layer.features.size());
+
+        DecodedFeature point = layer.features.get(0);
+        assertEquals(VectorTileEncoder.POINT, point.type);
+        assertEquals("center", layer.attributes(0).get("name"));
+        assertEquals(1L, layer.attributes(0).get("value"));
+        // 128, 128 in tile space
+        assertEquals(9, point.geometry[0]);
+        assertEquals(256, point.geometry[1]);
+        assertEquals(256, point.geometry[2]);
+
+        DecodedFeature line = layer.features.get(1);
+        assertEquals(VectorTileEncoder.LINESTRING, line.type);
+        // from the upper left to the lower right corner, y axis pointing down
+        assertEquals(9, line.geometry[0]);
+        assertEquals(0, line.geometry[1]);
+        assertEquals(0, line.geometry[2]);
+        assertEquals(10, line.geometry[3]);
+        assertEquals(512, line.geometry[4]);
+        assertEquals(512, line.geometry[5]);
+    }
+
+    @Test
+    public void testClipToBuffer() throws Exception {
+        addFeature("POLYGON((-5 -5, -5 15, 15 15, 15 -5, -5 -5))", "large", 1);
+
+        VectorTileRenderer renderer = new VectorTileRenderer(mc);
+        renderer.setExtent(256);
+        renderer.setBuffer(16);
+        DecodedFeature polygon = render(renderer).features.get(0);
+        assertEquals(VectorTileEncoder.POLYGON, polygon.type);
+        // decode the ring and check it's been cut at the buffer
+        int x = 0, y = 0;
+        int[] g = polygon.geometry;
+        assertEquals(9, g[0]);
+        x += unzigzag(g[1]);
+        y += unzigzag(g[2]);
+        assertBuffered(x, y);
+        int count = g[3] >>> 3;
+        for (int i = 0; i < count; i++) {
+            x += unzigzag(g[4 + i * 2]);
+            y += unzigzag(g[5 + i * 2]);
+            assertBuffered(x, y);
+        }
+        assertEquals(15, g[g.length - 1]);
+    }
+
+    void assertBuffered(int x, int y) {
+        assertTrue(x == -16 || x == 272);
+        assertTrue(y == -16 || y == 272);
+    }
+
+    int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    @Test
+    public void testScreenMap() throws Exception {
+        // lots of tiny lines in the same tile cell, only the first one survives
+        for (int i = 0; i < 10; i++) {
+            addFeature("LINESTRING(5.0003 5.0003, 5.0015 5.0015)", "l" + i, i);
+        }
+        addFeature("LINESTRING(2 2, 3 3)", "other", 10);
+        // points are never skipped
+        for (int i = 0; i < 5; i++) {
+            addFeature("POINT(7.0001 7.0001)", "p" + i, 11 + i);
+        }
+
+        VectorTileRenderer renderer = new VectorTileRenderer(mc);
+        assertEquals(7, render(renderer).features.size());
+
+        renderer.setScreenMapEnabled(false);
+        assertEquals(16, render(renderer).features.size());
+    }
+
+    @Test
+    public void testDateline() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("places", "geom:Point,name:String");
+        ListFeatureCollection places = new ListFeatureCollection(type);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        fb.add(new WKTReader().read("POINT(-175 5)"));
+        fb.add("east of the dateline");
+        places.add(fb.buildFeature(null));
+        MapContent wrapped = new MapContent();
+        wrapped.addLayer(new FeatureLayer(places, new StyleBuilder().createStyle()));
+        try {
+            // the tile crosses the dateline, the point shows up wrapped at 185
+            ReferencedEnvelope crossing = new ReferencedEnvelope(170, 190, 0, 10,
+                    DefaultGeographicCRS.WGS84);
+            VectorTileRenderer renderer = new VectorTileRenderer(wrapped);
+            renderer.setExtent(256);
+            List<DecodedLayer> layers = VectorTileEncoderTest.decode(renderer.render(crossing));
+            assertEquals(1, layers.size());
+            assertEquals(1, layers.get(0).features.size());
+            DecodedFeature point = layers.get(0).features.get(0);
+            assertEquals(VectorTileEncoder.POINT, point.type);
+            // 192, 128 in tile space
+            assertEquals(9, point.geometry[0]);
+            assertEquals(384, point.geometry[1]);
+            assertEquals(256, point.geometry[2]);
+        } finally {
+            wrapped.dispose();
+        }
+    }
+
+    @Test
+    public void testLayerQuery() throws Exception {
+        addFeature("POINT(5 5)", "a", 1);
+        addFeature("POINT(6 6)", "b", 2);
+        FeatureLayer layer = (FeatureLayer) mc.layers().get(0);
+        layer.setQuery(new Query("shapes", ECQL.toFilter("value > 1")));
+
+        DecodedLayer decoded = render(new VectorTileRenderer(mc));
+        assertEquals(1, decoded.features.size());
+        assertEquals("b", decoded.attributes(0).get("name"));
+    }
+
+    @Test
+    public void testLayerQueryProperties() throws Exception {
+        addFeature("POINT(5 5)", "a", 1);
+        FeatureLayer layer = (FeatureLayer) mc.layers().get(0);
+        // the geometry is not listed, but still needed to build the tile
+        Query query = new Query("shapes");
+        query.setPropertyNames(new String[] { "name" });
+        layer.setQuery(query);
+
+        DecodedLayer decoded = render(new VectorTileRenderer(mc));
+        assertEquals(1, decoded.features.size());
+        assertEquals(VectorTileEncoder.POINT, decoded.features.get(0).type);
+        assertEquals("a", decoded.attributes(0).get("name"));
+        assertFalse(decoded.attributes(0).containsKey("value"));
+    }
+
+    @Test
+    public void testInvisibleLayer() throws Exception {
+        addFeature("POINT(5 5)", "a", 1);
+        mc.layers().get(0).setVisible(false);
+        assertEquals(0, new VectorTileRenderer(mc).render(tile).length);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.style;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import org.geotools.renderer.style.shape.ExplicitBoundsShape;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MarkSpriteCacheTest {
+
+    static final Ellipse2D CIRCLE = new Ellipse2D.Double(-0.5, -0.5, 1, 1);
+
+    BufferedImage image;
+
+    Graphics2D graphics;
+
+    @Before
+    public void setUp() {
+        image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+    }
+
+    @After
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    MarkStyle2D buildMark(double size) {
+        MarkStyle2D mark = new MarkStyle2D();
+        mark.setShape(CIRCLE);
+        mark.setSize(size);
+        mark.setFill(Color.RED);
+        mark.setFillComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
+        mark.setContour(Color.BLACK);
+        mark.setStroke(new BasicStroke(2));
+        mark.setContourComposite(AlphaComposite.SrcOver);
+        return mark;
+    }
+
+    @Test
+    public void testCanPaint() {
+        MarkSpriteCache cache = new MarkSpriteCache(10);
+        MarkStyle2D mark = buildMark(10);
+        assertTrue(cache.canPaint(graphics, mark));
+
+        // too big
+        assertFalse(cache.canPaint(graphics, buildMark(MarkSpriteCache.MAX_SPRITE_SIZE + 1)));
+
+        // position dependent paint
+        MarkStyle2D gradient = buildMark(10);
+        gradient.setFill(new GradientPaint(0, 0, Color.RED, 10, 10, Color.BLUE));
+        assertFalse(cache.canPaint(graphics, gradient));
+
+        // non alpha blending composite
+        MarkStyle2D xor = buildMark(10);
+        xor.setFillComposite(AlphaComposite.Xor);
+        assertFalse(cache.canPaint(graphics, xor));
+
+        // scaled graphics
+        graphics.scale(2, 2);
+        assertFalse(cache.canPaint(graphics, mark));
+
+        // disabled cache
+        assertFalse(new MarkSpriteCache(0).canPaint(graphics, mark));
+    }
+
+    @Test
+    public void testReuse() {
+        MarkSpriteCache cache = new MarkSpriteCache(10);
+        cache.paint(graphics, buildMark(10), 20, 20);
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getMisses());
+
+        // same style contents, same sub-pixel position, reused
+        cache.paint(graphics, buildMark(10), 50, 30);
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getHits());
+
+        // different sub-pixel position
+        cache.paint(graphics, buildMark(10), 50.5f, 30);
+        assertEquals(2, cache.getSize());
+
+        // different rotation
+        MarkStyle2D rotated = buildMark(10);
+        rotated.setRotation((float) Math.toRadians(45));
+        cache.paint(graphics, rotated, 50, 30);
+        assertEquals(3, cache.getSize());
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testShapeContents() {
+        // like the TTF marks, a new shape object at each call
+        MarkSpriteCache cache = new MarkSpriteCache(10);
+        for (int i = 0; i < 3; i++) {
+            MarkStyle2D mark = buildMark(10);
+            mark.setShape(buildGlyph(new Rectangle2D.Double(-0.5, -0.5, 1, 1)));
+            cache.paint(graphics, mark, 20, 20);
+        }
+        assertEquals(1, cache.getSize());
+        assertEquals(2, cache.getHits());
+
+        // same outline, different bounds, hence a different scale
+        MarkStyle2D mark = buildMark(10);
+        mark.setShape(buildGlyph(new Rectangle2D.Double(-1, -1, 2, 2)));
+        cache.paint(graphics, mark, 20, 20);
+        assertEquals(2, cache.getSize());
+
+        // different outline
+        GeneralPath triangle = new GeneralPath();
+        triangle.moveTo(-0.5f, 0.5f);
+        triangle.lineTo(0.5f, 0.5f);
+        triangle.lineTo(0, -0.5f);
+        triangle.closePath();
+        mark = buildMark(10);
+        mark.setShape(triangle);
+        cache.paint(graphics, mark, 20, 20);
+        assertEquals(3, cache.getSize());
+    }
+
+    @Test
+    public void testPaintingContext() {
+        MarkSpriteCache cache = new MarkSpriteCache(10);
+        MarkStyle2D mark = buildMark(10);
+        mark.setShape(new Rectangle2D.Double(-0.5, -0.25, 1, 0.5));
+        cache.paint(graphics, mark, 20, 20);
+        assertEquals(1, cache.getSize());
+
+        // the stroke control changes how the outline is rasterized
+        graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL,
+                RenderingHints.VALUE_STROKE_PURE);
+        cache.paint(graphics, mark, 20, 20);
+        assertEquals(2, cache.getSize());
+
+        // hints not affecting the shapes are not part of the key
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        cache.paint(graphics, mark, 20, 20);
+        assertEquals(2, cache.getSize());
+
+        // the max mark size changes the scale of non square shapes
+        boolean maxMarkSizeEnabled = MarkStyle2D.isMaxMarkSizeEnabled();
+        try {
+            MarkStyle2D.setMaxMarkSizeEnabled(!maxMarkSizeEnabled);
+            Rectangle2D bounds = cache.paint(graphics, mark, 20, 20);
+            assertEquals(3, cache.getSize());
+            assertTrue(bounds.contains(mark.getTransformedShape(20, 20).getBounds2D()));
+        } finally {
+            MarkStyle2D.setMaxMarkSizeEnabled(maxMarkSizeEnabled);
+        }
+    }
+
+    ExplicitBoundsShape buildGlyph(Rectangle2D bounds) {
+        GeneralPath path = new GeneralPath(new Ellipse2D.Double(-0.4, -0.4, 0.8, 0.8));
+        ExplicitBoundsShape shape = new ExplicitBoundsShape(path);
+        shape.setBounds(bounds);
+        return shape;
+    }
+
+    @Test
+    public void testEviction() {
+        MarkSpriteCache cache = new MarkSpriteCache(2);
+        for (int i = 1; i <= 5; i++) {
+            cache.paint(graphics, buildMark(i * 2), 20, 20);
+        }
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    public void testSameAsVector() {
+        MarkSpriteCache cache = new MarkSpriteCache(10);
+        MarkStyle2D mark = buildMark(12);
+        mark.setRotation((float) Math.toRadians(30));
+        float[][] points = { { 20, 20 }, { 50.25f, 40.5f }, { 70.75f, 80.25f } };
+
+        Rectangle2D bounds = null;
+        for (float[] point : points) {
+            bounds = cache.paint(graphics, mark, point[0], point[1]);
+        }
+        assertTrue(bounds.contains(mark.getTransformedShape(70.75f, 80.25f).getBounds2D()));
+
+        BufferedImage expected = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = expected.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (float[] point : points) {
+            g.setPaint(mark.getFill());
+            g.setComposite(mark.getFillComposite());
+            g.fill(mark.getTransformedShape(point[0], point[1]));
+            g.setPaint(mark.getContour());
+            g.setStroke(mark.getStroke());
+            g.setComposite(mark.getContourComposite());
+            g.draw(mark.getTransformedShape(point[0], point[1]));
+        }
+        g.dispose();
+
+        // the positions are exact multiples of the sub-pixel steps, the rotation an exact
+        // number of steps, only the antialiasing can differ
+        int differences = 0;
+        for (int x = 0; x < 100; x++) {
+            for (int y = 0; y < 100; y++) {
+                int e = expected.getRGB(x, y);
+                int a = image.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int delta = Math.abs(((e >>> shift) & 0xFF) - ((a >>> shift) & 0xFF));
+                    if (delta > 8) {
+                        differences++;
+                    }
+                }
+            }
+        }
+        assertEquals(0, differences);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2016, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.style;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+
+import javax.swing.ImageIcon;
+
+import org.geotools.styling.LineSymbolizer;
+import org.geotools.styling.PolygonSymbolizer;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.util.NumberRange;
+import org.junit.Test;
+
+public class Style2DCacheTest {
+
+    StyleBuilder sb = new StyleBuilder();
+
+    NumberRange<Double> range = NumberRange.create(0d, 1000d);
+
+    @Test
+    public void testSharedAcrossFactories() {
+        Style2DCache cache = new Style2DCache(10);
+        SLDStyleFactory f1 = new SLDStyleFactory();
+        f1.setStyleCache(cache);
+        SLDStyleFactory f2 = new SLDStyleFactory();
+        f2.setStyleCache(cache);
+
+        LineSymbolizer ls = sb.createLineSymbolizer(Color.RED, 2);
+        Style2D s1 = f1.createStyle(null, ls, range);
+        Style2D s2 = f2.createStyle(null, ls, range);
+        assertSame(s1, s2);
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getHits());
+
+        // a different scale range is a different style
+        Style2D s3 = f2.createStyle(null, ls, NumberRange.create(0d, 500d));
+        assertNotSame(s1, s3);
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    public void testConfigurationIsPartOfKey() {
+        Style2DCache cache = new Style2DCache(10);
+        SLDStyleFactory f1 = new SLDStyleFactory();
+        f1.setStyleCache(cache);
+        SLDStyleFactory f2 = new SLDStyleFactory();
+        f2.setStyleCache(cache);
+        f2.setLineOptimizationEnabled(true);
+
+        // thin line, the optimization changes the resulting stroke
+        LineSymbolizer ls = sb.createLineSymbolizer(Color.RED, 1);
+        LineStyle2D s1 = (LineStyle2D) f1.createStyle(null, ls, range);
+        LineStyle2D s2 = (LineStyle2D) f2.createStyle(null, ls, range);
+        assertNotSame(s1, s2);
+        assertEquals(2, cache.getSize());
+
+        // going back to the same configuration hits the cache again
+        f2.setLineOptimizationEnabled(false);
+        assertSame(s1, f2.createStyle(null, ls, range));
+    }
+
+    @Test
+    public void testDynamicNotCached() {
+        Style2DCache cache = new Style2DCache(10);
+        SLDStyleFactory factory = new SLDStyleFactory();
+        factory.setStyleCache(cache);
+        LineSymbolizer ls = sb.createLineSymbolizer(Color.RED, 1);
+        ls.getStroke().setWidth(sb.attributeExpression("width"));
+        factory.createStyle(null, ls, range);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testContentKeys() {
+        Style2DCache cache = new Style2DCache(10);
+        SLDStyleFactory f1 = new SLDStyleFactory();
+        f1.setStyleCache(cache);
+        SLDStyleFactory f2 = new SLDStyleFactory();
+        f2.setStyleCache(cache);
+
+        // different but equal symbolizers, as in different rendering requests
+        Style2D s1 = f1.createStyle(null, sb.createLineSymbolizer(Color.RED, 2), range);
+        Style2D s2 = f2.createStyle(null, sb.createLineSymbolizer(Color.RED, 2), range);
+        assertSame(s1, s2);
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getHits());
+        assertNotSame(s1, f2.createStyle(null, sb.createLineSymbolizer(Color.RED, 3), range));
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    public void testModifiedSymbolizer() {
+        Style2DCache cache = new Style2DCache(10);
+        SLDStyleFactory factory = new SLDStyleFactory();
+        factory.setStyleCache(cache);
+        LineSymbolizer ls = sb.createLineSymbolizer(Color.RED, 2);
+        PolygonSymbolizer ps = sb.createPolygonSymbolizer(Color.BLUE);
+        Style style = sb.createStyle(ls);
+        Style2D lineStyle = factory.createStyle(null, ls, range);
+        factory.createStyle(null, ps, range);
+        assertEquals(2, cache.getSize());
+
+        // change the style, the factory has to forget about it
+        ls.getStroke().setColor(sb.colorExpression(Color.GREEN));
+        cache.invalidate(style);
+        Style2D modified = factory.createStyle(null, ls, range);
+        assertNotSame(lineStyle, modified);
+        assertEquals(3, cache.getSize());
+
+        // the cache kept a copy of the original symbolizer, the entry is still valid
+        SLDStyleFactory other = new SLDStyleFactory();
+        other.setStyleCache(cache);
+        assertSame(lineStyle, other.createStyle(null, sb.createLineSymbolizer(Color.RED, 2), range));
+
+        cache.invalidate(ps);
+        assertEquals(2, cache.getSize());
+        assertNull(cache.get(ps, range, null));
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testEviction() {
+        Style2DCache cache = new Style2DCache(2);
+        SLDStyleFactory factory = new SLDStyleFactory();
+        factory.setStyleCache(cache);
+        LineSymbolizer ls1 = sb.createLineSymbolizer(Color.RED, 2);
+        LineSymbolizer ls2 = sb.createLineSymbolizer(Color.GREEN, 2);
+        LineSymbolizer ls3 = sb.createLineSymbolizer(Color.BLUE, 2);
+        Style2D s1 = factory.createStyle(null, ls1, range);
+        Style2D s2 = factory.createStyle(null, ls2, range);
+        // a lookup from another factory makes the first style the most recently used
+        assertSame(s1, newFactory(cache).createStyle(null, ls1, range));
+        factory.createStyle(null, ls3, range);
+        assertEquals(2, cache.getSize());
+
+        // the least recently used got evicted
+        assertSame(s1, newFactory(cache).createStyle(null, ls1, range));
+        assertNotSame(s2, newFactory(cache).createStyle(null, ls2, range));
+        assertEquals(2, cache.getSize());
+    }
+
+    SLDStyleFactory newFactory(Style2DCache cache) {
+        SLDStyleFactory factory = new SLDStyleFactory();
+        factory.setStyleCache(cache);
+        return factory;
+    }
+
+    @Test
+    public void testDisabled() {
+        Style2DCache cache = new Style2DCache(0);
+        SLDStyleFactory factory = new SLDStyleFactory();
+        factory.setStyleCache(cache);
+        LineSymbolizer ls = sb.createLineSymbolizer(Color.RED, 2);
+        assertNotSame(factory.createStyle(null, ls, range), factory.createStyle(null, ls, range));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testTextNotShared() {
+        Style2DCache cache = new Style2DCache(10);
+        SLDStyleFactory f1 = newFactory(cache);
+        SLDStyleFactory f2 = newFactory(cache);
+
+        // the label is a property, but the symbolizer is still considered static
+        TextSymbolizer ts = sb.createTextSymbolizer(Color.BLACK, sb.createFont("Serif", 10),
+                "name");
+        Style2D s1 = f1.createStyle(null, ts, range);
+        Style2D s2 = f2.createStyle(null, ts, range);
+        assertTrue(s1 instanceof TextStyle2D);
+        assertNotSame(s1, s2);
+        assertEquals(0, cache.getSize());
+        // the factory still reuses its own copy
+        assertSame(s1, f1.createStyle(null, ts, range));
+    }
+
+    @Test
+    public void testShareable() {
+        assertFalse(Style2DCache.isShareable(new TextStyle2D()));
+        IconStyle2D icon = new IconStyle2D(new ImageIcon(), null);
+        assertFalse(Style2DCache.isShareable(icon));
+        LineStyle2D line = new LineStyle2D();
+        assertTrue(Style2DCache.isShareable(line));
+        line.setGraphicStroke(icon);
+        assertFalse(Style2DCache.isShareable(line));
+        PolygonStyle2D polygon = new PolygonStyle2D();
+        assertTrue(Style2DCache.isShareable(polygon));
+        polygon.setGraphicFill(icon);
+        assertFalse(Style2DCache.isShareable(polygon));
+    }
+}